@@ -0,0 +1,93 @@
+package konstructs.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import konstructs.api.BlockTypeId;
+import konstructs.api.Box;
+import konstructs.api.BoxCursor;
+import konstructs.api.Position;
+
+/**
+ * Compares the different ways of scanning the result of a 256x256x64 box query.
+ * Run with <code>sbt "bench/jmh:run -prof gc .*BoxIterationBenchmark.*"</code> to
+ * also see the allocation rate of each approach.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BoxIterationBenchmark {
+    private static final BlockTypeId STONE = new BlockTypeId("org/konstructs", "stone");
+
+    private Box box;
+    private BlockTypeId[] blocks;
+    private BoxCursor cursor;
+
+    @Setup
+    public void setup() {
+        box = Box.createWithSize(new Position(-128, 0, -128), new Position(256, 64, 256));
+        blocks = new BlockTypeId[box.getNumberOfBlocks()];
+        for(int i = 0; i < blocks.length; i++) {
+            blocks[i] = i % 3 == 0 ? STONE : BlockTypeId.VACUUM;
+        }
+        cursor = new BoxCursor();
+    }
+
+    @Benchmark
+    public int getAsMap() {
+        int stones = 0;
+        for(Map.Entry<Position, BlockTypeId> e: box.getAsMap(blocks).entrySet()) {
+            if(e.getValue() == STONE) {
+                stones += e.getKey().getY();
+            }
+        }
+        return stones;
+    }
+
+    @Benchmark
+    public int arrayIndexAsPosition() {
+        int stones = 0;
+        for(int i = 0; i < blocks.length; i++) {
+            if(blocks[i] == STONE) {
+                stones += box.arrayIndexAsPosition(i).getY();
+            }
+        }
+        return stones;
+    }
+
+    @Benchmark
+    public void forEachIndexed(final Blackhole blackhole) {
+        box.forEachIndexed((x, y, z, index) -> {
+            if(blocks[index] == STONE) {
+                blackhole.consume(y);
+            }
+        });
+    }
+
+    @Benchmark
+    public int cursor() {
+        int stones = 0;
+        cursor.reset(box);
+        while(cursor.next()) {
+            if(blocks[cursor.getIndex()] == STONE) {
+                stones += cursor.getY();
+            }
+        }
+        return stones;
+    }
+}
@@ -0,0 +1,90 @@
+package konstructs.bench;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import konstructs.api.Block;
+import konstructs.api.BlockTypeId;
+import konstructs.api.GsonDefault;
+import konstructs.api.Health;
+import konstructs.api.Inventory;
+import konstructs.api.Orientation;
+import konstructs.api.Stack;
+
+/**
+ * Compares the type adapters registered by GsonDefault with the reflective
+ * adapters of a plain Gson instance, for a full 9x9 inventory of stacks of
+ * 64 blocks. Run with <code>sbt "bench/jmh:run -prof gc .*GsonBenchmark.*"</code>
+ * to also see the allocation rate of each approach.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GsonBenchmark {
+    private static final BlockTypeId[] TYPES = {
+            new BlockTypeId("org/konstructs", "stone"),
+            new BlockTypeId("org/konstructs", "dirt"),
+            new BlockTypeId("org/konstructs", "wood")
+    };
+
+    private Gson adapters;
+    private Gson reflective;
+    private Inventory inventory;
+    private String json;
+
+    @Setup
+    public void setup() {
+        adapters = GsonDefault.getDefaultGson();
+        reflective = new GsonBuilder().create();
+        Random random = new Random(0);
+        Stack[] stacks = new Stack[81];
+        for(int s = 0; s < stacks.length; s++) {
+            BlockTypeId type = TYPES[s % TYPES.length];
+            Block[] blocks = new Block[Stack.MAX_SIZE];
+            for(int i = 0; i < blocks.length; i++) {
+                Health health = i % 4 == 0 ? Health.get(random.nextInt(Health.MAX_HEALTH)) : Health.PRISTINE;
+                blocks[i] = new Block(UUID.randomUUID(), type, health, Orientation.NORMAL);
+            }
+            stacks[s] = new Stack(blocks);
+        }
+        inventory = new Inventory(stacks);
+        json = adapters.toJson(inventory);
+    }
+
+    @Benchmark
+    public Inventory readAdapters() {
+        return adapters.fromJson(json, Inventory.class);
+    }
+
+    @Benchmark
+    public Inventory readReflective() {
+        return Inventory.convertPre0_1(reflective.fromJson(json, Inventory.class));
+    }
+
+    @Benchmark
+    public String writeAdapters() {
+        return adapters.toJson(inventory);
+    }
+
+    @Benchmark
+    public String writeReflective() {
+        return reflective.toJson(inventory);
+    }
+}
@@ -0,0 +1,93 @@
+package konstructs.api;
+
+import java.io.Serializable;
+
+/**
+ * BlockArrayEncoding is a class representing how the blocks of a box shape
+ * query result are encoded. There are three encodings:
+ * <ul>
+ *     <li>{@link #PLAIN} is an array with one {@link BlockTypeId} per block,
+ *     as returned by {@link konstructs.api.messages.BoxShapeQueryResult#getBlocks()}.
+ *     It is the default encoding.</li>
+ *     <li>{@link #PALETTE} is a small array of the distinct block types and one
+ *     bit packed index into it per block, see {@link PaletteBlockArray}. The
+ *     result is then a {@link konstructs.api.messages.BoxShapeQueryPaletteResult}.</li>
+ *     <li>{@link #RUN_LENGTH} stores runs of equal blocks along the z axis, see
+ *     {@link RunLengthBlockArray}. It always uses the linear layout. The result
+ *     is then a {@link konstructs.api.messages.BoxShapeQueryRunLengthResult}.</li>
+ * </ul>
+ */
+public class BlockArrayEncoding implements Serializable {
+    public static final int PLAIN_ENCODING = 0;
+    public static final int PALETTE_ENCODING = 1;
+    public static final int RUN_LENGTH_ENCODING = 2;
+
+    /**
+     * One BlockTypeId per block
+     */
+    public static final BlockArrayEncoding PLAIN = new BlockArrayEncoding(PLAIN_ENCODING);
+
+    /**
+     * A palette of block types and a bit packed palette index per block
+     */
+    public static final BlockArrayEncoding PALETTE = new BlockArrayEncoding(PALETTE_ENCODING);
+
+    /**
+     * Runs of equal blocks along the z axis
+     */
+    public static final BlockArrayEncoding RUN_LENGTH = new BlockArrayEncoding(RUN_LENGTH_ENCODING);
+
+    /**
+     * Returns the BlockArrayEncoding associated with the provided encoding
+     * @param encoding The encoded value of the block array encoding
+     * @return The singleton instance of the BlockArrayEncoding
+     */
+    public static BlockArrayEncoding get(int encoding) {
+        switch(encoding) {
+            case PLAIN_ENCODING:
+                return PLAIN;
+            case PALETTE_ENCODING:
+                return PALETTE;
+            case RUN_LENGTH_ENCODING:
+                return RUN_LENGTH;
+            default:
+                throw new IllegalArgumentException("No block array encoding encoded by: " + encoding);
+        }
+    }
+
+    private final int encoding;
+
+    private BlockArrayEncoding(int encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Returns the encoded value of this block array encoding
+     * @return The encoded value
+     */
+    public int getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BlockArrayEncoding that = (BlockArrayEncoding) o;
+
+        return encoding == that.encoding;
+    }
+
+    @Override
+    public int hashCode() {
+        return encoding;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockArrayEncoding(" +
+                "encoding=" + encoding +
+                ')';
+    }
+}
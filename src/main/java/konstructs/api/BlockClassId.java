@@ -1,5 +1,8 @@
 package konstructs.api;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * BlockClassId is a class that holds the <code>namespace</code> and
  * <code>name</code> of a class. This information is very static
@@ -13,6 +16,11 @@ package konstructs.api;
  * by <code>namespace</code> it must only be unique within your
  * plugins namespace. The <code>name</code> of a class always starts
  * with an upper case letter. It is immutable and serializable.
+ * <p>
+ *     Each distinct class is given a dense index when first used (see
+ *     {@link #getIndex()}), so that a set of classes can be stored as a bitset,
+ *     see {@link #mask(BlockClassId[])} and {@link BlockType#getClassMask()}.
+ * </p>
  */
 public class BlockClassId {
     /**
@@ -31,8 +39,41 @@ public class BlockClassId {
         return new BlockClassId(namespace, name);
     }
 
+    private static final ConcurrentHashMap<BlockClassId, Integer> INDEXES = new ConcurrentHashMap<>();
+    private static final AtomicInteger NUMBER_OF_INDEXES = new AtomicInteger();
+
+    /**
+     * Create a bitset of classes, with the bit of the index of each class set
+     * @param classes The classes
+     * @return The bitset, as an array of longs
+     * @see #getIndex()
+     */
+    public static long[] mask(BlockClassId[] classes) {
+        if(classes == null) return new long[0];
+        int max = -1;
+        for(BlockClassId c: classes) {
+            max = Math.max(max, c.getIndex());
+        }
+        long[] mask = new long[(max + 64) >>> 6];
+        for(BlockClassId c: classes) {
+            int index = c.getIndex();
+            mask[index >>> 6] |= 1L << index;
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the number of classes that have been given an index so far
+     * @return The number of indexes
+     */
+    public static int getNumberOfIndexes() {
+        return NUMBER_OF_INDEXES.get();
+    }
+
     private final String namespace;
     private final String name;
+    /* The index plus one, 0 if not looked up yet */
+    private transient int index;
 
     /**
      * Constructs an immutable BlockClassId.
@@ -69,6 +110,21 @@ public class BlockClassId {
         return name;
     }
 
+    /**
+     * Returns the dense index of this class. Equal classes have the same index.
+     * The indexes are only valid within one JVM and must never be stored or sent
+     * to other actors.
+     * @return The index, starting from 0
+     */
+    public int getIndex() {
+        int i = index;
+        if(i == 0) {
+            i = INDEXES.computeIfAbsent(this, c -> NUMBER_OF_INDEXES.getAndIncrement()) + 1;
+            index = i;
+        }
+        return i - 1;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
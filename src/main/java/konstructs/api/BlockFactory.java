@@ -75,6 +75,7 @@ public interface BlockFactory {
      * </p>
      * @param typeId The BlockTypeId for which the w-value is required
      * @return The w-value of the BlockTypeId
+     * @see BlockTypeTable#getW(BlockTypeId) for lookups in hot loops
      */
     public int getW(BlockTypeId typeId);
 
@@ -21,4 +21,69 @@ public abstract class BlockFilter {
     public BlockFilter or(BlockFilter filter) {
         return new BlockFilterOr(this, filter);
     }
+
+    /**
+     * Create a new block filter that matches if both this block filter
+     * and the block filter given to this method matches the block.
+     * @param filter The filter that is and'ed with this filter
+     * @return A new filter which contains both this filter and the filter given
+     */
+    public BlockFilter and(BlockFilter filter) {
+        return new BlockFilterAnd(this, filter);
+    }
+
+    /**
+     * Create a new block filter that matches if exactly one of this block
+     * filter and the block filter given to this method matches the block.
+     * @param filter The filter that is xor'ed with this filter
+     * @return A new filter which contains both this filter and the filter given
+     */
+    public BlockFilter xor(BlockFilter filter) {
+        return new BlockFilterXor(this, filter);
+    }
+
+    /**
+     * Create a new block filter that matches if this block filter does
+     * not match the block.
+     * @return A new filter which negates this filter
+     */
+    public BlockFilter not() {
+        return new BlockFilterNot(this);
+    }
+
+    /**
+     * Returns a simplified filter that matches the same blocks as this filter.
+     * Nested AND and OR filters are flattened, duplicated filters are removed,
+     * the BlockFilterNodes of an AND are merged into one and filters that always
+     * or never match are replaced by {@link BlockFilterFactory#EVERYTHING} and
+     * {@link BlockFilterFactory#NOTHING}. Equal filters are normalized into equal
+     * filters, so the normalized filter is a good key for caching.
+     * @return The normalized filter, this filter if it can not be simplified
+     * @see BlockFilterCache
+     */
+    public BlockFilter normalize() {
+        return this;
+    }
+
+    /**
+     * Evaluate this filter once for each block type of a block factory. Matching
+     * blocks with the compiled filter is then a single bit test per block.
+     * @param factory The block factory
+     * @return The compiled filter
+     * @see CompiledBlockFilter
+     */
+    public CompiledBlockFilter compile(BlockFactory factory) {
+        return compile(new BlockTypeTable(factory));
+    }
+
+    /**
+     * Evaluate this filter once for each block type of a table. Matching
+     * blocks with the compiled filter is then a single bit test per block.
+     * @param table The table of the block types
+     * @return The compiled filter
+     * @see CompiledBlockFilter
+     */
+    public CompiledBlockFilter compile(BlockTypeTable table) {
+        return new CompiledBlockFilter(this, table);
+    }
 }
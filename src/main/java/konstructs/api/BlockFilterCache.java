@@ -0,0 +1,154 @@
+package konstructs.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * BlockFilterCache is a bounded cache of compiled block filters. Filters are
+ * cached by their normalized form (see {@link BlockFilter#normalize()}) and the
+ * version of the block type table they were compiled for, so filters that are
+ * equal after normalization share the same compiled filter, and a filter is
+ * compiled again when the block types have changed.
+ * <pre>
+ *     BlockFilterCache cache = new BlockFilterCache();
+ *     CompiledBlockFilter solid = cache.compile(BlockFilterFactory.withObstacle(true), factory);
+ * </pre>
+ * <p>
+ *     When the cache is full, the least recently used filter is removed. The
+ *     cache is thread safe.
+ * </p>
+ */
+public final class BlockFilterCache {
+    /**
+     * The default maximum number of cached filters
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final class Key {
+        private final BlockFilter filter;
+        private final int version;
+
+        Key(BlockFilter filter, int version) {
+            this.filter = filter;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            if (version != key.version) return false;
+            return filter.equals(key.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * filter.hashCode() + version;
+        }
+    }
+
+    private final int capacity;
+    private final Map<Key, CompiledBlockFilter> compiled;
+    private BlockTypeTable table;
+
+    /**
+     * Create a cache with the default capacity
+     */
+    public BlockFilterCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a cache
+     * @param capacity The maximum number of cached filters
+     */
+    public BlockFilterCache(final int capacity) {
+        if(capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1, not " + capacity);
+        this.capacity = capacity;
+        this.compiled = new LinkedHashMap<Key, CompiledBlockFilter>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompiledBlockFilter> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled form of a filter for a block type table, compiling the
+     * normalized filter if it is not already cached
+     * @param filter The filter
+     * @param table The table of the block types
+     * @return The compiled filter
+     */
+    public synchronized CompiledBlockFilter compile(BlockFilter filter, BlockTypeTable table) {
+        Key key = new Key(filter, table.getVersion());
+        CompiledBlockFilter result = compiled.get(key);
+        if(result != null) return result;
+        BlockFilter normalized = filter.normalize();
+        Key normalizedKey = new Key(normalized, table.getVersion());
+        result = compiled.get(normalizedKey);
+        if(result == null) {
+            result = new CompiledBlockFilter(normalized, table);
+            compiled.put(normalizedKey, result);
+        }
+        compiled.put(key, result);
+        return result;
+    }
+
+    /**
+     * Returns the compiled form of a filter for the block types of a block factory.
+     * The cache keeps a block type table that is refreshed when the block types of
+     * the factory have changed, filters compiled for an older table are then removed.
+     * @param filter The filter
+     * @param factory The block factory
+     * @return The compiled filter
+     */
+    public synchronized CompiledBlockFilter compile(BlockFilter filter, BlockFactory factory) {
+        if(table == null) {
+            table = new BlockTypeTable(factory);
+        } else {
+            BlockTypeTable refreshed = table.refresh(factory);
+            if(refreshed != table) {
+                compiled.clear();
+                table = refreshed;
+            }
+        }
+        return compile(filter, table);
+    }
+
+    /**
+     * Returns the number of cached entries, a filter and its normalized form are
+     * counted as two entries
+     * @return The number of entries
+     */
+    public synchronized int size() {
+        return compiled.size();
+    }
+
+    /**
+     * Returns the maximum number of cached entries
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Remove all cached filters
+     */
+    public synchronized void clear() {
+        compiled.clear();
+        table = null;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockFilterCache(" +
+                "capacity=" + capacity +
+                ')';
+    }
+}
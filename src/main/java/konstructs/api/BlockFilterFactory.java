@@ -37,6 +37,16 @@ public class BlockFilterFactory {
             public BlockFilter or(BlockFilter filter) {
                 return filter;
             }
+
+            @Override
+            public BlockFilter and(BlockFilter filter) {
+                return this;
+            }
+
+            @Override
+            public String toString() {
+                return "NOTHING";
+            }
         };
 
     /**
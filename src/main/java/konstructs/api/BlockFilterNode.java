@@ -1,6 +1,8 @@
 package konstructs.api;
 
 import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * BlockFilterNode is a BlockFilter that is used to aggregate a
@@ -25,6 +27,7 @@ public class BlockFilterNode extends BlockFilter {
     private final Boolean obstacle;
     private final BlockState state;
     private final BlockClassId[] classes;
+    private transient volatile long[] classMask;
 
     /**
      * Constructs an immutable BlockFilterNode. All parameters may be
@@ -118,6 +121,62 @@ public class BlockFilterNode extends BlockFilter {
         this.state = null;
         this.classes = null;
     }
+    /**
+     * Returns the namespace of the BlockTypeId to match
+     * @return The namespace, or null if not set
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns the name of the BlockTypeId to match
+     * @return The name, or null if not set
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the shape of the BlockType to match
+     * @return The shape, or null if not set
+     */
+    public BlockShape getBlockShape() {
+        return shape;
+    }
+
+    /**
+     * Returns if the BlockType must be transparent
+     * @return The transparent property, or null if not set
+     */
+    public Boolean getTransparent() {
+        return transparent;
+    }
+
+    /**
+     * Returns if the BlockType must be an obstacle
+     * @return The obstacle property, or null if not set
+     */
+    public Boolean getObstacle() {
+        return obstacle;
+    }
+
+    /**
+     * Returns the state of the BlockType to match
+     * @return The state, or null if not set
+     */
+    public BlockState getBlockState() {
+        return state;
+    }
+
+    /**
+     * Returns the classes that the BlockType must have
+     * @return The classes, or null if not set
+     */
+    public BlockClassId[] getClasses() {
+        return classes;
+    }
+
     /**
      * Create a new BlockFilterNode with the specific namespace set
      * @param namespace The namespace to set
@@ -229,6 +288,55 @@ public class BlockFilterNode extends BlockFilter {
         return new BlockFilterNode(namespace, name, shape, transparent, obstacle, state, newClasses);
     }
 
+    /*
+     * Returns true if this node has no properties set, i.e. matches all blocks
+     */
+    boolean isEverything() {
+        return namespace == null && name == null && shape == null && transparent == null
+                && obstacle == null && state == null && (classes == null || classes.length == 0);
+    }
+
+    /*
+     * Merge the properties of two nodes into a node that matches the blocks that
+     * both nodes match. Returns null if the nodes require different values of a
+     * property, i.e. if no block can match both nodes.
+     */
+    BlockFilterNode merge(BlockFilterNode other) {
+        if(conflicts(namespace, other.namespace) || conflicts(name, other.name) || conflicts(shape, other.shape)
+                || conflicts(transparent, other.transparent) || conflicts(obstacle, other.obstacle)
+                || conflicts(state, other.state))
+            return null;
+        BlockClassId[] merged = classes;
+        if(merged == null) {
+            merged = other.classes;
+        } else if(other.classes != null) {
+            Set<BlockClassId> union = new LinkedHashSet<>(Arrays.asList(classes));
+            union.addAll(Arrays.asList(other.classes));
+            merged = union.toArray(new BlockClassId[union.size()]);
+        }
+        return new BlockFilterNode(namespace != null ? namespace : other.namespace,
+                name != null ? name : other.name,
+                shape != null ? shape : other.shape,
+                transparent != null ? transparent : other.transparent,
+                obstacle != null ? obstacle : other.obstacle,
+                state != null ? state : other.state,
+                merged);
+    }
+
+    private static boolean conflicts(Object a, Object b) {
+        return a != null && b != null && !a.equals(b);
+    }
+
+    /* The classes to match as a bitset of class indexes, created when first needed */
+    private long[] getClassMask() {
+        long[] mask = classMask;
+        if(mask == null) {
+            mask = BlockClassId.mask(classes);
+            classMask = mask;
+        }
+        return mask;
+    }
+
     @Override
     public boolean matches(BlockTypeId blockTypeId, BlockType blockType) {
         return ((namespace == null || namespace.equals(blockTypeId.getNamespace()))
@@ -237,10 +345,14 @@ public class BlockFilterNode extends BlockFilter {
                 && (transparent == null || transparent.equals(blockType.isTransparent()))
                 && (obstacle == null || obstacle.equals(blockType.isObstacle()))
                 && (state == null || state.equals(blockType.getBlockState()))
-                && (classes == null || blockType.hasClasses(classes))
+                && (classes == null || blockType.hasClasses(getClassMask()))
             );
     }
 
+    @Override
+    public BlockFilter normalize() {
+        return isEverything() ? BlockFilterFactory.EVERYTHING : this;
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -0,0 +1,119 @@
+package konstructs.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Implements the normalization of the composite block filters.
+ * @see BlockFilter#normalize()
+ */
+final class BlockFilterNormalizer {
+    private BlockFilterNormalizer() {
+    }
+
+    private static boolean isEverything(BlockFilter filter) {
+        return filter instanceof BlockFilterNode && ((BlockFilterNode)filter).isEverything();
+    }
+
+    private static boolean isNothing(BlockFilter filter) {
+        return filter == BlockFilterFactory.NOTHING;
+    }
+
+    /* Normalize all operands of a chain of ORs or ANDs into a flat list */
+    private static void flatten(BlockFilter filter, Class<? extends BlockFilter> operator, List<BlockFilter> operands) {
+        if(filter.getClass() == operator) {
+            BlockFilter f1 = filter instanceof BlockFilterOr ? ((BlockFilterOr)filter).getF1() : ((BlockFilterAnd)filter).getF1();
+            BlockFilter f2 = filter instanceof BlockFilterOr ? ((BlockFilterOr)filter).getF2() : ((BlockFilterAnd)filter).getF2();
+            flatten(f1, operator, operands);
+            flatten(f2, operator, operands);
+        } else {
+            BlockFilter normalized = filter.normalize();
+            if(normalized.getClass() == operator) {
+                flatten(normalized, operator, operands);
+            } else {
+                operands.add(normalized);
+            }
+        }
+    }
+
+    /* Returns true if the set contains both a filter and its negation */
+    private static boolean hasComplement(Set<BlockFilter> operands) {
+        for(BlockFilter operand: operands) {
+            if(operand instanceof BlockFilterNot && operands.contains(((BlockFilterNot)operand).getFilter()))
+                return true;
+        }
+        return false;
+    }
+
+    static BlockFilter normalize(BlockFilterOr filter) {
+        List<BlockFilter> flat = new ArrayList<>();
+        flatten(filter, BlockFilterOr.class, flat);
+        Set<BlockFilter> operands = new LinkedHashSet<>();
+        for(BlockFilter operand: flat) {
+            if(isEverything(operand)) return BlockFilterFactory.EVERYTHING;
+            if(!isNothing(operand)) operands.add(operand);
+        }
+        if(hasComplement(operands)) return BlockFilterFactory.EVERYTHING;
+        BlockFilter result = null;
+        for(BlockFilter operand: operands) {
+            result = result == null ? operand : new BlockFilterOr(result, operand);
+        }
+        if(result == null) return BlockFilterFactory.NOTHING;
+        return result.equals(filter) ? filter : result;
+    }
+
+    static BlockFilter normalize(BlockFilterAnd filter) {
+        List<BlockFilter> flat = new ArrayList<>();
+        flatten(filter, BlockFilterAnd.class, flat);
+        /* All nodes are merged into the first node */
+        BlockFilterNode node = null;
+        int nodeIndex = -1;
+        List<BlockFilter> others = new ArrayList<>();
+        for(BlockFilter operand: flat) {
+            if(isNothing(operand)) return BlockFilterFactory.NOTHING;
+            if(operand instanceof BlockFilterNode) {
+                if(node == null) {
+                    node = (BlockFilterNode)operand;
+                    nodeIndex = others.size();
+                } else {
+                    node = node.merge((BlockFilterNode)operand);
+                    if(node == null) return BlockFilterFactory.NOTHING;
+                }
+            } else {
+                others.add(operand);
+            }
+        }
+        if(node != null && !node.isEverything()) others.add(nodeIndex, node);
+        Set<BlockFilter> operands = new LinkedHashSet<>(others);
+        if(hasComplement(operands)) return BlockFilterFactory.NOTHING;
+        BlockFilter result = null;
+        for(BlockFilter operand: operands) {
+            result = result == null ? operand : new BlockFilterAnd(result, operand);
+        }
+        if(result == null) return BlockFilterFactory.EVERYTHING;
+        return result.equals(filter) ? filter : result;
+    }
+
+    static BlockFilter normalize(BlockFilterNot filter) {
+        BlockFilter inner = filter.getFilter().normalize();
+        if(inner instanceof BlockFilterNot) return ((BlockFilterNot)inner).getFilter();
+        if(isEverything(inner)) return BlockFilterFactory.NOTHING;
+        if(isNothing(inner)) return BlockFilterFactory.EVERYTHING;
+        return inner == filter.getFilter() ? filter : new BlockFilterNot(inner);
+    }
+
+    static BlockFilter normalize(BlockFilterXor filter) {
+        BlockFilter f1 = filter.getF1().normalize();
+        BlockFilter f2 = filter.getF2().normalize();
+        if(f1.equals(f2)) return BlockFilterFactory.NOTHING;
+        if(f1.equals(new BlockFilterNot(f2)) || f2.equals(new BlockFilterNot(f1))) return BlockFilterFactory.EVERYTHING;
+        if(isNothing(f1)) return f2;
+        if(isNothing(f2)) return f1;
+        if(isEverything(f1)) return new BlockFilterNot(f2).normalize();
+        if(isEverything(f2)) return new BlockFilterNot(f1).normalize();
+        if(f1 == filter.getF1() && f2 == filter.getF2()) return filter;
+        return new BlockFilterXor(f1, f2);
+    }
+}
@@ -0,0 +1,67 @@
+package konstructs.api;
+
+/**
+ * BlockFilterNot is a class that represents a logical NOT
+ * of a BlockFilter. It is created via the not method
+ * of the BlockFilter base class.
+ *
+ * @see BlockFilter#not()
+ */
+public class BlockFilterNot extends BlockFilter {
+    private final BlockFilter filter;
+
+    /**
+     * Constructs an immutable BlockFilterNot
+     * <p>
+     *     Note: You rarely need to create an instance of the class,
+     *     but it is rather usually created via the BlockFilter not
+     *     method.
+     * </p>
+     * @param filter The filter to negate
+     */
+    public BlockFilterNot(BlockFilter filter) {
+        super();
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the negated filter
+     * @return The negated filter
+     */
+    public BlockFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public boolean matches(BlockTypeId blockTypeId, BlockType blockType) {
+        return !filter.matches(blockTypeId, blockType);
+    }
+
+    @Override
+    public BlockFilter normalize() {
+        return BlockFilterNormalizer.normalize(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BlockFilterNot that = (BlockFilterNot) o;
+
+        return filter.equals(that.filter);
+
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * filter.hashCode() + 1;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockFilterNot(" +
+                "filter=" + filter +
+                ')';
+    }
+}
@@ -28,11 +28,32 @@ public class BlockFilterOr extends BlockFilter {
         this.f2 = f2;
     }
 
+    /**
+     * Returns the first filter
+     * @return The first filter
+     */
+    public BlockFilter getF1() {
+        return f1;
+    }
+
+    /**
+     * Returns the second filter
+     * @return The second filter
+     */
+    public BlockFilter getF2() {
+        return f2;
+    }
+
     @Override
     public boolean matches(BlockTypeId blockTypeId, BlockType blockType) {
         return f1.matches(blockTypeId, blockType) || f2.matches(blockTypeId, blockType);
     }
 
+    @Override
+    public BlockFilter normalize() {
+        return BlockFilterNormalizer.normalize(this);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,82 @@
+package konstructs.api;
+
+/**
+ * BlockFilterXor is a class that represents a logical exclusive OR
+ * between two BlockFilters. It is created via the xor method
+ * of the BlockFilter base class.
+ *
+ * @see BlockFilter#xor(BlockFilter)
+ */
+public class BlockFilterXor extends BlockFilter {
+    private final BlockFilter f1;
+    private final BlockFilter f2;
+
+    /**
+     * Constructs an immutable BlockFilterXor
+     * <p>
+     *     Note: You rarely need to create an instance of the class,
+     *     but it is rather usually created via the BlockFilter xor
+     *     method.
+     * </p>
+     * @param f1 The first filter
+     * @param f2 The second filter
+     */
+    public BlockFilterXor(BlockFilter f1, BlockFilter f2) {
+        super();
+        this.f1 = f1;
+        this.f2 = f2;
+    }
+
+    /**
+     * Returns the first filter
+     * @return The first filter
+     */
+    public BlockFilter getF1() {
+        return f1;
+    }
+
+    /**
+     * Returns the second filter
+     * @return The second filter
+     */
+    public BlockFilter getF2() {
+        return f2;
+    }
+
+    @Override
+    public boolean matches(BlockTypeId blockTypeId, BlockType blockType) {
+        return f1.matches(blockTypeId, blockType) != f2.matches(blockTypeId, blockType);
+    }
+
+    @Override
+    public BlockFilter normalize() {
+        return BlockFilterNormalizer.normalize(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BlockFilterXor that = (BlockFilterXor) o;
+
+        if (!f1.equals(that.f1)) return false;
+        return f2.equals(that.f2);
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = f1.hashCode();
+        result = 31 * result + f2.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockFilterXor(" +
+                "f1=" + f1 +
+                ", f2=" + f2 +
+                ')';
+    }
+}
@@ -72,6 +72,8 @@ public final class BlockType implements Serializable {
     private final BlockTypeId destroyedAs;
     private final Colour lightColour;
     private final LightLevel lightLevel;
+    /* The classes as a bitset of class indexes, created when first needed */
+    private transient volatile long[] classMask;
 
     /**
      * Constructs an immutable BlockType.
@@ -416,6 +418,21 @@ public final class BlockType implements Serializable {
         }
     }
 
+    /**
+     * Returns the classes of this block type as a bitset, with the bit of the
+     * index of each class set
+     * @return The bitset of classes, as an array of longs
+     * @see BlockClassId#getIndex()
+     */
+    public long[] getClassMask() {
+        long[] mask = classMask;
+        if(mask == null) {
+            mask = BlockClassId.mask(classes);
+            classMask = mask;
+        }
+        return mask;
+    }
+
     /**
      * Checks if all classes in the argument are present in this
      * block type's classes array.
@@ -424,13 +441,23 @@ public final class BlockType implements Serializable {
      */
     public boolean hasClasses(BlockClassId[] classes) {
         for(BlockClassId f: classes) {
-            boolean match = false;
-            for(BlockClassId t: this.classes) {
-                if(f.equals(t)) {
-                    match = true;
-                }
+            if(!hasClass(f)) {
+                return false;
             }
-            if(!match) {
+        }
+        return true;
+    }
+
+    /**
+     * Checks if all classes of a bitset are present in this block type's classes
+     * @param mask The bitset of classes to check for, see {@link BlockClassId#mask(BlockClassId[])}
+     * @return True if all classes in the argument are present, otherwise false
+     */
+    public boolean hasClasses(long[] mask) {
+        long[] own = getClassMask();
+        for(int i = 0; i < mask.length; i++) {
+            long bits = i < own.length ? own[i] : 0L;
+            if((mask[i] & ~bits) != 0) {
                 return false;
             }
         }
@@ -443,13 +470,10 @@ public final class BlockType implements Serializable {
      * @return True if the class is present, otherwise false
      */
     public boolean hasClass(BlockClassId clazz) {
-        boolean match = false;
-        for(BlockClassId t: this.classes) {
-            if(clazz.equals(t)) {
-                match = true;
-            }
-        }
-        return match;
+        int index = clazz.getIndex();
+        long[] mask = getClassMask();
+        int word = index >>> 6;
+        return word < mask.length && (mask[word] & (1L << index)) != 0;
     }
 
     /**
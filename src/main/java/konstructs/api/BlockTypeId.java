@@ -1,6 +1,8 @@
 package konstructs.api;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * BlockTypeId is a class that holds the <code>namespace</code> and
@@ -15,10 +17,23 @@ import java.io.Serializable;
  * by <code>namespace</code> it must only be unique within your
  * plugins namespace. The name of a block type always begins with
  * a lower case letter. It is immutable and serializable.
+ * <p>
+ *     BlockTypeIds can be interned (see {@link #intern()}), which returns a single
+ *     canonical instance for each distinct id, with a dense int id starting from 0
+ *     (see {@link #getInternId()}) that can be used as an array index. Comparing two
+ *     canonical instances with {@link #equals(Object)} is an identity check. The
+ *     constants of this class and all ids returned by {@link #fromString(String)}
+ *     are canonical.
+ * </p>
  */
 public final class BlockTypeId implements Serializable {
-    public final static BlockTypeId VACUUM = new BlockTypeId("org/konstructs", "vacuum");
-    public final static BlockTypeId SELF = new BlockTypeId("org/konstructs", "self");
+    /* The canonical instances, both by id and by intern id */
+    private static final ConcurrentHashMap<BlockTypeId, BlockTypeId> INTERNED = new ConcurrentHashMap<>();
+    private static volatile BlockTypeId[] byInternId = new BlockTypeId[64];
+    private static int numberOfInternedIds = 0;
+
+    public final static BlockTypeId VACUUM = new BlockTypeId("org/konstructs", "vacuum").intern();
+    public final static BlockTypeId SELF = new BlockTypeId("org/konstructs", "self").intern();
 
 
     /**
@@ -28,17 +43,47 @@ public final class BlockTypeId implements Serializable {
      * become "org/konstructs/grass". The name of a block type always
      * begins with a lower case letter.
      * @param id the block id to be parsed for
-     * @return a new immutable BlockTypeId
+     * @return the canonical immutable BlockTypeId
+     * @see #intern()
      */
     public static BlockTypeId fromString(String id) {
         int lastSlash = id.lastIndexOf('/');
         String namespace = id.substring(0, lastSlash);
         String name = id.substring(lastSlash + 1);
-        return new BlockTypeId(namespace, name);
+        return new BlockTypeId(namespace, name).intern();
+    }
+
+    /**
+     * Returns the canonical BlockTypeId of an intern id
+     * @param internId The intern id
+     * @return The canonical BlockTypeId
+     * @throws IllegalArgumentException if no BlockTypeId has been interned with the id
+     * @see #getInternId()
+     */
+    public static BlockTypeId fromInternId(int internId) {
+        BlockTypeId[] ids = byInternId;
+        BlockTypeId id = internId >= 0 && internId < ids.length ? ids[internId] : null;
+        if(id == null)
+            throw new IllegalArgumentException("No block type id interned with: " + internId);
+        return id;
+    }
+
+    /**
+     * Returns the number of BlockTypeIds interned so far. All intern ids
+     * are less than this number, so it can be used as the size of an array
+     * indexed by intern id.
+     * @return The number of interned BlockTypeIds
+     */
+    public static int getNumberOfInternedIds() {
+        synchronized(INTERNED) {
+            return numberOfInternedIds;
+        }
     }
 
     private final String namespace;
     private final String name;
+    /* The intern id plus one of a canonical instance, 0 if not canonical */
+    private transient int internIndex;
     /**
      * Constructs an immutable BlockTypeId.
      * @param namespace the namespace of this BlockTypeId
@@ -95,6 +140,60 @@ public final class BlockTypeId implements Serializable {
         return new BlockTypeId(namespace, name);
     }
 
+    /**
+     * Returns the canonical instance of this BlockTypeId. The first time an id
+     * is interned, it is given the next free intern id.
+     * @return The canonical instance, which is equal to this BlockTypeId
+     */
+    public BlockTypeId intern() {
+        if(internIndex != 0) return this;
+        BlockTypeId canonical = INTERNED.get(this);
+        if(canonical != null) return canonical;
+        synchronized(INTERNED) {
+            canonical = INTERNED.get(this);
+            if(canonical != null) return canonical;
+            int internId = numberOfInternedIds++;
+            BlockTypeId[] ids = byInternId;
+            if(internId == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            internIndex = internId + 1;
+            ids[internId] = this;
+            byInternId = ids;
+            INTERNED.put(this, this);
+            return this;
+        }
+    }
+
+    /**
+     * Check whether this is the canonical instance of its id
+     * @return True if this instance has been interned
+     * @see #intern()
+     */
+    public boolean isInterned() {
+        return internIndex != 0;
+    }
+
+    /**
+     * Returns the intern id of this BlockTypeId, interning it if required.
+     * Intern ids are dense, starting from 0, and can be used as array indexes.
+     * They are valid for all actors within one JVM, e.g. in {@link BlockUpdateColumns},
+     * but differ between JVMs, so they must never be persisted or serialized,
+     * use the w-value or the BlockTypeId itself for that.
+     * @return The intern id
+     * @see #fromInternId(int)
+     */
+    public int getInternId() {
+        int index = internIndex;
+        if(index != 0) return index - 1;
+        return intern().internIndex - 1;
+    }
+
+    /* Deserialized ids are replaced by their canonical instance */
+    private Object readResolve() {
+        return intern();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -102,6 +201,9 @@ public final class BlockTypeId implements Serializable {
 
         BlockTypeId that = (BlockTypeId) o;
 
+        /* Two different canonical instances always have different ids */
+        if (internIndex != 0 && that.internIndex != 0) return false;
+
         if (!namespace.equals(that.namespace)) return false;
         return name.equals(that.name);
 
@@ -0,0 +1,412 @@
+package konstructs.api;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BlockTypeTable is an immutable snapshot of all block types of a {@link BlockFactory},
+ * stored as one column per property and indexed by the w-value of the block types.
+ * A property lookup is therefore a single array read instead of a map lookup of the
+ * BlockType followed by a field access, which matters when scanning millions of blocks:
+ * <pre>
+ *     BlockTypeTable table = new BlockTypeTable(factory);
+ *     int[] ws = table.getW(result.getBlocks());
+ *     for(int w: ws) {
+ *         if(table.isObstacle(w)) obstacles++;
+ *     }
+ * </pre>
+ * <p>
+ *     Boolean properties are stored as bitsets (one bit per w-value), the shape and
+ *     state as one bitset per shape and state, durability and damage as float columns
+ *     and the light as byte and short columns. W-values that are not used by any block
+ *     type have all flags cleared.
+ * </p>
+ * <p>
+ *     The damage multiplier of each block type used as a tool on each other block type,
+ *     including multipliers of the classes of the target, is resolved when the table is
+ *     created, see {@link #getDamageWithMultiplier(int, int)}. Only tools with damage
+ *     multipliers have a row of resolved multipliers, all other tools give their plain
+ *     damage.
+ * </p>
+ * <p>
+ *     New block types can be registered while the server is running, so a table is
+ *     current as long as the factory has the same w-values, BlockTypeIds and BlockTypes
+ *     as when it was created, see {@link #isCurrent(BlockFactory)} and
+ *     {@link #refresh(BlockFactory)}. Each table has a unique version, which can be
+ *     used as part of a cache key for data derived from the table.
+ * </p>
+ */
+public final class BlockTypeTable {
+    private static final AtomicInteger VERSIONS = new AtomicInteger();
+
+    private static final BlockState[] STATES = {
+            BlockState.SOLID, BlockState.LIQUID, BlockState.GAS, BlockState.PLASMA
+    };
+
+    private final int version;
+    private final int size;
+    private final int numberOfIds;
+    private final int numberOfTypes;
+    private final BlockTypeId[] ids;
+    private final BlockType[] types;
+    private final int[] wByInternId;
+
+    private final long[] known;
+    private final long[] obstacle;
+    private final long[] transparent;
+    private final long[] orientable;
+    private final long[] plant;
+    private final long[][] states = new long[STATES.length][];
+    private final float[] durability;
+    private final float[] damage;
+    private final byte[] lightLevel;
+    private final short[] lightColour;
+    /* The damage multiplier of each tool on each target, null for tools without multipliers */
+    private final float[][] damageMultipliers;
+    /* The maps of the last factory found to be current, to skip comparing the same maps again */
+    private volatile Map<?, ?>[] current;
+
+    /**
+     * Create a table of all block types of a block factory
+     * @param factory The block factory
+     */
+    public BlockTypeTable(BlockFactory factory) {
+        this(factory.getWMapping(), factory.getBlockTypes());
+    }
+
+    /**
+     * Create a table of block types
+     * @param wMapping The mapping from w-values to BlockTypeIds
+     * @param blockTypes The mapping from BlockTypeIds to BlockTypes
+     */
+    public BlockTypeTable(Map<Integer, BlockTypeId> wMapping, Map<BlockTypeId, BlockType> blockTypes) {
+        int max = -1;
+        for(Integer w: wMapping.keySet()) {
+            if(w < 0)
+                throw new IllegalArgumentException("W-values must not be negative: " + w);
+            max = Math.max(max, w);
+        }
+        this.version = VERSIONS.incrementAndGet();
+        this.size = max + 1;
+        this.numberOfIds = wMapping.size();
+        this.numberOfTypes = blockTypes.size();
+        this.ids = new BlockTypeId[size];
+        this.types = new BlockType[size];
+        int words = (size + 63) >>> 6;
+        this.known = new long[words];
+        this.obstacle = new long[words];
+        this.transparent = new long[words];
+        this.orientable = new long[words];
+        this.plant = new long[words];
+        for(int s = 0; s < STATES.length; s++) {
+            states[s] = new long[words];
+        }
+        this.durability = new float[size];
+        this.damage = new float[size];
+        this.lightLevel = new byte[size];
+        this.lightColour = new short[size];
+
+        int maxInternId = -1;
+        for(Map.Entry<Integer, BlockTypeId> entry: wMapping.entrySet()) {
+            int w = entry.getKey();
+            BlockTypeId id = entry.getValue().intern();
+            BlockType type = blockTypes.get(id);
+            ids[w] = id;
+            maxInternId = Math.max(maxInternId, id.getInternId());
+            if(type == null) continue;
+            types[w] = type;
+            long bit = 1L << w;
+            int word = w >>> 6;
+            known[word] |= bit;
+            if(type.isObstacle()) obstacle[word] |= bit;
+            if(type.isTransparent()) transparent[word] |= bit;
+            if(type.isOrientable()) orientable[word] |= bit;
+            if(type.getBlockShape().equals(BlockShape.PLANT)) plant[word] |= bit;
+            for(int s = 0; s < STATES.length; s++) {
+                if(type.getBlockState().equals(STATES[s])) states[s][word] |= bit;
+            }
+            durability[w] = type.getDurability();
+            damage[w] = type.getDamage();
+            lightLevel[w] = (byte)type.getLightLevel().getLevel();
+            Colour colour = type.getLightColour();
+            lightColour[w] = (short)((colour.getRed() << 8) | (colour.getGreen() << 4) | colour.getBlue());
+        }
+        this.damageMultipliers = new float[size][];
+        for(int tool = 0; tool < size; tool++) {
+            BlockType type = types[tool];
+            if(type == null || type.getDamageMultipliers().isEmpty()) continue;
+            float[] row = new float[size];
+            for(int target = 0; target < size; target++) {
+                row[target] = types[target] != null ? type.getDamageMultipler(ids[target], types[target]) : 1.0f;
+            }
+            damageMultipliers[tool] = row;
+        }
+        this.wByInternId = new int[maxInternId + 1];
+        Arrays.fill(wByInternId, -1);
+        for(int w = 0; w < size; w++) {
+            if(ids[w] != null) wByInternId[ids[w].getInternId()] = w;
+        }
+    }
+
+    private static boolean get(long[] bits, int w) {
+        return (bits[w >>> 6] & (1L << w)) != 0;
+    }
+
+    /**
+     * Returns the unique version of this table. Tables created later have higher versions.
+     * @return The version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Check if this table contains the same block types as a block factory, i.e. if
+     * the factory has the same w-values, BlockTypeIds and BlockTypes as this table
+     * @param factory The block factory
+     * @return True if no block types have been registered or replaced since this table was created
+     */
+    public boolean isCurrent(BlockFactory factory) {
+        Map<Integer, BlockTypeId> wMapping = factory.getWMapping();
+        Map<BlockTypeId, BlockType> blockTypes = factory.getBlockTypes();
+        Map<?, ?>[] current = this.current;
+        if(current != null && current[0] == wMapping && current[1] == blockTypes) return true;
+        if(wMapping.size() != numberOfIds || blockTypes.size() != numberOfTypes) return false;
+        for(Map.Entry<Integer, BlockTypeId> entry: wMapping.entrySet()) {
+            int w = entry.getKey();
+            if(w < 0 || w >= size || !entry.getValue().equals(ids[w])) return false;
+            BlockType type = blockTypes.get(ids[w]);
+            if(type != types[w] && (type == null || !type.equals(types[w]))) return false;
+        }
+        this.current = new Map<?, ?>[] {wMapping, blockTypes};
+        return true;
+    }
+
+    /**
+     * Returns this table if it is current, otherwise a new table of the block factory
+     * @param factory The block factory
+     * @return A current table
+     * @see #isCurrent(BlockFactory)
+     */
+    public BlockTypeTable refresh(BlockFactory factory) {
+        return isCurrent(factory) ? this : new BlockTypeTable(factory);
+    }
+
+    /**
+     * Returns the size of the columns of this table, i.e. the highest w-value plus one
+     * @return The size of the columns
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Check if a w-value is used by a block type
+     * @param w The w-value
+     * @return True if there is a block type with the w-value
+     */
+    public boolean contains(int w) {
+        return w >= 0 && w < size && get(known, w);
+    }
+
+    /**
+     * Returns the w-value of a BlockTypeId
+     * @param id The BlockTypeId
+     * @return The w-value, or -1 if the BlockTypeId is not in this table
+     */
+    public int getW(BlockTypeId id) {
+        int internId = id.getInternId();
+        return internId < wByInternId.length ? wByInternId[internId] : -1;
+    }
+
+    /**
+     * Returns the w-values of an array of blocks, e.g. the result of a box shape query
+     * @param blocks The blocks
+     * @return A new array of the w-values, -1 for blocks that are null or not in this table
+     */
+    public int[] getW(BlockTypeId[] blocks) {
+        int[] ws = new int[blocks.length];
+        BlockTypeId last = null;
+        int lastW = -1;
+        for(int i = 0; i < blocks.length; i++) {
+            BlockTypeId id = blocks[i];
+            if(id != last) {
+                last = id;
+                lastW = id == null ? -1 : getW(id);
+            }
+            ws[i] = lastW;
+        }
+        return ws;
+    }
+
+    /**
+     * Returns the BlockTypeId of a w-value
+     * @param w The w-value
+     * @return The canonical BlockTypeId, or null if the w-value is not used
+     */
+    public BlockTypeId getBlockTypeId(int w) {
+        return ids[w];
+    }
+
+    /**
+     * Returns the BlockType of a w-value
+     * @param w The w-value
+     * @return The BlockType, or null if the w-value is not used
+     */
+    public BlockType getBlockType(int w) {
+        return types[w];
+    }
+
+    /**
+     * Check if the block type of a w-value is an obstacle
+     * @param w The w-value
+     * @return True if the block type is an obstacle
+     * @see BlockType#isObstacle()
+     */
+    public boolean isObstacle(int w) {
+        return get(obstacle, w);
+    }
+
+    /**
+     * Check if the block type of a w-value is transparent
+     * @param w The w-value
+     * @return True if the block type is transparent
+     * @see BlockType#isTransparent()
+     */
+    public boolean isTransparent(int w) {
+        return get(transparent, w);
+    }
+
+    /**
+     * Check if the block type of a w-value is orientable
+     * @param w The w-value
+     * @return True if the block type is orientable
+     * @see BlockType#isOrientable()
+     */
+    public boolean isOrientable(int w) {
+        return get(orientable, w);
+    }
+
+    /**
+     * Check if the block type of a w-value has a shape
+     * @param w The w-value
+     * @param shape The shape
+     * @return True if the block type has the shape
+     * @see BlockType#getBlockShape()
+     */
+    public boolean isShape(int w, BlockShape shape) {
+        if(!get(known, w)) return false;
+        return get(plant, w) == shape.equals(BlockShape.PLANT);
+    }
+
+    /**
+     * Returns the shape of the block type of a w-value
+     * @param w The w-value
+     * @return The shape, or null if the w-value is not used
+     */
+    public BlockShape getBlockShape(int w) {
+        if(!get(known, w)) return null;
+        return get(plant, w) ? BlockShape.PLANT : BlockShape.BLOCK;
+    }
+
+    /**
+     * Check if the block type of a w-value has a state
+     * @param w The w-value
+     * @param state The state
+     * @return True if the block type has the state
+     * @see BlockType#getBlockState()
+     */
+    public boolean isState(int w, BlockState state) {
+        for(int s = 0; s < STATES.length; s++) {
+            if(STATES[s].equals(state)) return get(states[s], w);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the state of the block type of a w-value
+     * @param w The w-value
+     * @return The state, or null if the w-value is not used
+     */
+    public BlockState getBlockState(int w) {
+        for(int s = 0; s < STATES.length; s++) {
+            if(get(states[s], w)) return STATES[s];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the durability of the block type of a w-value
+     * @param w The w-value
+     * @return The durability
+     * @see BlockType#getDurability()
+     */
+    public float getDurability(int w) {
+        return durability[w];
+    }
+
+    /**
+     * Returns the damage of the block type of a w-value
+     * @param w The w-value
+     * @return The damage
+     * @see BlockType#getDamage()
+     */
+    public float getDamage(int w) {
+        return damage[w];
+    }
+
+    /**
+     * Returns the damage given by a block type when used on another block type,
+     * taking the damage multipliers of the tool into account
+     * @param toolW The w-value of the block type used as a tool
+     * @param targetW The w-value of the block type that is damaged
+     * @return The damage
+     * @see BlockType#getDamageWithMultiplier(BlockTypeId, BlockType)
+     */
+    public float getDamageWithMultiplier(int toolW, int targetW) {
+        float[] row = damageMultipliers[toolW];
+        return row != null ? damage[toolW] * row[targetW] : damage[toolW];
+    }
+
+    /**
+     * Returns the damage multiplier of a block type when used on another block type
+     * @param toolW The w-value of the block type used as a tool
+     * @param targetW The w-value of the block type that is damaged
+     * @return The damage multiplier, or 1.0 if there is none
+     * @see BlockType#getDamageMultipler(BlockTypeId, BlockType)
+     */
+    public float getDamageMultiplier(int toolW, int targetW) {
+        float[] row = damageMultipliers[toolW];
+        return row != null ? row[targetW] : 1.0f;
+    }
+
+    /**
+     * Returns the light level of the block type of a w-value, 0 - 15
+     * @param w The w-value
+     * @return The light level
+     * @see BlockType#getLightLevel()
+     */
+    public int getLightLevel(int w) {
+        return lightLevel[w];
+    }
+
+    /**
+     * Returns the light colour of the block type of a w-value, packed as 0xRGB
+     * @param w The w-value
+     * @return The light colour
+     * @see BlockType#getLightColour()
+     */
+    public int getLightColour(int w) {
+        return lightColour[w];
+    }
+
+    @Override
+    public String toString() {
+        return "BlockTypeTable(" +
+                "version=" + version +
+                ", size=" + size +
+                ", types=" + numberOfTypes +
+                ')';
+    }
+}
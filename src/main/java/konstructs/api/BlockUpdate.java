@@ -9,8 +9,8 @@ public class BlockUpdate {
 
     /**
      * Create an immutable instance
-     * @param before the block before the update
-     * @param after the block after the update
+     * @param before the block before the update, or null if there was no block
+     * @param after the block after the update, or null if there is no block
      */
     public BlockUpdate(Block before, Block after) {
         this.before = before;
@@ -40,15 +40,15 @@ public class BlockUpdate {
 
         BlockUpdate that = (BlockUpdate) o;
 
-        if (!before.equals(that.before)) return false;
-        return after.equals(that.after);
+        if (before != null ? !before.equals(that.before) : that.before != null) return false;
+        return after != null ? after.equals(that.after) : that.after == null;
 
     }
 
     @Override
     public int hashCode() {
-        int result = before.hashCode();
-        result = 31 * result + after.hashCode();
+        int result = before != null ? before.hashCode() : 0;
+        result = 31 * result + (after != null ? after.hashCode() : 0);
         return result;
     }
 
@@ -0,0 +1,504 @@
+package konstructs.api;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * BlockUpdateColumns is a compact, immutable form of the updated blocks of a
+ * {@link konstructs.api.messages.BlockUpdateEvent}. Instead of one BlockUpdate
+ * with two Blocks per updated position, each property is stored in its own
+ * array (column), with one element per update:
+ * <ul>
+ *     <li>the packed position of the update (see {@link Position#pack(int, int, int)})</li>
+ *     <li>the intern id (see {@link BlockTypeId#getInternId()}) of the block type before
+ *     and after the update, {@link #NO_BLOCK} if there is no block</li>
+ *     <li>the health and orientation of the block before and after the update, packed
+ *     into a short (see {@link #packCondition(Health, Orientation)})</li>
+ *     <li>the UUIDs of the blocks before and after the update, only stored if any block
+ *     has a UUID</li>
+ * </ul>
+ * <pre>
+ *     for(int i = 0; i &lt; columns.size(); i++) {
+ *         if(columns.getAfterType(i) == torch) {
+ *             lights.add(columns.getPosition(i));
+ *         }
+ *     }
+ * </pre>
+ * <p>
+ *     The arrays returned by the getters are not copied and must not be modified.
+ *     {@link #asMap()} returns a read only Map view of the columns, for code that
+ *     expects the map of a BlockUpdateEvent.
+ * </p>
+ * <p>
+ *     Since the block types are stored as intern ids, columns are only valid within
+ *     the JVM that created them. They can be sent between actors of that JVM, but must
+ *     not be persisted or serialized as they are, e.g. with Gson, which would write the
+ *     raw intern ids. Use {@link #asMap()} or a
+ *     {@link konstructs.api.binary.BinaryEncoder}, which writes the BlockTypeIds.
+ * </p>
+ */
+public final class BlockUpdateColumns {
+    /**
+     * The type of a block that does not exist, i.e. a null Block
+     */
+    public static final int NO_BLOCK = -1;
+
+    private final long[] positions;
+    private final int[] beforeTypes;
+    private final short[] beforeConditions;
+    private final UUID[] beforeIds;
+    private final int[] afterTypes;
+    private final short[] afterConditions;
+    private final UUID[] afterIds;
+    private transient volatile PositionLongMap<Integer> index;
+
+    /**
+     * Create BlockUpdateColumns from its columns. All columns must have the same length
+     * and the positions must be unique.
+     * @param positions The packed positions of the updates
+     * @param beforeTypes The intern ids of the block types before the updates
+     * @param beforeConditions The packed health and orientation of the blocks before the updates
+     * @param beforeIds The UUIDs of the blocks before the updates, may be null if no block has a UUID
+     * @param afterTypes The intern ids of the block types after the updates
+     * @param afterConditions The packed health and orientation of the blocks after the updates
+     * @param afterIds The UUIDs of the blocks after the updates, may be null if no block has a UUID
+     */
+    public BlockUpdateColumns(long[] positions,
+                              int[] beforeTypes, short[] beforeConditions, UUID[] beforeIds,
+                              int[] afterTypes, short[] afterConditions, UUID[] afterIds) {
+        int n = positions.length;
+        if(beforeTypes.length != n || beforeConditions.length != n || afterTypes.length != n || afterConditions.length != n
+                || (beforeIds != null && beforeIds.length != n) || (afterIds != null && afterIds.length != n))
+            throw new IllegalArgumentException("All columns must have the same length");
+        this.positions = positions;
+        this.beforeTypes = beforeTypes;
+        this.beforeConditions = beforeConditions;
+        this.beforeIds = beforeIds;
+        this.afterTypes = afterTypes;
+        this.afterConditions = afterConditions;
+        this.afterIds = afterIds;
+    }
+
+    /**
+     * Convert updated blocks into columns
+     * @param updates The updated blocks mapped by their packed position
+     * @return The columns
+     */
+    public static BlockUpdateColumns of(PositionLongMap<BlockUpdate> updates) {
+        final int n = updates.size();
+        final long[] positions = new long[n];
+        final int[] beforeTypes = new int[n];
+        final short[] beforeConditions = new short[n];
+        final UUID[] beforeIds = new UUID[n];
+        final int[] afterTypes = new int[n];
+        final short[] afterConditions = new short[n];
+        final UUID[] afterIds = new UUID[n];
+        final boolean[] hasIds = new boolean[2];
+        updates.forEach(new PositionLongMap.Visitor<BlockUpdate>() {
+            private int i = 0;
+
+            @Override
+            public void visit(long position, BlockUpdate update) {
+                positions[i] = position;
+                hasIds[0] |= set(update.getBefore(), i, beforeTypes, beforeConditions, beforeIds);
+                hasIds[1] |= set(update.getAfter(), i, afterTypes, afterConditions, afterIds);
+                i++;
+            }
+        });
+        return new BlockUpdateColumns(positions,
+                beforeTypes, beforeConditions, hasIds[0] ? beforeIds : null,
+                afterTypes, afterConditions, hasIds[1] ? afterIds : null);
+    }
+
+    /**
+     * Convert updated blocks into columns
+     * @param updates The updated blocks mapped by their position
+     * @return The columns
+     */
+    public static BlockUpdateColumns of(Map<Position, BlockUpdate> updates) {
+        return of(PositionLongMap.fromMap(updates));
+    }
+
+    /* Store a block in the columns, returns true if it has a UUID */
+    private static boolean set(Block block, int i, int[] types, short[] conditions, UUID[] ids) {
+        if(block == null) {
+            types[i] = NO_BLOCK;
+            return false;
+        }
+        if(block.getType() == null)
+            throw new IllegalArgumentException("Blocks must have a type");
+        types[i] = block.getType().getInternId();
+        conditions[i] = packCondition(block.getHealth(), block.getOrientation());
+        ids[i] = block.getId();
+        return block.getId() != null;
+    }
+
+    /**
+     * Pack a health and an orientation into a short, the health in the upper
+     * 11 bits and the encoding of the orientation in the lower 5 bits
+     * @param health The health
+     * @param orientation The orientation
+     * @return The packed health and orientation
+     */
+    public static short packCondition(Health health, Orientation orientation) {
+        return (short)((health.getHealth() << 5) | orientation.getEncoding());
+    }
+
+    /**
+     * Returns the health of a packed health and orientation
+     * @param condition The packed health and orientation
+     * @return The health
+     */
+    public static Health unpackHealth(short condition) {
+        return Health.get((condition & 0xffff) >>> 5);
+    }
+
+    /**
+     * Returns the orientation of a packed health and orientation
+     * @param condition The packed health and orientation
+     * @return The orientation
+     */
+    public static Orientation unpackOrientation(short condition) {
+        return Orientation.get(condition & 0x1f);
+    }
+
+    private static Block block(int i, int[] types, short[] conditions, UUID[] ids) {
+        int type = types[i];
+        if(type == NO_BLOCK) return null;
+        short condition = conditions[i];
+        return new Block(ids != null ? ids[i] : null, BlockTypeId.fromInternId(type),
+                unpackHealth(condition), unpackOrientation(condition));
+    }
+
+    /**
+     * Returns the number of updates
+     * @return The number of updates
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * Returns the packed position of an update
+     * @param i The index of the update
+     * @return The packed position
+     */
+    public long getPackedPosition(int i) {
+        return positions[i];
+    }
+
+    /**
+     * Returns the position of an update
+     * @param i The index of the update
+     * @return The position
+     */
+    public Position getPosition(int i) {
+        return Position.fromPacked(positions[i]);
+    }
+
+    /**
+     * Returns the intern id of the block type before an update
+     * @param i The index of the update
+     * @return The intern id, or {@link #NO_BLOCK}
+     */
+    public int getBeforeType(int i) {
+        return beforeTypes[i];
+    }
+
+    /**
+     * Returns the intern id of the block type after an update
+     * @param i The index of the update
+     * @return The intern id, or {@link #NO_BLOCK}
+     */
+    public int getAfterType(int i) {
+        return afterTypes[i];
+    }
+
+    /**
+     * Returns the block type before an update
+     * @param i The index of the update
+     * @return The canonical BlockTypeId, or null if there was no block
+     */
+    public BlockTypeId getBeforeBlockTypeId(int i) {
+        return beforeTypes[i] == NO_BLOCK ? null : BlockTypeId.fromInternId(beforeTypes[i]);
+    }
+
+    /**
+     * Returns the block type after an update
+     * @param i The index of the update
+     * @return The canonical BlockTypeId, or null if there is no block
+     */
+    public BlockTypeId getAfterBlockTypeId(int i) {
+        return afterTypes[i] == NO_BLOCK ? null : BlockTypeId.fromInternId(afterTypes[i]);
+    }
+
+    /**
+     * Returns the block before an update
+     * @param i The index of the update
+     * @return A new Block, or null if there was no block
+     */
+    public Block getBefore(int i) {
+        return block(i, beforeTypes, beforeConditions, beforeIds);
+    }
+
+    /**
+     * Returns the block after an update
+     * @param i The index of the update
+     * @return A new Block, or null if there is no block
+     */
+    public Block getAfter(int i) {
+        return block(i, afterTypes, afterConditions, afterIds);
+    }
+
+    /**
+     * Returns an update
+     * @param i The index of the update
+     * @return A new BlockUpdate
+     */
+    public BlockUpdate getUpdate(int i) {
+        return new BlockUpdate(getBefore(i), getAfter(i));
+    }
+
+    /**
+     * Returns the packed positions of the updates
+     * @return The packed positions
+     */
+    public long[] getPackedPositions() {
+        return positions;
+    }
+
+    /**
+     * Returns the intern ids of the block types before the updates
+     * @return The intern ids, {@link #NO_BLOCK} where there was no block
+     */
+    public int[] getBeforeTypes() {
+        return beforeTypes;
+    }
+
+    /**
+     * Returns the intern ids of the block types after the updates
+     * @return The intern ids, {@link #NO_BLOCK} where there is no block
+     */
+    public int[] getAfterTypes() {
+        return afterTypes;
+    }
+
+    /**
+     * Returns the packed health and orientation of the blocks before the updates
+     * @return The packed health and orientations
+     * @see #packCondition(Health, Orientation)
+     */
+    public short[] getBeforeConditions() {
+        return beforeConditions;
+    }
+
+    /**
+     * Returns the packed health and orientation of the blocks after the updates
+     * @return The packed health and orientations
+     * @see #packCondition(Health, Orientation)
+     */
+    public short[] getAfterConditions() {
+        return afterConditions;
+    }
+
+    /**
+     * Returns the UUIDs of the blocks before the updates
+     * @return The UUIDs, or null if no block has a UUID
+     */
+    public UUID[] getBeforeIds() {
+        return beforeIds;
+    }
+
+    /**
+     * Returns the UUIDs of the blocks after the updates
+     * @return The UUIDs, or null if no block has a UUID
+     */
+    public UUID[] getAfterIds() {
+        return afterIds;
+    }
+
+    /**
+     * Returns the index of the update of a position
+     * @param position The packed position
+     * @return The index of the update, or -1 if the position was not updated
+     */
+    public int indexOf(long position) {
+        PositionLongMap<Integer> index = this.index;
+        if(index == null) {
+            index = new PositionLongMap<>(positions.length);
+            for(int i = 0; i < positions.length; i++) {
+                index.put(positions[i], i);
+            }
+            this.index = index;
+        }
+        Integer i = index.get(position);
+        return i != null ? i : -1;
+    }
+
+    /**
+     * Select a subset of the updates
+     * @param indexes The indexes of the updates to select
+     * @return New columns with only the selected updates, in the same order
+     */
+    public BlockUpdateColumns select(BitSet indexes) {
+        int n = indexes.cardinality();
+        long[] positions = new long[n];
+        int[] beforeTypes = new int[n];
+        short[] beforeConditions = new short[n];
+        UUID[] beforeIds = this.beforeIds != null ? new UUID[n] : null;
+        int[] afterTypes = new int[n];
+        short[] afterConditions = new short[n];
+        UUID[] afterIds = this.afterIds != null ? new UUID[n] : null;
+        int j = 0;
+        for(int i = indexes.nextSetBit(0); i >= 0 && i < this.positions.length; i = indexes.nextSetBit(i + 1)) {
+            positions[j] = this.positions[i];
+            beforeTypes[j] = this.beforeTypes[i];
+            beforeConditions[j] = this.beforeConditions[i];
+            if(beforeIds != null) beforeIds[j] = this.beforeIds[i];
+            afterTypes[j] = this.afterTypes[i];
+            afterConditions[j] = this.afterConditions[i];
+            if(afterIds != null) afterIds[j] = this.afterIds[i];
+            j++;
+        }
+        if(j != n)
+            throw new IllegalArgumentException("Indexes out of range: " + indexes);
+        return new BlockUpdateColumns(positions,
+                beforeTypes, beforeConditions, beforeIds,
+                afterTypes, afterConditions, afterIds);
+    }
+
+    /**
+     * Convert the columns into a map of BlockUpdates
+     * @return A new map of the updated blocks mapped by their packed position
+     */
+    public PositionLongMap<BlockUpdate> toPackedMap() {
+        PositionLongMap<BlockUpdate> map = new PositionLongMap<>(positions.length);
+        for(int i = 0; i < positions.length; i++) {
+            map.put(positions[i], getUpdate(i));
+        }
+        return map;
+    }
+
+    /**
+     * Returns a read only Map view of the columns. The BlockUpdates are created
+     * when they are read, and looking up a position builds an index of the
+     * positions the first time.
+     * @return The view
+     */
+    public Map<Position, BlockUpdate> asMap() {
+        return new MapView();
+    }
+
+    private final class MapView extends AbstractMap<Position, BlockUpdate> {
+        @Override
+        public int size() {
+            return positions.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Position && indexOf(((Position)key).pack()) >= 0;
+        }
+
+        @Override
+        public BlockUpdate get(Object key) {
+            if(!(key instanceof Position)) return null;
+            int i = indexOf(((Position)key).pack());
+            return i >= 0 ? getUpdate(i) : null;
+        }
+
+        @Override
+        public Set<Entry<Position, BlockUpdate>> entrySet() {
+            return new AbstractSet<Entry<Position, BlockUpdate>>() {
+                @Override
+                public int size() {
+                    return positions.length;
+                }
+
+                @Override
+                public Iterator<Entry<Position, BlockUpdate>> iterator() {
+                    return new Iterator<Entry<Position, BlockUpdate>>() {
+                        private int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < positions.length;
+                        }
+
+                        @Override
+                        public Entry<Position, BlockUpdate> next() {
+                            if(i >= positions.length) throw new NoSuchElementException();
+                            Entry<Position, BlockUpdate> entry = new SimpleImmutableEntry<>(getPosition(i), getUpdate(i));
+                            i++;
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * Columns are equal if they contain the same updates, in any order. This is
+     * the same as comparing their map views, see {@link #asMap()}.
+     * @param o The object to compare with
+     * @return True if the columns contain the same updates
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BlockUpdateColumns that = (BlockUpdateColumns) o;
+
+        if (positions.length != that.positions.length) return false;
+        for(int i = 0; i < positions.length; i++) {
+            int j = that.indexOf(positions[i]);
+            if(j < 0) return false;
+            if(!sameBlock(beforeTypes, beforeConditions, beforeIds, i, that.beforeTypes, that.beforeConditions, that.beforeIds, j))
+                return false;
+            if(!sameBlock(afterTypes, afterConditions, afterIds, i, that.afterTypes, that.afterConditions, that.afterIds, j))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean sameBlock(int[] types, short[] conditions, UUID[] ids, int i,
+                                     int[] thatTypes, short[] thatConditions, UUID[] thatIds, int j) {
+        if(types[i] != thatTypes[j]) return false;
+        if(types[i] == NO_BLOCK) return true;
+        if(conditions[i] != thatConditions[j]) return false;
+        UUID id = ids != null ? ids[i] : null;
+        UUID thatId = thatIds != null ? thatIds[j] : null;
+        return id != null ? id.equals(thatId) : thatId == null;
+    }
+
+    /**
+     * Returns the hash code of the updates, which is the same as the hash code
+     * of the map view, see {@link #asMap()}
+     * @return The hash code
+     */
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for(int i = 0; i < positions.length; i++) {
+            long p = positions[i];
+            result += Position.hashCode(Position.unpackX(p), Position.unpackY(p), Position.unpackZ(p))
+                    ^ getUpdate(i).hashCode();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockUpdateColumns(" +
+                "size=" + positions.length +
+                ')';
+    }
+}
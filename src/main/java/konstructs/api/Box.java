@@ -1,8 +1,12 @@
 package konstructs.api;
 
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
  * Box is a class that represents a 3 dimensional bounding box. This
@@ -59,6 +63,12 @@ import java.util.Map;
  * @see #getLocal(Position, Object[])
  */
 public class Box implements BoxShape {
+    /**
+     * The size of a chunk of the server in all dimensions.
+     * @see #chunked()
+     */
+    public static final int CHUNK_SIZE = 32;
+
     /**
      * Factory method for creating a Box with a given size.
      * @param from The from corner of the Box
@@ -155,7 +165,128 @@ public class Box implements BoxShape {
      * @return True if the position is withing this bounding box
      */
     public boolean contains(Position p) {
-        return p.getX() >= from.getZ() && p.getX() < until.getX() && p.getY() >= from.getY() && p.getY() < until.getY() && p.getZ() >= from.getZ() && p.getZ() < until.getZ();
+        return contains(p.getX(), p.getY(), p.getZ());
+    }
+
+    /**
+     * Returns true if the position is within this bounding box
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @return True if the position is withing this bounding box
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= from.getX() && x < until.getX() && y >= from.getY() && y < until.getY() && z >= from.getZ() && z < until.getZ();
+    }
+
+    /**
+     * Returns true if all blocks of another box shape are within this bounding box.
+     * An empty box shape is contained in any box.
+     * @param other The box shape to be checked
+     * @return True if the other box shape is within this bounding box
+     */
+    public boolean containsBox(BoxShape other) {
+        Box o = other.getBox();
+        if(o.isEmpty()) return true;
+        return o.from.getX() >= from.getX() && o.until.getX() <= until.getX() &&
+                o.from.getY() >= from.getY() && o.until.getY() <= until.getY() &&
+                o.from.getZ() >= from.getZ() && o.until.getZ() <= until.getZ();
+    }
+
+    /**
+     * Returns true if this box and another box shape have at least one block in common
+     * @param other The box shape to be checked
+     * @return True if the boxes overlap
+     */
+    public boolean intersects(BoxShape other) {
+        Box o = other.getBox();
+        return Math.max(from.getX(), o.from.getX()) < Math.min(until.getX(), o.until.getX()) &&
+                Math.max(from.getY(), o.from.getY()) < Math.min(until.getY(), o.until.getY()) &&
+                Math.max(from.getZ(), o.from.getZ()) < Math.min(until.getZ(), o.until.getZ());
+    }
+
+    /**
+     * Returns the box of all blocks that are both in this box and in another box shape
+     * @param other The box shape to intersect with
+     * @return The intersection or null if the boxes do not overlap
+     */
+    public Box intersect(BoxShape other) {
+        Box o = other.getBox();
+        if(!intersects(o)) return null;
+        if(containsBox(o)) return o;
+        if(o.containsBox(this)) return this;
+        return new Box(
+                new Position(Math.max(from.getX(), o.from.getX()),
+                        Math.max(from.getY(), o.from.getY()),
+                        Math.max(from.getZ(), o.from.getZ())),
+                new Position(Math.min(until.getX(), o.until.getX()),
+                        Math.min(until.getY(), o.until.getY()),
+                        Math.min(until.getZ(), o.until.getZ())));
+    }
+
+    /**
+     * Returns the smallest box that contains both this box and another box
+     * shape. Note that the result may contain blocks that are in neither box.
+     * An empty box does not contribute to the result.
+     * @param other The box shape to cover together with this box
+     * @return The box covering both boxes
+     */
+    public Box union(BoxShape other) {
+        Box o = other.getBox();
+        if(containsBox(o)) return this;
+        if(o.containsBox(this)) return o;
+        return new Box(
+                new Position(Math.min(from.getX(), o.from.getX()),
+                        Math.min(from.getY(), o.from.getY()),
+                        Math.min(from.getZ(), o.from.getZ())),
+                new Position(Math.max(until.getX(), o.until.getX()),
+                        Math.max(until.getY(), o.until.getY()),
+                        Math.max(until.getZ(), o.until.getZ())));
+    }
+
+    /**
+     * Returns the blocks of this box that are not in another box shape, as a
+     * list of at most six disjoint boxes. The boxes are cut as whole x slabs
+     * first, then y rows and finally along z, which keeps each box as large as
+     * possible. This can be used to only query for the part of a region that is
+     * not already known:
+     * <pre>
+     *     for(Box missing: wanted.subtract(cached)) {
+     *         boxShapeQuery(missing);
+     *     }
+     * </pre>
+     * @param other The box shape to subtract
+     * @return The disjoint boxes that together cover this box minus the other box
+     *         shape, empty if the other box shape covers this box
+     */
+    public List<Box> subtract(BoxShape other) {
+        Box o = other.getBox();
+        List<Box> result = new ArrayList<>(6);
+        if(isEmpty()) return result;
+        if(!intersects(o)) {
+            result.add(this);
+            return result;
+        }
+        int fx = from.getX(), fy = from.getY(), fz = from.getZ();
+        int ux = until.getX(), uy = until.getY(), uz = until.getZ();
+        int ix0 = Math.max(fx, o.from.getX()), ix1 = Math.min(ux, o.until.getX());
+        int iy0 = Math.max(fy, o.from.getY()), iy1 = Math.min(uy, o.until.getY());
+        int iz0 = Math.max(fz, o.from.getZ()), iz1 = Math.min(uz, o.until.getZ());
+        if(fx < ix0) result.add(new Box(new Position(fx, fy, fz), new Position(ix0, uy, uz)));
+        if(ix1 < ux) result.add(new Box(new Position(ix1, fy, fz), new Position(ux, uy, uz)));
+        if(fy < iy0) result.add(new Box(new Position(ix0, fy, fz), new Position(ix1, iy0, uz)));
+        if(iy1 < uy) result.add(new Box(new Position(ix0, iy1, fz), new Position(ix1, uy, uz)));
+        if(fz < iz0) result.add(new Box(new Position(ix0, iy0, fz), new Position(ix1, iy1, iz0)));
+        if(iz1 < uz) result.add(new Box(new Position(ix0, iy0, iz1), new Position(ix1, iy1, uz)));
+        return result;
+    }
+
+    /**
+     * Returns true if this box does not contain any blocks
+     * @return True if the box is empty in any dimension
+     */
+    public boolean isEmpty() {
+        return size.getX() == 0 || size.getY() == 0 || size.getZ() == 0;
     }
 
     /**
@@ -213,6 +344,46 @@ public class Box implements BoxShape {
         return blocks[arrayIndexLocal(p)];
     }
 
+    /**
+     * Return a block of a palette encoded array based on the position p
+     * @param p A Position that is withing the bounds of this box
+     * @param blocks A palette encoded array of the size of this box
+     * @return The block that was found on position p
+     */
+    public BlockTypeId get(Position p, PaletteBlockArray blocks) {
+        return blocks.get(arrayIndex(p));
+    }
+
+    /**
+     * Return a block of a palette encoded array based on the local position p
+     * @param p A Position that is relative to the from corner of this box
+     * @param blocks A palette encoded array of the size of this box
+     * @return The block that was found on position p
+     */
+    public BlockTypeId getLocal(Position p, PaletteBlockArray blocks) {
+        return blocks.get(arrayIndexLocal(p));
+    }
+
+    /**
+     * Return a block of a run length encoded array based on the position p
+     * @param p A Position that is withing the bounds of this box
+     * @param blocks A run length encoded array of the size of this box
+     * @return The block that was found on position p
+     */
+    public BlockTypeId get(Position p, RunLengthBlockArray blocks) {
+        return blocks.get(arrayIndex(p));
+    }
+
+    /**
+     * Return a block of a run length encoded array based on the local position p
+     * @param p A Position that is relative to the from corner of this box
+     * @param blocks A run length encoded array of the size of this box
+     * @return The block that was found on position p
+     */
+    public BlockTypeId getLocal(Position p, RunLengthBlockArray blocks) {
+        return blocks.get(arrayIndexLocal(p));
+    }
+
     /**
      * Returns a mapping from (global) Positions to T (e.g. BlockTypeId)
      * @param blocks An array of data of the size of this box
@@ -233,6 +404,218 @@ public class Box implements BoxShape {
         return map;
     }
 
+    /**
+     * Returns a mapping from packed (global) Positions to T (e.g. BlockTypeId).
+     * Contrary to {@link #getAsMap(Object[])} this does not allocate any objects
+     * per block. Null elements of blocks are not included in the mapping.
+     * @param blocks An array of data of the size of this box
+     * @param <T> The type of the array data, e.g. BlockTypeId
+     * @return A mapping from packed Position to T
+     * @see Position#pack(int, int, int)
+     */
+    public <T> PositionLongMap<T> getAsPackedMap(T blocks[]) {
+        PositionLongMap<T> map = new PositionLongMap<>(getNumberOfBlocks());
+        int i = 0;
+        for(int x = from.getX(); x < until.getX(); x++) {
+            for(int y = from.getY(); y < until.getY(); y++) {
+                for(int z = from.getZ(); z < until.getZ(); z++) {
+                    T v = blocks[i++];
+                    if(v != null) {
+                        map.put(Position.pack(x, y, z), v);
+                    }
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Call the consumer with the global position of each block in this box.
+     * The positions are visited in the order of their array indexes, and no
+     * objects are allocated.
+     * @param consumer The consumer of the positions
+     */
+    @Override
+    public void forEach(IntTriConsumer consumer) {
+        final int fromX = from.getX(), fromY = from.getY(), fromZ = from.getZ();
+        final int untilX = until.getX(), untilY = until.getY(), untilZ = until.getZ();
+        for(int x = fromX; x < untilX; x++) {
+            for(int y = fromY; y < untilY; y++) {
+                for(int z = fromZ; z < untilZ; z++) {
+                    consumer.accept(x, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Call the consumer with the global position and array index of each
+     * block in this box. The positions are visited in the order of their
+     * array indexes, and no objects are allocated.
+     * <pre>
+     *     box.forEachIndexed((x, y, z, index) -&gt; {
+     *         BlockTypeId t = blocks[index];
+     *     });
+     * </pre>
+     * @param consumer The consumer of the positions and indexes
+     */
+    @Override
+    public void forEachIndexed(IndexedIntTriConsumer consumer) {
+        final int fromX = from.getX(), fromY = from.getY(), fromZ = from.getZ();
+        final int untilX = until.getX(), untilY = until.getY(), untilZ = until.getZ();
+        int index = 0;
+        for(int x = fromX; x < untilX; x++) {
+            for(int y = fromY; y < untilY; y++) {
+                for(int z = fromZ; z < untilZ; z++) {
+                    consumer.accept(x, y, z, index++);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a new cursor positioned before the first block of this box
+     * @return The new cursor
+     * @see BoxCursor
+     */
+    public BoxCursor cursor() {
+        return new BoxCursor(this);
+    }
+
+    /**
+     * Returns a spliterator over the array indexes of this box. It splits
+     * along x slabs and y rows so that each part is a contiguous slice of
+     * a data array.
+     * @return The spliterator
+     * @see BoxSpliterator
+     */
+    public BoxSpliterator spliterator() {
+        return new BoxSpliterator(this);
+    }
+
+    /**
+     * Returns a sequential stream of all array indexes of this box
+     * @return The stream of array indexes
+     */
+    public IntStream indexStream() {
+        return StreamSupport.intStream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream of all array indexes of this box. This can
+     * be used to process a large data array on all cores, e.g. to count
+     * the blocks of a type:
+     * <pre>
+     *     long stones = box.parallelIndexStream().filter(i -&gt; blocks[i].equals(stone)).count();
+     * </pre>
+     * @return The parallel stream of array indexes
+     */
+    public IntStream parallelIndexStream() {
+        return StreamSupport.intStream(spliterator(), true);
+    }
+
+    /**
+     * Split the array indexes of this box into at most parts contiguous slices
+     * of roughly the same size. The slices are aligned to whole x slabs or, if
+     * the slabs are larger than the slices, to whole y rows.
+     * @param parts The maximum number of slices to create
+     * @return The slices in array index order, empty if the box is empty
+     */
+    public List<BoxSlice> split(int parts) {
+        if(parts < 1)
+            throw new IllegalArgumentException("Parts must be at least 1: " + parts);
+        int total = getNumberOfBlocks();
+        List<BoxSlice> slices = new ArrayList<>(parts);
+        if(total == 0) return slices;
+        int length = (int)(((long)total + parts - 1) / parts);
+        int slab = size.getY() * size.getZ();
+        int row = size.getZ();
+        if(slab <= length) {
+            length = (length + slab - 1) / slab * slab;
+        } else if(row <= length) {
+            length = (length + row - 1) / row * row;
+        }
+        for(int start = 0; start < total; start += length) {
+            slices.add(new BoxSlice(this, start, Math.min(total, start + length)));
+        }
+        return slices;
+    }
+
+    /**
+     * Split this box into sub boxes aligned to the chunks of the server, see
+     * {@link #CHUNK_SIZE}.
+     * @return The chunk aligned boxes
+     * @see #chunked(Position)
+     */
+    public List<Box> chunked() {
+        return chunked(CHUNK_SIZE);
+    }
+
+    /**
+     * Split this box into sub boxes aligned to cubic chunks of a given size.
+     * @param chunkSize The size of a chunk in all dimensions
+     * @return The chunk aligned boxes
+     * @see #chunked(Position)
+     */
+    public List<Box> chunked(int chunkSize) {
+        return chunked(new Position(chunkSize, chunkSize, chunkSize));
+    }
+
+    /**
+     * Split this box into sub boxes aligned to chunks of a given size. Chunks
+     * start at multiples of the chunk size in each dimension, e.g. with a chunk
+     * size of 32 the box from (-8, 0, 0) until (40, 1, 1) is split into one box
+     * from (-8, 0, 0) until (0, 1, 1), one from (0, 0, 0) until (32, 1, 1) and one
+     * from (32, 0, 0) until (40, 1, 1). The sub boxes do not overlap, together they
+     * cover this box and they are ordered by their from corner, x first.
+     * @param chunkSize The size of a chunk in each dimension
+     * @return The chunk aligned boxes, empty if this box is empty
+     */
+    public List<Box> chunked(Position chunkSize) {
+        int cx = chunkSize.getX(), cy = chunkSize.getY(), cz = chunkSize.getZ();
+        if(cx < 1 || cy < 1 || cz < 1)
+            throw new IllegalArgumentException("Chunk size must be at least 1 in all dimensions: " + chunkSize);
+        List<Box> boxes = new ArrayList<>();
+        if(getNumberOfBlocks() == 0) return boxes;
+        for(int x = from.getX(); x < until.getX(); x = (Math.floorDiv(x, cx) + 1) * cx) {
+            int ux = Math.min(until.getX(), (Math.floorDiv(x, cx) + 1) * cx);
+            for(int y = from.getY(); y < until.getY(); y = (Math.floorDiv(y, cy) + 1) * cy) {
+                int uy = Math.min(until.getY(), (Math.floorDiv(y, cy) + 1) * cy);
+                for(int z = from.getZ(); z < until.getZ(); z = (Math.floorDiv(z, cz) + 1) * cz) {
+                    int uz = Math.min(until.getZ(), (Math.floorDiv(z, cz) + 1) * cz);
+                    boxes.add(new Box(new Position(x, y, z), new Position(ux, uy, uz)));
+                }
+            }
+        }
+        return boxes;
+    }
+
+    /**
+     * Copy the data of this box into the data array of a larger box that
+     * contains this box. The data is copied one z row at a time.
+     * @param blocks An array of data of the size of this box
+     * @param target A box that contains this box
+     * @param targetBlocks An array of data of the size of target
+     */
+    public void copyInto(Object[] blocks, Box target, Object[] targetBlocks) {
+        Position tFrom = target.getFrom();
+        Position tUntil = target.getUntil();
+        if(from.getX() < tFrom.getX() || from.getY() < tFrom.getY() || from.getZ() < tFrom.getZ() ||
+                until.getX() > tUntil.getX() || until.getY() > tUntil.getY() || until.getZ() > tUntil.getZ())
+            throw new IllegalArgumentException(this + " is not contained in " + target);
+        int rowLength = size.getZ();
+        if(rowLength == 0) return;
+        Position tSize = target.getSize();
+        int source = 0;
+        for(int x = from.getX() - tFrom.getX(); x < until.getX() - tFrom.getX(); x++) {
+            for(int y = from.getY() - tFrom.getY(); y < until.getY() - tFrom.getY(); y++) {
+                int destination = (x * tSize.getY() + y) * tSize.getZ() + from.getZ() - tFrom.getZ();
+                System.arraycopy(blocks, source, targetBlocks, destination, rowLength);
+                source += rowLength;
+            }
+        }
+    }
+
     /**
      * The number of blocks bound by this box. This is equal to the size (length)
      * of an array with data for this box.
@@ -0,0 +1,189 @@
+package konstructs.api;
+
+/**
+ * BoxCursor is a mutable, reusable cursor that walks all positions of a
+ * {@link Box} in the same order as the array indexes of the box (see
+ * {@link Box#arrayIndexLocal(Position)}). It keeps track of both the
+ * global position and the array index, so that data arrays can be
+ * scanned without allocating a {@link Position} for each block:
+ * <pre>
+ *     BoxCursor cursor = new BoxCursor(box);
+ *     while(cursor.next()) {
+ *         BlockTypeId t = blocks[cursor.getIndex()];
+ *         // cursor.getX(), cursor.getY() and cursor.getZ() is the position of t
+ *     }
+ * </pre>
+ * <p>
+ *     Unlike most classes of the API this class is mutable and should never
+ *     be shared between actors. It can be reused for another box by calling
+ *     {@link #reset(BoxShape)}.
+ * </p>
+ */
+public final class BoxCursor {
+    private int fromX, fromY, fromZ;
+    private int untilX, untilY, untilZ;
+    private int x, y, z;
+    private int index;
+
+    /**
+     * Create a cursor without a box. {@link #reset(BoxShape)} must be
+     * called before the cursor is used.
+     */
+    public BoxCursor() {
+        reset(0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Create a cursor positioned before the first block of a box
+     * @param box The box to walk
+     */
+    public BoxCursor(BoxShape box) {
+        reset(box);
+    }
+
+    /**
+     * Reset the cursor to be positioned before the first block of a box
+     * @param box The box to walk
+     */
+    public void reset(BoxShape box) {
+        Box b = box.getBox();
+        Position from = b.getFrom();
+        Position until = b.getUntil();
+        reset(from.getX(), from.getY(), from.getZ(), until.getX(), until.getY(), until.getZ());
+    }
+
+    private void reset(int fromX, int fromY, int fromZ, int untilX, int untilY, int untilZ) {
+        this.fromX = fromX;
+        this.fromY = fromY;
+        this.fromZ = fromZ;
+        this.untilX = untilX;
+        this.untilY = untilY;
+        this.untilZ = untilZ;
+        reset();
+    }
+
+    /**
+     * Reset the cursor to be positioned before the first block of
+     * the current box
+     */
+    public void reset() {
+        x = fromX;
+        y = fromY;
+        z = fromZ - 1;
+        index = -1;
+        if(fromX == untilX || fromY == untilY || fromZ == untilZ) {
+            /* Empty box, make next() return false */
+            x = untilX;
+        }
+    }
+
+    /**
+     * Move the cursor to the next block
+     * @return True if the cursor was moved, false if there are no more blocks
+     */
+    public boolean next() {
+        if(x >= untilX) return false;
+        index++;
+        if(++z < untilZ) return true;
+        z = fromZ;
+        if(++y < untilY) return true;
+        y = fromY;
+        if(++x < untilX) return true;
+        index--;
+        return false;
+    }
+
+    /**
+     * Returns the global position of the cursor in the x dimension
+     * @return The x dimension
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the global position of the cursor in the y dimension
+     * @return The y dimension
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Returns the global position of the cursor in the z dimension
+     * @return The z dimension
+     */
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * Returns the position of the cursor in the x dimension relative to the from corner of the box
+     * @return The local x dimension
+     */
+    public int getLocalX() {
+        return x - fromX;
+    }
+
+    /**
+     * Returns the position of the cursor in the y dimension relative to the from corner of the box
+     * @return The local y dimension
+     */
+    public int getLocalY() {
+        return y - fromY;
+    }
+
+    /**
+     * Returns the position of the cursor in the z dimension relative to the from corner of the box
+     * @return The local z dimension
+     */
+    public int getLocalZ() {
+        return z - fromZ;
+    }
+
+    /**
+     * Returns the array index of the current position of the cursor
+     * @return The array index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the packed global position of the cursor
+     * @return The packed position
+     * @see Position#pack(int, int, int)
+     */
+    public long getPacked() {
+        return Position.pack(x, y, z);
+    }
+
+    /**
+     * Return the element of blocks at the current position of the cursor
+     * @param blocks An array of data of the size of the box
+     * @param <T> The type of the array data, e.g. BlockTypeId
+     * @return The data element at the current position
+     */
+    public <T> T get(T blocks[]) {
+        return blocks[index];
+    }
+
+    /**
+     * Returns the global position of the cursor as a new Position.
+     * Note: This allocates a new object on each call.
+     * @return The position of the cursor
+     */
+    public Position getPosition() {
+        return new Position(x, y, z);
+    }
+
+    @Override
+    public String toString() {
+        return "BoxCursor(" +
+                "x=" + x +
+                ", y=" + y +
+                ", z=" + z +
+                ", index=" + index +
+                ')';
+    }
+}
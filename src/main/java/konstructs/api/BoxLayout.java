@@ -0,0 +1,450 @@
+package konstructs.api;
+
+/**
+ * BoxLayout is a class representing the memory layout of a data array of
+ * a {@link Box}, i.e. how a local position within the box is mapped to an
+ * index in the array. There are three layouts:
+ * <ul>
+ *     <li>{@link #LINEAR} is the layout used by {@link Box#arrayIndexLocal(Position)}.
+ *     The array is ordered by x, then y, then z. It is the default layout.</li>
+ *     <li>{@link #MORTON} interleaves the bits of the local x, y and z positions
+ *     (Z-order curve). Blocks that are close in the box are close in the array in
+ *     all dimensions.</li>
+ *     <li>{@link #TILED} divides the box into tiles of {@link #TILE_SIZE}<sup>3</sup>
+ *     blocks. The tiles are ordered as the linear layout and the blocks within each
+ *     tile are ordered as the linear layout.</li>
+ * </ul>
+ * <p>
+ *     The Morton and tiled layouts pad the box, so their arrays can be larger than
+ *     the number of blocks in the box (see {@link #getArraySize(Position)}). Padding
+ *     elements are not used and left as null.
+ * </p>
+ * <p>
+ *     All methods of this class take the size of the box (see {@link Box#getSize()})
+ *     and positions that are local to the from corner of the box. Stencil like
+ *     algorithms, e.g. lighting, can use {@link #neighbour(Position, int, Direction)}
+ *     to move between adjacent blocks without converting to positions.
+ * </p>
+ */
+public abstract class BoxLayout {
+    public static final int LINEAR_ENCODING = 0;
+    public static final int MORTON_ENCODING = 1;
+    public static final int TILED_ENCODING = 2;
+
+    /**
+     * The size of a tile of the {@link #TILED} layout in all dimensions
+     */
+    public static final int TILE_SIZE = 16;
+
+    public static final BoxLayout LINEAR = new Linear();
+    public static final BoxLayout MORTON = new Morton();
+    public static final BoxLayout TILED = new Tiled();
+
+    /**
+     * Returns the BoxLayout associated with the provided encoding
+     * @param encoding The encoded version of the layout
+     * @return The singleton instance of the BoxLayout
+     */
+    public static BoxLayout get(int encoding) {
+        switch(encoding) {
+            case LINEAR_ENCODING:
+                return LINEAR;
+            case MORTON_ENCODING:
+                return MORTON;
+            case TILED_ENCODING:
+                return TILED;
+            default:
+                throw new IllegalArgumentException("No box layout encoded by: " + encoding);
+        }
+    }
+
+    /**
+     * Copy a data array of a box from one layout into another
+     * @param box The box of the data
+     * @param fromLayout The layout of src
+     * @param src The data array to copy from
+     * @param toLayout The layout of dst
+     * @param dst The data array to copy to, at least of the array size of toLayout
+     */
+    public static void convert(BoxShape box, BoxLayout fromLayout, Object[] src, BoxLayout toLayout, Object[] dst) {
+        Position size = box.getBox().getSize();
+        if(fromLayout == toLayout) {
+            System.arraycopy(src, 0, dst, 0, fromLayout.getArraySize(size));
+            return;
+        }
+        for(int x = 0; x < size.getX(); x++) {
+            for(int y = 0; y < size.getY(); y++) {
+                for(int z = 0; z < size.getZ(); z++) {
+                    dst[toLayout.index(size, x, y, z)] = src[fromLayout.index(size, x, y, z)];
+                }
+            }
+        }
+    }
+
+    private final int encoding;
+
+    private BoxLayout(int encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Returns the integer encoding of this layout
+     * @return The integer encoding of this layout
+     */
+    public int getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Returns the length of a data array of a box using this layout
+     * @param size The size of the box
+     * @return The length of the array, including padding
+     */
+    public abstract int getArraySize(Position size);
+
+    /**
+     * Returns the array index of a local position
+     * @param size The size of the box
+     * @param x The local position in the x dimension
+     * @param y The local position in the y dimension
+     * @param z The local position in the z dimension
+     * @return The array index
+     */
+    public abstract int index(Position size, int x, int y, int z);
+
+    /**
+     * Returns the local x position of an array index
+     * @param size The size of the box
+     * @param index The array index
+     * @return The local position in the x dimension
+     */
+    public abstract int getX(Position size, int index);
+
+    /**
+     * Returns the local y position of an array index
+     * @param size The size of the box
+     * @param index The array index
+     * @return The local position in the y dimension
+     */
+    public abstract int getY(Position size, int index);
+
+    /**
+     * Returns the local z position of an array index
+     * @param size The size of the box
+     * @param index The array index
+     * @return The local position in the z dimension
+     */
+    public abstract int getZ(Position size, int index);
+
+    /**
+     * Returns the array index of a local position
+     * @param size The size of the box
+     * @param p The local position
+     * @return The array index
+     */
+    public int index(Position size, Position p) {
+        return index(size, p.getX(), p.getY(), p.getZ());
+    }
+
+    /**
+     * Returns the local position of an array index
+     * @param size The size of the box
+     * @param index The array index
+     * @return The local position
+     */
+    public Position getPosition(Position size, int index) {
+        return new Position(getX(size, index), getY(size, index), getZ(size, index));
+    }
+
+    /**
+     * Returns the array index of the block adjacent to the block at an array index
+     * @param size The size of the box
+     * @param index The array index of the block
+     * @param direction The direction of the adjacent block
+     * @return The array index of the adjacent block or -1 if it is outside the box
+     */
+    public int neighbour(Position size, int index, Direction direction) {
+        int x = getX(size, index);
+        int y = getY(size, index);
+        int z = getZ(size, index);
+        switch(direction.getEncoding()) {
+            case Direction.UP_ENCODING:
+                return ++y < size.getY() ? index(size, x, y, z) : -1;
+            case Direction.DOWN_ENCODING:
+                return --y >= 0 ? index(size, x, y, z) : -1;
+            case Direction.RIGHT_ENCODING:
+                return ++x < size.getX() ? index(size, x, y, z) : -1;
+            case Direction.LEFT_ENCODING:
+                return --x >= 0 ? index(size, x, y, z) : -1;
+            case Direction.BACKWARD_ENCODING:
+                return ++z < size.getZ() ? index(size, x, y, z) : -1;
+            case Direction.FORWARD_ENCODING:
+                return --z >= 0 ? index(size, x, y, z) : -1;
+            default:
+                throw new IllegalArgumentException("Invalid direction encoding");
+        }
+    }
+
+    /**
+     * Call the consumer with the global position and the array index of this
+     * layout of each block in a box. The positions are visited in linear
+     * order, and no objects are allocated.
+     * @param box The box to visit
+     * @param consumer The consumer of the positions and indexes
+     */
+    public void forEachIndexed(BoxShape box, IndexedIntTriConsumer consumer) {
+        Box b = box.getBox();
+        Position from = b.getFrom();
+        Position size = b.getSize();
+        for(int x = 0; x < size.getX(); x++) {
+            for(int y = 0; y < size.getY(); y++) {
+                for(int z = 0; z < size.getZ(); z++) {
+                    consumer.accept(from.getX() + x, from.getY() + y, from.getZ() + z, index(size, x, y, z));
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || !(o instanceof BoxLayout)) return false;
+
+        BoxLayout that = (BoxLayout) o;
+
+        return encoding == that.encoding;
+    }
+
+    @Override
+    public int hashCode() {
+        return encoding;
+    }
+
+    @Override
+    public abstract String toString();
+
+    private static final class Linear extends BoxLayout {
+        Linear() {
+            super(LINEAR_ENCODING);
+        }
+
+        @Override
+        public int getArraySize(Position size) {
+            return size.getX() * size.getY() * size.getZ();
+        }
+
+        @Override
+        public int index(Position size, int x, int y, int z) {
+            return (x * size.getY() + y) * size.getZ() + z;
+        }
+
+        @Override
+        public int getX(Position size, int index) {
+            return index / (size.getY() * size.getZ());
+        }
+
+        @Override
+        public int getY(Position size, int index) {
+            return index / size.getZ() % size.getY();
+        }
+
+        @Override
+        public int getZ(Position size, int index) {
+            return index % size.getZ();
+        }
+
+        @Override
+        public int neighbour(Position size, int index, Direction direction) {
+            int sy = size.getY(), sz = size.getZ();
+            switch(direction.getEncoding()) {
+                case Direction.UP_ENCODING:
+                    return index / sz % sy + 1 < sy ? index + sz : -1;
+                case Direction.DOWN_ENCODING:
+                    return index / sz % sy > 0 ? index - sz : -1;
+                case Direction.RIGHT_ENCODING:
+                    return index + sy * sz < getArraySize(size) ? index + sy * sz : -1;
+                case Direction.LEFT_ENCODING:
+                    return index >= sy * sz ? index - sy * sz : -1;
+                case Direction.BACKWARD_ENCODING:
+                    return index % sz + 1 < sz ? index + 1 : -1;
+                case Direction.FORWARD_ENCODING:
+                    return index % sz > 0 ? index - 1 : -1;
+                default:
+                    throw new IllegalArgumentException("Invalid direction encoding");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "BoxLayout(LINEAR)";
+        }
+    }
+
+    private static final class Morton extends BoxLayout {
+        Morton() {
+            super(MORTON_ENCODING);
+        }
+
+        /* Number of bits required for local positions of a dimension of a given size */
+        private static int bits(int size) {
+            return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        }
+
+        @Override
+        public int getArraySize(Position size) {
+            if(size.getX() == 0 || size.getY() == 0 || size.getZ() == 0) return 0;
+            int bits = bits(size.getX()) + bits(size.getY()) + bits(size.getZ());
+            if(bits > 30)
+                throw new IllegalArgumentException("Box is too large for the Morton layout: " + size);
+            return 1 << bits;
+        }
+
+        /*
+         * The bits of the dimensions are interleaved starting with z in the lowest bit.
+         * When a dimension runs out of bits (since it is smaller) the remaining dimensions
+         * continue to be interleaved, so that no index space is wasted on non-cubic boxes.
+         */
+        @Override
+        public int index(Position size, int x, int y, int z) {
+            int bx = bits(size.getX()), by = bits(size.getY()), bz = bits(size.getZ());
+            int max = Math.max(bx, Math.max(by, bz));
+            int index = 0;
+            int bit = 0;
+            for(int b = 0; b < max; b++) {
+                if(b < bz) index |= ((z >> b) & 1) << bit++;
+                if(b < by) index |= ((y >> b) & 1) << bit++;
+                if(b < bx) index |= ((x >> b) & 1) << bit++;
+            }
+            return index;
+        }
+
+        /* Extract dimension 0 (x), 1 (y) or 2 (z) from an index */
+        private static int extract(Position size, int index, int dimension) {
+            int bx = bits(size.getX()), by = bits(size.getY()), bz = bits(size.getZ());
+            int max = Math.max(bx, Math.max(by, bz));
+            int value = 0;
+            int bit = 0;
+            for(int b = 0; b < max; b++) {
+                if(b < bz) {
+                    if(dimension == 2) value |= ((index >> bit) & 1) << b;
+                    bit++;
+                }
+                if(b < by) {
+                    if(dimension == 1) value |= ((index >> bit) & 1) << b;
+                    bit++;
+                }
+                if(b < bx) {
+                    if(dimension == 0) value |= ((index >> bit) & 1) << b;
+                    bit++;
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public int getX(Position size, int index) {
+            return extract(size, index, 0);
+        }
+
+        @Override
+        public int getY(Position size, int index) {
+            return extract(size, index, 1);
+        }
+
+        @Override
+        public int getZ(Position size, int index) {
+            return extract(size, index, 2);
+        }
+
+        @Override
+        public String toString() {
+            return "BoxLayout(MORTON)";
+        }
+    }
+
+    private static final class Tiled extends BoxLayout {
+        private static final int TILE_BITS = 4;
+        private static final int TILE_MASK = TILE_SIZE - 1;
+        private static final int TILE_VOLUME = TILE_SIZE * TILE_SIZE * TILE_SIZE;
+
+        Tiled() {
+            super(TILED_ENCODING);
+        }
+
+        private static int tiles(int size) {
+            return (size + TILE_MASK) >> TILE_BITS;
+        }
+
+        @Override
+        public int getArraySize(Position size) {
+            long tiles = (long)tiles(size.getX()) * tiles(size.getY()) * tiles(size.getZ());
+            if(tiles * TILE_VOLUME > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Box is too large for the tiled layout: " + size);
+            return (int)tiles * TILE_VOLUME;
+        }
+
+        @Override
+        public int index(Position size, int x, int y, int z) {
+            int tile = ((x >> TILE_BITS) * tiles(size.getY()) + (y >> TILE_BITS)) * tiles(size.getZ()) + (z >> TILE_BITS);
+            return tile * TILE_VOLUME +
+                    (((x & TILE_MASK) << TILE_BITS | (y & TILE_MASK)) << TILE_BITS | (z & TILE_MASK));
+        }
+
+        @Override
+        public int getX(Position size, int index) {
+            int tile = index / TILE_VOLUME;
+            return (tile / (tiles(size.getY()) * tiles(size.getZ()))) << TILE_BITS |
+                    (index >> (TILE_BITS * 2)) & TILE_MASK;
+        }
+
+        @Override
+        public int getY(Position size, int index) {
+            int tile = index / TILE_VOLUME;
+            return (tile / tiles(size.getZ()) % tiles(size.getY())) << TILE_BITS |
+                    (index >> TILE_BITS) & TILE_MASK;
+        }
+
+        @Override
+        public int getZ(Position size, int index) {
+            int tile = index / TILE_VOLUME;
+            return (tile % tiles(size.getZ())) << TILE_BITS | index & TILE_MASK;
+        }
+
+        @Override
+        public int neighbour(Position size, int index, Direction direction) {
+            /* Fast path when the neighbour is within the same tile */
+            switch(direction.getEncoding()) {
+                case Direction.UP_ENCODING:
+                    if(((index >> TILE_BITS) & TILE_MASK) != TILE_MASK && getY(size, index) + 1 < size.getY())
+                        return index + TILE_SIZE;
+                    break;
+                case Direction.DOWN_ENCODING:
+                    if(((index >> TILE_BITS) & TILE_MASK) != 0)
+                        return index - TILE_SIZE;
+                    break;
+                case Direction.RIGHT_ENCODING:
+                    if(((index >> (TILE_BITS * 2)) & TILE_MASK) != TILE_MASK && getX(size, index) + 1 < size.getX())
+                        return index + TILE_SIZE * TILE_SIZE;
+                    break;
+                case Direction.LEFT_ENCODING:
+                    if(((index >> (TILE_BITS * 2)) & TILE_MASK) != 0)
+                        return index - TILE_SIZE * TILE_SIZE;
+                    break;
+                case Direction.BACKWARD_ENCODING:
+                    if((index & TILE_MASK) != TILE_MASK && getZ(size, index) + 1 < size.getZ())
+                        return index + 1;
+                    break;
+                case Direction.FORWARD_ENCODING:
+                    if((index & TILE_MASK) != 0)
+                        return index - 1;
+                    break;
+            }
+            return super.neighbour(size, index, direction);
+        }
+
+        @Override
+        public String toString() {
+            return "BoxLayout(TILED)";
+        }
+    }
+}
@@ -9,4 +9,24 @@ public interface BoxShape {
      * @return The box that represents this box shape
      */
     public Box getBox();
+
+    /**
+     * Call the consumer with the global position of each block in this box shape,
+     * without allocating any objects.
+     * @param consumer The consumer of the positions
+     * @see Box#forEach(IntTriConsumer)
+     */
+    default void forEach(IntTriConsumer consumer) {
+        getBox().forEach(consumer);
+    }
+
+    /**
+     * Call the consumer with the global position and array index of each block
+     * in this box shape, without allocating any objects.
+     * @param consumer The consumer of the positions and indexes
+     * @see Box#forEachIndexed(IndexedIntTriConsumer)
+     */
+    default void forEachIndexed(IndexedIntTriConsumer consumer) {
+        getBox().forEachIndexed(consumer);
+    }
 }
@@ -0,0 +1,134 @@
+package konstructs.api;
+
+/**
+ * BoxSlice is a contiguous range of array indexes of a {@link Box}, i.e. a
+ * slice of a data array of the box. Slices are created with
+ * {@link Box#split(int)} and are used to hand each worker of a parallel
+ * computation its own part of an array:
+ * <pre>
+ *     box.split(4).parallelStream().forEach(slice -&gt; {
+ *         slice.forEachIndexed((x, y, z, index) -&gt; {
+ *             BlockTypeId t = blocks[index];
+ *         });
+ *     });
+ * </pre>
+ */
+public final class BoxSlice {
+    private final Box box;
+    private final int start;
+    private final int end;
+
+    /**
+     * Creates a new immutable BoxSlice
+     * @param box The box that is sliced
+     * @param start The first array index of the slice, inclusive
+     * @param end The last array index of the slice, exclusive
+     */
+    public BoxSlice(Box box, int start, int end) {
+        if(start < 0 || start > end || end > box.getNumberOfBlocks())
+            throw new IllegalArgumentException("Invalid slice: " + start + " until " + end + " of " + box);
+        this.box = box;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Returns the box that this slice is a part of
+     * @return The box
+     */
+    public Box getBox() {
+        return box;
+    }
+
+    /**
+     * Returns the first array index of this slice
+     * @return The first index, inclusive
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the end of the array indexes of this slice
+     * @return The last index, exclusive
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * The number of blocks in this slice
+     * @return The number of blocks
+     */
+    public int size() {
+        return end - start;
+    }
+
+    /**
+     * Returns a spliterator over the array indexes of this slice
+     * @return The spliterator
+     */
+    public BoxSpliterator spliterator() {
+        return new BoxSpliterator(box, start, end);
+    }
+
+    /**
+     * Call the consumer with the global position and array index of each
+     * block in this slice, in the order of the array indexes. No objects
+     * are allocated.
+     * @param consumer The consumer of the positions and indexes
+     * @see Box#forEachIndexed(IndexedIntTriConsumer)
+     */
+    public void forEachIndexed(IndexedIntTriConsumer consumer) {
+        if(start == end) return;
+        Position from = box.getFrom();
+        Position size = box.getSize();
+        int sizeY = size.getY();
+        int sizeZ = size.getZ();
+        int untilY = from.getY() + sizeY;
+        int untilZ = from.getZ() + sizeZ;
+        int x = from.getX() + start / (sizeY * sizeZ);
+        int y = from.getY() + (start / sizeZ) % sizeY;
+        int z = from.getZ() + start % sizeZ;
+        for(int index = start; index < end; index++) {
+            consumer.accept(x, y, z, index);
+            if(++z == untilZ) {
+                z = from.getZ();
+                if(++y == untilY) {
+                    y = from.getY();
+                    x++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BoxSlice boxSlice = (BoxSlice) o;
+
+        if (start != boxSlice.start) return false;
+        if (end != boxSlice.end) return false;
+        return box.equals(boxSlice.box);
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = box.hashCode();
+        result = 31 * result + start;
+        result = 31 * result + end;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BoxSlice(" +
+                "box=" + box +
+                ", start=" + start +
+                ", end=" + end +
+                ')';
+    }
+}
@@ -0,0 +1,109 @@
+package konstructs.api;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/**
+ * BoxSpliterator is a {@link Spliterator} over the array indexes of a {@link Box}.
+ * When split, it prefers to divide the index range on the boundary of an x slab
+ * (all blocks with the same x), then on the boundary of a y row (all blocks with
+ * the same x and y) and only within a row as a last resort. This means that each
+ * part of a split covers a contiguous slice of a data array of the box, made up
+ * of whole slabs or rows whenever possible. It is used by {@link Box#indexStream()}
+ * and {@link Box#parallelIndexStream()}.
+ */
+public final class BoxSpliterator implements Spliterator.OfInt {
+    private static final int CHARACTERISTICS = ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+
+    private final int slab;
+    private final int row;
+    private int index;
+    private final int fence;
+
+    /**
+     * Create a spliterator over all array indexes of a box
+     * @param box The box to create a spliterator for
+     */
+    public BoxSpliterator(BoxShape box) {
+        this(box, 0, box.getBox().getNumberOfBlocks());
+    }
+
+    /**
+     * Create a spliterator over a range of array indexes of a box
+     * @param box The box to create a spliterator for
+     * @param origin The first array index, inclusive
+     * @param fence The last array index, exclusive
+     */
+    public BoxSpliterator(BoxShape box, int origin, int fence) {
+        Position size = box.getBox().getSize();
+        if(origin < 0 || origin > fence || fence > box.getBox().getNumberOfBlocks())
+            throw new IllegalArgumentException("Invalid index range: " + origin + " until " + fence);
+        this.row = size.getZ();
+        this.slab = size.getY() * size.getZ();
+        this.index = origin;
+        this.fence = fence;
+    }
+
+    private BoxSpliterator(int slab, int row, int origin, int fence) {
+        this.slab = slab;
+        this.row = row;
+        this.index = origin;
+        this.fence = fence;
+    }
+
+    /* Find the boundary closest below mid that is inside (lo, hi), or -1 */
+    private static int align(int lo, int mid, int hi, int unit) {
+        if(unit <= 0) return -1;
+        int m = mid - mid % unit;
+        if(m <= lo) m += unit;
+        return m < hi ? m : -1;
+    }
+
+    @Override
+    public OfInt trySplit() {
+        int lo = index;
+        int hi = fence;
+        if(hi - lo < 2) return null;
+        int mid = (lo + hi) >>> 1;
+        int m = align(lo, mid, hi, slab);
+        if(m < 0) m = align(lo, mid, hi, row);
+        if(m < 0) m = mid;
+        index = m;
+        return new BoxSpliterator(slab, row, lo, m);
+    }
+
+    @Override
+    public boolean tryAdvance(IntConsumer action) {
+        if(index < fence) {
+            action.accept(index++);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(IntConsumer action) {
+        int i = index;
+        int hi = fence;
+        index = hi;
+        for(; i < hi; i++) {
+            action.accept(i);
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    @Override
+    public Comparator<? super Integer> getComparator() {
+        return null;
+    }
+}
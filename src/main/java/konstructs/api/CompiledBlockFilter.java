@@ -0,0 +1,126 @@
+package konstructs.api;
+
+import java.util.BitSet;
+
+/**
+ * CompiledBlockFilter is compiled from a {@link BlockFilter} by evaluating the
+ * filter once for every block type of a {@link BlockTypeTable}. Since a filter only
+ * depends on the block type, the result is stored as a bitset over the w-values, so
+ * matching a block is a single bit test, independent of how complex the filter is:
+ * <pre>
+ *     CompiledBlockFilter obstacles = BlockFilterFactory.withObstacle(true).compile(factory);
+ *     BitSet matching = obstacles.matches(result.getBlocks());
+ * </pre>
+ * <p>
+ *     A compiled filter only knows of the block types of its table, blocks of types
+ *     registered later never match. Compile the filter again with a refreshed table,
+ *     see {@link BlockTypeTable#refresh(BlockFactory)}. This class is immutable.
+ * </p>
+ */
+public final class CompiledBlockFilter {
+    private final BlockFilter filter;
+    private final BlockTypeTable table;
+    private final long[] bits;
+
+    /**
+     * Compile a filter for all block types of a table
+     * @param filter The filter to compile
+     * @param table The table of the block types
+     * @see BlockFilter#compile(BlockTypeTable)
+     */
+    public CompiledBlockFilter(BlockFilter filter, BlockTypeTable table) {
+        this.filter = filter;
+        this.table = table;
+        int size = table.getSize();
+        this.bits = new long[(size + 63) >>> 6];
+        for(int w = 0; w < size; w++) {
+            BlockType type = table.getBlockType(w);
+            if(type != null && filter.matches(table.getBlockTypeId(w), type)) {
+                bits[w >>> 6] |= 1L << w;
+            }
+        }
+    }
+
+    /**
+     * Returns the filter that was compiled
+     * @return The filter
+     */
+    public BlockFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Returns the table that the filter was compiled for
+     * @return The table
+     */
+    public BlockTypeTable getTable() {
+        return table;
+    }
+
+    /**
+     * Check if the block type of a w-value matches the filter
+     * @param w The w-value
+     * @return True if the block type matches
+     */
+    public boolean matches(int w) {
+        return w >= 0 && (w >>> 6) < bits.length && (bits[w >>> 6] & (1L << w)) != 0;
+    }
+
+    /**
+     * Check if a block type matches the filter
+     * @param id The BlockTypeId of the block type
+     * @return True if the block type matches
+     */
+    public boolean matches(BlockTypeId id) {
+        return matches(table.getW(id));
+    }
+
+    /**
+     * Match an array of w-values
+     * @param ws The w-values
+     * @return A BitSet with the indexes of the matching w-values set
+     */
+    public BitSet matches(int[] ws) {
+        BitSet result = new BitSet(ws.length);
+        for(int i = 0; i < ws.length; i++) {
+            if(matches(ws[i])) result.set(i);
+        }
+        return result;
+    }
+
+    /**
+     * Match an array of blocks, e.g. the result of a box shape query
+     * @param blocks The blocks
+     * @return A BitSet with the indexes of the matching blocks set, null blocks never match
+     */
+    public BitSet matches(BlockTypeId[] blocks) {
+        BitSet result = new BitSet(blocks.length);
+        BlockTypeId last = null;
+        boolean lastMatch = false;
+        for(int i = 0; i < blocks.length; i++) {
+            BlockTypeId id = blocks[i];
+            if(id != last) {
+                last = id;
+                lastMatch = id != null && matches(id);
+            }
+            if(lastMatch) result.set(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the w-values of all matching block types
+     * @return A new BitSet with the matching w-values set
+     */
+    public BitSet toBitSet() {
+        return BitSet.valueOf(bits);
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledBlockFilter(" +
+                "filter=" + filter +
+                ", table=" + table +
+                ')';
+    }
+}
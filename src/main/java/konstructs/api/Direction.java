@@ -36,28 +36,27 @@ public class Direction {
     public static final Direction FORWARD = new Direction(FORWARD_ENCODING);
     public static final Direction BACKWARD = new Direction(BACKWARD_ENCODING);
 
+    private static final Direction[] DIRECTIONS = {
+            UP, DOWN, RIGHT, LEFT, FORWARD, BACKWARD
+    };
+
+    private static final Direction[] INVERSES = {
+            DOWN, UP, LEFT, RIGHT, BACKWARD, FORWARD
+    };
+
+    private static final Position[] VECTORS = {
+            Position.UP, Position.DOWN, Position.RIGHT, Position.LEFT, Position.FORWARD, Position.BACKWARD
+    };
+
     /**
      * Returns the Direction associated the provided encoding
      * @param encoding The encoded version of the direction
      * @return The singleton instance of the Direction
      */
     public static Direction get(int encoding) {
-        switch(encoding) {
-            case UP_ENCODING:
-                return UP;
-            case DOWN_ENCODING:
-                return DOWN;
-            case RIGHT_ENCODING:
-                return RIGHT;
-            case LEFT_ENCODING:
-                return LEFT;
-            case FORWARD_ENCODING:
-                return FORWARD;
-            case BACKWARD_ENCODING:
-                return BACKWARD;
-            default:
-                throw new IllegalArgumentException("No direction encoded by: " + encoding);
-        }
+        if(encoding < 0 || encoding >= DIRECTIONS.length)
+            throw new IllegalArgumentException("No direction encoded by: " + encoding);
+        return DIRECTIONS[encoding];
     }
 
     /**
@@ -152,22 +151,7 @@ public class Direction {
      * @return The inverse direction
      */
     public Direction inverse() {
-        switch(encoding) {
-            case UP_ENCODING:
-                return DOWN;
-            case DOWN_ENCODING:
-                return UP;
-            case RIGHT_ENCODING:
-                return LEFT;
-            case LEFT_ENCODING:
-                return RIGHT;
-            case FORWARD_ENCODING:
-                return BACKWARD;
-            case BACKWARD_ENCODING:
-                return FORWARD;
-            default:
-                throw new IllegalStateException("Invalid direction encoding");
-        }
+        return INVERSES[encoding];
     }
 
     /**
@@ -175,22 +159,7 @@ public class Direction {
      * @return The directions unit vector
      */
     public Position getVector() {
-        switch(encoding) {
-            case UP_ENCODING:
-                return Position.UP;
-            case DOWN_ENCODING:
-                return Position.DOWN;
-            case RIGHT_ENCODING:
-                return Position.RIGHT;
-            case LEFT_ENCODING:
-                return Position.LEFT;
-            case FORWARD_ENCODING:
-                return Position.FORWARD;
-            case BACKWARD_ENCODING:
-                return Position.BACKWARD;
-            default:
-                throw new IllegalStateException("Invalid direction encoding");
-        }
+        return VECTORS[encoding];
     }
 
     /* Rotate 180 degree over z axis so that UP is pointing down */
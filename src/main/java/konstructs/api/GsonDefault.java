@@ -23,10 +23,18 @@ public final class GsonDefault {
     /**
      * Return a default GsonBuilder. This is useful if you need to add
      * anything to the configuration of the Gson instance.
+     * <p>
+     *     The builder has streaming type adapters registered for the core
+     *     value types, e.g. Block, Stack, Inventory and BlockType. They write
+     *     the same JSON as Gson's reflective adapters, but read singletons such
+     *     as {@link Health#PRISTINE} and {@link Orientation#NORMAL} as the
+     *     singleton instances, intern BlockTypeIds and convert inventories
+     *     from before 0.1 while reading.
+     * </p>
      * @return The default GsonBuilder
      */
     public static GsonBuilder getDefaultGsonBuilder() {
-        return new GsonBuilder();
+        return GsonTypeAdapters.register(new GsonBuilder());
     }
 
 }
@@ -0,0 +1,691 @@
+package konstructs.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/*
+ * Streaming type adapters for the core value types, registered by GsonDefault.
+ * They write the same JSON as the reflective adapters of Gson, but read the
+ * fields directly into the constructors (or factory methods) of the types, so
+ * that singletons such as Health.PRISTINE, Orientation.NORMAL and the Colour
+ * and LightLevel instances are reused and BlockTypeIds are interned. Legacy
+ * formats are converted while reading: empty stacks of inventories from before
+ * 0.1 are read as null (see Inventory#convertPre0_1(Inventory)), block type ids
+ * and shapes may be plain strings and missing block and block type fields get
+ * the defaults of the constructors.
+ */
+final class GsonTypeAdapters {
+    private GsonTypeAdapters() {
+    }
+
+    static GsonBuilder register(GsonBuilder builder) {
+        return builder
+                .registerTypeAdapter(Position.class, new PositionAdapter().nullSafe())
+                .registerTypeAdapter(BlockTypeId.class, new BlockTypeIdAdapter().nullSafe())
+                .registerTypeAdapter(BlockClassId.class, new BlockClassIdAdapter().nullSafe())
+                .registerTypeAdapter(Health.class, new HealthAdapter().nullSafe())
+                .registerTypeAdapter(Direction.class, new DirectionAdapter().nullSafe())
+                .registerTypeAdapter(Rotation.class, new RotationAdapter().nullSafe())
+                .registerTypeAdapter(Orientation.class, new OrientationAdapter().nullSafe())
+                .registerTypeAdapter(Colour.class, new ColourAdapter().nullSafe())
+                .registerTypeAdapter(LightLevel.class, new LightLevelAdapter().nullSafe())
+                .registerTypeAdapter(BlockShape.class, new BlockShapeAdapter().nullSafe())
+                .registerTypeAdapter(BlockState.class, new BlockStateAdapter().nullSafe())
+                .registerTypeAdapter(Block.class, new BlockAdapter().nullSafe())
+                .registerTypeAdapter(Stack.class, new StackAdapter().nullSafe())
+                .registerTypeAdapter(Inventory.class, new InventoryAdapter().nullSafe())
+                .registerTypeAdapter(BlockType.class, new BlockTypeAdapter().nullSafe());
+    }
+
+    private static JsonSyntaxException invalid(String what, JsonReader in) {
+        return new JsonSyntaxException("Invalid " + what + " at " + in.getPath());
+    }
+
+    /* Read an int that may also be written as an object with a single int field */
+    private static int readWrappedInt(JsonReader in, String field) throws IOException {
+        if(in.peek() != JsonToken.BEGIN_OBJECT) return in.nextInt();
+        int value = 0;
+        boolean found = false;
+        in.beginObject();
+        while(in.hasNext()) {
+            if(in.nextName().equals(field)) {
+                value = in.nextInt();
+                found = true;
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if(!found) throw invalid(field, in);
+        return value;
+    }
+
+    /* Read a string that may also be written as an object with a single string field */
+    private static String readWrappedString(JsonReader in, String field) throws IOException {
+        if(in.peek() != JsonToken.BEGIN_OBJECT) return in.nextString();
+        String value = null;
+        in.beginObject();
+        while(in.hasNext()) {
+            if(in.nextName().equals(field)) {
+                value = in.nextString();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if(value == null) throw invalid(field, in);
+        return value;
+    }
+
+    /* Read a namespace and name written as an object or as a "namespace/name" string */
+    private static String[] readId(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.STRING) {
+            String id = in.nextString();
+            int lastSlash = id.lastIndexOf('/');
+            if(lastSlash < 0) throw invalid("id '" + id + "'", in);
+            return new String[] { id.substring(0, lastSlash), id.substring(lastSlash + 1) };
+        }
+        String namespace = null;
+        String name = null;
+        in.beginObject();
+        while(in.hasNext()) {
+            switch(in.nextName()) {
+                case "namespace":
+                    namespace = in.nextString();
+                    break;
+                case "name":
+                    name = in.nextString();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if(namespace == null || name == null) throw invalid("id", in);
+        return new String[] { namespace, name };
+    }
+
+    private static void writeId(JsonWriter out, String namespace, String name) throws IOException {
+        out.beginObject();
+        out.name("namespace").value(namespace);
+        out.name("name").value(name);
+        out.endObject();
+    }
+
+    /* Parse the canonical form of a UUID without the splitting done by UUID.fromString */
+    static UUID parseUUID(String id) {
+        if(id.length() != 36 || id.charAt(8) != '-' || id.charAt(13) != '-' || id.charAt(18) != '-' || id.charAt(23) != '-')
+            return UUID.fromString(id);
+        long most = (hex(id, 0, 8) << 32) | (hex(id, 9, 13) << 16) | hex(id, 14, 18);
+        long least = (hex(id, 19, 23) << 48) | hex(id, 24, 36);
+        return new UUID(most, least);
+    }
+
+    private static long hex(String s, int start, int end) {
+        long value = 0;
+        for(int i = start; i < end; i++) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if(digit < 0) throw new IllegalArgumentException("Invalid UUID string: " + s);
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    static final class PositionAdapter extends TypeAdapter<Position> {
+        @Override
+        public void write(JsonWriter out, Position position) throws IOException {
+            out.beginObject();
+            out.name("x").value(position.getX());
+            out.name("y").value(position.getY());
+            out.name("z").value(position.getZ());
+            out.endObject();
+        }
+
+        @Override
+        public Position read(JsonReader in) throws IOException {
+            int x = 0, y = 0, z = 0;
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "x":
+                        x = in.nextInt();
+                        break;
+                    case "y":
+                        y = in.nextInt();
+                        break;
+                    case "z":
+                        z = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Position(x, y, z);
+        }
+    }
+
+    static final class BlockTypeIdAdapter extends TypeAdapter<BlockTypeId> {
+        @Override
+        public void write(JsonWriter out, BlockTypeId id) throws IOException {
+            writeId(out, id.getNamespace(), id.getName());
+        }
+
+        @Override
+        public BlockTypeId read(JsonReader in) throws IOException {
+            return read(in, null);
+        }
+
+        /* Read an id, reusing the previous id if it is equal, e.g. for the blocks of a stack */
+        BlockTypeId read(JsonReader in, BlockTypeId previous) throws IOException {
+            String[] id = readId(in);
+            if(previous != null && previous.getName().equals(id[1]) && previous.getNamespace().equals(id[0]))
+                return previous;
+            return new BlockTypeId(id[0], id[1]).intern();
+        }
+    }
+
+    static final class BlockClassIdAdapter extends TypeAdapter<BlockClassId> {
+        @Override
+        public void write(JsonWriter out, BlockClassId id) throws IOException {
+            writeId(out, id.getNamespace(), id.getName());
+        }
+
+        @Override
+        public BlockClassId read(JsonReader in) throws IOException {
+            String[] id = readId(in);
+            return new BlockClassId(id[0], id[1]);
+        }
+    }
+
+    static final class HealthAdapter extends TypeAdapter<Health> {
+        @Override
+        public void write(JsonWriter out, Health health) throws IOException {
+            out.beginObject();
+            out.name("health").value(health.getHealth());
+            out.endObject();
+        }
+
+        @Override
+        public Health read(JsonReader in) throws IOException {
+            return Health.get(readWrappedInt(in, "health"));
+        }
+    }
+
+    static final class DirectionAdapter extends TypeAdapter<Direction> {
+        @Override
+        public void write(JsonWriter out, Direction direction) throws IOException {
+            out.beginObject();
+            out.name("encoding").value(direction.getEncoding());
+            out.endObject();
+        }
+
+        @Override
+        public Direction read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.STRING) return Direction.get(in.nextString());
+            return Direction.get(readWrappedInt(in, "encoding"));
+        }
+    }
+
+    static final class RotationAdapter extends TypeAdapter<Rotation> {
+        @Override
+        public void write(JsonWriter out, Rotation rotation) throws IOException {
+            out.beginObject();
+            out.name("encoding").value(rotation.getEncoding());
+            out.endObject();
+        }
+
+        @Override
+        public Rotation read(JsonReader in) throws IOException {
+            return Rotation.get(readWrappedInt(in, "encoding"));
+        }
+    }
+
+    static final class OrientationAdapter extends TypeAdapter<Orientation> {
+        private final DirectionAdapter directions = new DirectionAdapter();
+        private final RotationAdapter rotations = new RotationAdapter();
+
+        @Override
+        public void write(JsonWriter out, Orientation orientation) throws IOException {
+            out.beginObject();
+            out.name("direction");
+            directions.write(out, orientation.getDirection());
+            out.name("rotation");
+            rotations.write(out, orientation.getRotation());
+            out.endObject();
+        }
+
+        @Override
+        public Orientation read(JsonReader in) throws IOException {
+            Direction direction = Direction.UP;
+            Rotation rotation = Rotation.IDENTITY;
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "direction":
+                        direction = directions.read(in);
+                        break;
+                    case "rotation":
+                        rotation = rotations.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return Orientation.get(direction, rotation);
+        }
+    }
+
+    static final class ColourAdapter extends TypeAdapter<Colour> {
+        @Override
+        public void write(JsonWriter out, Colour colour) throws IOException {
+            out.beginObject();
+            out.name("red").value(colour.getRed());
+            out.name("green").value(colour.getGreen());
+            out.name("blue").value(colour.getBlue());
+            out.endObject();
+        }
+
+        @Override
+        public Colour read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.STRING) return Colour.fromRgbHexString(in.nextString());
+            int red = 0, green = 0, blue = 0;
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "red":
+                        red = in.nextInt();
+                        break;
+                    case "green":
+                        green = in.nextInt();
+                        break;
+                    case "blue":
+                        blue = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return Colour.get(red, green, blue);
+        }
+    }
+
+    static final class LightLevelAdapter extends TypeAdapter<LightLevel> {
+        @Override
+        public void write(JsonWriter out, LightLevel level) throws IOException {
+            out.beginObject();
+            out.name("level").value(level.getLevel());
+            out.endObject();
+        }
+
+        @Override
+        public LightLevel read(JsonReader in) throws IOException {
+            return LightLevel.get(readWrappedInt(in, "level"));
+        }
+    }
+
+    static final class BlockShapeAdapter extends TypeAdapter<BlockShape> {
+        @Override
+        public void write(JsonWriter out, BlockShape shape) throws IOException {
+            out.beginObject();
+            out.name("shape").value(shape.getShape());
+            out.endObject();
+        }
+
+        @Override
+        public BlockShape read(JsonReader in) throws IOException {
+            return BlockShape.fromString(readWrappedString(in, "shape"));
+        }
+    }
+
+    static final class BlockStateAdapter extends TypeAdapter<BlockState> {
+        @Override
+        public void write(JsonWriter out, BlockState state) throws IOException {
+            out.beginObject();
+            out.name("state").value(state.getState());
+            out.endObject();
+        }
+
+        @Override
+        public BlockState read(JsonReader in) throws IOException {
+            return BlockState.fromString(readWrappedString(in, "state"));
+        }
+    }
+
+    static final class BlockAdapter extends TypeAdapter<Block> {
+        private final BlockTypeIdAdapter ids = new BlockTypeIdAdapter();
+        private final HealthAdapter healths = new HealthAdapter();
+        private final OrientationAdapter orientations = new OrientationAdapter();
+
+        @Override
+        public void write(JsonWriter out, Block block) throws IOException {
+            out.beginObject();
+            if(block.getId() != null) {
+                out.name("id").value(block.getId().toString());
+            }
+            if(block.getType() != null) {
+                out.name("type");
+                ids.write(out, block.getType());
+            }
+            if(block.getHealth() != null) {
+                out.name("health");
+                healths.write(out, block.getHealth());
+            }
+            if(block.getOrientation() != null) {
+                out.name("orientation");
+                orientations.write(out, block.getOrientation());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Block read(JsonReader in) throws IOException {
+            return read(in, null);
+        }
+
+        Block read(JsonReader in, BlockTypeId previousType) throws IOException {
+            UUID id = null;
+            BlockTypeId type = null;
+            Health health = Health.PRISTINE;
+            Orientation orientation = Orientation.NORMAL;
+            in.beginObject();
+            while(in.hasNext()) {
+                String name = in.nextName();
+                if(in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch(name) {
+                    case "id":
+                        try {
+                            id = parseUUID(in.nextString());
+                        } catch(IllegalArgumentException e) {
+                            throw new JsonSyntaxException("Invalid block id at " + in.getPath(), e);
+                        }
+                        break;
+                    case "type":
+                        type = ids.read(in, previousType);
+                        break;
+                    case "health":
+                        health = healths.read(in);
+                        break;
+                    case "orientation":
+                        orientation = orientations.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Block(id, type, health, orientation);
+        }
+    }
+
+    static final class StackAdapter extends TypeAdapter<Stack> {
+        private final BlockAdapter blocks = new BlockAdapter();
+
+        @Override
+        public void write(JsonWriter out, Stack stack) throws IOException {
+            out.beginObject();
+            out.name("blocks").beginArray();
+            for(Block block: stack.getBlocks()) {
+                blocks.write(out, block);
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public Stack read(JsonReader in) throws IOException {
+            List<Block> read = new ArrayList<>();
+            in.beginObject();
+            while(in.hasNext()) {
+                if(in.nextName().equals("blocks") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                    in.beginArray();
+                    BlockTypeId previousType = null;
+                    while(in.hasNext()) {
+                        Block block = blocks.read(in, previousType);
+                        previousType = block.getType();
+                        read.add(block);
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            /* Stacks from before 0.1 may be empty, these are read as empty slots */
+            if(read.isEmpty()) return null;
+            try {
+                return new Stack(read.toArray(new Block[read.size()]));
+            } catch(IllegalArgumentException e) {
+                throw new JsonSyntaxException("Invalid stack at " + in.getPath(), e);
+            }
+        }
+    }
+
+    static final class InventoryAdapter extends TypeAdapter<Inventory> {
+        private final StackAdapter stacks = new StackAdapter();
+
+        @Override
+        public void write(JsonWriter out, Inventory inventory) throws IOException {
+            out.beginObject();
+            out.name("stacks").beginArray();
+            for(Stack stack: inventory.getStacks()) {
+                if(stack == null) {
+                    out.nullValue();
+                } else {
+                    stacks.write(out, stack);
+                }
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public Inventory read(JsonReader in) throws IOException {
+            List<Stack> read = new ArrayList<>();
+            in.beginObject();
+            while(in.hasNext()) {
+                if(in.nextName().equals("stacks") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                    in.beginArray();
+                    while(in.hasNext()) {
+                        if(in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            read.add(null);
+                        } else {
+                            read.add(stacks.read(in));
+                        }
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Inventory(read.toArray(new Stack[read.size()]));
+        }
+    }
+
+    static final class BlockTypeAdapter extends TypeAdapter<BlockType> {
+        private final BlockTypeIdAdapter ids = new BlockTypeIdAdapter();
+        private final BlockClassIdAdapter classIds = new BlockClassIdAdapter();
+        private final BlockShapeAdapter shapes = new BlockShapeAdapter();
+        private final BlockStateAdapter states = new BlockStateAdapter();
+        private final ColourAdapter colours = new ColourAdapter();
+        private final LightLevelAdapter levels = new LightLevelAdapter();
+
+        /* Damage multipliers are keyed by the "namespace/name" of the block type or class */
+        private static String key(BlockOrClassId id) {
+            if(id.isBlockTypeId()) {
+                return id.getBlockTypeId().getNamespace() + "/" + id.getBlockTypeId().getName();
+            } else {
+                return id.getBlockClassId().getNamespace() + "/" + id.getBlockClassId().getName();
+            }
+        }
+
+        @Override
+        public void write(JsonWriter out, BlockType type) throws IOException {
+            out.beginObject();
+            if(type.getFaces() != null) {
+                out.name("faces").beginArray();
+                for(int face: type.getFaces()) {
+                    out.value(face);
+                }
+                out.endArray();
+            }
+            if(type.getBlockShape() != null) {
+                out.name("blockShape");
+                shapes.write(out, type.getBlockShape());
+            }
+            out.name("obstacle").value(type.isObstacle());
+            out.name("transparent").value(type.isTransparent());
+            if(type.getBlockState() != null) {
+                out.name("blockState");
+                states.write(out, type.getBlockState());
+            }
+            if(type.getClasses() != null) {
+                out.name("classes").beginArray();
+                for(BlockClassId clazz: type.getClasses()) {
+                    classIds.write(out, clazz);
+                }
+                out.endArray();
+            }
+            out.name("durability").value((Number)type.getDurability());
+            out.name("damage").value((Number)type.getDamage());
+            if(type.getDamageMultipliers() != null) {
+                out.name("damageMultipliers").beginObject();
+                for(Map.Entry<BlockOrClassId, Float> e: type.getDamageMultipliers().entrySet()) {
+                    out.name(key(e.getKey())).value((Number)e.getValue());
+                }
+                out.endObject();
+            }
+            out.name("orientable").value(type.isOrientable());
+            if(type.getDestroyedAs() != null) {
+                out.name("destroyedAs");
+                ids.write(out, type.getDestroyedAs());
+            }
+            if(type.getLightColour() != null) {
+                out.name("lightColour");
+                colours.write(out, type.getLightColour());
+            }
+            if(type.getLightLevel() != null) {
+                out.name("lightLevel");
+                levels.write(out, type.getLightLevel());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public BlockType read(JsonReader in) throws IOException {
+            int[] faces = null;
+            BlockShape shape = BlockShape.BLOCK;
+            boolean obstacle = false;
+            boolean transparent = false;
+            BlockState state = BlockState.SOLID;
+            BlockClassId[] classes = BlockType.NO_CLASSES;
+            float durability = BlockType.DEFAULT_DURABILITY;
+            float damage = BlockType.DEFAULT_DAMAGE;
+            Map<BlockOrClassId, Float> multipliers = BlockType.NO_MULTIPLIERS;
+            boolean orientable = false;
+            BlockTypeId destroyedAs = BlockTypeId.SELF;
+            Colour lightColour = Colour.BLACK;
+            LightLevel lightLevel = LightLevel.DARK;
+            in.beginObject();
+            while(in.hasNext()) {
+                String name = in.nextName();
+                if(in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch(name) {
+                    case "faces":
+                        List<Integer> read = new ArrayList<>();
+                        in.beginArray();
+                        while(in.hasNext()) {
+                            read.add(in.nextInt());
+                        }
+                        in.endArray();
+                        faces = new int[read.size()];
+                        for(int i = 0; i < faces.length; i++) {
+                            faces[i] = read.get(i);
+                        }
+                        break;
+                    /* Before 0.1.7 the shape and state were strings */
+                    case "blockShape":
+                    case "shape":
+                        shape = shapes.read(in);
+                        break;
+                    case "blockState":
+                    case "state":
+                        state = states.read(in);
+                        break;
+                    case "obstacle":
+                        obstacle = in.nextBoolean();
+                        break;
+                    case "transparent":
+                        transparent = in.nextBoolean();
+                        break;
+                    case "classes":
+                        List<BlockClassId> readClasses = new ArrayList<>();
+                        in.beginArray();
+                        while(in.hasNext()) {
+                            readClasses.add(classIds.read(in));
+                        }
+                        in.endArray();
+                        classes = readClasses.toArray(new BlockClassId[readClasses.size()]);
+                        break;
+                    case "durability":
+                        durability = (float)in.nextDouble();
+                        break;
+                    case "damage":
+                        damage = (float)in.nextDouble();
+                        break;
+                    case "damageMultipliers":
+                        multipliers = new HashMap<>();
+                        in.beginObject();
+                        while(in.hasNext()) {
+                            String key = in.nextName();
+                            try {
+                                multipliers.put(BlockOrClassId.fromString(key), (float)in.nextDouble());
+                            } catch(RuntimeException e) {
+                                throw new JsonSyntaxException("Invalid damage multiplier '" + key + "' at " + in.getPath(), e);
+                            }
+                        }
+                        in.endObject();
+                        break;
+                    case "orientable":
+                        orientable = in.nextBoolean();
+                        break;
+                    case "destroyedAs":
+                        destroyedAs = ids.read(in);
+                        break;
+                    case "lightColour":
+                        lightColour = colours.read(in);
+                        break;
+                    case "lightLevel":
+                        lightLevel = levels.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new BlockType(faces, shape, obstacle, transparent, state, classes, durability, damage,
+                    multipliers, orientable, destroyedAs, lightColour, lightLevel);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package konstructs.api;
+
+/**
+ * IndexedIntTriConsumer is a functional interface that accepts the three dimensions
+ * of a position as primitive ints together with the array index of the position.
+ * It is used to iterate over the data of a {@link Box} without allocating a
+ * {@link Position} for each block.
+ * @see Box#forEachIndexed(IndexedIntTriConsumer)
+ */
+public interface IndexedIntTriConsumer {
+    /**
+     * Accept a position and its array index
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @param index The array index of the position
+     */
+    void accept(int x, int y, int z, int index);
+}
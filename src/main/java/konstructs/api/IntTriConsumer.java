@@ -0,0 +1,17 @@
+package konstructs.api;
+
+/**
+ * IntTriConsumer is a functional interface that accepts the three dimensions
+ * of a position as primitive ints. It is used to iterate over positions without
+ * allocating a {@link Position} for each of them.
+ * @see Box#forEach(IntTriConsumer)
+ */
+public interface IntTriConsumer {
+    /**
+     * Accept a position
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     */
+    void accept(int x, int y, int z);
+}
@@ -84,6 +84,13 @@ public final class Matrix {
                 g*m.a + h*m.d + i*m.g, g*m.b + h*m.e + i*m.h, g*m.c + h*m.f + i*m.i);
     }
 
+    public Matrix transpose() {
+        return new Matrix(
+                a, d, g,
+                b, e, h,
+                c, f, i);
+    }
+
     public Position multiply(Position p) {
         return new Position(a*p.getX() + b*p.getY() + c*p.getZ(),
                 d*p.getX() + e*p.getY() + f*p.getZ(),
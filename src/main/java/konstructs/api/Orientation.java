@@ -6,7 +6,56 @@ package konstructs.api;
  * orientation that a block can have,
  */
 public class Orientation {
-    public static final Orientation NORMAL = new Orientation(Direction.UP, Rotation.IDENTITY);
+    /**
+     * The number of distinct orientations (6 directions times 4 rotations)
+     */
+    public static final int NUMBER_OF_ORIENTATIONS = 24;
+
+    private static final Orientation[] ORIENTATIONS = new Orientation[NUMBER_OF_ORIENTATIONS];
+    private static final Matrix[] FACE_POINTED_AT_MATRICES = new Matrix[NUMBER_OF_ORIENTATIONS];
+    private static final Matrix[] FACE_POINTING_IN_MATRICES = new Matrix[NUMBER_OF_ORIENTATIONS];
+    private static final Direction[][] FACE_POINTED_AT = new Direction[NUMBER_OF_ORIENTATIONS][6];
+    private static final Direction[][] FACE_POINTING_IN = new Direction[NUMBER_OF_ORIENTATIONS][6];
+    private static final Orientation[][] COMPOSITIONS = new Orientation[NUMBER_OF_ORIENTATIONS][NUMBER_OF_ORIENTATIONS];
+    private static final Orientation[] INVERSES = new Orientation[NUMBER_OF_ORIENTATIONS];
+
+    static {
+        for(int d = 0; d < 6; d++) {
+            for(int r = 0; r < 4; r++) {
+                Direction direction = Direction.get(d);
+                Rotation rotation = Rotation.get(r);
+                int encoding = d * 4 + r;
+                ORIENTATIONS[encoding] = new Orientation(direction, rotation);
+                FACE_POINTED_AT_MATRICES[encoding] = rotation.getMatrix().multiply(direction.getRotationMatrix());
+                FACE_POINTING_IN_MATRICES[encoding] = direction.getInverseRotationMatrix().multiply(rotation.getInverseMatrix());
+            }
+        }
+        for(int o = 0; o < NUMBER_OF_ORIENTATIONS; o++) {
+            for(int d = 0; d < 6; d++) {
+                Position vector = Direction.get(d).getVector();
+                FACE_POINTED_AT[o][d] = Direction.get(FACE_POINTED_AT_MATRICES[o].multiply(vector));
+                FACE_POINTING_IN[o][d] = Direction.get(FACE_POINTING_IN_MATRICES[o].multiply(vector));
+            }
+        }
+        /* Each of the 24 orientations has a distinct matrix, so compositions and inverses are found by matching */
+        for(int o = 0; o < NUMBER_OF_ORIENTATIONS; o++) {
+            INVERSES[o] = find(FACE_POINTING_IN_MATRICES[o].transpose());
+            for(int p = 0; p < NUMBER_OF_ORIENTATIONS; p++) {
+                COMPOSITIONS[o][p] = find(FACE_POINTING_IN_MATRICES[o].multiply(FACE_POINTING_IN_MATRICES[p]));
+            }
+        }
+    }
+
+    private static Orientation find(Matrix facePointingIn) {
+        for(int o = 0; o < NUMBER_OF_ORIENTATIONS; o++) {
+            if(FACE_POINTING_IN_MATRICES[o].equals(facePointingIn)) {
+                return ORIENTATIONS[o];
+            }
+        }
+        throw new IllegalStateException("No orientation with matrix: " + facePointingIn);
+    }
+
+    public static final Orientation NORMAL = ORIENTATIONS[0];
 
     /**
      * Returns the orientation related to the encoded direction and rotation
@@ -15,7 +64,11 @@ public class Orientation {
      * @return The orientation instance
      */
     public static final Orientation get(int direction, int rotation) {
-        return get(Direction.get(direction), Rotation.get(rotation));
+        if(direction < 0 || direction >= 6)
+            throw new IllegalArgumentException("No direction encoded by: " + direction);
+        if(rotation < 0 || rotation >= 4)
+            throw new IllegalArgumentException("No rotation encoded by: " + rotation);
+        return ORIENTATIONS[direction * 4 + rotation];
     }
 
     /**
@@ -25,12 +78,18 @@ public class Orientation {
      * @return The orientation instance
      */
     public static final Orientation get(Direction direction, Rotation rotation) {
-        /* TODO: Return static instances for all of the 24 orientations */
-        if(direction.equals(Direction.UP) && rotation.equals(Rotation.IDENTITY)) {
-            return NORMAL;
-        } else {
-            return new Orientation(direction, rotation);
-        }
+        return ORIENTATIONS[direction.getEncoding() * 4 + rotation.getEncoding()];
+    }
+
+    /**
+     * Returns the orientation associated with the provided encoding
+     * @param encoding The encoded orientation, see {@link #getEncoding()}
+     * @return The singleton instance of the orientation
+     */
+    public static final Orientation get(int encoding) {
+        if(encoding < 0 || encoding >= NUMBER_OF_ORIENTATIONS)
+            throw new IllegalArgumentException("No orientation encoded by: " + encoding);
+        return ORIENTATIONS[encoding];
     }
 
     private final Direction direction;
@@ -41,6 +100,24 @@ public class Orientation {
         this.rotation = rotation;
     }
 
+    /**
+     * Returns the integer encoding of this orientation. It is the encoding of
+     * the direction times four plus the encoding of the rotation, i.e. a value
+     * from 0 to 23.
+     * @return The integer encoding
+     */
+    public int getEncoding() {
+        return direction.getEncoding() * 4 + rotation.getEncoding();
+    }
+
+    /**
+     * Returns the canonical singleton instance of this orientation
+     * @return The singleton instance
+     */
+    public Orientation canonical() {
+        return ORIENTATIONS[getEncoding()];
+    }
+
     /**
      * Returns the direction of this orientation
      * @return The direction of this orientation
@@ -65,7 +142,7 @@ public class Orientation {
      * @see #translateFacePointedAt(Direction) for a usage example
      */
     public Matrix getFacePointedAtRotationMatrix() {
-        return rotation.getMatrix().multiply(direction.getRotationMatrix());
+        return FACE_POINTED_AT_MATRICES[getEncoding()];
     }
 
     /**
@@ -76,7 +153,7 @@ public class Orientation {
      * @see #translateFacePointingIn(Direction) for a usage example
      */
     public Matrix getFacePointingInRotationMatrix() {
-        return direction.getInverseRotationMatrix().multiply(rotation.getInverseMatrix());
+        return FACE_POINTING_IN_MATRICES[getEncoding()];
     }
 
     /**
@@ -91,7 +168,7 @@ public class Orientation {
      * @return The translated direction
      */
     public Direction translateFacePointedAt(Direction dir) {
-        return Direction.get(getFacePointedAtRotationMatrix().multiply(dir.getVector()));
+        return FACE_POINTED_AT[getEncoding()][dir.getEncoding()];
     }
 
     /**
@@ -105,7 +182,29 @@ public class Orientation {
      * @return The direction of the face after the block was rotated
      */
     public Direction translateFacePointingIn(Direction dir) {
-        return Direction.get(getFacePointingInRotationMatrix().multiply(dir.getVector()));
+        return FACE_POINTING_IN[getEncoding()][dir.getEncoding()];
+    }
+
+    /**
+     * Returns the orientation of first rotating a block by other and then by this
+     * orientation. For any direction, translating the face pointing in it with the
+     * composed orientation gives the same direction as first translating it with other
+     * and then with this orientation.
+     * @param other The orientation applied first
+     * @return The composed orientation
+     * @see #translateFacePointingIn(Direction)
+     */
+    public Orientation compose(Orientation other) {
+        return COMPOSITIONS[getEncoding()][other.getEncoding()];
+    }
+
+    /**
+     * Returns the inverse of this orientation, i.e. the orientation that rotates
+     * a block back to {@link #NORMAL} when composed with this orientation.
+     * @return The inverse orientation
+     */
+    public Orientation inverse() {
+        return INVERSES[getEncoding()];
     }
 
     @Override
@@ -115,8 +214,8 @@ public class Orientation {
 
         Orientation that = (Orientation) o;
 
-        if (direction != that.direction) return false;
-        return rotation == that.rotation;
+        if (!direction.equals(that.direction)) return false;
+        return rotation.equals(that.rotation);
 
     }
 
@@ -0,0 +1,215 @@
+package konstructs.api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PaletteBlockArray is a compact, immutable array of blocks. Instead of one
+ * {@link BlockTypeId} reference per block, it keeps a palette of the distinct
+ * block types and a bit packed index into the palette per block. Each index uses
+ * ceil(log2(palette size)) bits, e.g. a box with 12 distinct block types uses 4 bits
+ * per block, and a box of a single block type uses no bits at all. The indexes
+ * are packed without gaps into a long array.
+ * <p>
+ *     The array is indexed just as the BlockTypeId array it was created from, so
+ *     for a box in the linear layout {@link Box#get(Position, PaletteBlockArray)}
+ *     and {@link Box#getLocal(Position, PaletteBlockArray)} can be used. Null
+ *     elements (e.g. padding of other layouts) are kept as a null palette entry.
+ * </p>
+ */
+public final class PaletteBlockArray implements Serializable {
+    private final BlockTypeId[] palette;
+    private final long[] data;
+    private final int size;
+    private final int bits;
+
+    /**
+     * Create a palette encoded copy of an array of blocks. The palette is ordered
+     * by the first occurrence of each block type in the array.
+     * @param blocks The blocks to encode
+     */
+    public PaletteBlockArray(BlockTypeId[] blocks) {
+        Map<BlockTypeId, Integer> indexes = new HashMap<>();
+        List<BlockTypeId> palette = new ArrayList<>();
+        int[] paletteIndexes = new int[blocks.length];
+        BlockTypeId last = null;
+        int lastIndex = -1;
+        for(int i = 0; i < blocks.length; i++) {
+            BlockTypeId id = blocks[i];
+            if(id != last || lastIndex < 0) {
+                Integer index = indexes.get(id);
+                if(index == null) {
+                    index = palette.size();
+                    palette.add(id);
+                    indexes.put(id, index);
+                }
+                last = id;
+                lastIndex = index;
+            }
+            paletteIndexes[i] = lastIndex;
+        }
+        this.palette = palette.toArray(new BlockTypeId[palette.size()]);
+        this.size = blocks.length;
+        this.bits = bitsFor(this.palette.length);
+        this.data = new long[dataLength(size, bits)];
+        for(int i = 0; i < size; i++) {
+            set(i, paletteIndexes[i]);
+        }
+    }
+
+    /**
+     * Create a PaletteBlockArray from its encoded form
+     * @param palette The distinct blocks
+     * @param data The bit packed palette indexes, using {@link #bitsFor(int)} bits per block
+     * @param size The number of blocks
+     */
+    public PaletteBlockArray(BlockTypeId[] palette, long[] data, int size) {
+        if(size < 0)
+            throw new IllegalArgumentException("Size must not be negative: " + size);
+        if(size > 0 && palette.length == 0)
+            throw new IllegalArgumentException("Palette must not be empty");
+        this.palette = palette;
+        this.size = size;
+        this.bits = bitsFor(palette.length);
+        if(data.length < dataLength(size, bits))
+            throw new IllegalArgumentException("Data is too small for " + size + " blocks of " + bits + " bits");
+        this.data = data;
+        for(int i = 0; i < size; i++) {
+            if(getPaletteIndex(i) >= palette.length)
+                throw new IllegalArgumentException("Palette index out of range at: " + i);
+        }
+    }
+
+    /**
+     * Returns the number of bits used per block for a palette size
+     * @param paletteSize The number of distinct blocks
+     * @return The number of bits, ceil(log2(paletteSize))
+     */
+    public static int bitsFor(int paletteSize) {
+        return paletteSize <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+
+    private static int dataLength(int size, int bits) {
+        return (int)(((long)size * bits + 63) >>> 6);
+    }
+
+    private void set(int index, int value) {
+        if(bits == 0) return;
+        long bit = (long)index * bits;
+        int word = (int)(bit >>> 6);
+        int offset = (int)(bit & 63);
+        data[word] |= (long)value << offset;
+        if(offset + bits > 64) {
+            data[word + 1] |= (long)value >>> (64 - offset);
+        }
+    }
+
+    /**
+     * Returns the palette index of a block
+     * @param index The array index of the block
+     * @return The index into {@link #getPalette()}
+     */
+    public int getPaletteIndex(int index) {
+        if(bits == 0) return 0;
+        long bit = (long)index * bits;
+        int word = (int)(bit >>> 6);
+        int offset = (int)(bit & 63);
+        long value = data[word] >>> offset;
+        if(offset + bits > 64) {
+            value |= data[word + 1] << (64 - offset);
+        }
+        return (int)value & ((1 << bits) - 1);
+    }
+
+    /**
+     * Returns a block
+     * @param index The array index of the block
+     * @return The block
+     */
+    public BlockTypeId get(int index) {
+        if(index < 0 || index >= size)
+            throw new ArrayIndexOutOfBoundsException(index);
+        return palette[getPaletteIndex(index)];
+    }
+
+    /**
+     * Returns the distinct blocks of this array
+     * @return The palette
+     */
+    public BlockTypeId[] getPalette() {
+        return palette;
+    }
+
+    /**
+     * Returns the bit packed palette indexes
+     * @return The packed indexes
+     */
+    public long[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the number of bits used per block
+     * @return The number of bits
+     */
+    public int getBitsPerBlock() {
+        return bits;
+    }
+
+    /**
+     * Returns the number of blocks
+     * @return The number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decode this array into one BlockTypeId per block
+     * @return A new array of the blocks
+     */
+    public BlockTypeId[] toArray() {
+        BlockTypeId[] blocks = new BlockTypeId[size];
+        if(bits == 0) {
+            if(size > 0) Arrays.fill(blocks, palette[0]);
+            return blocks;
+        }
+        for(int i = 0; i < size; i++) {
+            blocks[i] = palette[getPaletteIndex(i)];
+        }
+        return blocks;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PaletteBlockArray that = (PaletteBlockArray) o;
+
+        if (size != that.size) return false;
+        if (!Arrays.equals(palette, that.palette)) return false;
+        return Arrays.equals(data, that.data);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(palette);
+        result = 31 * result + Arrays.hashCode(data);
+        result = 31 * result + size;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PaletteBlockArray(" +
+                "palette=" + Arrays.toString(palette) +
+                ", size=" + size +
+                ", bits=" + bits +
+                ')';
+    }
+}
@@ -23,6 +23,114 @@ public final class Position {
       UP, DOWN, RIGHT, LEFT, FORWARD, BACKWARD
     };
 
+    /**
+     * The number of bits used for each dimension when a position is
+     * packed into a long.
+     * @see #pack(int, int, int)
+     */
+    public final static int PACKED_BITS = 21;
+
+    /**
+     * The smallest value of any dimension that can be packed into a long
+     */
+    public final static int PACKED_MIN = -(1 << (PACKED_BITS - 1));
+
+    /**
+     * The largest value of any dimension that can be packed into a long
+     */
+    public final static int PACKED_MAX = (1 << (PACKED_BITS - 1)) - 1;
+
+    private final static long PACKED_MASK = (1L << PACKED_BITS) - 1L;
+    private final static int PACKED_X_SHIFT = PACKED_BITS * 2;
+    private final static int PACKED_Y_SHIFT = PACKED_BITS;
+
+    /**
+     * Pack the three dimensions of a position into a single long. Each
+     * dimension uses {@link #PACKED_BITS} bits and must be within
+     * {@link #PACKED_MIN} and {@link #PACKED_MAX}. The packed value is
+     * always positive, so a negative long never represents a position.
+     * This is the canonical 64-bit encoding of a position used by e.g.
+     * {@link PositionLongMap} and {@link PositionLongSet}.
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @return The packed position
+     * @throws IllegalArgumentException if any dimension is out of range
+     */
+    public static long pack(int x, int y, int z) {
+        if(!isPackable(x, y, z))
+            throw new IllegalArgumentException("Position can not be packed, all dimensions must be within " +
+                    PACKED_MIN + " and " + PACKED_MAX);
+        return ((x & PACKED_MASK) << PACKED_X_SHIFT) | ((y & PACKED_MASK) << PACKED_Y_SHIFT) | (z & PACKED_MASK);
+    }
+
+    /**
+     * Check if a position can be packed into a long
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @return True if all dimensions are within {@link #PACKED_MIN} and {@link #PACKED_MAX}
+     * @see #pack(int, int, int)
+     */
+    public static boolean isPackable(int x, int y, int z) {
+        return x >= PACKED_MIN && x <= PACKED_MAX && y >= PACKED_MIN && y <= PACKED_MAX
+                && z >= PACKED_MIN && z <= PACKED_MAX;
+    }
+
+    /**
+     * Returns the hash code of a position, without creating it
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @return The same hash code as {@link #hashCode()} of the position
+     */
+    public static int hashCode(int x, int y, int z) {
+        int result = x;
+        result = 31 * result + y;
+        result = 31 * result + z;
+        return result;
+    }
+
+    /**
+     * Unpack the x dimension of a packed position
+     * @param packed The packed position
+     * @return The x dimension
+     * @see #pack(int, int, int)
+     */
+    public static int unpackX(long packed) {
+        return (int)(packed << (64 - PACKED_BITS * 3) >> (64 - PACKED_BITS));
+    }
+
+    /**
+     * Unpack the y dimension of a packed position
+     * @param packed The packed position
+     * @return The y dimension
+     * @see #pack(int, int, int)
+     */
+    public static int unpackY(long packed) {
+        return (int)(packed << (64 - PACKED_BITS * 2) >> (64 - PACKED_BITS));
+    }
+
+    /**
+     * Unpack the z dimension of a packed position
+     * @param packed The packed position
+     * @return The z dimension
+     * @see #pack(int, int, int)
+     */
+    public static int unpackZ(long packed) {
+        return (int)(packed << (64 - PACKED_BITS) >> (64 - PACKED_BITS));
+    }
+
+    /**
+     * Create a new position from a packed position
+     * @param packed The packed position
+     * @return The new position
+     * @see #pack(int, int, int)
+     */
+    public static Position fromPacked(long packed) {
+        return new Position(unpackX(packed), unpackY(packed), unpackZ(packed));
+    }
+
     private final int x;
     private final int y;
     private final int z;
@@ -185,6 +293,24 @@ public final class Position {
         return z;
     }
 
+    /**
+     * Pack this position into a single long
+     * @return The packed position
+     * @see #pack(int, int, int)
+     */
+    public long pack() {
+        return pack(x, y, z);
+    }
+
+    /**
+     * Check if this position can be packed into a single long
+     * @return True if this position can be packed
+     * @see #isPackable(int, int, int)
+     */
+    public boolean isPackable() {
+        return isPackable(x, y, z);
+    }
+
     /**
      * Get positions of all adjacent blocks
      * @return Array with all adjacent positions
@@ -214,10 +340,7 @@ public final class Position {
 
     @Override
     public int hashCode() {
-        int result = x;
-        result = 31 * result + y;
-        result = 31 * result + z;
-        return result;
+        return hashCode(x, y, z);
     }
 
     @Override
@@ -0,0 +1,400 @@
+package konstructs.api;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PositionLongMap is a map from positions to values that stores the positions
+ * in their packed form (see {@link Position#pack(int, int, int)}). It uses open
+ * addressing with linear probing over a primitive long array, which means that
+ * no objects are allocated per entry. This makes it a much cheaper alternative
+ * to a <code>Map&lt;Position, T&gt;</code> when handling large sets of blocks,
+ * e.g. when replacing blocks with {@link konstructs.api.messages.ReplaceBlocks}.
+ * <p>
+ *     Unlike most classes of the API this class is mutable. When it has been sent
+ *     in a message it must no longer be modified. Null values are not supported.
+ * </p>
+ * @param <T> The type of the values, e.g. BlockTypeId
+ * @see PositionLongSet
+ */
+public final class PositionLongMap<T> {
+    private static final long EMPTY = -1L;
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Visitor used to iterate over all entries of the map without allocation
+     * @param <T> The type of the values
+     */
+    public interface Visitor<T> {
+        /**
+         * Called once for each entry in the map
+         * @param position The packed position of the entry
+         * @param value The value of the entry
+         */
+        void visit(long position, T value);
+    }
+
+    /**
+     * Create a new map containing all entries of a position map
+     * @param map The map to copy entries from
+     * @param <T> The type of the values
+     * @return The new map
+     * @throws IllegalArgumentException if any position can not be packed
+     * @see Position#isPackable()
+     */
+    public static <T> PositionLongMap<T> fromMap(Map<Position, T> map) {
+        PositionLongMap<T> packed = new PositionLongMap<>(map.size());
+        for(Map.Entry<Position, T> e: map.entrySet()) {
+            packed.put(e.getKey(), e.getValue());
+        }
+        return packed;
+    }
+
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int)key;
+    }
+
+    static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while(capacity * 2 / 3 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int threshold;
+
+    /**
+     * Create a new empty map
+     */
+    public PositionLongMap() {
+        this(0);
+    }
+
+    /**
+     * Create a new empty map with room for a number of entries
+     * @param expectedSize The number of entries the map should hold without resizing
+     */
+    public PositionLongMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = capacity * 2 / 3;
+    }
+
+    private int slot(long key) {
+        int i = hash(key) & mask;
+        while(keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * The number of entries in this map
+     * @return The number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if this map is empty
+     * @return True if this map has no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the value of a packed position
+     * @param position The packed position
+     * @return The value or null if the position is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long position) {
+        if(position < 0) return null;
+        return (T)values[slot(position)];
+    }
+
+    /**
+     * Get the value of a position
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @return The value or null if the position is not in the map
+     */
+    public T get(int x, int y, int z) {
+        return get(Position.pack(x, y, z));
+    }
+
+    /**
+     * Get the value of a position
+     * @param position The position
+     * @return The value or null if the position is not in the map
+     */
+    public T get(Position position) {
+        return get(position.pack());
+    }
+
+    /**
+     * Check if the map contains a packed position
+     * @param position The packed position
+     * @return True if the map contains the position
+     */
+    public boolean containsKey(long position) {
+        return position >= 0 && keys[slot(position)] != EMPTY;
+    }
+
+    /**
+     * Check if the map contains a position
+     * @param position The position
+     * @return True if the map contains the position
+     */
+    public boolean containsKey(Position position) {
+        return containsKey(position.pack());
+    }
+
+    /**
+     * Associate a value with a packed position
+     * @param position The packed position
+     * @param value The value, must not be null
+     * @return The previous value of the position or null
+     */
+    @SuppressWarnings("unchecked")
+    public T put(long position, T value) {
+        if(position < 0)
+            throw new IllegalArgumentException("Not a packed position: " + position);
+        if(value == null)
+            throw new IllegalArgumentException("Null values are not supported");
+        int i = slot(position);
+        T old = (T)values[i];
+        if(keys[i] == EMPTY) {
+            keys[i] = position;
+            size++;
+        }
+        values[i] = value;
+        if(size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return old;
+    }
+
+    /**
+     * Associate a value with a position
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @param value The value, must not be null
+     * @return The previous value of the position or null
+     * @throws IllegalArgumentException if the position can not be packed
+     */
+    public T put(int x, int y, int z, T value) {
+        return put(Position.pack(x, y, z), value);
+    }
+
+    /**
+     * Associate a value with a position
+     * @param position The position
+     * @param value The value, must not be null
+     * @return The previous value of the position or null
+     * @throws IllegalArgumentException if the position can not be packed
+     */
+    public T put(Position position, T value) {
+        return put(position.pack(), value);
+    }
+
+    /**
+     * Add all entries of another map to this map
+     * @param map The map to copy entries from
+     */
+    public void putAll(PositionLongMap<? extends T> map) {
+        for(int i = 0; i < map.keys.length; i++) {
+            if(map.keys[i] != EMPTY) {
+                @SuppressWarnings("unchecked")
+                T value = (T)map.values[i];
+                put(map.keys[i], value);
+            }
+        }
+    }
+
+    /**
+     * Remove a packed position from the map
+     * @param position The packed position
+     * @return The value of the removed position or null
+     */
+    @SuppressWarnings("unchecked")
+    public T remove(long position) {
+        if(position < 0) return null;
+        int i = slot(position);
+        if(keys[i] == EMPTY) return null;
+        T old = (T)values[i];
+        /* Shift back following entries of the probe sequence */
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(keys[j] == EMPTY) break;
+            int k = hash(keys[j]) & mask;
+            if(i <= j ? (i < k && k <= j) : (i < k || k <= j)) continue;
+            keys[i] = keys[j];
+            values[i] = values[j];
+            i = j;
+        }
+        keys[i] = EMPTY;
+        values[i] = null;
+        size--;
+        return old;
+    }
+
+    /**
+     * Remove a position from the map
+     * @param position The position
+     * @return The value of the removed position or null
+     */
+    public T remove(Position position) {
+        return remove(position.pack());
+    }
+
+    /**
+     * Remove all entries from this map
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != EMPTY) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Visit all entries of this map. The order is undefined.
+     * @param visitor The visitor to call for each entry
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super T> visitor) {
+        for(int i = 0; i < keys.length; i++) {
+            if(keys[i] != EMPTY) {
+                visitor.visit(keys[i], (T)values[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns all packed positions of this map
+     * @return An array of all packed positions
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        for(long key: keys) {
+            if(key != EMPTY) {
+                result[n++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a position map with the same entries as this map
+     * @return A new position map
+     */
+    public Map<Position, T> toMap() {
+        final Map<Position, T> map = new HashMap<>(size * 4 / 3 + 1);
+        forEach(new Visitor<T>() {
+            @Override
+            public void visit(long position, T value) {
+                map.put(Position.fromPacked(position), value);
+            }
+        });
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PositionLongMap<?> that = (PositionLongMap<?>) o;
+
+        if (size != that.size) return false;
+        for(int i = 0; i < keys.length; i++) {
+            if(keys[i] != EMPTY && !values[i].equals(that.get(keys[i]))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check if this map has the same entries as a position map, without converting
+     * either map. Positions of the other map that can not be packed are never equal.
+     * @param map The position map
+     * @return True if both maps have the same entries
+     */
+    public boolean equalsMap(Map<Position, ?> map) {
+        if(size != map.size()) return false;
+        for(Map.Entry<Position, ?> e: map.entrySet()) {
+            Position p = e.getKey();
+            if(!p.isPackable()) return false;
+            T value = get(p.pack());
+            if(value == null || !value.equals(e.getValue())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code of this map, which is the same as the hash code of
+     * a position map with the same entries, see {@link #toMap()}
+     * @return The hash code
+     */
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for(int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            if(key != EMPTY) {
+                result += Position.hashCode(Position.unpackX(key), Position.unpackY(key), Position.unpackZ(key))
+                        ^ values[i].hashCode();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("PositionLongMap(");
+        boolean first = true;
+        for(int i = 0; i < keys.length; i++) {
+            if(keys[i] != EMPTY) {
+                if(!first) builder.append(", ");
+                builder.append(Position.fromPacked(keys[i])).append('=').append(values[i]);
+                first = false;
+            }
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,284 @@
+package konstructs.api;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * PositionLongSet is a set of positions that stores the positions in their
+ * packed form (see {@link Position#pack(int, int, int)}). It uses open
+ * addressing with linear probing over a primitive long array, which means
+ * that no objects are allocated per position.
+ * <p>
+ *     Unlike most classes of the API this class is mutable. When it has been sent
+ *     in a message it must no longer be modified.
+ * </p>
+ * @see PositionLongMap
+ */
+public final class PositionLongSet {
+    private static final long EMPTY = -1L;
+
+    /**
+     * Create a new set containing all positions of a collection
+     * @param positions The positions to add to the set
+     * @return The new set
+     */
+    public static PositionLongSet fromCollection(Collection<Position> positions) {
+        PositionLongSet set = new PositionLongSet(positions.size());
+        for(Position p: positions) {
+            set.add(p);
+        }
+        return set;
+    }
+
+    private long[] keys;
+    private int size;
+    private int mask;
+    private int threshold;
+
+    /**
+     * Create a new empty set
+     */
+    public PositionLongSet() {
+        this(0);
+    }
+
+    /**
+     * Create a new empty set with room for a number of positions
+     * @param expectedSize The number of positions the set should hold without resizing
+     */
+    public PositionLongSet(int expectedSize) {
+        allocate(PositionLongMap.capacityFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        threshold = capacity * 2 / 3;
+    }
+
+    private int slot(long key) {
+        int i = PositionLongMap.hash(key) & mask;
+        while(keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * The number of positions in this set
+     * @return The number of positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if this set is empty
+     * @return True if this set has no positions
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Check if the set contains a packed position
+     * @param position The packed position
+     * @return True if the set contains the position
+     */
+    public boolean contains(long position) {
+        return position >= 0 && keys[slot(position)] != EMPTY;
+    }
+
+    /**
+     * Check if the set contains a position
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @return True if the set contains the position
+     */
+    public boolean contains(int x, int y, int z) {
+        return contains(Position.pack(x, y, z));
+    }
+
+    /**
+     * Check if the set contains a position
+     * @param position The position
+     * @return True if the set contains the position
+     */
+    public boolean contains(Position position) {
+        return contains(position.pack());
+    }
+
+    /**
+     * Add a packed position to the set
+     * @param position The packed position
+     * @return True if the position was not already in the set
+     */
+    public boolean add(long position) {
+        if(position < 0)
+            throw new IllegalArgumentException("Not a packed position: " + position);
+        int i = slot(position);
+        if(keys[i] != EMPTY) return false;
+        keys[i] = position;
+        size++;
+        if(size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Add a position to the set
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @return True if the position was not already in the set
+     */
+    public boolean add(int x, int y, int z) {
+        return add(Position.pack(x, y, z));
+    }
+
+    /**
+     * Add a position to the set
+     * @param position The position
+     * @return True if the position was not already in the set
+     */
+    public boolean add(Position position) {
+        return add(position.pack());
+    }
+
+    /**
+     * Remove a packed position from the set
+     * @param position The packed position
+     * @return True if the position was in the set
+     */
+    public boolean remove(long position) {
+        if(position < 0) return false;
+        int i = slot(position);
+        if(keys[i] == EMPTY) return false;
+        /* Shift back following entries of the probe sequence */
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(keys[j] == EMPTY) break;
+            int k = PositionLongMap.hash(keys[j]) & mask;
+            if(i <= j ? (i < k && k <= j) : (i < k || k <= j)) continue;
+            keys[i] = keys[j];
+            i = j;
+        }
+        keys[i] = EMPTY;
+        size--;
+        return true;
+    }
+
+    /**
+     * Remove a position from the set
+     * @param position The position
+     * @return True if the position was in the set
+     */
+    public boolean remove(Position position) {
+        return remove(position.pack());
+    }
+
+    /**
+     * Remove all positions from this set
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        allocate(capacity);
+        for(long key: oldKeys) {
+            if(key != EMPTY) {
+                keys[slot(key)] = key;
+            }
+        }
+    }
+
+    /**
+     * Visit all packed positions of this set. The order is undefined.
+     * @param consumer The consumer to call for each packed position
+     */
+    public void forEach(LongConsumer consumer) {
+        for(long key: keys) {
+            if(key != EMPTY) {
+                consumer.accept(key);
+            }
+        }
+    }
+
+    /**
+     * Returns all packed positions of this set
+     * @return An array of all packed positions
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int n = 0;
+        for(long key: keys) {
+            if(key != EMPTY) {
+                result[n++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a set of positions with the same positions as this set
+     * @return A new set of positions
+     */
+    public Set<Position> toSet() {
+        Set<Position> set = new HashSet<>(size * 4 / 3 + 1);
+        for(long key: keys) {
+            if(key != EMPTY) {
+                set.add(Position.fromPacked(key));
+            }
+        }
+        return set;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PositionLongSet that = (PositionLongSet) o;
+
+        if (size != that.size) return false;
+        for(long key: keys) {
+            if(key != EMPTY && !that.contains(key)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for(long key: keys) {
+            if(key != EMPTY) {
+                result += PositionLongMap.hash(key);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("PositionLongSet(");
+        boolean first = true;
+        for(long key: keys) {
+            if(key != EMPTY) {
+                if(!first) builder.append(", ");
+                builder.append(Position.fromPacked(key));
+                first = false;
+            }
+        }
+        return builder.append(')').toString();
+    }
+}
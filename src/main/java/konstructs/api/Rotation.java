@@ -53,6 +53,18 @@ public class Rotation {
         }
     }
 
+    private static final Rotation[] INVERSES = {
+            IDENTITY, RIGHT, LEFT, HALF
+    };
+
+    /* Indexed by the encoding of the first and second rotation */
+    private static final Rotation[][] COMPOSITIONS = {
+            { IDENTITY, LEFT, RIGHT, HALF },
+            { LEFT, HALF, IDENTITY, RIGHT },
+            { RIGHT, IDENTITY, HALF, LEFT },
+            { HALF, RIGHT, LEFT, IDENTITY }
+    };
+
     private final int encoding;
 
     private Rotation(int encoding) {
@@ -120,6 +132,24 @@ public class Rotation {
         }
     }
 
+    /**
+     * Returns the inverse of this rotation
+     * @return The rotation that rotates back to the identity
+     */
+    public Rotation inverse() {
+        return INVERSES[encoding];
+    }
+
+    /**
+     * Returns the rotation of first rotating by this and then by another rotation.
+     * Since all rotations are around the same axis, the order does not matter.
+     * @param other The other rotation
+     * @return The composed rotation
+     */
+    public Rotation compose(Rotation other) {
+        return COMPOSITIONS[encoding][other.encoding];
+    }
+
     /**
      * Returns the integer encoding of this rotation
      * @return The integer encoding
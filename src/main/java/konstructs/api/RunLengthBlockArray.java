@@ -0,0 +1,310 @@
+package konstructs.api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * RunLengthBlockArray is a compact, immutable array of the blocks of a box in
+ * the linear layout (see {@link Box#arrayIndexLocal(Position)}). Each row of
+ * blocks along the z axis, the innermost axis of the layout, is stored as runs
+ * of equal blocks. Regions of vacuum, long runs of stone or a box filled with
+ * a single block type therefore only need a few runs per row, e.g.
+ * <pre>
+ *     RunLengthBlockArray stone = RunLengthBlockArray.fill(box.getSize(), stoneId);
+ * </pre>
+ * <p>
+ *     Runs never cross a row, so the runs of each row are found with a per row
+ *     offset and random access is a binary search within a row. The runs can be
+ *     iterated without decoding the array using {@link #forEachRun(RunVisitor)}.
+ *     Null blocks are stored as runs of null, e.g. to mark blocks that should not be
+ *     replaced by {@link konstructs.api.messages.ReplaceBlocks}.
+ * </p>
+ */
+public final class RunLengthBlockArray implements Serializable {
+
+    /**
+     * Visitor used to iterate over all runs of the array
+     */
+    public interface RunVisitor {
+        /**
+         * Called once for each run, in the order of the array
+         * @param start The array index of the first block of the run
+         * @param end The array index after the last block of the run
+         * @param type The block of the run, may be null
+         */
+        void visit(int start, int end, BlockTypeId type);
+    }
+
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final BlockTypeId[] types;
+    private final int[] ends;
+    private final int[] rowOffsets;
+
+    /**
+     * Create a run length encoded copy of the blocks of a box
+     * @param size The size of the box
+     * @param blocks The blocks of the box, in the linear layout
+     */
+    public RunLengthBlockArray(Position size, BlockTypeId[] blocks) {
+        this.sizeX = size.getX();
+        this.sizeY = size.getY();
+        this.sizeZ = size.getZ();
+        int rows = sizeX * sizeY;
+        if(blocks.length < rows * sizeZ)
+            throw new IllegalArgumentException("Blocks array is too small for size: " + size);
+        List<BlockTypeId> types = new ArrayList<>();
+        int[] ends = new int[Math.max(rows, 16)];
+        int runs = 0;
+        this.rowOffsets = new int[rows + 1];
+        int i = 0;
+        for(int row = 0; row < rows; row++) {
+            rowOffsets[row] = runs;
+            int rowEnd = i + sizeZ;
+            while(i < rowEnd) {
+                BlockTypeId type = blocks[i];
+                i++;
+                while(i < rowEnd && blocks[i] == type) i++;
+                /* References are compared first, equal ids are merged too */
+                if(runs > rowOffsets[row] && equal(types.get(runs - 1), type)) {
+                    ends[runs - 1] = i;
+                    continue;
+                }
+                if(runs == ends.length) ends = Arrays.copyOf(ends, runs * 2);
+                types.add(type);
+                ends[runs++] = i;
+            }
+        }
+        rowOffsets[rows] = runs;
+        this.types = types.toArray(new BlockTypeId[runs]);
+        this.ends = Arrays.copyOf(ends, runs);
+    }
+
+    /**
+     * Create a RunLengthBlockArray from its encoded form
+     * @param size The size of the box
+     * @param types The block of each run
+     * @param ends The array index after the last block of each run
+     * @param rowOffsets The index of the first run of each row along the z axis,
+     *                   followed by the total number of runs
+     */
+    public RunLengthBlockArray(Position size, BlockTypeId[] types, int[] ends, int[] rowOffsets) {
+        this.sizeX = size.getX();
+        this.sizeY = size.getY();
+        this.sizeZ = size.getZ();
+        int rows = sizeX * sizeY;
+        if(types.length != ends.length)
+            throw new IllegalArgumentException("There must be one end per run");
+        if(rowOffsets.length != rows + 1 || rowOffsets[rows] != types.length)
+            throw new IllegalArgumentException("There must be one row offset per row followed by the number of runs");
+        for(int row = 0; row < rows; row++) {
+            int previous = row * sizeZ;
+            for(int run = rowOffsets[row]; run < rowOffsets[row + 1]; run++) {
+                if(ends[run] <= previous)
+                    throw new IllegalArgumentException("Runs must not be empty: " + run);
+                previous = ends[run];
+            }
+            if(previous != (row + 1) * sizeZ)
+                throw new IllegalArgumentException("The runs of a row must cover the row: " + row);
+        }
+        this.types = types;
+        this.ends = ends;
+        this.rowOffsets = rowOffsets;
+    }
+
+    /**
+     * Create a RunLengthBlockArray with all blocks of the same type, i.e. one run per row
+     * @param size The size of the box
+     * @param type The block type of all blocks
+     * @return The new array
+     */
+    public static RunLengthBlockArray fill(Position size, BlockTypeId type) {
+        int rows = size.getX() * size.getY();
+        int runs = size.getZ() > 0 ? rows : 0;
+        BlockTypeId[] types = new BlockTypeId[runs];
+        int[] ends = new int[runs];
+        int[] rowOffsets = new int[rows + 1];
+        for(int row = 0; row < rows; row++) {
+            rowOffsets[row] = runs > 0 ? row : 0;
+            if(runs > 0) {
+                types[row] = type;
+                ends[row] = (row + 1) * size.getZ();
+            }
+        }
+        rowOffsets[rows] = runs;
+        return new RunLengthBlockArray(size, types, ends, rowOffsets);
+    }
+
+    private static boolean equal(BlockTypeId a, BlockTypeId b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    /**
+     * Returns the block at an array index
+     * @param index The array index of the block, in the linear layout
+     * @return The block
+     */
+    public BlockTypeId get(int index) {
+        if(index < 0 || index >= sizeX * sizeY * sizeZ)
+            throw new ArrayIndexOutOfBoundsException(index);
+        int row = index / sizeZ;
+        /* Binary search for the first run of the row that ends after the index */
+        int low = rowOffsets[row];
+        int high = rowOffsets[row + 1] - 1;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(ends[mid] <= index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return types[low];
+    }
+
+    /**
+     * Returns the block at a local position
+     * @param p A Position that is relative to the from corner of the box
+     * @return The block
+     */
+    public BlockTypeId getLocal(Position p) {
+        return get((p.getX() * sizeY + p.getY()) * sizeZ + p.getZ());
+    }
+
+    /**
+     * Call the visitor for each run of the array, in order
+     * @param visitor The visitor
+     */
+    public void forEachRun(RunVisitor visitor) {
+        int start = 0;
+        for(int run = 0; run < ends.length; run++) {
+            visitor.visit(start, ends[run], types[run]);
+            start = ends[run];
+        }
+    }
+
+    /**
+     * Returns the size of the box of this array
+     * @return The size
+     */
+    public Position getSize() {
+        return new Position(sizeX, sizeY, sizeZ);
+    }
+
+    /**
+     * Returns the number of blocks in this array
+     * @return The number of blocks
+     */
+    public int getNumberOfBlocks() {
+        return sizeX * sizeY * sizeZ;
+    }
+
+    /**
+     * Returns the number of runs in this array
+     * @return The number of runs
+     */
+    public int getNumberOfRuns() {
+        return types.length;
+    }
+
+    /**
+     * Returns the block of each run
+     * @return The blocks of the runs
+     */
+    public BlockTypeId[] getTypes() {
+        return types;
+    }
+
+    /**
+     * Returns the array index after the last block of each run
+     * @return The ends of the runs
+     */
+    public int[] getEnds() {
+        return ends;
+    }
+
+    /**
+     * Returns the index of the first run of each row, followed by the number of runs
+     * @return The row offsets
+     */
+    public int[] getRowOffsets() {
+        return rowOffsets;
+    }
+
+    /**
+     * Decode this array into one BlockTypeId per block
+     * @return A new array of the blocks, in the linear layout
+     */
+    public BlockTypeId[] toArray() {
+        BlockTypeId[] blocks = new BlockTypeId[getNumberOfBlocks()];
+        int start = 0;
+        for(int run = 0; run < ends.length; run++) {
+            if(types[run] != null) Arrays.fill(blocks, start, ends[run], types[run]);
+            start = ends[run];
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns a mapping from packed global positions to the blocks of this array.
+     * Null blocks are not included.
+     * @param from The from corner of the box of this array
+     * @return The packed map of the blocks
+     * @see Box#getAsPackedMap(Object[])
+     */
+    public PositionLongMap<BlockTypeId> getAsPackedMap(Position from) {
+        PositionLongMap<BlockTypeId> map = new PositionLongMap<>(getNumberOfBlocks());
+        int start = 0;
+        for(int run = 0; run < ends.length; run++) {
+            BlockTypeId type = types[run];
+            int end = ends[run];
+            if(type != null) {
+                int row = start / sizeZ;
+                int x = from.getX() + row / sizeY;
+                int y = from.getY() + row % sizeY;
+                int z = from.getZ() + start % sizeZ;
+                for(int i = start; i < end; i++, z++) {
+                    map.put(Position.pack(x, y, z), type);
+                }
+            }
+            start = end;
+        }
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RunLengthBlockArray that = (RunLengthBlockArray) o;
+
+        if (sizeX != that.sizeX) return false;
+        if (sizeY != that.sizeY) return false;
+        if (sizeZ != that.sizeZ) return false;
+        if (!Arrays.equals(types, that.types)) return false;
+        if (!Arrays.equals(ends, that.ends)) return false;
+        return Arrays.equals(rowOffsets, that.rowOffsets);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = sizeX;
+        result = 31 * result + sizeY;
+        result = 31 * result + sizeZ;
+        result = 31 * result + Arrays.hashCode(types);
+        result = 31 * result + Arrays.hashCode(ends);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "RunLengthBlockArray(" +
+                "size=" + getSize() +
+                ", runs=" + types.length +
+                ')';
+    }
+}
@@ -0,0 +1,510 @@
+package konstructs.api.binary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import konstructs.api.Block;
+import konstructs.api.BlockClassId;
+import konstructs.api.BlockFilter;
+import konstructs.api.BlockFilterAnd;
+import konstructs.api.BlockFilterFactory;
+import konstructs.api.BlockFilterNode;
+import konstructs.api.BlockFilterNot;
+import konstructs.api.BlockFilterOr;
+import konstructs.api.BlockFilterXor;
+import konstructs.api.BlockShape;
+import konstructs.api.BlockState;
+import konstructs.api.BlockTypeId;
+import konstructs.api.BlockUpdate;
+import konstructs.api.Box;
+import konstructs.api.BoxAround;
+import konstructs.api.BoxLayout;
+import konstructs.api.BoxShape;
+import konstructs.api.Direction;
+import konstructs.api.DirectionalLine;
+import konstructs.api.Health;
+import konstructs.api.InclusiveBox;
+import konstructs.api.Inventory;
+import konstructs.api.Orientation;
+import konstructs.api.Position;
+import konstructs.api.PositionLongMap;
+import konstructs.api.RunLengthBlockArray;
+import konstructs.api.Stack;
+import konstructs.api.messages.BlockUpdateEvent;
+import konstructs.api.messages.BoxShapeQueryResult;
+import konstructs.api.messages.ReplaceBlocks;
+
+/**
+ * BinaryDecoder reads API values and messages written by a {@link BinaryEncoder}
+ * from a ByteBuffer, starting at the position of the buffer. Values must be read
+ * in the same order as they were written:
+ * <pre>
+ *     BinaryDecoder decoder = new BinaryDecoder(bytes);
+ *     decoder.readHeader();
+ *     Inventory inventory = decoder.readInventory();
+ * </pre>
+ * <p>
+ *     BlockTypeIds are returned as their canonical instances
+ *     (see {@link BlockTypeId#intern()}). Invalid data results in an
+ *     IllegalArgumentException and truncated data in a
+ *     {@link java.nio.BufferUnderflowException}.
+ * </p>
+ * <p>
+ *     This class is mutable and should not be shared between actors.
+ * </p>
+ * @see BinaryFormat
+ */
+public final class BinaryDecoder {
+    private final List<BlockTypeId> blockTypeIds = new ArrayList<>();
+    private final ByteBuffer buffer;
+    private int version = BinaryFormat.VERSION;
+
+    /**
+     * Create a decoder that reads from a buffer
+     * @param buffer The buffer, read from its position
+     */
+    public BinaryDecoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create a decoder that reads from an array
+     * @param bytes The array
+     */
+    public BinaryDecoder(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Returns the buffer that is read from
+     * @return The buffer, positioned after the last read value
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the version of the format, as read by {@link #readHeader()}
+     * @return The version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Read and validate the magic number and version of the format
+     * @return The version of the format
+     * @throws IllegalArgumentException if the magic number is wrong or the version is not supported
+     */
+    public int readHeader() {
+        int magic = buffer.getInt();
+        if(magic != BinaryFormat.MAGIC)
+            throw new IllegalArgumentException("Not a binary API stream, magic number: " + Integer.toHexString(magic));
+        int version = readVarInt();
+        if(version < 1 || version > BinaryFormat.VERSION)
+            throw new IllegalArgumentException("Unsupported binary API version: " + version);
+        this.version = version;
+        return version;
+    }
+
+    /**
+     * Read a byte
+     * @return The byte, 0 - 255
+     */
+    public int readByte() {
+        return buffer.get() & 0xff;
+    }
+
+    /**
+     * Read a variable length integer
+     * @return The value
+     */
+    public int readVarInt() {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Variable length integer is too long");
+    }
+
+    /**
+     * Read a zigzag encoded variable length integer
+     * @return The value
+     */
+    public int readSignedVarInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read a variable length long
+     * @return The value
+     */
+    public long readVarLong() {
+        long value = 0;
+        for(int shift = 0; shift < 70; shift += 7) {
+            int b = buffer.get();
+            value |= (long)(b & 0x7f) << shift;
+            if((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Variable length long is too long");
+    }
+
+    /**
+     * Read a string
+     * @return The string, may be null
+     */
+    public String readString() {
+        int length = readVarInt() - 1;
+        if(length < 0) return null;
+        if(length > buffer.remaining())
+            throw new IllegalArgumentException("String is longer than the remaining data: " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a UUID
+     * @return The UUID
+     */
+    public UUID readUUID() {
+        long most = buffer.getLong();
+        long least = buffer.getLong();
+        return new UUID(most, least);
+    }
+
+    /**
+     * Read a position
+     * @return The position
+     */
+    public Position readPosition() {
+        int x = readSignedVarInt();
+        int y = readSignedVarInt();
+        int z = readSignedVarInt();
+        return new Position(x, y, z);
+    }
+
+    /**
+     * Read a BlockTypeId
+     * @return The canonical BlockTypeId, may be null
+     */
+    public BlockTypeId readBlockTypeId() {
+        int reference = readVarInt();
+        if(reference == 0) return null;
+        int size = blockTypeIds.size();
+        if(reference <= size) return blockTypeIds.get(reference - 1);
+        if(reference != size + 1)
+            throw new IllegalArgumentException("Invalid BlockTypeId reference: " + reference);
+        String namespace = readString();
+        String name = readString();
+        if(namespace == null || name == null)
+            throw new IllegalArgumentException("BlockTypeId without namespace or name");
+        BlockTypeId id = new BlockTypeId(namespace, name).intern();
+        blockTypeIds.add(id);
+        return id;
+    }
+
+    /**
+     * Read a BlockClassId
+     * @return The BlockClassId
+     */
+    public BlockClassId readBlockClassId() {
+        String namespace = readString();
+        String name = readString();
+        if(namespace == null || name == null)
+            throw new IllegalArgumentException("BlockClassId without namespace or name");
+        return new BlockClassId(namespace, name);
+    }
+
+    /* Read the fields of a block except its type */
+    private Block readBlockFields(BlockTypeId type) {
+        int flags = readByte();
+        UUID id = (flags & BinaryFormat.BLOCK_ID) != 0 ? readUUID() : null;
+        if((flags & BinaryFormat.BLOCK_CONDITION) == 0) return new Block(id, type);
+        int condition = buffer.getShort() & 0xffff;
+        int orientation = condition & 0x1f;
+        if(orientation >= Orientation.NUMBER_OF_ORIENTATIONS)
+            throw new IllegalArgumentException("Invalid orientation: " + orientation);
+        return new Block(id, type, Health.get(condition >>> 5), Orientation.get(orientation));
+    }
+
+    /**
+     * Read a block
+     * @return The block, may be null
+     */
+    public Block readBlock() {
+        if(readByte() == 0) return null;
+        return readBlockFields(readBlockTypeId());
+    }
+
+    /**
+     * Read a stack
+     * @return The stack, may be null
+     */
+    public Stack readStack() {
+        int size = readVarInt();
+        if(size == 0) return null;
+        if(size > buffer.remaining())
+            throw new IllegalArgumentException("Invalid stack size: " + size);
+        BlockTypeId type = readBlockTypeId();
+        Block[] blocks = new Block[size];
+        for(int i = 0; i < size; i++) {
+            blocks[i] = readBlockFields(type);
+        }
+        return new Stack(blocks);
+    }
+
+    /**
+     * Read an inventory
+     * @return The inventory
+     */
+    public Inventory readInventory() {
+        int size = readCount();
+        Stack[] stacks = new Stack[size];
+        for(int i = 0; i < size; i++) {
+            stacks[i] = readStack();
+        }
+        return new Inventory(stacks);
+    }
+
+    /**
+     * Read a block update
+     * @return The update
+     */
+    public BlockUpdate readBlockUpdate() {
+        Block before = readBlock();
+        Block after = readBlock();
+        return new BlockUpdate(before, after);
+    }
+
+    /**
+     * Read a box shape
+     * @return The box shape
+     */
+    public BoxShape readBoxShape() {
+        int tag = readByte();
+        switch(tag) {
+            case BinaryFormat.SHAPE_BOX:
+                Position from = readPosition();
+                return new Box(from, from.add(readPosition()));
+            case BinaryFormat.SHAPE_INCLUSIVE_BOX:
+                return new InclusiveBox(readPosition(), readPosition());
+            case BinaryFormat.SHAPE_BOX_AROUND:
+                return new BoxAround(readPosition(), readPosition());
+            case BinaryFormat.SHAPE_DIRECTIONAL_LINE:
+                Position start = readPosition();
+                Direction direction = Direction.get(readByte());
+                return new DirectionalLine(start, direction, readVarInt());
+            default:
+                throw new IllegalArgumentException("Invalid box shape: " + tag);
+        }
+    }
+
+    /**
+     * Read a block filter
+     * @return The filter
+     */
+    public BlockFilter readBlockFilter() {
+        int tag = readByte();
+        switch(tag) {
+            case BinaryFormat.FILTER_NOTHING:
+                return BlockFilterFactory.NOTHING;
+            case BinaryFormat.FILTER_NODE:
+                return readBlockFilterNode();
+            case BinaryFormat.FILTER_OR:
+                return new BlockFilterOr(readBlockFilter(), readBlockFilter());
+            case BinaryFormat.FILTER_AND:
+                return new BlockFilterAnd(readBlockFilter(), readBlockFilter());
+            case BinaryFormat.FILTER_XOR:
+                return new BlockFilterXor(readBlockFilter(), readBlockFilter());
+            case BinaryFormat.FILTER_NOT:
+                return new BlockFilterNot(readBlockFilter());
+            default:
+                throw new IllegalArgumentException("Invalid block filter: " + tag);
+        }
+    }
+
+    private BlockFilter readBlockFilterNode() {
+        int flags = readVarInt();
+        if(flags == 0) return BlockFilterFactory.EVERYTHING;
+        String namespace = (flags & BinaryFormat.NODE_NAMESPACE) != 0 ? readString() : null;
+        String name = (flags & BinaryFormat.NODE_NAME) != 0 ? readString() : null;
+        BlockShape shape = (flags & BinaryFormat.NODE_SHAPE) != 0 ? BlockShape.fromString(readString()) : null;
+        Boolean transparent = (flags & BinaryFormat.NODE_TRANSPARENT) != 0 ?
+                (flags & BinaryFormat.NODE_TRANSPARENT_VALUE) != 0 : null;
+        Boolean obstacle = (flags & BinaryFormat.NODE_OBSTACLE) != 0 ?
+                (flags & BinaryFormat.NODE_OBSTACLE_VALUE) != 0 : null;
+        BlockState state = (flags & BinaryFormat.NODE_STATE) != 0 ? BlockState.fromString(readString()) : null;
+        BlockClassId[] classes = null;
+        if((flags & BinaryFormat.NODE_CLASSES) != 0) {
+            classes = new BlockClassId[readCount()];
+            for(int i = 0; i < classes.length; i++) {
+                classes[i] = readBlockClassId();
+            }
+        }
+        return new BlockFilterNode(namespace, name, shape, transparent, obstacle, state, classes);
+    }
+
+    /* Read the number of elements of an array, each element is at least one byte */
+    private int readCount() {
+        int count = readVarInt();
+        if(count < 0 || count > buffer.remaining())
+            throw new IllegalArgumentException("Invalid number of elements: " + count);
+        return count;
+    }
+
+    private interface ValueReader<T> {
+        T read();
+    }
+
+    private <T> PositionLongMap<T> readPackedMap(ValueReader<T> reader) {
+        int size = readCount();
+        PositionLongMap<T> map = new PositionLongMap<>(size);
+        int x = 0, y = 0, z = 0;
+        for(int i = 0; i < size; i++) {
+            x += readSignedVarInt();
+            y += readSignedVarInt();
+            z += readSignedVarInt();
+            map.put(x, y, z, reader.read());
+        }
+        return map;
+    }
+
+    /**
+     * Read a block update event. The event is packed, unless any position can
+     * not be packed, see {@link BlockUpdateEvent#isPackable()}.
+     * @return The event
+     */
+    public BlockUpdateEvent readBlockUpdateEvent() {
+        int size = readCount();
+        PositionLongMap<BlockUpdate> packed = new PositionLongMap<>(size);
+        Map<Position, BlockUpdate> map = null;
+        int x = 0, y = 0, z = 0;
+        for(int i = 0; i < size; i++) {
+            x += readSignedVarInt();
+            y += readSignedVarInt();
+            z += readSignedVarInt();
+            BlockUpdate update = readBlockUpdate();
+            if(map == null && Position.isPackable(x, y, z)) {
+                packed.put(x, y, z, update);
+            } else {
+                if(map == null) map = packed.toMap();
+                map.put(new Position(x, y, z), update);
+            }
+        }
+        return map != null ? new BlockUpdateEvent(map) : new BlockUpdateEvent(packed);
+    }
+
+    /**
+     * Read a run length encoded array of blocks
+     * @return The array
+     */
+    public RunLengthBlockArray readRunLengthBlockArray() {
+        Position size = readPosition();
+        if(size.getX() < 0 || size.getY() < 0 || size.getZ() < 0)
+            throw new IllegalArgumentException("Invalid size: " + size);
+        int runs = readCount();
+        int rows = size.getX() * size.getY();
+        BlockTypeId[] types = new BlockTypeId[runs];
+        int[] ends = new int[runs];
+        int[] rowOffsets = new int[rows + 1];
+        int end = 0;
+        int row = 0;
+        for(int run = 0; run < runs; run++) {
+            types[run] = readBlockTypeId();
+            end += readVarInt();
+            ends[run] = end;
+            /* A run ends at the end of a row when the next run starts a new row */
+            while(size.getZ() > 0 && row < rows && end >= (row + 1) * size.getZ()) {
+                rowOffsets[++row] = run + 1;
+            }
+        }
+        while(row < rows) rowOffsets[++row] = runs;
+        return new RunLengthBlockArray(size, types, ends, rowOffsets);
+    }
+
+    /**
+     * Read a replace blocks message
+     * @return The message
+     */
+    public ReplaceBlocks readReplaceBlocks() {
+        BlockFilter filter = readBlockFilter();
+        int encoding = readByte();
+        switch(encoding) {
+            case BinaryFormat.REPLACE_RUN_LENGTH:
+                Position from = readPosition();
+                RunLengthBlockArray blocks = readRunLengthBlockArray();
+                return new ReplaceBlocks(filter, new Box(from, from.add(blocks.getSize())), blocks);
+            case BinaryFormat.REPLACE_PACKED:
+                return new ReplaceBlocks(filter, readPackedMap(this::readBlockTypeId));
+            default:
+                throw new IllegalArgumentException("Invalid replace blocks encoding: " + encoding);
+        }
+    }
+
+    /**
+     * Read an array of blocks written as runs of equal blocks. Since a single run
+     * can hold any number of blocks, the number of blocks must be known in advance,
+     * e.g. from the size of a box that was read before.
+     * @param length The expected number of blocks
+     * @return The blocks
+     */
+    public BlockTypeId[] readBlockTypeIds(int length) {
+        int written = readVarInt();
+        if(length < 0 || written != length)
+            throw new IllegalArgumentException("Invalid number of blocks: " + written + ", expected " + length);
+        BlockTypeId[] blocks = new BlockTypeId[length];
+        int i = 0;
+        while(i < length) {
+            BlockTypeId type = readBlockTypeId();
+            int run = readVarInt();
+            if(run <= 0 || run > length - i)
+                throw new IllegalArgumentException("Invalid run length: " + run);
+            if(type != null) Arrays.fill(blocks, i, i + run, type);
+            i += run;
+        }
+        return blocks;
+    }
+
+    /**
+     * Read the result of a box shape query. The number of blocks is given by the
+     * box of the result, which is itself read from the buffer, so a corrupt box can
+     * still allocate an array of up to Integer.MAX_VALUE blocks. Use
+     * {@link #readBoxShapeQueryResult(int)} to read data that is not trusted.
+     * @return The result
+     */
+    public BoxShapeQueryResult readBoxShapeQueryResult() {
+        return readBoxShapeQueryResult(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Read the result of a box shape query with a limited number of blocks
+     * @param maxBlocks The maximum number of blocks (the array size of the box) to accept
+     * @return The result
+     * @throws IllegalArgumentException if the box of the result has more blocks
+     */
+    public BoxShapeQueryResult readBoxShapeQueryResult(int maxBlocks) {
+        BoxShape shape = readBoxShape();
+        BoxLayout layout = BoxLayout.get(readByte());
+        int length = layout.getArraySize(shape.getBox().getSize());
+        if(length > maxBlocks)
+            throw new IllegalArgumentException("Too many blocks: " + length + ", at most " + maxBlocks);
+        return new BoxShapeQueryResult(shape, readBlockTypeIds(length), layout);
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryDecoder(" +
+                "position=" + buffer.position() +
+                ", blockTypeIds=" + blockTypeIds.size() +
+                ')';
+    }
+}
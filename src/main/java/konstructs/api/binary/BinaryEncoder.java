@@ -0,0 +1,533 @@
+package konstructs.api.binary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import konstructs.api.Block;
+import konstructs.api.BlockClassId;
+import konstructs.api.BlockFilter;
+import konstructs.api.BlockFilterAnd;
+import konstructs.api.BlockFilterFactory;
+import konstructs.api.BlockFilterNode;
+import konstructs.api.BlockFilterNot;
+import konstructs.api.BlockFilterOr;
+import konstructs.api.BlockFilterXor;
+import konstructs.api.BlockTypeId;
+import konstructs.api.BlockUpdate;
+import konstructs.api.Box;
+import konstructs.api.BoxAround;
+import konstructs.api.BoxShape;
+import konstructs.api.DirectionalLine;
+import konstructs.api.Health;
+import konstructs.api.InclusiveBox;
+import konstructs.api.Inventory;
+import konstructs.api.Orientation;
+import konstructs.api.Position;
+import konstructs.api.PositionLongMap;
+import konstructs.api.RunLengthBlockArray;
+import konstructs.api.Stack;
+import konstructs.api.messages.BlockUpdateEvent;
+import konstructs.api.messages.BoxShapeQueryResult;
+import konstructs.api.messages.ReplaceBlocks;
+
+/**
+ * BinaryEncoder writes API values and messages in a compact binary format
+ * into a ByteBuffer. It is the binary counterpart of the JSON format of
+ * {@link konstructs.api.GsonDefault}, e.g. for persisting inventories and
+ * structures:
+ * <pre>
+ *     BinaryEncoder encoder = new BinaryEncoder();
+ *     encoder.writeHeader();
+ *     encoder.writeInventory(inventory);
+ *     ByteBuffer bytes = encoder.toByteBuffer();
+ * </pre>
+ * <p>
+ *     Values are written one after another and must be read back in the same
+ *     order by a {@link BinaryDecoder}. Each BlockTypeId is written in full only
+ *     the first time it is written to the stream, after that only its index in
+ *     the table of the stream is written. The buffer grows as needed.
+ * </p>
+ * <p>
+ *     This class is mutable and should not be shared between actors.
+ * </p>
+ * @see BinaryFormat
+ */
+public final class BinaryEncoder {
+    private final Map<BlockTypeId, Integer> blockTypeIds = new HashMap<>();
+    private ByteBuffer buffer;
+
+    /**
+     * Create an encoder with a new buffer
+     */
+    public BinaryEncoder() {
+        this(ByteBuffer.allocate(256));
+    }
+
+    /**
+     * Create an encoder that writes to a buffer, starting at its position.
+     * If the buffer is too small a larger copy of the buffer is used instead.
+     * @param buffer The buffer
+     */
+    public BinaryEncoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    private void ensure(int bytes) {
+        if(buffer.remaining() >= bytes) return;
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+        ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    /**
+     * Returns the buffer that is written to. The buffer is replaced when it grows,
+     * so this should be called after the values have been written.
+     * @return The buffer, positioned after the last written value
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the written bytes
+     * @return A new buffer sharing the content of the buffer, from the start
+     *         of the buffer to the last written value
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Returns a copy of the written bytes
+     * @return The bytes, from the start of the buffer to the last written value
+     */
+    public byte[] toByteArray() {
+        ByteBuffer bytes = toByteBuffer();
+        byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return array;
+    }
+
+    /**
+     * Write the magic number and version of the format
+     */
+    public void writeHeader() {
+        ensure(4);
+        buffer.putInt(BinaryFormat.MAGIC);
+        writeVarInt(BinaryFormat.VERSION);
+    }
+
+    /**
+     * Write a byte
+     * @param value The byte
+     */
+    public void writeByte(int value) {
+        ensure(1);
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Write a non negative int as a variable length integer, 1 to 5 bytes
+     * @param value The value, negative values are written as 5 bytes
+     */
+    public void writeVarInt(int value) {
+        ensure(5);
+        while((value & ~0x7f) != 0) {
+            buffer.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Write an int as a zigzag encoded variable length integer, so that
+     * small negative values are short too
+     * @param value The value
+     */
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Write a non negative long as a variable length integer, 1 to 10 bytes
+     * @param value The value
+     */
+    public void writeVarLong(long value) {
+        ensure(10);
+        while((value & ~0x7fL) != 0) {
+            buffer.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Write a string as its length in bytes followed by its UTF-8 encoding
+     * @param value The string, may be null
+     */
+    public void writeString(String value) {
+        if(value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Write a UUID as two longs
+     * @param id The UUID, must not be null
+     */
+    public void writeUUID(UUID id) {
+        ensure(16);
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    /**
+     * Write a position as three zigzag encoded variable length integers
+     * @param position The position
+     */
+    public void writePosition(Position position) {
+        writePosition(position.getX(), position.getY(), position.getZ());
+    }
+
+    /**
+     * Write a position as three zigzag encoded variable length integers
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     */
+    public void writePosition(int x, int y, int z) {
+        writeSignedVarInt(x);
+        writeSignedVarInt(y);
+        writeSignedVarInt(z);
+    }
+
+    /**
+     * Write a BlockTypeId. The first time an id is written its namespace and
+     * name are written, after that only its index in the table of the stream.
+     * @param id The BlockTypeId, may be null
+     */
+    public void writeBlockTypeId(BlockTypeId id) {
+        if(id == null) {
+            writeVarInt(0);
+            return;
+        }
+        Integer index = blockTypeIds.get(id);
+        if(index != null) {
+            writeVarInt(index + 1);
+        } else {
+            int size = blockTypeIds.size();
+            blockTypeIds.put(id, size);
+            writeVarInt(size + 1);
+            writeString(id.getNamespace());
+            writeString(id.getName());
+        }
+    }
+
+    /**
+     * Write a BlockClassId as its namespace and name
+     * @param id The BlockClassId
+     */
+    public void writeBlockClassId(BlockClassId id) {
+        writeString(id.getNamespace());
+        writeString(id.getName());
+    }
+
+    /**
+     * Write a Health and an Orientation packed into two bytes
+     * @param health The health
+     * @param orientation The orientation
+     */
+    public void writeCondition(Health health, Orientation orientation) {
+        ensure(2);
+        buffer.putShort((short)((health.getHealth() << 5) | orientation.getEncoding()));
+    }
+
+    /* Write the fields of a block except its type */
+    private void writeBlockFields(Block block) {
+        boolean condition = !block.getHealth().equals(Health.PRISTINE) || !block.getOrientation().equals(Orientation.NORMAL);
+        writeByte((block.getId() != null ? BinaryFormat.BLOCK_ID : 0) | (condition ? BinaryFormat.BLOCK_CONDITION : 0));
+        if(block.getId() != null) writeUUID(block.getId());
+        if(condition) writeCondition(block.getHealth(), block.getOrientation());
+    }
+
+    /**
+     * Write a block. The UUID, health and orientation are only written if they
+     * differ from the defaults.
+     * @param block The block, may be null
+     */
+    public void writeBlock(Block block) {
+        if(block == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        writeBlockTypeId(block.getType());
+        writeBlockFields(block);
+    }
+
+    /**
+     * Write a stack. The BlockTypeId is only written once for all blocks.
+     * @param stack The stack, may be null
+     */
+    public void writeStack(Stack stack) {
+        if(stack == null) {
+            writeVarInt(0);
+            return;
+        }
+        Block[] blocks = stack.getBlocks();
+        writeVarInt(blocks.length);
+        writeBlockTypeId(stack.getTypeId());
+        for(Block block: blocks) {
+            writeBlockFields(block);
+        }
+    }
+
+    /**
+     * Write an inventory
+     * @param inventory The inventory
+     */
+    public void writeInventory(Inventory inventory) {
+        Stack[] stacks = inventory.getStacks();
+        writeVarInt(stacks.length);
+        for(Stack stack: stacks) {
+            writeStack(stack);
+        }
+    }
+
+    /**
+     * Write a block update
+     * @param update The update
+     */
+    public void writeBlockUpdate(BlockUpdate update) {
+        writeBlock(update.getBefore());
+        writeBlock(update.getAfter());
+    }
+
+    /**
+     * Write a box shape
+     * @param shape The box shape, a Box, InclusiveBox, BoxAround or DirectionalLine
+     * @throws IllegalArgumentException if the box shape is of another class
+     */
+    public void writeBoxShape(BoxShape shape) {
+        if(shape instanceof Box) {
+            Box box = (Box)shape;
+            writeByte(BinaryFormat.SHAPE_BOX);
+            writePosition(box.getFrom());
+            writePosition(box.getSize());
+        } else if(shape instanceof InclusiveBox) {
+            InclusiveBox box = (InclusiveBox)shape;
+            writeByte(BinaryFormat.SHAPE_INCLUSIVE_BOX);
+            writePosition(box.getStart());
+            writePosition(box.getEnd());
+        } else if(shape instanceof BoxAround) {
+            BoxAround box = (BoxAround)shape;
+            writeByte(BinaryFormat.SHAPE_BOX_AROUND);
+            writePosition(box.getCenter());
+            writePosition(box.getRadius());
+        } else if(shape instanceof DirectionalLine) {
+            DirectionalLine line = (DirectionalLine)shape;
+            writeByte(BinaryFormat.SHAPE_DIRECTIONAL_LINE);
+            writePosition(line.getStart());
+            writeByte(line.getDirection().getEncoding());
+            writeVarInt(line.getLength());
+        } else {
+            throw new IllegalArgumentException("Unsupported box shape: " + shape);
+        }
+    }
+
+    /**
+     * Write a block filter
+     * @param filter The filter, built from BlockFilterNodes, {@link BlockFilterFactory#NOTHING}
+     *               and the and, or, xor and not combinations of them
+     * @throws IllegalArgumentException if the filter contains a filter of another class
+     */
+    public void writeBlockFilter(BlockFilter filter) {
+        if(filter == BlockFilterFactory.NOTHING) {
+            writeByte(BinaryFormat.FILTER_NOTHING);
+        } else if(filter instanceof BlockFilterNode) {
+            writeByte(BinaryFormat.FILTER_NODE);
+            writeBlockFilterNode((BlockFilterNode)filter);
+        } else if(filter instanceof BlockFilterOr) {
+            writeByte(BinaryFormat.FILTER_OR);
+            writeBlockFilter(((BlockFilterOr)filter).getF1());
+            writeBlockFilter(((BlockFilterOr)filter).getF2());
+        } else if(filter instanceof BlockFilterAnd) {
+            writeByte(BinaryFormat.FILTER_AND);
+            writeBlockFilter(((BlockFilterAnd)filter).getF1());
+            writeBlockFilter(((BlockFilterAnd)filter).getF2());
+        } else if(filter instanceof BlockFilterXor) {
+            writeByte(BinaryFormat.FILTER_XOR);
+            writeBlockFilter(((BlockFilterXor)filter).getF1());
+            writeBlockFilter(((BlockFilterXor)filter).getF2());
+        } else if(filter instanceof BlockFilterNot) {
+            writeByte(BinaryFormat.FILTER_NOT);
+            writeBlockFilter(((BlockFilterNot)filter).getFilter());
+        } else {
+            throw new IllegalArgumentException("Unsupported block filter: " + filter);
+        }
+    }
+
+    private void writeBlockFilterNode(BlockFilterNode node) {
+        int flags = 0;
+        if(node.getNamespace() != null) flags |= BinaryFormat.NODE_NAMESPACE;
+        if(node.getName() != null) flags |= BinaryFormat.NODE_NAME;
+        if(node.getBlockShape() != null) flags |= BinaryFormat.NODE_SHAPE;
+        if(node.getTransparent() != null) {
+            flags |= BinaryFormat.NODE_TRANSPARENT;
+            if(node.getTransparent()) flags |= BinaryFormat.NODE_TRANSPARENT_VALUE;
+        }
+        if(node.getObstacle() != null) {
+            flags |= BinaryFormat.NODE_OBSTACLE;
+            if(node.getObstacle()) flags |= BinaryFormat.NODE_OBSTACLE_VALUE;
+        }
+        if(node.getBlockState() != null) flags |= BinaryFormat.NODE_STATE;
+        if(node.getClasses() != null) flags |= BinaryFormat.NODE_CLASSES;
+        writeVarInt(flags);
+        if(node.getNamespace() != null) writeString(node.getNamespace());
+        if(node.getName() != null) writeString(node.getName());
+        if(node.getBlockShape() != null) writeString(node.getBlockShape().getShape());
+        if(node.getBlockState() != null) writeString(node.getBlockState().getState());
+        if(node.getClasses() != null) {
+            writeVarInt(node.getClasses().length);
+            for(BlockClassId clazz: node.getClasses()) {
+                writeBlockClassId(clazz);
+            }
+        }
+    }
+
+    /*
+     * Write a map of packed positions, each position as the zigzag encoded
+     * difference to the previous position
+     */
+    private <T> void writePackedMap(PositionLongMap<T> map, final ValueWriter<T> writer) {
+        writeVarInt(map.size());
+        final int[] previous = new int[3];
+        map.forEach(new PositionLongMap.Visitor<T>() {
+            @Override
+            public void visit(long position, T value) {
+                int x = Position.unpackX(position);
+                int y = Position.unpackY(position);
+                int z = Position.unpackZ(position);
+                writePosition(x - previous[0], y - previous[1], z - previous[2]);
+                previous[0] = x;
+                previous[1] = y;
+                previous[2] = z;
+                writer.write(value);
+            }
+        });
+    }
+
+    /*
+     * Write a map of positions in the same format as a map of packed positions,
+     * the differences can hold any position
+     */
+    private <T> void writePositionMap(Map<Position, T> map, ValueWriter<T> writer) {
+        writeVarInt(map.size());
+        int px = 0, py = 0, pz = 0;
+        for(Map.Entry<Position, T> e: map.entrySet()) {
+            Position position = e.getKey();
+            int x = position.getX(), y = position.getY(), z = position.getZ();
+            writePosition(x - px, y - py, z - pz);
+            px = x;
+            py = y;
+            pz = z;
+            writer.write(e.getValue());
+        }
+    }
+
+    private interface ValueWriter<T> {
+        void write(T value);
+    }
+
+    /**
+     * Write a block update event. Events created with a Position map are written
+     * from the map, so their positions do not have to be packable.
+     * @param event The event
+     */
+    public void writeBlockUpdateEvent(BlockUpdateEvent event) {
+        if(event.isPacked() || event.isColumnar()) {
+            writePackedMap(event.getPackedUpdatedBlocks(), this::writeBlockUpdate);
+        } else {
+            writePositionMap(event.getUpdatedBlocks(), this::writeBlockUpdate);
+        }
+    }
+
+    /**
+     * Write a run length encoded array of blocks
+     * @param blocks The array
+     */
+    public void writeRunLengthBlockArray(RunLengthBlockArray blocks) {
+        writePosition(blocks.getSize());
+        writeVarInt(blocks.getNumberOfRuns());
+        blocks.forEachRun(new RunLengthBlockArray.RunVisitor() {
+            @Override
+            public void visit(int start, int end, BlockTypeId type) {
+                writeBlockTypeId(type);
+                writeVarInt(end - start);
+            }
+        });
+    }
+
+    /**
+     * Write a replace blocks message. Messages created with a run length encoded
+     * array of blocks are written as runs.
+     * @param message The message
+     */
+    public void writeReplaceBlocks(ReplaceBlocks message) {
+        writeBlockFilter(message.getFilter());
+        if(message.isRunLength()) {
+            writeByte(BinaryFormat.REPLACE_RUN_LENGTH);
+            writePosition(message.getBox().getFrom());
+            writeRunLengthBlockArray(message.getRunLengthBlocks());
+        } else {
+            writeByte(BinaryFormat.REPLACE_PACKED);
+            writePackedMap(message.getPackedBlocks(), this::writeBlockTypeId);
+        }
+    }
+
+    /**
+     * Write an array of blocks as runs of equal blocks
+     * @param blocks The blocks, may contain null
+     */
+    public void writeBlockTypeIds(BlockTypeId[] blocks) {
+        writeVarInt(blocks.length);
+        int i = 0;
+        while(i < blocks.length) {
+            BlockTypeId type = blocks[i];
+            int start = i++;
+            while(i < blocks.length && (blocks[i] == type || (type != null && type.equals(blocks[i])))) i++;
+            writeBlockTypeId(type);
+            writeVarInt(i - start);
+        }
+    }
+
+    /**
+     * Write the result of a box shape query
+     * @param result The result
+     */
+    public void writeBoxShapeQueryResult(BoxShapeQueryResult result) {
+        writeBoxShape(result.getBox());
+        writeByte(result.getLayout().getEncoding());
+        writeBlockTypeIds(result.getBlocks());
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryEncoder(" +
+                "position=" + buffer.position() +
+                ", blockTypeIds=" + blockTypeIds.size() +
+                ')';
+    }
+}
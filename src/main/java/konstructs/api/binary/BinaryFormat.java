@@ -0,0 +1,61 @@
+package konstructs.api.binary;
+
+/**
+ * BinaryFormat holds the constants of the binary format written by
+ * {@link BinaryEncoder} and read by {@link BinaryDecoder}.
+ * <p>
+ *     A stream starts with a header of the {@link #MAGIC} number and the
+ *     {@link #VERSION} of the format, followed by the encoded values. Integers
+ *     are written as variable length integers (7 bits per byte, signed values
+ *     zigzag encoded first) and BlockTypeIds are written once per stream and
+ *     then referred to by their index in a table shared by all values of the
+ *     stream.
+ * </p>
+ */
+public final class BinaryFormat {
+    /**
+     * The first four bytes of a stream, "KBIN"
+     */
+    public static final int MAGIC = 0x4b42494e;
+
+    /**
+     * The version of the format written by the encoder
+     */
+    public static final int VERSION = 1;
+
+    /* Tags of the block filters */
+    static final int FILTER_NOTHING = 0;
+    static final int FILTER_NODE = 1;
+    static final int FILTER_OR = 2;
+    static final int FILTER_AND = 3;
+    static final int FILTER_NOT = 4;
+    static final int FILTER_XOR = 5;
+
+    /* Flags of the properties set in a BlockFilterNode */
+    static final int NODE_NAMESPACE = 1;
+    static final int NODE_NAME = 1 << 1;
+    static final int NODE_SHAPE = 1 << 2;
+    static final int NODE_TRANSPARENT = 1 << 3;
+    static final int NODE_TRANSPARENT_VALUE = 1 << 4;
+    static final int NODE_OBSTACLE = 1 << 5;
+    static final int NODE_OBSTACLE_VALUE = 1 << 6;
+    static final int NODE_STATE = 1 << 7;
+    static final int NODE_CLASSES = 1 << 8;
+
+    /* Tags of the box shapes */
+    static final int SHAPE_BOX = 0;
+    static final int SHAPE_INCLUSIVE_BOX = 1;
+    static final int SHAPE_BOX_AROUND = 2;
+    static final int SHAPE_DIRECTIONAL_LINE = 3;
+
+    /* Flags of the optional fields of a block */
+    static final int BLOCK_ID = 1;
+    static final int BLOCK_CONDITION = 1 << 1;
+
+    /* Encodings of the blocks of a ReplaceBlocks message */
+    static final int REPLACE_PACKED = 0;
+    static final int REPLACE_RUN_LENGTH = 1;
+
+    private BinaryFormat() {
+    }
+}
@@ -1,18 +1,147 @@
 package konstructs.api.messages;
 
 import konstructs.api.BlockUpdate;
+import konstructs.api.BlockUpdateColumns;
 import konstructs.api.Position;
+import konstructs.api.PositionLongMap;
 
 import java.util.Map;
+
+/**
+ * BlockUpdateEvent is a message sent to all plugins listening for block
+ * updates. It contains the updated blocks, either as a Position to
+ * BlockUpdate map, as a {@link PositionLongMap} or as {@link BlockUpdateColumns}.
+ * All forms can always be read using {@link #getUpdatedBlocks()},
+ * {@link #getPackedUpdatedBlocks()} and {@link #getColumns()}, converting
+ * if required.
+ * <p>
+ *     Events created from columns must not be persisted or serialized as they
+ *     are, since the columns refer to block types by their JVM local intern ids,
+ *     see {@link BlockUpdateColumns}.
+ * </p>
+ */
 public class BlockUpdateEvent {
     private final Map<Position, BlockUpdate> updatedBlocks;
+    private final PositionLongMap<BlockUpdate> packedUpdatedBlocks;
+    private final BlockUpdateColumns columns;
+    private transient volatile Boolean packable;
 
+    /**
+     * Create a new immutable BlockUpdateEvent. The positions may be outside of
+     * the range of packed positions, see {@link #isPackable()}.
+     * @param updatedBlocks The updated blocks mapped by their position
+     */
     public BlockUpdateEvent(Map<Position, BlockUpdate> updatedBlocks) {
         this.updatedBlocks = updatedBlocks;
+        this.packedUpdatedBlocks = null;
+        this.columns = null;
+    }
+
+    /**
+     * Create a new immutable BlockUpdateEvent from packed positions
+     * @param updatedBlocks The updated blocks mapped by their packed position
+     */
+    public BlockUpdateEvent(PositionLongMap<BlockUpdate> updatedBlocks) {
+        this.updatedBlocks = null;
+        this.packedUpdatedBlocks = updatedBlocks;
+        this.columns = null;
+    }
+
+    /**
+     * Create a new immutable BlockUpdateEvent from columns
+     * @param columns The updated blocks
+     */
+    public BlockUpdateEvent(BlockUpdateColumns columns) {
+        this.updatedBlocks = null;
+        this.packedUpdatedBlocks = null;
+        this.columns = columns;
     }
 
+    /**
+     * Returns the updated blocks. If this event was created with a
+     * {@link PositionLongMap} a new map is created on each call. If it was
+     * created with {@link BlockUpdateColumns} a read only view of the columns
+     * is returned.
+     * @return The Position to BlockUpdate mapping
+     */
     public Map<Position, BlockUpdate> getUpdatedBlocks() {
-        return updatedBlocks;
+        if(updatedBlocks != null) {
+            return updatedBlocks;
+        } else if(columns != null) {
+            return columns.asMap();
+        } else {
+            return packedUpdatedBlocks.toMap();
+        }
+    }
+
+    /**
+     * Returns the updated blocks mapped by their packed position. If this event
+     * was created with a Position map or columns a new map is created on each call.
+     * @return The packed Position to BlockUpdate mapping
+     * @throws IllegalArgumentException if any position can not be packed, see {@link #isPackable()}
+     */
+    public PositionLongMap<BlockUpdate> getPackedUpdatedBlocks() {
+        if(packedUpdatedBlocks != null) {
+            return packedUpdatedBlocks;
+        } else if(columns != null) {
+            return columns.toPackedMap();
+        } else {
+            return PositionLongMap.fromMap(updatedBlocks);
+        }
+    }
+
+    /**
+     * Check whether the updated blocks of this event are stored in packed form
+     * @return True if the updated blocks are stored as a {@link PositionLongMap}
+     */
+    public boolean isPacked() {
+        return packedUpdatedBlocks != null;
+    }
+
+    /**
+     * Check whether all positions of the updated blocks can be packed, i.e. if
+     * {@link #getPackedUpdatedBlocks()} and {@link #getColumns()} can be used.
+     * This is always the case for events created in packed or columnar form. For
+     * events created with a Position map the positions are checked on the first call.
+     * @return True if all positions can be packed
+     * @see Position#isPackable()
+     */
+    public boolean isPackable() {
+        if(updatedBlocks == null) return true;
+        Boolean result = packable;
+        if(result == null) {
+            result = Boolean.TRUE;
+            for(Position position: updatedBlocks.keySet()) {
+                if(!position.isPackable()) {
+                    result = Boolean.FALSE;
+                    break;
+                }
+            }
+            packable = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the updated blocks as columns. If this event was not created
+     * with columns, new columns are created on each call.
+     * @return The updated blocks as columns
+     * @throws IllegalArgumentException if any position can not be packed, see {@link #isPackable()}
+     */
+    public BlockUpdateColumns getColumns() {
+        if(columns != null) {
+            return columns;
+        } else {
+            return BlockUpdateColumns.of(getPackedUpdatedBlocks());
+        }
+    }
+
+    /**
+     * Check whether the updated blocks of this event are stored as columns
+     * @return True if the updated blocks are stored as {@link BlockUpdateColumns}
+     */
+    public boolean isColumnar() {
+        return columns != null;
     }
 
     @Override
@@ -22,19 +151,29 @@ public class BlockUpdateEvent {
 
         BlockUpdateEvent that = (BlockUpdateEvent) o;
 
-        return updatedBlocks.equals(that.updatedBlocks);
+        if (updatedBlocks != null && that.updatedBlocks != null) return updatedBlocks.equals(that.updatedBlocks);
+        if (packedUpdatedBlocks != null && that.packedUpdatedBlocks != null)
+            return packedUpdatedBlocks.equals(that.packedUpdatedBlocks);
+        if (columns != null && that.columns != null) return columns.equals(that.columns);
+        if (packedUpdatedBlocks != null && that.updatedBlocks != null)
+            return packedUpdatedBlocks.equalsMap(that.updatedBlocks);
+        if (updatedBlocks != null && that.packedUpdatedBlocks != null)
+            return that.packedUpdatedBlocks.equalsMap(updatedBlocks);
+        return getUpdatedBlocks().equals(that.getUpdatedBlocks());
 
     }
 
     @Override
     public int hashCode() {
-        return updatedBlocks.hashCode();
+        if (updatedBlocks != null) return updatedBlocks.hashCode();
+        if (packedUpdatedBlocks != null) return packedUpdatedBlocks.hashCode();
+        return columns.hashCode();
     }
 
     @Override
     public String toString() {
         return "BlockUpdateEvent(" +
-                "updatedBlocks=" + updatedBlocks +
+                "updatedBlocks=" + (updatedBlocks != null ? updatedBlocks : packedUpdatedBlocks != null ? packedUpdatedBlocks : columns) +
                 ')';
     }
 }
@@ -1,5 +1,7 @@
 package konstructs.api.messages;
 
+import konstructs.api.BlockArrayEncoding;
+import konstructs.api.BoxLayout;
 import konstructs.api.BoxShape;
 
 import java.io.Serializable;
@@ -7,17 +9,45 @@ import java.io.Serializable;
  * BoxShapeQuery is a message to query the world for a rectangular volume of
  * blocks. The volume is defined by the BoxShape class. Please see the documentation
  * of the {@link konstructs.api.Box} class for details on how it works.
+ * Optionally, the memory layout of the blocks array of the result can be
+ * selected, see {@link BoxLayout}, as well as the encoding of the blocks of the
+ * result, see {@link BlockArrayEncoding}. A query for the palette encoding is
+ * answered with a {@link BoxShapeQueryPaletteResult} and a query for the run
+ * length encoding with a {@link BoxShapeQueryRunLengthResult}.
  * @see konstructs.api.Box
  */
 public class BoxShapeQuery implements Serializable {
     private final BoxShape box;
+    private final int layout;
+    private final int encoding;
 
     /**
-     * Create a new immutable BoxShapeQuery
+     * Create a new immutable BoxShapeQuery using the linear layout
      * @param box The box shape to be queried
      */
     public BoxShapeQuery(BoxShape box) {
+        this(box, BoxLayout.LINEAR);
+    }
+
+    /**
+     * Create a new immutable BoxShapeQuery
+     * @param box The box shape to be queried
+     * @param layout The layout of the blocks array of the result
+     */
+    public BoxShapeQuery(BoxShape box, BoxLayout layout) {
+        this(box, layout, BlockArrayEncoding.PLAIN);
+    }
+
+    /**
+     * Create a new immutable BoxShapeQuery
+     * @param box The box shape to be queried
+     * @param layout The layout of the blocks array of the result
+     * @param encoding The encoding of the blocks of the result
+     */
+    public BoxShapeQuery(BoxShape box, BoxLayout layout, BlockArrayEncoding encoding) {
         this.box = box;
+        this.layout = layout.getEncoding();
+        this.encoding = encoding.getEncoding();
     }
 
     /**
@@ -28,6 +58,22 @@ public class BoxShapeQuery implements Serializable {
         return box;
     }
 
+    /**
+     * Returns the layout of the blocks array requested for the result
+     * @return The layout of the result
+     */
+    public BoxLayout getLayout() {
+        return BoxLayout.get(layout);
+    }
+
+    /**
+     * Returns the encoding of the blocks requested for the result
+     * @return The encoding of the result
+     */
+    public BlockArrayEncoding getEncoding() {
+        return BlockArrayEncoding.get(encoding);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -35,19 +81,26 @@ public class BoxShapeQuery implements Serializable {
 
         BoxShapeQuery that = (BoxShapeQuery) o;
 
+        if (layout != that.layout) return false;
+        if (encoding != that.encoding) return false;
         return box.equals(that.box);
 
     }
 
     @Override
     public int hashCode() {
-        return box.hashCode();
+        int result = box.hashCode();
+        result = 31 * result + layout;
+        result = 31 * result + encoding;
+        return result;
     }
 
     @Override
     public String toString() {
         return "BoxShapeQuery(" +
                 "box=" + box +
+                ", layout=" + getLayout() +
+                ", encoding=" + getEncoding() +
                 ')';
     }
 }
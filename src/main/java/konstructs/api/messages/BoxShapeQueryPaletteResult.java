@@ -0,0 +1,135 @@
+package konstructs.api.messages;
+
+import konstructs.api.BlockTypeId;
+import konstructs.api.Box;
+import konstructs.api.BoxLayout;
+import konstructs.api.BoxShape;
+import konstructs.api.PaletteBlockArray;
+import konstructs.api.Position;
+
+/**
+ * BoxShapeQueryPaletteResult is a message received as a response to a
+ * {@link BoxShapeQuery} message that requested the
+ * {@link konstructs.api.BlockArrayEncoding#PALETTE palette encoding}. It contains
+ * the same blocks as a {@link BoxShapeQueryResult}, but as a {@link PaletteBlockArray},
+ * which for typical terrain is an order of magnitude smaller both in memory and
+ * when serialized.
+ */
+public class BoxShapeQueryPaletteResult {
+    private final BoxShape box;
+    private final PaletteBlockArray blocks;
+    private final int layout;
+
+    /**
+     * Creates a new immutable BoxShapeQueryPaletteResult instance using the linear layout
+     * @param box The BoxShape that was queried for
+     * @param blocks The blocks that matched the BoxShape
+     */
+    public BoxShapeQueryPaletteResult(BoxShape box, PaletteBlockArray blocks) {
+        this(box, blocks, BoxLayout.LINEAR);
+    }
+
+    /**
+     * Creates a new immutable BoxShapeQueryPaletteResult instance
+     * @param box The BoxShape that was queried for
+     * @param blocks The blocks that matched the BoxShape
+     * @param layout The layout of the blocks array
+     */
+    public BoxShapeQueryPaletteResult(BoxShape box, PaletteBlockArray blocks, BoxLayout layout) {
+        this.box = box;
+        this.blocks = blocks;
+        this.layout = layout.getEncoding();
+    }
+
+    /**
+     * Creates a new immutable BoxShapeQueryPaletteResult by encoding the
+     * blocks of a BoxShapeQueryResult
+     * @param result The result to encode
+     */
+    public BoxShapeQueryPaletteResult(BoxShapeQueryResult result) {
+        this(result.getBox(), new PaletteBlockArray(result.getBlocks()), result.getLayout());
+    }
+
+    /**
+     * Returns the BoxShape that was queried
+     * @return The BoxShape
+     */
+    public BoxShape getBox() {
+        return box;
+    }
+
+    /**
+     * Palette encoded array of blocks that matched the BoxShape queried for
+     * @return The matched blocks
+     */
+    public PaletteBlockArray getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns the layout of the array returned by {@link #getBlocks()}
+     * @return The layout of the blocks
+     */
+    public BoxLayout getLayout() {
+        return BoxLayout.get(layout);
+    }
+
+    /**
+     * Returns the block at a global position, taking the layout into account
+     * @param p A Position that is within the bounds of the box shape
+     * @return The block at position p
+     */
+    public BlockTypeId get(Position p) {
+        Box b = box.getBox();
+        Position from = b.getFrom();
+        return blocks.get(getLayout().index(b.getSize(), p.getX() - from.getX(), p.getY() - from.getY(), p.getZ() - from.getZ()));
+    }
+
+    /**
+     * Returns the block at a position local to the from corner of the box, taking
+     * the layout into account
+     * @param p A Position that is relative to the from corner of the box
+     * @return The block at position p
+     */
+    public BlockTypeId getLocal(Position p) {
+        return blocks.get(getLayout().index(box.getBox().getSize(), p));
+    }
+
+    /**
+     * Decode the blocks into a BoxShapeQueryResult
+     * @return A new BoxShapeQueryResult with one BlockTypeId per block
+     */
+    public BoxShapeQueryResult toBoxShapeQueryResult() {
+        return new BoxShapeQueryResult(box, blocks.toArray(), getLayout());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BoxShapeQueryPaletteResult that = (BoxShapeQueryPaletteResult) o;
+
+        if (layout != that.layout) return false;
+        if (!box.equals(that.box)) return false;
+        return blocks.equals(that.blocks);
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = box.hashCode();
+        result = 31 * result + blocks.hashCode();
+        result = 31 * result + layout;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BoxShapeQueryPaletteResult(" +
+                "box=" + box +
+                ", blocks=" + blocks +
+                ", layout=" + getLayout() +
+                ')';
+    }
+}
@@ -1,9 +1,16 @@
 package konstructs.api.messages;
 
 import konstructs.api.BlockTypeId;
+import konstructs.api.Box;
+import konstructs.api.BoxLayout;
 import konstructs.api.BoxShape;
+import konstructs.api.BoxSlice;
+import konstructs.api.Position;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 /**
  * BoxShapeQueryResult is a message received as a response to the {@link BoxShapeQuery}
  * message. It contains the BoxShape of the original query as well as an
@@ -11,20 +18,34 @@ import java.util.Arrays;
  *
  * Please see the individual BoxShape ({@link konstructs.api.BoxAround}, {@link konstructs.api.InclusiveBox},
  * {@link konstructs.api.DirectionalLine} and {@link konstructs.api.Box}) for how to get the appropriate block / index
- * from the array returned by {@link #getBlocks()}.
+ * from the array returned by {@link #getBlocks()}. If the query requested another
+ * {@link BoxLayout} than the linear layout, the array uses that layout instead, see
+ * {@link #getLayout()} and {@link #get(Position)}.
  */
 public class BoxShapeQueryResult {
     private final BoxShape box;
     private final BlockTypeId[] blocks;
+    private final int layout;
 
     /**
-     * Creates a new immutable BoxShapeQueryResult instance
+     * Creates a new immutable BoxShapeQueryResult instance using the linear layout
      * @param box The BoxShape that was queried for
      * @param blocks The blocks that matched the BoxShape
      */
     public BoxShapeQueryResult(BoxShape box, BlockTypeId[] blocks) {
+        this(box, blocks, BoxLayout.LINEAR);
+    }
+
+    /**
+     * Creates a new immutable BoxShapeQueryResult instance
+     * @param box The BoxShape that was queried for
+     * @param blocks The blocks that matched the BoxShape
+     * @param layout The layout of the blocks array
+     */
+    public BoxShapeQueryResult(BoxShape box, BlockTypeId[] blocks, BoxLayout layout) {
         this.box = box;
         this.blocks = blocks;
+        this.layout = layout.getEncoding();
     }
 
     /**
@@ -43,6 +64,70 @@ public class BoxShapeQueryResult {
         return blocks;
     }
 
+    /**
+     * Returns the layout of the array returned by {@link #getBlocks()}
+     * @return The layout of the blocks
+     */
+    public BoxLayout getLayout() {
+        return BoxLayout.get(layout);
+    }
+
+    /**
+     * Returns the block at a global position, taking the layout into account
+     * @param p A Position that is within the bounds of the box shape
+     * @return The block at position p
+     */
+    public BlockTypeId get(Position p) {
+        Box b = box.getBox();
+        Position from = b.getFrom();
+        return blocks[getLayout().index(b.getSize(), p.getX() - from.getX(), p.getY() - from.getY(), p.getZ() - from.getZ())];
+    }
+
+    /**
+     * Returns a sequential stream of the indexes of {@link #getBlocks()}.
+     * For other layouts than the linear layout this includes the indexes
+     * of padding elements, which are null.
+     * @return The stream of array indexes
+     */
+    public IntStream indexStream() {
+        if(layout != BoxLayout.LINEAR_ENCODING) return IntStream.range(0, blocks.length);
+        return box.getBox().indexStream();
+    }
+
+    /**
+     * Returns a parallel stream of the indexes of {@link #getBlocks()}. The
+     * stream splits the array into contiguous slices, so that counting or
+     * filtering the blocks of a large query can use all cores:
+     * <pre>
+     *     BlockTypeId[] blocks = result.getBlocks();
+     *     long stones = result.parallelIndexStream().filter(i -&gt; blocks[i].equals(stone)).count();
+     * </pre>
+     * For other layouts than the linear layout this includes the indexes
+     * of padding elements, which are null.
+     * @return The parallel stream of array indexes
+     */
+    public IntStream parallelIndexStream() {
+        if(layout != BoxLayout.LINEAR_ENCODING) return IntStream.range(0, blocks.length).parallel();
+        return box.getBox().parallelIndexStream();
+    }
+
+    /**
+     * Returns a parallel stream of contiguous slices of {@link #getBlocks()}.
+     * The array is split into a few slices per worker of the common fork/join
+     * pool, so that each worker can scan its own part of the array without
+     * any per block overhead, e.g. to build partial histograms that are
+     * merged afterwards.
+     * This requires the linear layout.
+     * @return The parallel stream of slices
+     * @throws IllegalStateException if the result does not use the linear layout
+     * @see konstructs.api.Box#split(int)
+     */
+    public Stream<BoxSlice> parallelSlices() {
+        if(layout != BoxLayout.LINEAR_ENCODING)
+            throw new IllegalStateException("Slices require the linear layout, not " + getLayout());
+        return box.getBox().split(ForkJoinPool.getCommonPoolParallelism() * 4).parallelStream();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -50,6 +135,7 @@ public class BoxShapeQueryResult {
 
         BoxShapeQueryResult that = (BoxShapeQueryResult) o;
 
+        if (layout != that.layout) return false;
         if (!box.equals(that.box)) return false;
         return Arrays.equals(blocks, that.blocks);
 
@@ -59,6 +145,7 @@ public class BoxShapeQueryResult {
     public int hashCode() {
         int result = box.hashCode();
         result = 31 * result + Arrays.hashCode(blocks);
+        result = 31 * result + layout;
         return result;
     }
 
@@ -67,6 +154,7 @@ public class BoxShapeQueryResult {
         return "BoxShapeQueryResult(" +
                 "box=" + box +
                 ", blocks=" + Arrays.toString(blocks) +
+                ", layout=" + getLayout() +
                 ')';
     }
 }
@@ -0,0 +1,114 @@
+package konstructs.api.messages;
+
+import konstructs.api.BlockTypeId;
+import konstructs.api.BoxLayout;
+import konstructs.api.BoxShape;
+import konstructs.api.Position;
+import konstructs.api.RunLengthBlockArray;
+
+/**
+ * BoxShapeQueryRunLengthResult is a message received as a response to a
+ * {@link BoxShapeQuery} message that requested the
+ * {@link konstructs.api.BlockArrayEncoding#RUN_LENGTH run length encoding}. It
+ * contains the same blocks as a {@link BoxShapeQueryResult} in the linear layout,
+ * but as a {@link RunLengthBlockArray}, which is very small for sparse or layered
+ * regions.
+ */
+public class BoxShapeQueryRunLengthResult {
+    private final BoxShape box;
+    private final RunLengthBlockArray blocks;
+
+    /**
+     * Creates a new immutable BoxShapeQueryRunLengthResult instance
+     * @param box The BoxShape that was queried for
+     * @param blocks The blocks that matched the BoxShape
+     */
+    public BoxShapeQueryRunLengthResult(BoxShape box, RunLengthBlockArray blocks) {
+        this.box = box;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Creates a new immutable BoxShapeQueryRunLengthResult by encoding the
+     * blocks of a BoxShapeQueryResult. The result must use the linear layout.
+     * @param result The result to encode
+     */
+    public BoxShapeQueryRunLengthResult(BoxShapeQueryResult result) {
+        this(result.getBox(), encode(result));
+    }
+
+    private static RunLengthBlockArray encode(BoxShapeQueryResult result) {
+        if(!result.getLayout().equals(BoxLayout.LINEAR))
+            throw new IllegalArgumentException("Only the linear layout can be run length encoded, not " + result.getLayout());
+        return new RunLengthBlockArray(result.getBox().getBox().getSize(), result.getBlocks());
+    }
+
+    /**
+     * Returns the BoxShape that was queried
+     * @return The BoxShape
+     */
+    public BoxShape getBox() {
+        return box;
+    }
+
+    /**
+     * Run length encoded array of blocks that matched the BoxShape queried for
+     * @return The matched blocks
+     */
+    public RunLengthBlockArray getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns the block at a global position
+     * @param p A Position that is within the bounds of the box shape
+     * @return The block at position p
+     */
+    public BlockTypeId get(Position p) {
+        return box.getBox().get(p, blocks);
+    }
+
+    /**
+     * Returns the block at a position local to the from corner of the box
+     * @param p A Position that is relative to the from corner of the box
+     * @return The block at position p
+     */
+    public BlockTypeId getLocal(Position p) {
+        return blocks.getLocal(p);
+    }
+
+    /**
+     * Decode the blocks into a BoxShapeQueryResult
+     * @return A new BoxShapeQueryResult with one BlockTypeId per block
+     */
+    public BoxShapeQueryResult toBoxShapeQueryResult() {
+        return new BoxShapeQueryResult(box, blocks.toArray());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BoxShapeQueryRunLengthResult that = (BoxShapeQueryRunLengthResult) o;
+
+        if (!box.equals(that.box)) return false;
+        return blocks.equals(that.blocks);
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = box.hashCode();
+        result = 31 * result + blocks.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BoxShapeQueryRunLengthResult(" +
+                "box=" + box +
+                ", blocks=" + blocks +
+                ')';
+    }
+}
@@ -2,19 +2,35 @@ package konstructs.api.messages;
 
 import konstructs.api.BlockFilter;
 import konstructs.api.BlockTypeId;
+import konstructs.api.Box;
 import konstructs.api.Position;
+import konstructs.api.PositionLongMap;
+import konstructs.api.RunLengthBlockArray;
 
 import java.util.Map;
 
 /**
  * ReplaceBlocks is a message  that replaces a set of positions with BlockTypeIds
  * if the block to be replaced matches a given filter.
+ * <p>
+ *     The blocks can be given either as a Position to BlockTypeId map, as a
+ *     {@link PositionLongMap} or as a box with a {@link RunLengthBlockArray}.
+ *     The packed map does not allocate any objects per block and should be
+ *     preferred for large scattered edits, while the run length encoded form
+ *     only costs a few bytes per row for bulk edits such as filling a box with
+ *     stone. Null blocks of the run length encoded form are not replaced. All
+ *     forms can always be read using {@link #getBlocks()} and
+ *     {@link #getPackedBlocks()}, converting if required.
+ * </p>
  * @see konstructs.api.BlockTypeId
  * @see konstructs.api.BlockFilterFactory
  */
 public class ReplaceBlocks {
     private final BlockFilter filter;
     private final Map<Position, BlockTypeId> blocks;
+    private final PositionLongMap<BlockTypeId> packedBlocks;
+    private final Box box;
+    private final RunLengthBlockArray runLengthBlocks;
 
     /**
      * Construct an immutable ReplaceBlocks message
@@ -25,6 +41,40 @@ public class ReplaceBlocks {
     public ReplaceBlocks(BlockFilter filter, Map<Position, BlockTypeId> blocks) {
         this.filter = filter;
         this.blocks = blocks;
+        this.packedBlocks = null;
+        this.box = null;
+        this.runLengthBlocks = null;
+    }
+
+    /**
+     * Construct an immutable ReplaceBlocks message
+     * @param filter The filter that must match any block to be replaced
+     * @param blocks The mapping between the packed Positions and the BlockTypeIds
+     *               to be replaced
+     */
+    public ReplaceBlocks(BlockFilter filter, PositionLongMap<BlockTypeId> blocks) {
+        this.filter = filter;
+        this.blocks = null;
+        this.packedBlocks = blocks;
+        this.box = null;
+        this.runLengthBlocks = null;
+    }
+
+    /**
+     * Construct an immutable ReplaceBlocks message
+     * @param filter The filter that must match any block to be replaced
+     * @param box The box of the blocks to be replaced
+     * @param blocks The run length encoded BlockTypeIds of the box to be replaced,
+     *               null blocks are not replaced
+     */
+    public ReplaceBlocks(BlockFilter filter, Box box, RunLengthBlockArray blocks) {
+        if(!box.getSize().equals(blocks.getSize()))
+            throw new IllegalArgumentException("Size of blocks " + blocks.getSize() + " does not match " + box);
+        this.filter = filter;
+        this.blocks = null;
+        this.packedBlocks = null;
+        this.box = box;
+        this.runLengthBlocks = blocks;
     }
 
     /**
@@ -37,11 +87,66 @@ public class ReplaceBlocks {
 
     /**
      * Get the mapping between the Positions and the BlockTypeIds
-     * to be replaced
+     * to be replaced. If this message was created with a {@link PositionLongMap}
+     * or a {@link RunLengthBlockArray} a new map is created on each call.
      * @return The Position and BlockTypeId mapping
      */
     public Map<Position, BlockTypeId> getBlocks() {
-        return blocks;
+        if(blocks != null) {
+            return blocks;
+        } else {
+            return getPackedBlocks().toMap();
+        }
+    }
+
+    /**
+     * Get the mapping between the packed Positions and the BlockTypeIds
+     * to be replaced. If this message was created with a Position map
+     * or a {@link RunLengthBlockArray} a new map is created on each call.
+     * @return The packed Position and BlockTypeId mapping
+     * @throws IllegalArgumentException if any position can not be packed
+     */
+    public PositionLongMap<BlockTypeId> getPackedBlocks() {
+        if(packedBlocks != null) {
+            return packedBlocks;
+        } else if(runLengthBlocks != null) {
+            return runLengthBlocks.getAsPackedMap(box.getFrom());
+        } else {
+            return PositionLongMap.fromMap(blocks);
+        }
+    }
+
+    /**
+     * Get the box of the run length encoded blocks
+     * @return The box, or null if this message was not created with a {@link RunLengthBlockArray}
+     */
+    public Box getBox() {
+        return box;
+    }
+
+    /**
+     * Get the run length encoded blocks to be replaced
+     * @return The blocks, or null if this message was not created with a {@link RunLengthBlockArray}
+     * @see #getBox()
+     */
+    public RunLengthBlockArray getRunLengthBlocks() {
+        return runLengthBlocks;
+    }
+
+    /**
+     * Check whether the blocks of this message are stored in packed form
+     * @return True if the blocks are stored as a {@link PositionLongMap}
+     */
+    public boolean isPacked() {
+        return packedBlocks != null;
+    }
+
+    /**
+     * Check whether the blocks of this message are stored in run length encoded form
+     * @return True if the blocks are stored as a {@link RunLengthBlockArray}
+     */
+    public boolean isRunLength() {
+        return runLengthBlocks != null;
     }
 
     @Override
@@ -52,22 +157,76 @@ public class ReplaceBlocks {
         ReplaceBlocks that = (ReplaceBlocks) o;
 
         if (!filter.equals(that.filter)) return false;
-        return blocks.equals(that.blocks);
+        if (blocks != null && that.blocks != null) return blocks.equals(that.blocks);
+        if (packedBlocks != null && that.packedBlocks != null) return packedBlocks.equals(that.packedBlocks);
+        if (runLengthBlocks != null && that.runLengthBlocks != null
+                && box.equals(that.box) && runLengthBlocks.equals(that.runLengthBlocks)) return true;
+        if (blocks != null) return that.equalsMap(blocks);
+        if (that.blocks != null) return equalsMap(that.blocks);
+        return getPackedBlocks().equals(that.getPackedBlocks());
 
     }
 
+    /* Compare the blocks of this message with a Position map, without converting the map */
+    private boolean equalsMap(Map<Position, BlockTypeId> map) {
+        return getPackedBlocks().equalsMap(map);
+    }
+
     @Override
     public int hashCode() {
         int result = filter.hashCode();
-        result = 31 * result + blocks.hashCode();
+        result = 31 * result + blocksHashCode();
         return result;
     }
 
+    /*
+     * The hash of the blocks is the sum of the hash of each BlockTypeId multiplied by
+     * the hash of its position plus one. Since positions along the z axis differ by one
+     * in hash, the sum of a run of blocks can be calculated without expanding it.
+     */
+    private int blocksHashCode() {
+        if(blocks != null) {
+            int result = 0;
+            for(Map.Entry<Position, BlockTypeId> e: blocks.entrySet()) {
+                if(e.getValue() != null) result += e.getValue().hashCode() * (e.getKey().hashCode() + 1);
+            }
+            return result;
+        }
+        final int[] result = new int[1];
+        if(packedBlocks != null) {
+            packedBlocks.forEach(new PositionLongMap.Visitor<BlockTypeId>() {
+                @Override
+                public void visit(long p, BlockTypeId type) {
+                    int hash = Position.hashCode(Position.unpackX(p), Position.unpackY(p), Position.unpackZ(p));
+                    result[0] += type.hashCode() * (hash + 1);
+                }
+            });
+            return result[0];
+        }
+        final Position from = box.getFrom();
+        final int sizeY = runLengthBlocks.getSize().getY();
+        final int sizeZ = runLengthBlocks.getSize().getZ();
+        runLengthBlocks.forEachRun(new RunLengthBlockArray.RunVisitor() {
+            @Override
+            public void visit(int start, int end, BlockTypeId type) {
+                if(type == null) return;
+                int row = start / sizeZ;
+                int rowHash = Position.hashCode(from.getX() + row / sizeY, from.getY() + row % sizeY, 0);
+                long length = end - start;
+                long z = from.getZ() + start % sizeZ;
+                /* Sum of (rowHash + z + i + 1) for i in [0, length) */
+                long sum = length * (rowHash + z + 1) + length * (length - 1) / 2;
+                result[0] += type.hashCode() * (int)sum;
+            }
+        });
+        return result[0];
+    }
+
     @Override
     public String toString() {
         return "ReplaceBlocks(" +
                 "filter=" + filter +
-                ", blocks=" + blocks +
+                ", blocks=" + (blocks != null ? blocks : (packedBlocks != null ? packedBlocks : runLengthBlocks)) +
                 ')';
     }
 }
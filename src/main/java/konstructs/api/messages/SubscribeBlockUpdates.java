@@ -0,0 +1,104 @@
+package konstructs.api.messages;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import konstructs.api.BlockFilter;
+import konstructs.api.BoxShape;
+
+/**
+ * SubscribeBlockUpdates is a message to receive {@link BlockUpdateEvent}s only
+ * for a set of regions, instead of for all updated blocks in the world.
+ * Optionally the updates can also be filtered on the block before and/or after
+ * the update. An event delivered to the subscriber only contains the updated
+ * blocks that are within any of the regions and match the filters, and no event
+ * is delivered if no updated block matches.
+ * <p>
+ *     A new subscription replaces any previous subscription of the sender. Send
+ *     {@link UnsubscribeBlockUpdates#MESSAGE} to end the subscription.
+ * </p>
+ * @see konstructs.utils.BlockUpdateSubscriptions
+ */
+public class SubscribeBlockUpdates {
+    private final List<BoxShape> regions;
+    private final BlockFilter before;
+    private final BlockFilter after;
+
+    /**
+     * Create a new immutable SubscribeBlockUpdates message for all updates within
+     * a set of regions
+     * @param regions The regions to receive updates for
+     */
+    public SubscribeBlockUpdates(List<BoxShape> regions) {
+        this(regions, null, null);
+    }
+
+    /**
+     * Create a new immutable SubscribeBlockUpdates message
+     * @param regions The regions to receive updates for
+     * @param before The filter that the block before the update must match, or null to match any block
+     * @param after The filter that the block after the update must match, or null to match any block
+     */
+    public SubscribeBlockUpdates(List<BoxShape> regions, BlockFilter before, BlockFilter after) {
+        if(regions == null)
+            throw new IllegalArgumentException("Regions must not be null");
+        this.regions = Collections.unmodifiableList(new ArrayList<>(regions));
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Returns the regions to receive updates for
+     * @return The regions
+     */
+    public List<BoxShape> getRegions() {
+        return regions;
+    }
+
+    /**
+     * Returns the filter that the block before an update must match
+     * @return The filter, or null if any block matches
+     */
+    public BlockFilter getBefore() {
+        return before;
+    }
+
+    /**
+     * Returns the filter that the block after an update must match
+     * @return The filter, or null if any block matches
+     */
+    public BlockFilter getAfter() {
+        return after;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SubscribeBlockUpdates that = (SubscribeBlockUpdates) o;
+
+        if (!regions.equals(that.regions)) return false;
+        if (before != null ? !before.equals(that.before) : that.before != null) return false;
+        return after != null ? after.equals(that.after) : that.after == null;
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = regions.hashCode();
+        result = 31 * result + (before != null ? before.hashCode() : 0);
+        result = 31 * result + (after != null ? after.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SubscribeBlockUpdates(" +
+                "regions=" + regions +
+                ", before=" + before +
+                ", after=" + after +
+                ')';
+    }
+}
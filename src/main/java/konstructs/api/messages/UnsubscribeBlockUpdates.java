@@ -0,0 +1,20 @@
+package konstructs.api.messages;
+
+/**
+ * This message is used to end a subscription to block updates made with
+ * {@link SubscribeBlockUpdates}.
+ */
+public class UnsubscribeBlockUpdates {
+    /**
+     * This singleton represents the message and should be sent to universe to
+     * stop receiving the block updates of a subscription.
+     */
+    public final static UnsubscribeBlockUpdates MESSAGE = new UnsubscribeBlockUpdates();
+    private UnsubscribeBlockUpdates() {
+    }
+
+    @Override
+    public String toString() {
+        return "UnsubscribeBlockUpdates";
+    }
+}
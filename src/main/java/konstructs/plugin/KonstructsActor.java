@@ -1,6 +1,10 @@
 package konstructs.plugin;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -11,10 +15,12 @@ import akka.actor.ActorRef;
 import akka.actor.UntypedActorWithStash;
 import konstructs.api.*;
 import konstructs.api.messages.*;
+import konstructs.utils.BoxQueryAssembler;
 
 public abstract class KonstructsActor extends UntypedActorWithStash {
 
     ActorRef universe;
+    private final Map<BoxShape, List<BoxQueryAssembler>> chunkedQueries = new HashMap<>();
 
     public KonstructsActor(ActorRef universe) {
         this.universe = universe;
@@ -33,7 +39,11 @@ public abstract class KonstructsActor extends UntypedActorWithStash {
 
         if (message instanceof BlockUpdateEvent) {
             BlockUpdateEvent event = (BlockUpdateEvent)message;
-            onBlockUpdateEvent(event);
+            if(prefersColumnarBlockUpdates() && event.isPackable()) {
+                onColumnarBlockUpdateEvent(event.getColumns());
+            } else {
+                onBlockUpdateEvent(event);
+            }
             return;
         }
 
@@ -45,10 +55,23 @@ public abstract class KonstructsActor extends UntypedActorWithStash {
 
         if (message instanceof BoxShapeQueryResult) {
             BoxShapeQueryResult result = (BoxShapeQueryResult)message;
+            if(!chunkedQueries.isEmpty() && onChunkedQueryResult(result)) {
+                return;
+            }
             onBoxShapeQueryResult(result);
             return;
         }
 
+        if (message instanceof BoxShapeQueryPaletteResult) {
+            onBoxShapeQueryPaletteResult((BoxShapeQueryPaletteResult)message);
+            return;
+        }
+
+        if (message instanceof BoxShapeQueryRunLengthResult) {
+            onBoxShapeQueryRunLengthResult((BoxShapeQueryRunLengthResult)message);
+            return;
+        }
+
         if (message instanceof GlobalConfig) {
             GlobalConfig config = (GlobalConfig)message;
             onGlobalConfig(config);
@@ -105,6 +128,34 @@ public abstract class KonstructsActor extends UntypedActorWithStash {
         unhandled(result);
     }
 
+    /**
+     * This function is called when we receive a BoxShapeQueryPaletteResult,
+     * i.e. the result of a query sent with {@link #boxShapeQueryPalette(BoxShape)}
+     * @param result The BoxShapeQueryPaletteResult message received
+     */
+    public void onBoxShapeQueryPaletteResult(BoxShapeQueryPaletteResult result) {
+        unhandled(result);
+    }
+
+    /**
+     * This function is called when we receive a BoxShapeQueryRunLengthResult,
+     * i.e. the result of a query sent with {@link #boxShapeQueryRunLength(BoxShape)}
+     * @param result The BoxShapeQueryRunLengthResult message received
+     */
+    public void onBoxShapeQueryRunLengthResult(BoxShapeQueryRunLengthResult result) {
+        unhandled(result);
+    }
+
+
+    /**
+     * This function is called for each chunk of a query sent with
+     * {@link #boxShapeQueryChunked(BoxShape, int)} as soon as the chunk
+     * is received. It can be overridden to start processing a large query
+     * before all of it has been received. By default it does nothing.
+     * @param result The result for one chunk of the query
+     */
+    public void onBoxShapeQueryChunkResult(BoxShapeQueryResult result) {
+    }
 
     /**
      * Called when a block is updated/created
@@ -114,6 +165,29 @@ public abstract class KonstructsActor extends UntypedActorWithStash {
         unhandled(event);
     }
 
+    /**
+     * Override to return true to receive block updates as columns in
+     * {@link #onColumnarBlockUpdateEvent(BlockUpdateColumns)} instead of
+     * {@link #onBlockUpdateEvent(BlockUpdateEvent)}. Columns can only hold packed
+     * positions, so events with positions that can not be packed (see
+     * {@link BlockUpdateEvent#isPackable()}) are still received in
+     * {@link #onBlockUpdateEvent(BlockUpdateEvent)}.
+     * @return True if block updates should be received as columns
+     */
+    public boolean prefersColumnarBlockUpdates() {
+        return false;
+    }
+
+    /**
+     * Called when blocks are updated/created, if
+     * {@link #prefersColumnarBlockUpdates()} returns true and all positions of
+     * the event can be packed
+     * @param columns The updated blocks
+     */
+    public void onColumnarBlockUpdateEvent(BlockUpdateColumns columns) {
+        unhandled(columns);
+    }
+
     /**
      * This function is called when we receive a GlobalConfig message.
      * @param config The GlobalConfig received
@@ -177,6 +251,131 @@ public abstract class KonstructsActor extends UntypedActorWithStash {
         universe.tell(new BoxShapeQuery(box), getSelf());
     }
 
+    /** Query for a box of blocks with a given layout of the result
+     *  @param box The box to query for
+     *  @param layout The layout of the blocks array of the result
+     *  @see BoxLayout
+     */
+    public void boxShapeQuery(BoxShape box, BoxLayout layout) {
+        universe.tell(new BoxShapeQuery(box, layout), getSelf());
+    }
+
+    /** Query for a box of blocks with a palette encoded result. The result is
+     *  delivered to {@link #onBoxShapeQueryPaletteResult(BoxShapeQueryPaletteResult)}.
+     *  @param box The box to query for
+     *  @see PaletteBlockArray
+     */
+    public void boxShapeQueryPalette(BoxShape box) {
+        universe.tell(new BoxShapeQuery(box, BoxLayout.LINEAR, BlockArrayEncoding.PALETTE), getSelf());
+    }
+
+    /** Query for a box of blocks with a run length encoded result. The result is
+     *  delivered to {@link #onBoxShapeQueryRunLengthResult(BoxShapeQueryRunLengthResult)}.
+     *  @param box The box to query for
+     *  @see RunLengthBlockArray
+     */
+    public void boxShapeQueryRunLength(BoxShape box) {
+        universe.tell(new BoxShapeQuery(box, BoxLayout.LINEAR, BlockArrayEncoding.RUN_LENGTH), getSelf());
+    }
+
+    /**
+     * Query for a box of blocks, split into one query per chunk of the server.
+     * @param box The box to query for
+     * @see #boxShapeQueryChunked(BoxShape, int)
+     */
+    public void boxShapeQueryChunked(BoxShape box) {
+        boxShapeQueryChunked(box, Box.CHUNK_SIZE);
+    }
+
+    /**
+     * Query for a box of blocks, split into one query per chunk aligned sub box.
+     * This lets the server answer the chunks in parallel. Each chunk is delivered
+     * to {@link #onBoxShapeQueryChunkResult(BoxShapeQueryResult)} as soon as it is
+     * received, and when all chunks have been received, the result for the whole
+     * box is delivered to {@link #onBoxShapeQueryResult(BoxShapeQueryResult)}, just
+     * as if {@link #boxShapeQuery(BoxShape)} was used.
+     * <p>
+     * Results carry no id of the query they answer, so they are matched to the
+     * chunks by their box and layout only. While a chunked query is in flight, a
+     * result of a plain {@link #boxShapeQuery(BoxShape)} for a box equal to one of
+     * its chunks, in the linear layout, is taken as that chunk and is not delivered
+     * on its own. Avoid mixing plain queries for chunk aligned boxes with chunked
+     * queries over the same area.
+     * </p>
+     * @param box The box to query for
+     * @param chunkSize The size of the chunks to split the query into
+     * @see BoxQueryAssembler
+     */
+    public void boxShapeQueryChunked(BoxShape box, int chunkSize) {
+        BoxQueryAssembler assembler = new BoxQueryAssembler(box, chunkSize);
+        if(assembler.isComplete()) {
+            getSelf().tell(assembler.getResult(), getSelf());
+            return;
+        }
+        for(BoxShapeQuery query: assembler.getQueries()) {
+            List<BoxQueryAssembler> assemblers = chunkedQueries.get(query.getBox());
+            if(assemblers == null) {
+                assemblers = new ArrayList<>(1);
+                chunkedQueries.put(query.getBox(), assemblers);
+            }
+            assemblers.add(assembler);
+            universe.tell(query, getSelf());
+        }
+    }
+
+    private boolean onChunkedQueryResult(BoxShapeQueryResult result) {
+        List<BoxQueryAssembler> assemblers = chunkedQueries.get(result.getBox());
+        if(assemblers == null) return false;
+        BoxQueryAssembler assembler = null;
+        for(Iterator<BoxQueryAssembler> i = assemblers.iterator(); i.hasNext();) {
+            BoxQueryAssembler candidate = i.next();
+            if(candidate.accept(result)) {
+                i.remove();
+                assembler = candidate;
+                break;
+            }
+        }
+        /* E.g. a result of a plain query in another layout for the same box */
+        if(assembler == null) return false;
+        if(assemblers.isEmpty()) {
+            chunkedQueries.remove(result.getBox());
+        }
+        onBoxShapeQueryChunkResult(result);
+        if(assembler.isComplete()) {
+            onBoxShapeQueryResult(assembler.getResult());
+        }
+        return true;
+    }
+
+    /**
+     * Subscribe to block updates within a set of regions. Only the updated blocks
+     * within the regions are received, see {@link SubscribeBlockUpdates}.
+     * @param regions The regions to receive block updates for
+     */
+    public void subscribeBlockUpdates(List<BoxShape> regions) {
+        universe.tell(new SubscribeBlockUpdates(regions), getSelf());
+    }
+
+    /**
+     * Subscribe to block updates within a set of regions, where the blocks before and
+     * after the update match filters. Only the matching updated blocks are received,
+     * see {@link SubscribeBlockUpdates}.
+     * @param regions The regions to receive block updates for
+     * @param before The filter for the blocks before the updates, or null to match any block
+     * @param after The filter for the blocks after the updates, or null to match any block
+     */
+    public void subscribeBlockUpdates(List<BoxShape> regions, BlockFilter before, BlockFilter after) {
+        universe.tell(new SubscribeBlockUpdates(regions, before, after), getSelf());
+    }
+
+    /**
+     * End the subscription to block updates made with
+     * {@link #subscribeBlockUpdates(List, BlockFilter, BlockFilter)}
+     */
+    public void unsubscribeBlockUpdates() {
+        universe.tell(UnsubscribeBlockUpdates.MESSAGE, getSelf());
+    }
+
     /**
      * Replace a block that matches a filter
      * As a response the plugin will receive the {@link ReplaceBlockResult} message.
@@ -198,6 +397,27 @@ public abstract class KonstructsActor extends UntypedActorWithStash {
         getUniverse().tell(new ReplaceBlocks(filter, blocks), getSelf());
     }
 
+    /**
+     * Replace all blocks that matches a filter with blocks from a
+     * packed position to BlockTypeId mapping
+     * @param filter The filter to be matched for each block to be replaced
+     * @param blocks The blocks to replace with
+     */
+    public void replaceBlocks(BlockFilter filter, PositionLongMap<BlockTypeId> blocks) {
+        getUniverse().tell(new ReplaceBlocks(filter, blocks), getSelf());
+    }
+
+    /**
+     * Replace all blocks of a box that matches a filter with run length
+     * encoded blocks, e.g. to fill the box with a single block type
+     * @param filter The filter to be matched for each block to be replaced
+     * @param box The box of the blocks to replace
+     * @param blocks The blocks to replace with, null blocks are not replaced
+     */
+    public void replaceBlocks(BlockFilter filter, Box box, RunLengthBlockArray blocks) {
+        getUniverse().tell(new ReplaceBlocks(filter, box, blocks), getSelf());
+    }
+
     /**
      * Replace any block type at a given position with a block of
      * VACUUM.  This can be seen as a way to "remove" blocks.
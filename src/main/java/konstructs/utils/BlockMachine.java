@@ -8,6 +8,7 @@ import java.util.Stack;
 import konstructs.api.Direction;
 import konstructs.api.Matrix;
 import konstructs.api.Position;
+import konstructs.api.PositionLongMap;
 import konstructs.api.BlockTypeId;
 
 /**
@@ -337,9 +338,77 @@ public final class BlockMachine {
      */
     public Map<Position, BlockTypeId> interpret(String program, Position initPos, Direction initDir, int initRadius,
                                                 int initStep, int initBrush, int imperfectionFactor) {
+        final Map<Position, BlockTypeId> blocks = new HashMap<>();
+        interpret(program, initPos, initDir, initRadius, initStep, initBrush, imperfectionFactor, new Blocks() {
+            @Override
+            public boolean contains(Position position) {
+                return blocks.containsKey(position);
+            }
+
+            @Override
+            public void put(int x, int y, int z, BlockTypeId type) {
+                blocks.put(new Position(x, y, z), type);
+            }
+        });
+        return blocks;
+    }
+
+    /**
+     * Interpret a program and generate a packed Position to BlockTypeId map
+     * based on the alphabet of this block machine. This does not allocate any
+     * objects per block and should be preferred for large programs.
+     * @param program The program to be intepreted
+     * @param initPos The starting position for the program
+     * @return The result of the program as a packed Position to BlockTypeId map
+     * @see #interpret(String, Position)
+     */
+    public PositionLongMap<BlockTypeId> interpretPacked(String program, Position initPos) {
+        return interpretPacked(program, initPos, Direction.UP, 0, 1, CUBE, 10);
+    }
+
+    /**
+     * Interpret a program and generate a packed Position to BlockTypeId map
+     * based on the alphabet of this block machine. This does not allocate any
+     * objects per block and should be preferred for large programs.
+     * @param program The program to be intepreted
+     * @param initPos The starting position for the program
+     * @param initDir The starting direction of the program execution
+     * @param initRadius The initial (and minimum) radius of the brush
+     * @param initStep The initial (and minimal) stepping distance between block placements
+     * @param initBrush The initial brush to use {@link #CUBE} or {@link #SPHERE}
+     * @param imperfectionFactor The imperfection to be applied. One block per number given here is
+     *                           randomly selected to be excluded from the brush's outer layers
+     * @return The result of the program as a packed Position to BlockTypeId map
+     * @see #interpret(String, Position, Direction, int, int, int, int)
+     */
+    public PositionLongMap<BlockTypeId> interpretPacked(String program, Position initPos, Direction initDir,
+                                                        int initRadius, int initStep, int initBrush,
+                                                        int imperfectionFactor) {
+        final PositionLongMap<BlockTypeId> blocks = new PositionLongMap<>();
+        interpret(program, initPos, initDir, initRadius, initStep, initBrush, imperfectionFactor, new Blocks() {
+            @Override
+            public boolean contains(Position position) {
+                return blocks.containsKey(position);
+            }
+
+            @Override
+            public void put(int x, int y, int z, BlockTypeId type) {
+                blocks.put(x, y, z, type);
+            }
+        });
+        return blocks;
+    }
+
+    /* The blocks placed by a program, so that it can be interpreted into either kind of map */
+    private interface Blocks {
+        boolean contains(Position position);
+        void put(int x, int y, int z, BlockTypeId type);
+    }
+
+    private void interpret(String program, Position initPos, Direction initDir, int initRadius, int initStep,
+                           int initBrush, int imperfectionFactor, Blocks blocks) {
         Random random = new Random();
         Stack<StackData> stack = new Stack<>();
-        Map<Position, BlockTypeId> blocks = new HashMap<>();
 
         Position pos = initPos;
         Matrix dir = getDirectionMatrix(initDir);
@@ -421,7 +490,7 @@ public final class BlockMachine {
                     pos = pos.add(dir.getAdg().multiply(step));
                     break;
                 default:
-                    if(overwrite || !blocks.containsKey(pos)) {
+                    if(overwrite || !blocks.contains(pos)) {
                         BlockTypeId type = alphabet.get(c);
                         if(type == null)
                             type = BlockTypeId.VACUUM;
@@ -441,8 +510,7 @@ public final class BlockMachine {
                                                 && random.nextInt(imperfection) == 0)
                                             continue;
                                     }
-                                    Position offset = new Position(x, y, z);
-                                    blocks.put(pos.add(offset), type);
+                                    blocks.put(pos.getX() + x, pos.getY() + y, pos.getZ() + z, type);
                                 }
                             }
                         }
@@ -451,7 +519,6 @@ public final class BlockMachine {
                     break;
             }
         }
-        return blocks;
     }
 
 
@@ -0,0 +1,313 @@
+package konstructs.utils;
+
+import konstructs.api.BlockTypeId;
+import konstructs.api.Box;
+import konstructs.api.BoxLayout;
+import konstructs.api.Direction;
+import konstructs.api.Matrix;
+import konstructs.api.Orientation;
+import konstructs.api.Position;
+import konstructs.api.PositionLongMap;
+import konstructs.api.Rotation;
+import konstructs.api.messages.BoxShapeQueryResult;
+
+/**
+ * BlockTransform rotates and mirrors block data in bulk. It is useful when a
+ * structure that has been captured, e.g. with a box shape query, should be
+ * placed back into the world with another orientation:
+ * <pre>
+ *     Box rotated = BlockTransform.transform(box, Orientation.get(Direction.UP, Rotation.LEFT));
+ *     BlockTypeId[] data = BlockTransform.transform(box, blocks,
+ *         Orientation.get(Direction.UP, Rotation.LEFT), new BlockTypeId[rotated.getNumberOfBlocks()]);
+ * </pre>
+ * <p>
+ *     A transformation is any matrix that only swaps and flips axes, i.e. each row and
+ *     each column has exactly one element that is 1 or -1. This covers the 24 orientations
+ *     (see {@link Orientation#getFacePointingInRotationMatrix()}) as well as mirroring,
+ *     e.g. {@link #MIRROR_X}. The transformed box has the same from corner as the original
+ *     box, while its size is the transformed size of the original box. The data is copied
+ *     with precomputed index strides, so no matrix multiplication is done per block.
+ * </p>
+ * <p>
+ *     Note that only the positions of the blocks are transformed, the blocks themselves
+ *     (e.g. their orientation) are not changed.
+ * </p>
+ */
+public final class BlockTransform {
+    /**
+     * Mirror along the x axis (left becomes right)
+     */
+    public static final Matrix MIRROR_X = new Matrix(
+            -1, +0, +0,
+            +0, +1, +0,
+            +0, +0, +1
+    );
+
+    /**
+     * Mirror along the y axis (up becomes down)
+     */
+    public static final Matrix MIRROR_Y = new Matrix(
+            +1, +0, +0,
+            +0, -1, +0,
+            +0, +0, +1
+    );
+
+    /**
+     * Mirror along the z axis (forward becomes backward)
+     */
+    public static final Matrix MIRROR_Z = new Matrix(
+            +1, +0, +0,
+            +0, +1, +0,
+            +0, +0, -1
+    );
+
+    private BlockTransform() {
+    }
+
+    /* Checks that the matrix is a signed permutation */
+    private static int[] rows(Matrix m) {
+        int[] rows = {
+                m.getA(), m.getB(), m.getC(),
+                m.getD(), m.getE(), m.getF(),
+                m.getG(), m.getH(), m.getI()
+        };
+        for(int i = 0; i < 3; i++) {
+            int row = 0;
+            int column = 0;
+            for(int j = 0; j < 3; j++) {
+                int r = rows[i * 3 + j];
+                int c = rows[j * 3 + i];
+                if(r < -1 || r > 1 || c < -1 || c > 1)
+                    throw new IllegalArgumentException("Not a rotation or mirroring matrix: " + m);
+                row += Math.abs(r);
+                column += Math.abs(c);
+            }
+            if(row != 1 || column != 1)
+                throw new IllegalArgumentException("Not a rotation or mirroring matrix: " + m);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the box of a transformed box. It has the same from corner as
+     * the original box.
+     * @param box The box to transform
+     * @param matrix The transformation
+     * @return The transformed box
+     */
+    public static Box transform(Box box, Matrix matrix) {
+        rows(matrix);
+        Position size = matrix.multiply(box.getSize());
+        return Box.createWithSize(box.getFrom(),
+                new Position(Math.abs(size.getX()), Math.abs(size.getY()), Math.abs(size.getZ())));
+    }
+
+    /**
+     * Returns the box of a box rotated by an orientation
+     * @param box The box to transform
+     * @param orientation The orientation to rotate the box to
+     * @return The transformed box
+     */
+    public static Box transform(Box box, Orientation orientation) {
+        return transform(box, orientation.getFacePointingInRotationMatrix());
+    }
+
+    /**
+     * Returns the box of a box rotated by a rotation
+     * @param box The box to transform
+     * @param rotation The rotation
+     * @return The transformed box
+     */
+    public static Box transform(Box box, Rotation rotation) {
+        return transform(box, Orientation.get(Direction.UP, rotation));
+    }
+
+    /*
+     * Computes the strides of the destination array for a step in each dimension of the source
+     * array, followed by the index in the destination of the first element of the source.
+     */
+    private static int[] strides(Box box, Matrix matrix) {
+        int[] m = rows(matrix);
+        Position size = box.getSize();
+        int[] src = { size.getX(), size.getY(), size.getZ() };
+        int[] dst = new int[3];
+        for(int i = 0; i < 3; i++) {
+            for(int j = 0; j < 3; j++) {
+                if(m[i * 3 + j] != 0) dst[i] = src[j];
+            }
+        }
+        int[] dstStride = { dst[1] * dst[2], dst[2], 1 };
+        int[] result = new int[4];
+        for(int i = 0; i < 3; i++) {
+            for(int j = 0; j < 3; j++) {
+                int e = m[i * 3 + j];
+                if(e != 0) {
+                    result[j] = e * dstStride[i];
+                    if(e < 0) result[3] += (src[j] - 1) * dstStride[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Transform the data array of a box into the data array of the transformed box
+     * @param box The box of the data
+     * @param src The data of the box, in the linear layout
+     * @param matrix The transformation
+     * @param dst The array to write the transformed data to, of the size of the transformed box
+     * @param <T> The type of the array data, e.g. BlockTypeId
+     * @return dst
+     * @see #transform(Box, Matrix)
+     */
+    public static <T> T[] transform(Box box, T[] src, Matrix matrix, T[] dst) {
+        int[] s = strides(box, matrix);
+        if(dst.length < box.getNumberOfBlocks())
+            throw new IllegalArgumentException("Destination array is too small");
+        Position size = box.getSize();
+        int i = 0;
+        int xIndex = s[3];
+        for(int x = 0; x < size.getX(); x++, xIndex += s[0]) {
+            int yIndex = xIndex;
+            for(int y = 0; y < size.getY(); y++, yIndex += s[1]) {
+                int index = yIndex;
+                for(int z = 0; z < size.getZ(); z++, index += s[2]) {
+                    dst[index] = src[i++];
+                }
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Transform the data array of a box into the data array of the transformed box
+     * @param box The box of the data
+     * @param src The data of the box, in the linear layout
+     * @param matrix The transformation
+     * @param dst The array to write the transformed data to, of the size of the transformed box
+     * @return dst
+     * @see #transform(Box, Matrix)
+     */
+    public static int[] transform(Box box, int[] src, Matrix matrix, int[] dst) {
+        int[] s = strides(box, matrix);
+        if(dst.length < box.getNumberOfBlocks())
+            throw new IllegalArgumentException("Destination array is too small");
+        Position size = box.getSize();
+        int i = 0;
+        int xIndex = s[3];
+        for(int x = 0; x < size.getX(); x++, xIndex += s[0]) {
+            int yIndex = xIndex;
+            for(int y = 0; y < size.getY(); y++, yIndex += s[1]) {
+                int index = yIndex;
+                for(int z = 0; z < size.getZ(); z++, index += s[2]) {
+                    dst[index] = src[i++];
+                }
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Rotate the data array of a box by an orientation
+     * @param box The box of the data
+     * @param src The data of the box, in the linear layout
+     * @param orientation The orientation to rotate the data to
+     * @param dst The array to write the rotated data to, of the size of the transformed box
+     * @param <T> The type of the array data, e.g. BlockTypeId
+     * @return dst
+     */
+    public static <T> T[] transform(Box box, T[] src, Orientation orientation, T[] dst) {
+        return transform(box, src, orientation.getFacePointingInRotationMatrix(), dst);
+    }
+
+    /**
+     * Rotate the data array of a box by an orientation
+     * @param box The box of the data
+     * @param src The data of the box, in the linear layout
+     * @param orientation The orientation to rotate the data to
+     * @param dst The array to write the rotated data to, of the size of the transformed box
+     * @return dst
+     */
+    public static int[] transform(Box box, int[] src, Orientation orientation, int[] dst) {
+        return transform(box, src, orientation.getFacePointingInRotationMatrix(), dst);
+    }
+
+    /**
+     * Rotate the data array of a box by a rotation
+     * @param box The box of the data
+     * @param src The data of the box, in the linear layout
+     * @param rotation The rotation
+     * @param dst The array to write the rotated data to, of the size of the transformed box
+     * @param <T> The type of the array data, e.g. BlockTypeId
+     * @return dst
+     */
+    public static <T> T[] transform(Box box, T[] src, Rotation rotation, T[] dst) {
+        return transform(box, src, Orientation.get(Direction.UP, rotation), dst);
+    }
+
+    /**
+     * Transform the result of a box shape query. The result must use the linear layout.
+     * @param result The result to transform
+     * @param matrix The transformation
+     * @return A new result for the transformed box with the transformed blocks
+     */
+    public static BoxShapeQueryResult transform(BoxShapeQueryResult result, Matrix matrix) {
+        if(!result.getLayout().equals(BoxLayout.LINEAR))
+            throw new IllegalArgumentException("Only the linear layout can be transformed, not " + result.getLayout());
+        Box box = result.getBox().getBox();
+        Box transformed = transform(box, matrix);
+        BlockTypeId[] blocks = transform(box, result.getBlocks(), matrix, new BlockTypeId[transformed.getNumberOfBlocks()]);
+        return new BoxShapeQueryResult(transformed, blocks);
+    }
+
+    /**
+     * Rotate the result of a box shape query. The result must use the linear layout.
+     * @param result The result to rotate
+     * @param orientation The orientation to rotate the result to
+     * @return A new result for the rotated box with the rotated blocks
+     */
+    public static BoxShapeQueryResult transform(BoxShapeQueryResult result, Orientation orientation) {
+        return transform(result, orientation.getFacePointingInRotationMatrix());
+    }
+
+    /**
+     * Transform the positions of a packed position map, e.g. the result of
+     * {@link BlockMachine#interpretPacked(String, Position)}, around a pivot
+     * position. The pivot position is not moved.
+     * @param blocks The map to transform
+     * @param pivot The position to rotate or mirror around
+     * @param matrix The transformation
+     * @param <T> The type of the values, e.g. BlockTypeId
+     * @return A new map with the transformed positions
+     */
+    public static <T> PositionLongMap<T> transform(PositionLongMap<T> blocks, Position pivot, Matrix matrix) {
+        final int[] m = rows(matrix);
+        final int px = pivot.getX(), py = pivot.getY(), pz = pivot.getZ();
+        final PositionLongMap<T> result = new PositionLongMap<>(blocks.size());
+        blocks.forEach(new PositionLongMap.Visitor<T>() {
+            @Override
+            public void visit(long position, T value) {
+                int x = Position.unpackX(position) - px;
+                int y = Position.unpackY(position) - py;
+                int z = Position.unpackZ(position) - pz;
+                result.put(px + m[0] * x + m[1] * y + m[2] * z,
+                        py + m[3] * x + m[4] * y + m[5] * z,
+                        pz + m[6] * x + m[7] * y + m[8] * z,
+                        value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Rotate the positions of a packed position map around a pivot position
+     * @param blocks The map to rotate
+     * @param pivot The position to rotate around
+     * @param orientation The orientation to rotate the positions to
+     * @param <T> The type of the values, e.g. BlockTypeId
+     * @return A new map with the rotated positions
+     */
+    public static <T> PositionLongMap<T> transform(PositionLongMap<T> blocks, Position pivot, Orientation orientation) {
+        return transform(blocks, pivot, orientation.getFacePointingInRotationMatrix());
+    }
+}
@@ -0,0 +1,214 @@
+package konstructs.utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import konstructs.api.Block;
+import konstructs.api.BlockFilter;
+import konstructs.api.BlockFilterCache;
+import konstructs.api.BlockTypeId;
+import konstructs.api.BlockTypeTable;
+import konstructs.api.BlockUpdate;
+import konstructs.api.BlockUpdateColumns;
+import konstructs.api.BoxShape;
+import konstructs.api.CompiledBlockFilter;
+import konstructs.api.Position;
+import konstructs.api.messages.BlockUpdateEvent;
+import konstructs.api.messages.SubscribeBlockUpdates;
+
+/**
+ * BlockUpdateSubscriptions keeps track of the {@link SubscribeBlockUpdates}
+ * subscriptions of a set of subscribers, e.g. the ActorRefs of plugins, and
+ * splits the block updates of an event into the subset each subscriber asked
+ * for. The regions of all subscriptions are kept in a {@link BoxShapeIndex}
+ * and the filters are compiled for the block types of a {@link BlockTypeTable},
+ * so the cost of an event does not depend on how complex the filters are.
+ * <pre>
+ *     BlockUpdateSubscriptions&lt;ActorRef&gt; subscriptions = new BlockUpdateSubscriptions&lt;&gt;();
+ *     subscriptions.subscribe(getSender(), subscribe);
+ *     for(Map.Entry&lt;ActorRef, BlockUpdateEvent&gt; e: subscriptions.split(event, table).entrySet()) {
+ *         e.getKey().tell(e.getValue(), getSelf());
+ *     }
+ * </pre>
+ * <p>
+ *     This class is mutable and should not be shared between actors.
+ * </p>
+ * @param <T> The type of the subscribers
+ */
+public final class BlockUpdateSubscriptions<T> {
+    private final BoxShapeIndex<T> index;
+    private final Map<T, SubscribeBlockUpdates> subscriptions = new HashMap<>();
+    private final BlockFilterCache filters = new BlockFilterCache();
+
+    /**
+     * Create a new empty set of subscriptions
+     */
+    public BlockUpdateSubscriptions() {
+        this.index = new BoxShapeIndex<>();
+    }
+
+    /**
+     * Create a new empty set of subscriptions
+     * @param cellSize The size of the cells of the index of the regions
+     * @see BoxShapeIndex#BoxShapeIndex(int)
+     */
+    public BlockUpdateSubscriptions(int cellSize) {
+        this.index = new BoxShapeIndex<>(cellSize);
+    }
+
+    /**
+     * Subscribe to block updates, replacing any previous subscription of the subscriber
+     * @param subscriber The subscriber
+     * @param subscription The subscription
+     */
+    public void subscribe(T subscriber, SubscribeBlockUpdates subscription) {
+        unsubscribe(subscriber);
+        subscriptions.put(subscriber, subscription);
+        for(BoxShape region: subscription.getRegions()) {
+            index.register(region, subscriber);
+        }
+    }
+
+    /**
+     * End the subscription of a subscriber
+     * @param subscriber The subscriber
+     * @return True if the subscriber had a subscription
+     */
+    public boolean unsubscribe(T subscriber) {
+        if(subscriptions.remove(subscriber) == null) return false;
+        index.unregister(subscriber);
+        return true;
+    }
+
+    /**
+     * Returns the subscription of a subscriber
+     * @param subscriber The subscriber
+     * @return The subscription, or null if the subscriber has no subscription
+     */
+    public SubscribeBlockUpdates getSubscription(T subscriber) {
+        return subscriptions.get(subscriber);
+    }
+
+    /**
+     * Returns all subscribers
+     * @return The set of subscribers
+     */
+    public Set<T> getSubscribers() {
+        return subscriptions.keySet();
+    }
+
+    /**
+     * Check if there are no subscriptions
+     * @return True if there are no subscriptions
+     */
+    public boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    /**
+     * Split the updated blocks of an event into one event per subscriber, containing
+     * only the updates within the regions and matching the filters of that subscriber.
+     * Subscribers without any matching updates are not included. A subscriber that
+     * matches all updates receives the event itself, otherwise the events are columnar,
+     * see {@link BlockUpdateColumns}. Events with positions that can not be packed (see
+     * {@link BlockUpdateEvent#isPackable()}) are split by their Position map instead.
+     * @param event The event to split
+     * @param table The block types used to evaluate the filters
+     * @return The event of each subscriber
+     */
+    public Map<T, BlockUpdateEvent> split(BlockUpdateEvent event, BlockTypeTable table) {
+        Map<T, BlockUpdateEvent> events = new HashMap<>();
+        if(subscriptions.isEmpty()) return events;
+        if(!event.isPackable()) return splitUnpackable(event, table, events);
+        BlockUpdateColumns columns = event.getColumns();
+        int n = columns.size();
+        int[] ws = null;
+        for(Map.Entry<T, BitSet> e: index.match(columns.getPackedPositions()).entrySet()) {
+            SubscribeBlockUpdates subscription = subscriptions.get(e.getKey());
+            BitSet matching = e.getValue();
+            if(subscription.getBefore() != null || subscription.getAfter() != null) {
+                if(ws == null) ws = ws(columns, table);
+                filter(matching, columns.getBeforeTypes(), ws,
+                        subscription.getBefore() != null ? filters.compile(subscription.getBefore(), table) : null);
+                filter(matching, columns.getAfterTypes(), ws,
+                        subscription.getAfter() != null ? filters.compile(subscription.getAfter(), table) : null);
+            }
+            int matches = matching.cardinality();
+            if(matches == n) {
+                events.put(e.getKey(), event);
+            } else if(matches > 0) {
+                events.put(e.getKey(), new BlockUpdateEvent(columns.select(matching)));
+            }
+        }
+        return events;
+    }
+
+    private Map<T, BlockUpdateEvent> splitUnpackable(BlockUpdateEvent event, BlockTypeTable table,
+                                                     Map<T, BlockUpdateEvent> events) {
+        Map<Position, BlockUpdate> updates = event.getUpdatedBlocks();
+        Map<T, Map<Position, BlockUpdate>> matching = new HashMap<>();
+        for(Map.Entry<Position, BlockUpdate> e: updates.entrySet()) {
+            BlockUpdate update = e.getValue();
+            for(T subscriber: index.query(e.getKey())) {
+                SubscribeBlockUpdates subscription = subscriptions.get(subscriber);
+                if(!matches(subscription.getBefore(), update.getBefore(), table)
+                        || !matches(subscription.getAfter(), update.getAfter(), table)) continue;
+                Map<Position, BlockUpdate> owned = matching.get(subscriber);
+                if(owned == null) {
+                    owned = new HashMap<>();
+                    matching.put(subscriber, owned);
+                }
+                owned.put(e.getKey(), update);
+            }
+        }
+        for(Map.Entry<T, Map<Position, BlockUpdate>> e: matching.entrySet()) {
+            events.put(e.getKey(), e.getValue().size() == updates.size() ? event : new BlockUpdateEvent(e.getValue()));
+        }
+        return events;
+    }
+
+    /* Check a block against a filter, blocks that do not exist never match */
+    private boolean matches(BlockFilter filter, Block block, BlockTypeTable table) {
+        if(filter == null) return true;
+        return block != null && filters.compile(filter, table).matches(block.getType());
+    }
+
+    /* Map the intern ids of the block types of the columns to w-values, -1 if not in the table */
+    private static int[] ws(BlockUpdateColumns columns, BlockTypeTable table) {
+        int max = BlockUpdateColumns.NO_BLOCK;
+        for(int id: columns.getBeforeTypes()) max = Math.max(max, id);
+        for(int id: columns.getAfterTypes()) max = Math.max(max, id);
+        int[] ws = new int[max + 1];
+        Arrays.fill(ws, -2);
+        for(int[] types: new int[][] {columns.getBeforeTypes(), columns.getAfterTypes()}) {
+            for(int id: types) {
+                if(id != BlockUpdateColumns.NO_BLOCK && ws[id] == -2) {
+                    ws[id] = table.getW(BlockTypeId.fromInternId(id));
+                }
+            }
+        }
+        return ws;
+    }
+
+    /* Clear the updates whose block does not match, blocks that do not exist never match */
+    private static void filter(BitSet matching, int[] types, int[] ws, CompiledBlockFilter filter) {
+        if(filter == null) return;
+        for(int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1)) {
+            int id = types[i];
+            if(id == BlockUpdateColumns.NO_BLOCK || !filter.matches(ws[id])) {
+                matching.clear(i);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BlockUpdateSubscriptions(" +
+                "subscribers=" + subscriptions.size() +
+                ", index=" + index +
+                ')';
+    }
+}
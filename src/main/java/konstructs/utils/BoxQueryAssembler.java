@@ -0,0 +1,134 @@
+package konstructs.utils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import konstructs.api.BlockTypeId;
+import konstructs.api.Box;
+import konstructs.api.BoxLayout;
+import konstructs.api.BoxShape;
+import konstructs.api.messages.BoxShapeQuery;
+import konstructs.api.messages.BoxShapeQueryResult;
+
+/**
+ * BoxQueryAssembler splits a large box shape query into chunk aligned
+ * sub queries (see {@link Box#chunked(int)}) and reassembles the results
+ * of the sub queries into one {@link BoxShapeQueryResult} for the original
+ * box shape. The results can arrive in any order. It is used by
+ * {@link konstructs.plugin.KonstructsActor#boxShapeQueryChunked(BoxShape, int)},
+ * but can also be used directly:
+ * <pre>
+ *     BoxQueryAssembler assembler = new BoxQueryAssembler(box, Box.CHUNK_SIZE);
+ *     for(BoxShapeQuery query: assembler.getQueries()) {
+ *         universe.tell(query, getSelf());
+ *     }
+ *     // When receiving a BoxShapeQueryResult
+ *     if(assembler.accept(result) &amp;&amp; assembler.isComplete()) {
+ *         BoxShapeQueryResult whole = assembler.getResult();
+ *     }
+ * </pre>
+ * <p>
+ *     This class is mutable and should not be shared between actors.
+ * </p>
+ */
+public final class BoxQueryAssembler {
+    private final BoxShape shape;
+    private final Box box;
+    private final List<Box> parts;
+    private final Set<Box> remaining;
+    private final BlockTypeId[] blocks;
+
+    /**
+     * Create a new assembler for a box shape
+     * @param shape The box shape to query for
+     * @param chunkSize The size of the chunks to split the query into
+     */
+    public BoxQueryAssembler(BoxShape shape, int chunkSize) {
+        this.shape = shape;
+        this.box = shape.getBox();
+        this.parts = Collections.unmodifiableList(box.chunked(chunkSize));
+        this.remaining = new HashSet<>(parts);
+        this.blocks = new BlockTypeId[box.getNumberOfBlocks()];
+    }
+
+    /**
+     * Returns the box shape that is assembled
+     * @return The original box shape
+     */
+    public BoxShape getShape() {
+        return shape;
+    }
+
+    /**
+     * Returns the chunk aligned boxes that the box shape was split into
+     * @return The sub boxes
+     */
+    public List<Box> getParts() {
+        return parts;
+    }
+
+    /**
+     * Returns one query for each chunk aligned sub box
+     * @return The sub queries to send to the server
+     */
+    public BoxShapeQuery[] getQueries() {
+        BoxShapeQuery[] queries = new BoxShapeQuery[parts.size()];
+        for(int i = 0; i < queries.length; i++) {
+            queries[i] = new BoxShapeQuery(parts.get(i));
+        }
+        return queries;
+    }
+
+    /**
+     * Check if a result is the answer to one of the sub queries that is
+     * still missing. The sub queries use the linear layout, so results in
+     * any other layout are never expected.
+     * @param result The result to check
+     * @return True if the result is expected by this assembler
+     */
+    public boolean expects(BoxShapeQueryResult result) {
+        return result.getLayout() == BoxLayout.LINEAR && remaining.contains(result.getBox());
+    }
+
+    /**
+     * Copy the blocks of a sub query result into the assembled result
+     * @param result The result of one of the sub queries
+     * @return True if the result was expected and accepted, false if
+     *         it does not belong to this assembler, was already received
+     *         or is not in the linear layout
+     */
+    public boolean accept(BoxShapeQueryResult result) {
+        if(result.getLayout() != BoxLayout.LINEAR || !remaining.remove(result.getBox())) return false;
+        result.getBox().getBox().copyInto(result.getBlocks(), box, blocks);
+        return true;
+    }
+
+    /**
+     * Check if the results of all sub queries have been accepted
+     * @return True if all blocks are available
+     */
+    public boolean isComplete() {
+        return remaining.isEmpty();
+    }
+
+    /**
+     * Returns the assembled result for the original box shape
+     * @return The result, as if the box shape was queried in one query
+     */
+    public BoxShapeQueryResult getResult() {
+        if(!isComplete())
+            throw new IllegalStateException(remaining.size() + " of " + parts.size() + " parts are still missing");
+        return new BoxShapeQueryResult(shape, blocks);
+    }
+
+    @Override
+    public String toString() {
+        return "BoxQueryAssembler(" +
+                "shape=" + shape +
+                ", parts=" + parts.size() +
+                ", remaining=" + remaining.size() +
+                ')';
+    }
+}
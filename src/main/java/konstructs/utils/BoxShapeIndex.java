@@ -0,0 +1,349 @@
+package konstructs.utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import konstructs.api.BlockUpdate;
+import konstructs.api.Box;
+import konstructs.api.BoxShape;
+import konstructs.api.Position;
+import konstructs.api.PositionLongMap;
+import konstructs.api.messages.BlockUpdateEvent;
+
+/**
+ * BoxShapeIndex is a spatial index of box shapes, each registered by an owner,
+ * e.g. an ActorRef of a plugin interested in a region. The world is divided into
+ * cubic cells (by default of the size of the server chunks) and each cell keeps
+ * a list of the box shapes that overlap it. Finding the owners of a position is
+ * therefore a hash lookup of the cell followed by a check of the few box shapes
+ * of that cell, independent of the total number of registered box shapes.
+ * <pre>
+ *     BoxShapeIndex&lt;ActorRef&gt; index = new BoxShapeIndex&lt;&gt;();
+ *     index.register(new BoxAround(center, new Position(16, 16, 16)), plugin);
+ *     for(Map.Entry&lt;ActorRef, BlockUpdateEvent&gt; e: index.split(event).entrySet()) {
+ *         e.getKey().tell(e.getValue(), getSelf());
+ *     }
+ * </pre>
+ * <p>
+ *     This class is mutable and should not be shared between actors.
+ * </p>
+ * @param <T> The type of the owners
+ */
+public final class BoxShapeIndex<T> {
+    private static final class Entry<T> {
+        final int fromX, fromY, fromZ;
+        final int untilX, untilY, untilZ;
+        final Box box;
+        final T owner;
+
+        Entry(Box box, T owner) {
+            this.box = box;
+            this.owner = owner;
+            this.fromX = box.getFrom().getX();
+            this.fromY = box.getFrom().getY();
+            this.fromZ = box.getFrom().getZ();
+            this.untilX = box.getUntil().getX();
+            this.untilY = box.getUntil().getY();
+            this.untilZ = box.getUntil().getZ();
+        }
+
+        boolean contains(int x, int y, int z) {
+            return x >= fromX && x < untilX && y >= fromY && y < untilY && z >= fromZ && z < untilZ;
+        }
+    }
+
+    private final int cellSize;
+    private final PositionLongMap<List<Entry<T>>> cells = new PositionLongMap<>();
+    private final Map<T, List<Entry<T>>> owners = new HashMap<>();
+
+    /**
+     * Create a new empty index with cells of the size of a server chunk
+     * @see Box#CHUNK_SIZE
+     */
+    public BoxShapeIndex() {
+        this(Box.CHUNK_SIZE);
+    }
+
+    /**
+     * Create a new empty index
+     * @param cellSize The size of the cells in all dimensions
+     */
+    public BoxShapeIndex(int cellSize) {
+        if(cellSize < 1)
+            throw new IllegalArgumentException("Cell size must be at least 1: " + cellSize);
+        this.cellSize = cellSize;
+    }
+
+    private long cell(int x, int y, int z) {
+        return Position.pack(Math.floorDiv(x, cellSize), Math.floorDiv(y, cellSize), Math.floorDiv(z, cellSize));
+    }
+
+    /* The box shapes of the cell of a position, null if none, also for positions outside of the packed range */
+    private List<Entry<T>> entries(int x, int y, int z) {
+        int cx = Math.floorDiv(x, cellSize), cy = Math.floorDiv(y, cellSize), cz = Math.floorDiv(z, cellSize);
+        if(!Position.isPackable(cx, cy, cz)) return null;
+        return cells.get(Position.pack(cx, cy, cz));
+    }
+
+    /**
+     * Register a box shape for an owner. An owner can register any number of box shapes.
+     * @param shape The box shape
+     * @param owner The owner of the box shape
+     */
+    public void register(BoxShape shape, T owner) {
+        Box box = shape.getBox();
+        if(box.isEmpty()) return;
+        Entry<T> entry = new Entry<>(box, owner);
+        List<Entry<T>> owned = owners.get(owner);
+        if(owned == null) {
+            owned = new ArrayList<>(1);
+            owners.put(owner, owned);
+        }
+        owned.add(entry);
+        for(Box chunk: box.chunked(cellSize)) {
+            Position from = chunk.getFrom();
+            long key = cell(from.getX(), from.getY(), from.getZ());
+            List<Entry<T>> entries = cells.get(key);
+            if(entries == null) {
+                entries = new ArrayList<>(2);
+                cells.put(key, entries);
+            }
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Unregister a box shape of an owner
+     * @param shape The box shape registered
+     * @param owner The owner of the box shape
+     * @return True if the box shape was registered for the owner
+     */
+    public boolean unregister(BoxShape shape, T owner) {
+        List<Entry<T>> owned = owners.get(owner);
+        if(owned == null) return false;
+        Box box = shape.getBox();
+        for(Iterator<Entry<T>> i = owned.iterator(); i.hasNext();) {
+            Entry<T> entry = i.next();
+            if(entry.box.equals(box)) {
+                i.remove();
+                if(owned.isEmpty()) owners.remove(owner);
+                removeFromCells(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unregister all box shapes of an owner
+     * @param owner The owner
+     * @return True if the owner had any box shapes registered
+     */
+    public boolean unregister(T owner) {
+        List<Entry<T>> owned = owners.remove(owner);
+        if(owned == null) return false;
+        for(Entry<T> entry: owned) {
+            removeFromCells(entry);
+        }
+        return true;
+    }
+
+    private void removeFromCells(Entry<T> entry) {
+        for(Box chunk: entry.box.chunked(cellSize)) {
+            Position from = chunk.getFrom();
+            long key = cell(from.getX(), from.getY(), from.getZ());
+            List<Entry<T>> entries = cells.get(key);
+            if(entries == null) continue;
+            for(Iterator<Entry<T>> i = entries.iterator(); i.hasNext();) {
+                if(i.next() == entry) {
+                    i.remove();
+                    break;
+                }
+            }
+            if(entries.isEmpty()) cells.remove(key);
+        }
+    }
+
+    /**
+     * Returns all owners that are registered
+     * @return The set of owners
+     */
+    public Set<T> getOwners() {
+        return owners.keySet();
+    }
+
+    /**
+     * Check if the index has no box shapes registered
+     * @return True if no box shapes are registered
+     */
+    public boolean isEmpty() {
+        return owners.isEmpty();
+    }
+
+    /**
+     * Returns the owners of all box shapes that contain a position
+     * @param x The position in the x dimension
+     * @param y The position in the y dimension
+     * @param z The position in the z dimension
+     * @return The owners, in registration order
+     */
+    public Set<T> query(int x, int y, int z) {
+        Set<T> result = new LinkedHashSet<>();
+        List<Entry<T>> entries = entries(x, y, z);
+        if(entries != null) {
+            for(Entry<T> entry: entries) {
+                if(entry.contains(x, y, z)) result.add(entry.owner);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the owners of all box shapes that contain a position
+     * @param position The position
+     * @return The owners, in registration order
+     */
+    public Set<T> query(Position position) {
+        return query(position.getX(), position.getY(), position.getZ());
+    }
+
+    /**
+     * Returns the owners of all box shapes that contain any of a batch of positions
+     * @param positions The packed positions
+     * @return The owners
+     * @see Position#pack(int, int, int)
+     */
+    public Set<T> query(long[] positions) {
+        Set<T> result = new LinkedHashSet<>();
+        long lastCell = -1;
+        List<Entry<T>> entries = null;
+        for(long p: positions) {
+            int x = Position.unpackX(p), y = Position.unpackY(p), z = Position.unpackZ(p);
+            long c = cell(x, y, z);
+            if(c != lastCell) {
+                entries = cells.get(c);
+                lastCell = c;
+            }
+            if(entries == null) continue;
+            for(Entry<T> entry: entries) {
+                if(entry.contains(x, y, z)) result.add(entry.owner);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Match a batch of positions against the box shapes of all owners
+     * @param positions The packed positions
+     * @return For each owner with any matching position, a BitSet with the indexes
+     *         of the positions within its box shapes set
+     * @see Position#pack(int, int, int)
+     */
+    public Map<T, BitSet> match(long[] positions) {
+        Map<T, BitSet> result = new HashMap<>();
+        if(cells.isEmpty()) return result;
+        long lastCell = -1;
+        List<Entry<T>> entries = null;
+        for(int i = 0; i < positions.length; i++) {
+            long p = positions[i];
+            int x = Position.unpackX(p), y = Position.unpackY(p), z = Position.unpackZ(p);
+            long c = cell(x, y, z);
+            if(c != lastCell) {
+                entries = cells.get(c);
+                lastCell = c;
+            }
+            if(entries == null) continue;
+            for(Entry<T> entry: entries) {
+                if(entry.contains(x, y, z)) {
+                    BitSet owned = result.get(entry.owner);
+                    if(owned == null) {
+                        owned = new BitSet(positions.length);
+                        result.put(entry.owner, owned);
+                    }
+                    owned.set(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Split the updated blocks of an event into one event per owner, containing only
+     * the blocks within the box shapes of that owner. Owners without any updated blocks
+     * are not included. Events with positions that can not be packed (see
+     * {@link BlockUpdateEvent#isPackable()}) are split by their Position map.
+     * @param event The event to split
+     * @return The event of each owner
+     */
+    public Map<T, BlockUpdateEvent> split(BlockUpdateEvent event) {
+        if(!event.isPackable()) return splitUnpackable(event);
+        final Map<T, PositionLongMap<BlockUpdate>> updates = new HashMap<>();
+        if(!cells.isEmpty()) {
+            event.getPackedUpdatedBlocks().forEach(new PositionLongMap.Visitor<BlockUpdate>() {
+                @Override
+                public void visit(long position, BlockUpdate update) {
+                    int x = Position.unpackX(position), y = Position.unpackY(position), z = Position.unpackZ(position);
+                    List<Entry<T>> entries = cells.get(cell(x, y, z));
+                    if(entries == null) return;
+                    for(Entry<T> entry: entries) {
+                        if(entry.contains(x, y, z)) {
+                            PositionLongMap<BlockUpdate> owned = updates.get(entry.owner);
+                            if(owned == null) {
+                                owned = new PositionLongMap<>();
+                                updates.put(entry.owner, owned);
+                            }
+                            owned.put(position, update);
+                        }
+                    }
+                }
+            });
+        }
+        Map<T, BlockUpdateEvent> events = new HashMap<>(updates.size() * 4 / 3 + 1);
+        for(Map.Entry<T, PositionLongMap<BlockUpdate>> e: updates.entrySet()) {
+            events.put(e.getKey(), new BlockUpdateEvent(e.getValue()));
+        }
+        return events;
+    }
+
+    private Map<T, BlockUpdateEvent> splitUnpackable(BlockUpdateEvent event) {
+        Map<T, Map<Position, BlockUpdate>> updates = new HashMap<>();
+        if(!cells.isEmpty()) {
+            for(Map.Entry<Position, BlockUpdate> e: event.getUpdatedBlocks().entrySet()) {
+                Position position = e.getKey();
+                int x = position.getX(), y = position.getY(), z = position.getZ();
+                List<Entry<T>> entries = entries(x, y, z);
+                if(entries == null) continue;
+                for(Entry<T> entry: entries) {
+                    if(entry.contains(x, y, z)) {
+                        Map<Position, BlockUpdate> owned = updates.get(entry.owner);
+                        if(owned == null) {
+                            owned = new HashMap<>();
+                            updates.put(entry.owner, owned);
+                        }
+                        owned.put(position, e.getValue());
+                    }
+                }
+            }
+        }
+        Map<T, BlockUpdateEvent> events = new HashMap<>(updates.size() * 4 / 3 + 1);
+        for(Map.Entry<T, Map<Position, BlockUpdate>> e: updates.entrySet()) {
+            events.put(e.getKey(), new BlockUpdateEvent(e.getValue()));
+        }
+        return events;
+    }
+
+    @Override
+    public String toString() {
+        return "BoxShapeIndex(" +
+                "cellSize=" + cellSize +
+                ", owners=" + owners.size() +
+                ", cells=" + cells.size() +
+                ')';
+    }
+}
@@ -0,0 +1,226 @@
+package konstructs.utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import konstructs.api.BlockFactory;
+import konstructs.api.BlockFilter;
+import konstructs.api.BlockTypeId;
+import konstructs.api.Box;
+import konstructs.api.Position;
+import konstructs.api.PositionLongSet;
+import konstructs.api.messages.BoxShapeQueryResult;
+
+/**
+ * FloodFill finds connected blocks in the data array of a box, e.g. the result of a
+ * box shape query. It can be used to find all blocks reachable from a start block
+ * (e.g. how far a liquid can flow or if a room is closed) or to label all connected
+ * components of the box.
+ * <p>
+ *     The blocks that can be passed are given as a {@link BitSet} over the array indexes
+ *     (in the linear layout) of the box, which can be created from a {@link BlockFilter}
+ *     with {@link #mask(BlockTypeId[], BlockFilter, BlockFactory)}. The search uses an int
+ *     queue, a BitSet of visited blocks and precomputed neighbour index offsets, so no
+ *     objects are allocated per block. Blocks are connected by their faces
+ *     ({@link #FACES}), by faces and edges ({@link #EDGES}) or by faces, edges and
+ *     corners ({@link #CORNERS}).
+ * </p>
+ * <pre>
+ *     BitSet air = FloodFill.mask(result.getBlocks(), BlockFilterFactory.VACUUM, factory);
+ *     PositionLongSet room = FloodFill.fillPositions(box, air, start, FloodFill.FACES);
+ * </pre>
+ */
+public final class FloodFill {
+    /**
+     * Blocks are connected to the 6 blocks that share a face
+     */
+    public static final int FACES = 6;
+
+    /**
+     * Blocks are connected to the 18 blocks that share a face or an edge
+     */
+    public static final int EDGES = 18;
+
+    /**
+     * Blocks are connected to the 26 blocks that share a face, an edge or a corner
+     */
+    public static final int CORNERS = 26;
+
+    private FloodFill() {
+    }
+
+    /* Neighbour offsets of a connectivity, as dx, dy, dz */
+    private static int[][] offsets(int connectivity) {
+        if(connectivity != FACES && connectivity != EDGES && connectivity != CORNERS)
+            throw new IllegalArgumentException("Connectivity must be 6, 18 or 26, not " + connectivity);
+        int[][] offsets = new int[connectivity][];
+        int n = 0;
+        for(int dx = -1; dx <= 1; dx++) {
+            for(int dy = -1; dy <= 1; dy++) {
+                for(int dz = -1; dz <= 1; dz++) {
+                    int distance = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+                    if(distance == 0) continue;
+                    if(distance == 2 && connectivity == FACES) continue;
+                    if(distance == 3 && connectivity != CORNERS) continue;
+                    offsets[n++] = new int[] { dx, dy, dz };
+                }
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Create a mask of all blocks that match a filter. The filter is only evaluated
+     * once per distinct block type.
+     * @param blocks The blocks
+     * @param filter The filter to match
+     * @param factory The block factory used to look up the block types for the filter
+     * @return A BitSet with the indexes of the matching blocks set
+     */
+    public static BitSet mask(BlockTypeId[] blocks, BlockFilter filter, BlockFactory factory) {
+        BitSet mask = new BitSet(blocks.length);
+        Map<BlockTypeId, Boolean> matches = new HashMap<>();
+        BlockTypeId last = null;
+        boolean lastMatch = false;
+        for(int i = 0; i < blocks.length; i++) {
+            BlockTypeId id = blocks[i];
+            if(id == null) continue;
+            if(id != last) {
+                Boolean match = matches.get(id);
+                if(match == null) {
+                    match = filter.matches(id, factory.getBlockType(id));
+                    matches.put(id, match);
+                }
+                last = id;
+                lastMatch = match;
+            }
+            if(lastMatch) mask.set(i);
+        }
+        return mask;
+    }
+
+    /**
+     * Find all blocks that can be reached from a start block
+     * @param box The box of the blocks
+     * @param passable The indexes of the blocks that can be passed
+     * @param start The array index of the start block
+     * @param connectivity How blocks are connected, {@link #FACES}, {@link #EDGES} or {@link #CORNERS}
+     * @return The indexes of all reached blocks, empty if the start block can not be passed
+     */
+    public static BitSet fill(Box box, BitSet passable, int start, int connectivity) {
+        BitSet visited = new BitSet(box.getNumberOfBlocks());
+        if(start < 0 || start >= box.getNumberOfBlocks())
+            throw new IllegalArgumentException("Start index outside of box: " + start);
+        search(box, passable, start, offsets(connectivity), visited, null, 0, new IntQueue());
+        return visited;
+    }
+
+    /**
+     * Find all blocks that can be reached from a start position
+     * @param box The box of the blocks
+     * @param passable The indexes of the blocks that can be passed
+     * @param start The global start position
+     * @param connectivity How blocks are connected, {@link #FACES}, {@link #EDGES} or {@link #CORNERS}
+     * @return The packed global positions of all reached blocks
+     */
+    public static PositionLongSet fillPositions(Box box, BitSet passable, Position start, int connectivity) {
+        if(!box.contains(start))
+            throw new IllegalArgumentException("Start position outside of box: " + start);
+        return toPositions(box, fill(box, passable, box.arrayIndex(start), connectivity));
+    }
+
+    /**
+     * Find all blocks matching a filter that can be reached from a start position
+     * @param result The result of a box shape query, using the linear layout
+     * @param filter The filter that blocks that can be passed match
+     * @param factory The block factory used to look up the block types for the filter
+     * @param start The global start position
+     * @param connectivity How blocks are connected, {@link #FACES}, {@link #EDGES} or {@link #CORNERS}
+     * @return The packed global positions of all reached blocks
+     */
+    public static PositionLongSet fillPositions(BoxShapeQueryResult result, BlockFilter filter, BlockFactory factory,
+                                                Position start, int connectivity) {
+        return fillPositions(result.getBox().getBox(), mask(result.getBlocks(), filter, factory), start, connectivity);
+    }
+
+    /**
+     * Label all connected components of passable blocks. Each component is given
+     * a label from 1 and up, in the order of the lowest array index of the component.
+     * Blocks that can not be passed are labelled 0.
+     * @param box The box of the blocks
+     * @param passable The indexes of the blocks that can be passed
+     * @param connectivity How blocks are connected, {@link #FACES}, {@link #EDGES} or {@link #CORNERS}
+     * @param labels An array of the size of the box, the label of each block is written to it
+     * @return The number of components
+     */
+    public static int label(Box box, BitSet passable, int connectivity, int[] labels) {
+        int n = box.getNumberOfBlocks();
+        if(labels.length < n)
+            throw new IllegalArgumentException("Labels array is too small");
+        Arrays.fill(labels, 0, n, 0);
+        int[][] offsets = offsets(connectivity);
+        BitSet visited = new BitSet(n);
+        IntQueue queue = new IntQueue();
+        int components = 0;
+        for(int i = passable.nextSetBit(0); i >= 0 && i < n; i = passable.nextSetBit(i + 1)) {
+            if(!visited.get(i)) {
+                search(box, passable, i, offsets, visited, labels, ++components, queue);
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Convert array indexes of a box into packed global positions
+     * @param box The box of the indexes
+     * @param indexes The array indexes
+     * @return The packed positions
+     */
+    public static PositionLongSet toPositions(Box box, BitSet indexes) {
+        Position from = box.getFrom();
+        Position size = box.getSize();
+        int sizeY = size.getY();
+        int sizeZ = size.getZ();
+        PositionLongSet positions = new PositionLongSet(indexes.cardinality());
+        for(int i = indexes.nextSetBit(0); i >= 0; i = indexes.nextSetBit(i + 1)) {
+            positions.add(from.getX() + i / (sizeY * sizeZ), from.getY() + i / sizeZ % sizeY, from.getZ() + i % sizeZ);
+        }
+        return positions;
+    }
+
+    private static void search(Box box, BitSet passable, int start, int[][] offsets, BitSet visited,
+                               int[] labels, int label, IntQueue queue) {
+        if(!passable.get(start)) return;
+        Position size = box.getSize();
+        final int sizeX = size.getX(), sizeY = size.getY(), sizeZ = size.getZ();
+        final int count = offsets.length;
+        final int[] dx = new int[count], dy = new int[count], dz = new int[count], di = new int[count];
+        for(int k = 0; k < count; k++) {
+            dx[k] = offsets[k][0];
+            dy[k] = offsets[k][1];
+            dz[k] = offsets[k][2];
+            di[k] = (dx[k] * sizeY + dy[k]) * sizeZ + dz[k];
+        }
+        queue.clear();
+        visited.set(start);
+        if(labels != null) labels[start] = label;
+        queue.add(start);
+        while(!queue.isEmpty()) {
+            int i = queue.remove();
+            int x = i / (sizeY * sizeZ);
+            int y = i / sizeZ % sizeY;
+            int z = i % sizeZ;
+            for(int k = 0; k < count; k++) {
+                int nx = x + dx[k], ny = y + dy[k], nz = z + dz[k];
+                if(nx < 0 || nx >= sizeX || ny < 0 || ny >= sizeY || nz < 0 || nz >= sizeZ) continue;
+                int ni = i + di[k];
+                if(visited.get(ni) || !passable.get(ni)) continue;
+                visited.set(ni);
+                if(labels != null) labels[ni] = label;
+                queue.add(ni);
+            }
+        }
+    }
+}
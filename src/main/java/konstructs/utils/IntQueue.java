@@ -0,0 +1,40 @@
+package konstructs.utils;
+
+/**
+ * A first in, first out queue of ints backed by a ring buffer that grows
+ * when full. Used by the breadth first searches of this package.
+ */
+final class IntQueue {
+    private int[] elements = new int[256];
+    private int head;
+    private int size;
+
+    void add(int e) {
+        if(size == elements.length) {
+            int[] grown = new int[elements.length * 2];
+            int first = elements.length - head;
+            System.arraycopy(elements, head, grown, 0, first);
+            System.arraycopy(elements, 0, grown, first, head);
+            elements = grown;
+            head = 0;
+        }
+        elements[(head + size) & (elements.length - 1)] = e;
+        size++;
+    }
+
+    int remove() {
+        int e = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return e;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+}
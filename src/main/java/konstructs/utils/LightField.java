@@ -0,0 +1,377 @@
+package konstructs.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import konstructs.api.Block;
+import konstructs.api.BlockFactory;
+import konstructs.api.BlockType;
+import konstructs.api.BlockTypeId;
+import konstructs.api.BlockUpdate;
+import konstructs.api.BlockUpdateColumns;
+import konstructs.api.Box;
+import konstructs.api.BoxLayout;
+import konstructs.api.Colour;
+import konstructs.api.Position;
+import konstructs.api.PositionLongMap;
+import konstructs.api.messages.BlockUpdateEvent;
+import konstructs.api.messages.BoxShapeQueryResult;
+
+/**
+ * LightField computes the light of each block in a box, e.g. the result of a
+ * box shape query, from the light properties of the block types. Blocks with a
+ * light level emit light of their light colour (see {@link BlockType#getLightLevel()}
+ * and {@link BlockType#getLightColour()}) and the light spreads by a breadth first
+ * search through transparent blocks, losing one level per block. The red, green and
+ * blue channels are spread independently and have levels from 0 to 15.
+ * <pre>
+ *     LightField light = new LightField(result, factory);
+ *     Colour colour = light.getColour(position);
+ *     ...
+ *     light.update(event); // e.g. when a torch was placed or removed
+ * </pre>
+ * <p>
+ *     When blocks are changed, only the light around the changed blocks is updated:
+ *     light that came from the old block is first removed, and then the light of the
+ *     surrounding blocks and of the new block is spread again. Blocks outside of the
+ *     box are regarded as dark and opaque.
+ * </p>
+ * <p>
+ *     The light of a block is packed into an int as 0xRGB, i.e. four bits per channel.
+ *     This class is mutable and should not be shared between actors.
+ * </p>
+ */
+public final class LightField {
+    private static final int TRANSPARENT = 1 << 12;
+    private static final int LIGHT_MASK = 0xfff;
+    private static final int[] SHIFTS = { 8, 4, 0 };
+
+    private final Box box;
+    private final BlockFactory factory;
+    private final int sizeX, sizeY, sizeZ;
+    private final int[] strides;
+    /* The emitted light and the transparent bit of each block */
+    private final short[] properties;
+    /* The light of each block */
+    private final short[] light;
+    private final Map<BlockTypeId, Short> types = new HashMap<>();
+    private final IntQueue removeQueue = new IntQueue();
+    private final IntQueue spreadQueue = new IntQueue();
+
+    /**
+     * Create a light field and compute the light of all blocks
+     * @param box The box of the blocks
+     * @param blocks The blocks of the box, in the linear layout
+     * @param factory The block factory used to look up the light properties of the blocks
+     */
+    public LightField(Box box, BlockTypeId[] blocks, BlockFactory factory) {
+        int n = box.getNumberOfBlocks();
+        if(blocks.length < n)
+            throw new IllegalArgumentException("Blocks array is too small for " + box);
+        this.box = box;
+        this.factory = factory;
+        Position size = box.getSize();
+        this.sizeX = size.getX();
+        this.sizeY = size.getY();
+        this.sizeZ = size.getZ();
+        this.strides = new int[] { sizeY * sizeZ, sizeZ, 1 };
+        this.properties = new short[n];
+        this.light = new short[n];
+        BlockTypeId last = null;
+        short lastProperties = 0;
+        for(int i = 0; i < n; i++) {
+            BlockTypeId id = blocks[i];
+            if(id != last) {
+                lastProperties = properties(id);
+                last = id;
+            }
+            properties[i] = lastProperties;
+        }
+        compute();
+    }
+
+    /**
+     * Create a light field from the result of a box shape query and compute the
+     * light of all blocks. The result must use the linear layout.
+     * @param result The result of a box shape query
+     * @param factory The block factory used to look up the light properties of the blocks
+     */
+    public LightField(BoxShapeQueryResult result, BlockFactory factory) {
+        this(linear(result).getBox().getBox(), result.getBlocks(), factory);
+    }
+
+    private static BoxShapeQueryResult linear(BoxShapeQueryResult result) {
+        if(!result.getLayout().equals(BoxLayout.LINEAR))
+            throw new IllegalArgumentException("Only the linear layout is supported, not " + result.getLayout());
+        return result;
+    }
+
+    /**
+     * Returns the light emitted by a block type
+     * @param type The block type
+     * @return The emitted light packed as 0xRGB, i.e. the light colour scaled by the light level
+     */
+    public static int getEmittedLight(BlockType type) {
+        int level = type.getLightLevel().getLevel();
+        if(level == 0) return 0;
+        Colour colour = type.getLightColour();
+        int red = colour.getRed() * level / 15;
+        int green = colour.getGreen() * level / 15;
+        int blue = colour.getBlue() * level / 15;
+        return (red << 8) | (green << 4) | blue;
+    }
+
+    private short properties(BlockTypeId id) {
+        if(id == null) return 0;
+        Short cached = types.get(id);
+        if(cached == null) {
+            BlockType type = factory.getBlockType(id);
+            cached = (short)(getEmittedLight(type) | (type.isTransparent() ? TRANSPARENT : 0));
+            types.put(id, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Recompute the light of all blocks
+     */
+    public void compute() {
+        spreadQueue.clear();
+        for(int i = 0; i < light.length; i++) {
+            int emitted = properties[i] & LIGHT_MASK;
+            light[i] = (short)emitted;
+            if(emitted != 0) spreadQueue.add(i);
+        }
+        spread();
+    }
+
+    /* Spread the light of all queued blocks into their transparent neighbours */
+    private void spread() {
+        while(!spreadQueue.isEmpty()) {
+            int i = spreadQueue.remove();
+            int l = light[i];
+            if(l == 0) continue;
+            /* Decrease each channel that is not already dark by one */
+            int dimmed = l - (((l & 0xf00) != 0 ? 0x100 : 0) | ((l & 0x0f0) != 0 ? 0x010 : 0) | ((l & 0x00f) != 0 ? 0x001 : 0));
+            if(dimmed == 0) continue;
+            int x = i / strides[0];
+            int y = i / sizeZ % sizeY;
+            int z = i % sizeZ;
+            if(x > 0) spreadTo(i - strides[0], dimmed);
+            if(x < sizeX - 1) spreadTo(i + strides[0], dimmed);
+            if(y > 0) spreadTo(i - sizeZ, dimmed);
+            if(y < sizeY - 1) spreadTo(i + sizeZ, dimmed);
+            if(z > 0) spreadTo(i - 1, dimmed);
+            if(z < sizeZ - 1) spreadTo(i + 1, dimmed);
+        }
+    }
+
+    private void spreadTo(int n, int dimmed) {
+        if((properties[n] & TRANSPARENT) == 0) return;
+        int l = light[n];
+        int max = Math.max(l & 0xf00, dimmed & 0xf00) | Math.max(l & 0x0f0, dimmed & 0x0f0) | Math.max(l & 0x00f, dimmed & 0x00f);
+        if(max != l) {
+            light[n] = (short)max;
+            spreadQueue.add(n);
+        }
+    }
+
+    /*
+     * Remove the light of one channel that came from a block. All blocks that got their light
+     * of the channel from the block are darkened, while brighter blocks at the border of the
+     * darkened area, as well as the light emitting blocks within it, are queued to spread again.
+     */
+    private void remove(int index, int shift) {
+        int level = (light[index] >> shift) & 0xf;
+        if(level == 0) return;
+        light[index] = (short)(light[index] & ~(0xf << shift));
+        removeQueue.clear();
+        removeQueue.add((index << 4) | level);
+        while(!removeQueue.isEmpty()) {
+            int e = removeQueue.remove();
+            int i = e >>> 4;
+            int l = e & 0xf;
+            int x = i / strides[0];
+            int y = i / sizeZ % sizeY;
+            int z = i % sizeZ;
+            if(x > 0) removeFrom(i - strides[0], l, shift);
+            if(x < sizeX - 1) removeFrom(i + strides[0], l, shift);
+            if(y > 0) removeFrom(i - sizeZ, l, shift);
+            if(y < sizeY - 1) removeFrom(i + sizeZ, l, shift);
+            if(z > 0) removeFrom(i - 1, l, shift);
+            if(z < sizeZ - 1) removeFrom(i + 1, l, shift);
+        }
+    }
+
+    private void removeFrom(int n, int level, int shift) {
+        int l = (light[n] >> shift) & 0xf;
+        if(l == 0) return;
+        if(l < level) {
+            int emitted = (properties[n] >> shift) & 0xf;
+            light[n] = (short)((light[n] & ~(0xf << shift)) | (emitted << shift));
+            removeQueue.add((n << 4) | l);
+            if(emitted != 0) spreadQueue.add(n);
+        } else {
+            spreadQueue.add(n);
+        }
+    }
+
+    /**
+     * Change a block and update the light around it
+     * @param index The array index (in the linear layout) of the block
+     * @param type The new block type of the block
+     */
+    public void setBlock(int index, BlockTypeId type) {
+        if(index < 0 || index >= light.length)
+            throw new IllegalArgumentException("Index outside of box: " + index);
+        short p = properties(type);
+        if(p == properties[index]) return;
+        spreadQueue.clear();
+        properties[index] = p;
+        for(int shift: SHIFTS) {
+            remove(index, shift);
+        }
+        int emitted = p & LIGHT_MASK;
+        if(emitted != 0) {
+            light[index] = (short)emitted;
+            spreadQueue.add(index);
+        }
+        if((p & TRANSPARENT) != 0) {
+            /* Let the neighbours spread their light into the block */
+            int x = index / strides[0];
+            int y = index / sizeZ % sizeY;
+            int z = index % sizeZ;
+            if(x > 0) spreadQueue.add(index - strides[0]);
+            if(x < sizeX - 1) spreadQueue.add(index + strides[0]);
+            if(y > 0) spreadQueue.add(index - sizeZ);
+            if(y < sizeY - 1) spreadQueue.add(index + sizeZ);
+            if(z > 0) spreadQueue.add(index - 1);
+            if(z < sizeZ - 1) spreadQueue.add(index + 1);
+        }
+        spread();
+    }
+
+    /**
+     * Change a block and update the light around it
+     * @param position The global position of the block
+     * @param type The new block type of the block
+     * @return True if the position is within the box and the block was changed
+     */
+    public boolean setBlock(Position position, BlockTypeId type) {
+        if(!box.contains(position)) return false;
+        setBlock(box.arrayIndex(position), type);
+        return true;
+    }
+
+    /**
+     * Apply all updated blocks of an event that are within the box and update the
+     * light around them. Blocks that no longer exist are regarded as dark and opaque.
+     * @param event The event
+     */
+    public void update(BlockUpdateEvent event) {
+        final Position from = box.getFrom();
+        if(event.isPacked()) {
+            event.getPackedUpdatedBlocks().forEach(new PositionLongMap.Visitor<BlockUpdate>() {
+                @Override
+                public void visit(long position, BlockUpdate update) {
+                    update(Position.unpackX(position) - from.getX(), Position.unpackY(position) - from.getY(),
+                            Position.unpackZ(position) - from.getZ(), update.getAfter());
+                }
+            });
+        } else if(event.isColumnar()) {
+            BlockUpdateColumns columns = event.getColumns();
+            for(int i = 0; i < columns.size(); i++) {
+                long position = columns.getPackedPosition(i);
+                int x = Position.unpackX(position) - from.getX();
+                int y = Position.unpackY(position) - from.getY();
+                int z = Position.unpackZ(position) - from.getZ();
+                if(x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ) continue;
+                setBlock((x * sizeY + y) * sizeZ + z, columns.getAfterBlockTypeId(i));
+            }
+        } else {
+            /* The positions of a Position map may be outside of the packed range */
+            for(Map.Entry<Position, BlockUpdate> e: event.getUpdatedBlocks().entrySet()) {
+                Position position = e.getKey();
+                if(!box.contains(position)) continue;
+                update(position.getX() - from.getX(), position.getY() - from.getY(),
+                        position.getZ() - from.getZ(), e.getValue().getAfter());
+            }
+        }
+    }
+
+    /* Apply an updated block given by its position relative to the box */
+    private void update(int x, int y, int z, Block after) {
+        if(x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ) return;
+        setBlock((x * sizeY + y) * sizeZ + z, after != null ? after.getType() : null);
+    }
+
+    /**
+     * Returns the box of the light field
+     * @return The box
+     */
+    public Box getBox() {
+        return box;
+    }
+
+    /**
+     * Returns the light of a block
+     * @param index The array index (in the linear layout) of the block
+     * @return The light packed as 0xRGB
+     */
+    public int getLight(int index) {
+        return light[index];
+    }
+
+    /**
+     * Returns the light of a block
+     * @param position The global position of the block
+     * @return The light packed as 0xRGB
+     */
+    public int getLight(Position position) {
+        return light[box.arrayIndex(position)];
+    }
+
+    /**
+     * Returns the level of red light of a block, 0 - 15
+     * @param index The array index (in the linear layout) of the block
+     * @return The level of red light
+     */
+    public int getRed(int index) {
+        return (light[index] >> 8) & 0xf;
+    }
+
+    /**
+     * Returns the level of green light of a block, 0 - 15
+     * @param index The array index (in the linear layout) of the block
+     * @return The level of green light
+     */
+    public int getGreen(int index) {
+        return (light[index] >> 4) & 0xf;
+    }
+
+    /**
+     * Returns the level of blue light of a block, 0 - 15
+     * @param index The array index (in the linear layout) of the block
+     * @return The level of blue light
+     */
+    public int getBlue(int index) {
+        return light[index] & 0xf;
+    }
+
+    /**
+     * Returns the light of a block as a colour
+     * @param position The global position of the block
+     * @return The colour singleton of the light
+     */
+    public Colour getColour(Position position) {
+        int l = getLight(position);
+        return Colour.getUnchecked((l >> 8) & 0xf, (l >> 4) & 0xf, l & 0xf);
+    }
+
+    @Override
+    public String toString() {
+        return "LightField(" +
+                "box=" + box +
+                ')';
+    }
+}
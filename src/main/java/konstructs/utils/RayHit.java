@@ -0,0 +1,128 @@
+package konstructs.utils;
+
+import konstructs.api.Direction;
+import konstructs.api.Position;
+
+/**
+ * RayHit holds the result of a ray traversal, see {@link VoxelRay}. It is
+ * mutable so that the same instance can be reused for many rays without
+ * allocating.
+ * <p>
+ *     This class should not be shared between actors.
+ * </p>
+ */
+public final class RayHit {
+    private boolean hit;
+    private int index;
+    private int x, y, z;
+    private Direction face;
+    private float distance;
+
+    /**
+     * Create a new RayHit that does not represent a hit
+     */
+    public RayHit() {
+        reset();
+    }
+
+    /**
+     * Reset this instance to not represent a hit
+     */
+    public void reset() {
+        hit = false;
+        index = -1;
+        x = y = z = 0;
+        face = null;
+        distance = Float.POSITIVE_INFINITY;
+    }
+
+    void set(int index, int x, int y, int z, Direction face, float distance) {
+        this.hit = true;
+        this.index = index;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.face = face;
+        this.distance = distance;
+    }
+
+    /**
+     * Check if the ray hit a block
+     * @return True if a block was hit
+     */
+    public boolean isHit() {
+        return hit;
+    }
+
+    /**
+     * Returns the array index of the block that was hit
+     * @return The array index or -1 if no block was hit
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the position of the block that was hit in the x dimension
+     * @return The x dimension
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the position of the block that was hit in the y dimension
+     * @return The y dimension
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Returns the position of the block that was hit in the z dimension
+     * @return The z dimension
+     */
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * Returns the position of the block that was hit.
+     * Note: This allocates a new object on each call.
+     * @return The position of the block
+     */
+    public Position getPosition() {
+        return new Position(x, y, z);
+    }
+
+    /**
+     * Returns the direction of the face of the hit block that the ray entered
+     * through, e.g. {@link Direction#UP} if the block was hit from above.
+     * @return The face or null if the ray started inside the hit block
+     */
+    public Direction getFace() {
+        return face;
+    }
+
+    /**
+     * Returns the distance from the origin of the ray to where it entered the
+     * block that was hit
+     * @return The distance, or positive infinity if no block was hit
+     */
+    public float getDistance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return "RayHit(" +
+                "hit=" + hit +
+                ", index=" + index +
+                ", x=" + x +
+                ", y=" + y +
+                ", z=" + z +
+                ", face=" + face +
+                ", distance=" + distance +
+                ')';
+    }
+}
@@ -0,0 +1,335 @@
+package konstructs.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import konstructs.api.BlockClassId;
+import konstructs.api.BlockFilter;
+import konstructs.api.BlockType;
+import konstructs.api.BlockTypeId;
+import konstructs.api.BlockTypeTable;
+import konstructs.api.CompiledBlockFilter;
+import konstructs.api.messages.BoxShapeQueryResult;
+
+/**
+ * RegionStatistics is a histogram of the block types of a region, e.g. the
+ * result of a box shape query. The blocks are counted per w-value of a
+ * {@link BlockTypeTable}, so the number of blocks of a type, of a class or
+ * matching a filter is found without scanning the blocks again:
+ * <pre>
+ *     RegionStatistics statistics = RegionStatistics.of(result, table);
+ *     int ores = statistics.getCount(BlockFilterFactory.withClass(ore).compile(table));
+ * </pre>
+ * <p>
+ *     Large regions are split into slices that are counted in parallel on the
+ *     common fork/join pool, each into its own partial histogram, and the
+ *     partial histograms are then merged. Blocks that are null or not in the
+ *     table are counted as unknown blocks.
+ * </p>
+ * <p>
+ *     The static first and last methods find the index of the first and last
+ *     block matching a compiled filter without building a histogram.
+ * </p>
+ */
+public final class RegionStatistics {
+    /* Regions smaller than this are counted on the calling thread */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final BlockTypeTable table;
+    private final int[] counts;
+    private final int unknown;
+    private final int total;
+
+    private RegionStatistics(BlockTypeTable table, int[] histogram, int total) {
+        int size = table.getSize();
+        int[] counts = new int[size];
+        System.arraycopy(histogram, 0, counts, 0, size);
+        this.table = table;
+        this.counts = counts;
+        this.unknown = histogram[size];
+        this.total = total;
+    }
+
+    /* Count the w-values of a part of an array, unknown blocks are counted in the last element */
+    private static int[] count(int[] ws, int start, int end, int size) {
+        int[] histogram = new int[size + 1];
+        for(int i = start; i < end; i++) {
+            int w = ws[i];
+            histogram[w >= 0 && w < size ? w : size]++;
+        }
+        return histogram;
+    }
+
+    private static int[] count(BlockTypeId[] blocks, int start, int end, BlockTypeTable table) {
+        int size = table.getSize();
+        int[] histogram = new int[size + 1];
+        BlockTypeId last = null;
+        int lastW = size;
+        for(int i = start; i < end; i++) {
+            BlockTypeId id = blocks[i];
+            if(id != last) {
+                last = id;
+                int w = id == null ? -1 : table.getW(id);
+                lastW = w >= 0 && w < size ? w : size;
+            }
+            histogram[lastW]++;
+        }
+        return histogram;
+    }
+
+    private static int[] merge(int[] a, int[] b) {
+        for(int i = 0; i < a.length; i++) {
+            a[i] += b[i];
+        }
+        return a;
+    }
+
+    /* The number of slices to split a region of the given length into */
+    private static int slices(int length) {
+        if(length < PARALLEL_THRESHOLD) return 1;
+        return Math.min(length / (PARALLEL_THRESHOLD / 4), Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Count the blocks of an array of w-values
+     * @param ws The w-values of the blocks, e.g. from {@link BlockTypeTable#getW(BlockTypeId[])}
+     * @param table The table of the w-values
+     * @return The statistics of the blocks
+     */
+    public static RegionStatistics of(final int[] ws, BlockTypeTable table) {
+        final int size = table.getSize();
+        final int length = ws.length;
+        final int slices = slices(length);
+        if(slices == 1) return new RegionStatistics(table, count(ws, 0, length, size), length);
+        int[] histogram = IntStream.range(0, slices).parallel()
+                .mapToObj(s -> count(ws, (int)((long)length * s / slices), (int)((long)length * (s + 1) / slices), size))
+                .reduce(RegionStatistics::merge)
+                .get();
+        return new RegionStatistics(table, histogram, length);
+    }
+
+    /**
+     * Count the blocks of an array of blocks
+     * @param blocks The blocks, e.g. the result of a box shape query
+     * @param table The table of the block types
+     * @return The statistics of the blocks
+     */
+    public static RegionStatistics of(final BlockTypeId[] blocks, final BlockTypeTable table) {
+        final int length = blocks.length;
+        final int slices = slices(length);
+        if(slices == 1) return new RegionStatistics(table, count(blocks, 0, length, table), length);
+        int[] histogram = IntStream.range(0, slices).parallel()
+                .mapToObj(s -> count(blocks, (int)((long)length * s / slices), (int)((long)length * (s + 1) / slices), table))
+                .reduce(RegionStatistics::merge)
+                .get();
+        return new RegionStatistics(table, histogram, length);
+    }
+
+    /**
+     * Count the blocks of the result of a box shape query. For other layouts
+     * than the linear layout the null padding elements are counted as unknown
+     * blocks.
+     * @param result The result of the query
+     * @param table The table of the block types
+     * @return The statistics of the blocks
+     */
+    public static RegionStatistics of(BoxShapeQueryResult result, BlockTypeTable table) {
+        return of(result.getBlocks(), table);
+    }
+
+    /**
+     * Returns the index of the first block that matches a filter
+     * @param ws The w-values of the blocks
+     * @param filter The compiled filter
+     * @return The index of the first matching block, or -1 if no block matches
+     */
+    public static int first(int[] ws, CompiledBlockFilter filter) {
+        for(int i = 0; i < ws.length; i++) {
+            if(filter.matches(ws[i])) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last block that matches a filter
+     * @param ws The w-values of the blocks
+     * @param filter The compiled filter
+     * @return The index of the last matching block, or -1 if no block matches
+     */
+    public static int last(int[] ws, CompiledBlockFilter filter) {
+        for(int i = ws.length - 1; i >= 0; i--) {
+            if(filter.matches(ws[i])) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first block that matches a filter
+     * @param blocks The blocks
+     * @param filter The compiled filter
+     * @return The index of the first matching block, or -1 if no block matches
+     */
+    public static int first(BlockTypeId[] blocks, CompiledBlockFilter filter) {
+        BlockTypeId last = null;
+        for(int i = 0; i < blocks.length; i++) {
+            BlockTypeId id = blocks[i];
+            if(id != null && id != last) {
+                if(filter.matches(id)) return i;
+                last = id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last block that matches a filter
+     * @param blocks The blocks
+     * @param filter The compiled filter
+     * @return The index of the last matching block, or -1 if no block matches
+     */
+    public static int last(BlockTypeId[] blocks, CompiledBlockFilter filter) {
+        BlockTypeId last = null;
+        for(int i = blocks.length - 1; i >= 0; i--) {
+            BlockTypeId id = blocks[i];
+            if(id != null && id != last) {
+                if(filter.matches(id)) return i;
+                last = id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the table of the block types that were counted
+     * @return The table
+     */
+    public BlockTypeTable getTable() {
+        return table;
+    }
+
+    /**
+     * Returns the number of counted blocks, including unknown blocks
+     * @return The number of blocks
+     */
+    public int getNumberOfBlocks() {
+        return total;
+    }
+
+    /**
+     * Returns the number of blocks that were null or not in the table
+     * @return The number of unknown blocks
+     */
+    public int getNumberOfUnknownBlocks() {
+        return unknown;
+    }
+
+    /**
+     * Returns the number of blocks of a w-value
+     * @param w The w-value
+     * @return The number of blocks
+     */
+    public int getCount(int w) {
+        return w >= 0 && w < counts.length ? counts[w] : 0;
+    }
+
+    /**
+     * Returns the number of blocks of a block type
+     * @param id The BlockTypeId of the block type
+     * @return The number of blocks
+     */
+    public int getCount(BlockTypeId id) {
+        return getCount(table.getW(id));
+    }
+
+    /**
+     * Returns the number of blocks that match a filter
+     * @param filter The filter, compiled for the table of these statistics
+     * @return The number of matching blocks
+     */
+    public int getCount(CompiledBlockFilter filter) {
+        if(filter.getTable() != table)
+            throw new IllegalArgumentException("The filter was compiled for another table: " + filter.getTable());
+        int count = 0;
+        for(int w = 0; w < counts.length; w++) {
+            if(counts[w] != 0 && filter.matches(w)) count += counts[w];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of blocks that match a filter
+     * @param filter The filter
+     * @return The number of matching blocks
+     */
+    public int getCount(BlockFilter filter) {
+        return getCount(filter.compile(table));
+    }
+
+    /**
+     * Returns the number of blocks of block types that have a class. Blocks of
+     * w-values without a block type never have a class.
+     * @param clazz The class
+     * @return The number of blocks
+     */
+    public int getCount(BlockClassId clazz) {
+        int count = 0;
+        for(int w = 0; w < counts.length; w++) {
+            if(counts[w] == 0) continue;
+            BlockType type = table.getBlockType(w);
+            if(type != null && type.hasClass(clazz)) count += counts[w];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of blocks per w-value
+     * @return A new array with the number of blocks of each w-value
+     */
+    public int[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * Returns the number of blocks per block type. Block types without blocks
+     * are not included.
+     * @return A new map from block type to the number of blocks
+     */
+    public Map<BlockTypeId, Integer> getHistogram() {
+        Map<BlockTypeId, Integer> histogram = new HashMap<>();
+        for(int w = 0; w < counts.length; w++) {
+            if(counts[w] != 0) histogram.put(table.getBlockTypeId(w), counts[w]);
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the number of blocks per class. Classes without blocks are not included.
+     * @return A new map from class to the number of blocks of block types with the class
+     */
+    public Map<BlockClassId, Integer> getClassHistogram() {
+        Map<BlockClassId, Integer> histogram = new HashMap<>();
+        for(int w = 0; w < counts.length; w++) {
+            if(counts[w] == 0) continue;
+            BlockType type = table.getBlockType(w);
+            if(type == null) continue;
+            /* A block type may list a class more than once */
+            for(BlockClassId clazz: new HashSet<>(Arrays.asList(type.getClasses()))) {
+                Integer count = histogram.get(clazz);
+                histogram.put(clazz, (count == null ? 0 : count) + counts[w]);
+            }
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "RegionStatistics(" +
+                "blocks=" + total +
+                ", unknown=" + unknown +
+                ", types=" + getHistogram() +
+                ')';
+    }
+}
@@ -0,0 +1,255 @@
+package konstructs.utils;
+
+import java.util.function.IntPredicate;
+
+import konstructs.api.BlockFactory;
+import konstructs.api.BlockFilter;
+import konstructs.api.BlockTypeId;
+import konstructs.api.Box;
+import konstructs.api.Direction;
+import konstructs.api.DirectionalLine;
+import konstructs.api.Position;
+import konstructs.api.messages.BoxShapeQueryResult;
+
+/**
+ * VoxelRay casts rays with arbitrary direction through the blocks of a box,
+ * e.g. the result of a box shape query. It uses the voxel traversal algorithm of
+ * <a href="http://www.cse.yorku.ca/~amana/research/grid.pdf">Amanatides and Woo</a>,
+ * which visits each block that the ray passes through exactly once, in order,
+ * using only additions per step. No objects are allocated when casting a ray
+ * with a predicate and the result is written to a reusable {@link RayHit}:
+ * <pre>
+ *     RayHit hit = new RayHit();
+ *     if(VoxelRay.cast(result, BlockFilterFactory.withObstacle(true), factory,
+ *                      eyeX, eyeY, eyeZ, dirX, dirY, dirZ, 64.0f, hit)) {
+ *         // hit.getX(), hit.getY(), hit.getZ() is the first solid block
+ *     }
+ * </pre>
+ * <p>
+ *     A block at position (x, y, z) occupies the space from (x, y, z) up to
+ *     (x + 1, y + 1, z + 1). The origin of the ray may be outside of the box,
+ *     in which case the ray starts where it enters the box.
+ * </p>
+ */
+public final class VoxelRay {
+    private VoxelRay() {
+    }
+
+    /* Matches blocks of an array against a filter, caching the last block type */
+    private static final class FilterPredicate implements IntPredicate {
+        private final BlockTypeId[] blocks;
+        private final BlockFilter filter;
+        private final BlockFactory factory;
+        private BlockTypeId last;
+        private boolean lastMatch;
+
+        FilterPredicate(BlockTypeId[] blocks, BlockFilter filter, BlockFactory factory) {
+            this.blocks = blocks;
+            this.filter = filter;
+            this.factory = factory;
+        }
+
+        @Override
+        public boolean test(int index) {
+            BlockTypeId id = blocks[index];
+            if(id != last) {
+                last = id;
+                lastMatch = filter.matches(id, factory.getBlockType(id));
+            }
+            return lastMatch;
+        }
+    }
+
+    /**
+     * Cast a ray through a box and stop at the first block that matches a predicate
+     * @param box The box to cast the ray through
+     * @param stop The predicate, called with the array index (in the linear layout) of each visited block
+     * @param ox The origin of the ray in the x dimension
+     * @param oy The origin of the ray in the y dimension
+     * @param oz The origin of the ray in the z dimension
+     * @param dx The direction of the ray in the x dimension
+     * @param dy The direction of the ray in the y dimension
+     * @param dz The direction of the ray in the z dimension
+     * @param maxDistance The maximum distance from the origin to search
+     * @param hit The result, updated with the block that was hit or reset if no block was hit
+     * @return True if a block was hit
+     */
+    public static boolean cast(Box box, IntPredicate stop,
+                               float ox, float oy, float oz,
+                               float dx, float dy, float dz,
+                               float maxDistance, RayHit hit) {
+        double length = Math.sqrt((double)dx * dx + (double)dy * dy + (double)dz * dz);
+        if(length == 0.0)
+            throw new IllegalArgumentException("The direction of the ray must not be zero");
+        hit.reset();
+        if(box.isEmpty()) return false;
+
+        final double dirX = dx / length, dirY = dy / length, dirZ = dz / length;
+        final Position from = box.getFrom();
+        final Position until = box.getUntil();
+        final int fromX = from.getX(), fromY = from.getY(), fromZ = from.getZ();
+        final int untilX = until.getX(), untilY = until.getY(), untilZ = until.getZ();
+
+        /* Clip the ray to the box, one slab per axis */
+        double tMin = 0.0;
+        double tLimit = maxDistance;
+        int entryAxis = -1;
+        if(dirX == 0.0) {
+            if(ox < fromX || ox >= untilX) return false;
+        } else {
+            double t1 = (fromX - ox) / dirX, t2 = (untilX - ox) / dirX;
+            if(Math.min(t1, t2) > tMin) { tMin = Math.min(t1, t2); entryAxis = 0; }
+            tLimit = Math.min(tLimit, Math.max(t1, t2));
+        }
+        if(dirY == 0.0) {
+            if(oy < fromY || oy >= untilY) return false;
+        } else {
+            double t1 = (fromY - oy) / dirY, t2 = (untilY - oy) / dirY;
+            if(Math.min(t1, t2) > tMin) { tMin = Math.min(t1, t2); entryAxis = 1; }
+            tLimit = Math.min(tLimit, Math.max(t1, t2));
+        }
+        if(dirZ == 0.0) {
+            if(oz < fromZ || oz >= untilZ) return false;
+        } else {
+            double t1 = (fromZ - oz) / dirZ, t2 = (untilZ - oz) / dirZ;
+            if(Math.min(t1, t2) > tMin) { tMin = Math.min(t1, t2); entryAxis = 2; }
+            tLimit = Math.min(tLimit, Math.max(t1, t2));
+        }
+        if(tMin > tLimit) return false;
+
+        /* Find the first block, on the entry axis it is given by the face entered through */
+        final int stepX = dirX > 0.0 ? 1 : (dirX < 0.0 ? -1 : 0);
+        final int stepY = dirY > 0.0 ? 1 : (dirY < 0.0 ? -1 : 0);
+        final int stepZ = dirZ > 0.0 ? 1 : (dirZ < 0.0 ? -1 : 0);
+        int x = entryAxis == 0 ? (stepX > 0 ? fromX : untilX - 1) : clamp(ox + dirX * tMin, fromX, untilX);
+        int y = entryAxis == 1 ? (stepY > 0 ? fromY : untilY - 1) : clamp(oy + dirY * tMin, fromY, untilY);
+        int z = entryAxis == 2 ? (stepZ > 0 ? fromZ : untilZ - 1) : clamp(oz + dirZ * tMin, fromZ, untilZ);
+
+        /* Distance along the ray to the next block boundary, and between boundaries, per axis */
+        double tMaxX = stepX == 0 ? Double.POSITIVE_INFINITY : ((stepX > 0 ? x + 1 : x) - ox) / dirX;
+        double tMaxY = stepY == 0 ? Double.POSITIVE_INFINITY : ((stepY > 0 ? y + 1 : y) - oy) / dirY;
+        double tMaxZ = stepZ == 0 ? Double.POSITIVE_INFINITY : ((stepZ > 0 ? z + 1 : z) - oz) / dirZ;
+        final double tDeltaX = Math.abs(1.0 / dirX);
+        final double tDeltaY = Math.abs(1.0 / dirY);
+        final double tDeltaZ = Math.abs(1.0 / dirZ);
+
+        final int strideZ = stepZ;
+        final int strideY = stepY * (untilZ - fromZ);
+        final int strideX = stepX * (untilY - fromY) * (untilZ - fromZ);
+        int index = ((x - fromX) * (untilY - fromY) + (y - fromY)) * (untilZ - fromZ) + (z - fromZ);
+        int face = entryAxis;
+        double t = tMin;
+
+        while(true) {
+            if(stop.test(index)) {
+                Direction entered = null;
+                if(face == 0) entered = stepX > 0 ? Direction.LEFT : Direction.RIGHT;
+                if(face == 1) entered = stepY > 0 ? Direction.DOWN : Direction.UP;
+                if(face == 2) entered = stepZ > 0 ? Direction.FORWARD : Direction.BACKWARD;
+                hit.set(index, x, y, z, entered, (float)t);
+                return true;
+            }
+            if(tMaxX < tMaxY && tMaxX < tMaxZ) {
+                t = tMaxX;
+                if(t > tLimit) return false;
+                x += stepX;
+                if(x < fromX || x >= untilX) return false;
+                index += strideX;
+                tMaxX += tDeltaX;
+                face = 0;
+            } else if(tMaxY < tMaxZ) {
+                t = tMaxY;
+                if(t > tLimit) return false;
+                y += stepY;
+                if(y < fromY || y >= untilY) return false;
+                index += strideY;
+                tMaxY += tDeltaY;
+                face = 1;
+            } else {
+                t = tMaxZ;
+                if(t > tLimit) return false;
+                z += stepZ;
+                if(z < fromZ || z >= untilZ) return false;
+                index += strideZ;
+                tMaxZ += tDeltaZ;
+                face = 2;
+            }
+        }
+    }
+
+    /* The block containing a coordinate, clamped into the box to guard against rounding */
+    private static int clamp(double coordinate, int from, int until) {
+        int v = (int)Math.floor(coordinate);
+        return v < from ? from : (v >= until ? until - 1 : v);
+    }
+
+    /**
+     * Cast a ray through a box of blocks and stop at the first block that matches a filter
+     * @param box The box to cast the ray through
+     * @param blocks The blocks of the box, in the linear layout
+     * @param filter The filter that the block to stop at must match
+     * @param factory The block factory used to look up the block types for the filter
+     * @param ox The origin of the ray in the x dimension
+     * @param oy The origin of the ray in the y dimension
+     * @param oz The origin of the ray in the z dimension
+     * @param dx The direction of the ray in the x dimension
+     * @param dy The direction of the ray in the y dimension
+     * @param dz The direction of the ray in the z dimension
+     * @param maxDistance The maximum distance from the origin to search
+     * @param hit The result, updated with the block that was hit or reset if no block was hit
+     * @return True if a block was hit
+     */
+    public static boolean cast(Box box, BlockTypeId[] blocks, BlockFilter filter, BlockFactory factory,
+                               float ox, float oy, float oz,
+                               float dx, float dy, float dz,
+                               float maxDistance, RayHit hit) {
+        return cast(box, new FilterPredicate(blocks, filter, factory), ox, oy, oz, dx, dy, dz, maxDistance, hit);
+    }
+
+    /**
+     * Cast a ray through the result of a box shape query and stop at the first block
+     * that matches a filter. The result must use the linear layout.
+     * @param result The result of a box shape query
+     * @param filter The filter that the block to stop at must match
+     * @param factory The block factory used to look up the block types for the filter
+     * @param ox The origin of the ray in the x dimension
+     * @param oy The origin of the ray in the y dimension
+     * @param oz The origin of the ray in the z dimension
+     * @param dx The direction of the ray in the x dimension
+     * @param dy The direction of the ray in the y dimension
+     * @param dz The direction of the ray in the z dimension
+     * @param maxDistance The maximum distance from the origin to search
+     * @param hit The result, updated with the block that was hit or reset if no block was hit
+     * @return True if a block was hit
+     */
+    public static boolean cast(BoxShapeQueryResult result, BlockFilter filter, BlockFactory factory,
+                               float ox, float oy, float oz,
+                               float dx, float dy, float dz,
+                               float maxDistance, RayHit hit) {
+        return cast(result.getBox().getBox(), result.getBlocks(), filter, factory,
+                ox, oy, oz, dx, dy, dz, maxDistance, hit);
+    }
+
+    /**
+     * Find the first block along a directional line that matches a filter
+     * @param line The line
+     * @param blocks The blocks of the line, as returned by a query for the line
+     * @param filter The filter to match
+     * @param factory The block factory used to look up the block types for the filter
+     * @return The index along the line (as used by {@link DirectionalLine#getLocal(int, Object[])})
+     *         of the first matching block, or -1 if no block matches
+     */
+    public static int first(DirectionalLine line, BlockTypeId[] blocks, BlockFilter filter, BlockFactory factory) {
+        Box box = line.getBox();
+        Position size = box.getSize();
+        Position vector = line.getDirection().getVector();
+        int stride = (vector.getX() * size.getY() + vector.getY()) * size.getZ() + vector.getZ();
+        int index = box.arrayIndex(line.getStart());
+        int count = box.getNumberOfBlocks();
+        FilterPredicate predicate = new FilterPredicate(blocks, filter, factory);
+        for(int i = 0; i < count; i++, index += stride) {
+            if(predicate.test(index)) return i;
+        }
+        return -1;
+    }
+}
@@ -4,10 +4,26 @@ import scala.collection.JavaConverters._
 
 import org.scalatest.{ Matchers, WordSpec }
 
+import konstructs.api.binary.{ BinaryDecoder, BinaryEncoder, BinaryFormat }
+import konstructs.api.messages.{ BlockUpdateEvent, BoxShapeQueryResult, ReplaceBlocks }
+
 class ApiSpec extends WordSpec with Matchers {
 
   val SomeType = new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, false, false, BlockState.SOLID, BlockType.NO_CLASSES)
 
+  def factoryOf(wMapping: java.util.Map[Integer, BlockTypeId], blockTypes: java.util.Map[BlockTypeId, BlockType]): BlockFactory = new BlockFactory {
+    override def getBlockType(typeId: BlockTypeId): BlockType = blockTypes.get(typeId)
+    override def getBlockTypes: java.util.Map[BlockTypeId, BlockType] = blockTypes
+    override def getWMapping: java.util.Map[Integer, BlockTypeId] = wMapping
+    override def getBlockTypeId(w: Int): BlockTypeId = ???
+    override def createBlock(uuid: java.util.UUID, w: Int, health: Int): Block = ???
+    override def createBlock(uuid: java.util.UUID, w: Int): Block = ???
+    override def createBlock(w: Int): Block = ???
+    override def getW(block: Block): Int = ???
+    override def getW(stack: Stack): Int = ???
+    override def getW(typeId: BlockTypeId): Int = ???
+  }
+
   "A BlockFilter" should {
 
     "Match a namespace" in {
@@ -73,7 +89,492 @@ class ApiSpec extends WordSpec with Matchers {
       filter.matches(new BlockTypeId("org/konstructs/forest", "sapling"), SomeType) shouldEqual true
     }
 
+    "Match blocks when compiled" in {
+      val wood = new BlockTypeId("org/konstructs", "wood")
+      val table = new BlockTypeTable(
+        Map[Integer, BlockTypeId](Integer.valueOf(0) -> BlockTypeId.VACUUM, Integer.valueOf(1) -> wood).asJava,
+        Map(BlockTypeId.VACUUM -> SomeType, wood -> SomeType).asJava)
+      val compiled = BlockFilterFactory.VACUUM.compile(table)
+      compiled.matches(0) shouldEqual true
+      compiled.matches(1) shouldEqual false
+      val matching = compiled.matches(Array(wood, BlockTypeId.VACUUM, null, BlockTypeId.VACUUM))
+      matching.cardinality shouldEqual 2
+      matching.get(1) shouldEqual true
+    }
+
+    "Match blocks with and, xor and not" in {
+      val id = new BlockTypeId("org/test", "test")
+      val ns = BlockFilterFactory.withNamespace("org/test")
+      val obstacle = BlockFilterFactory.withObstacle(true)
+      ns.and(obstacle).matches(id, SomeType) shouldEqual false
+      ns.and(obstacle.not).matches(id, SomeType) shouldEqual true
+      ns.xor(obstacle).matches(id, SomeType) shouldEqual true
+      ns.xor(ns).matches(id, SomeType) shouldEqual false
+    }
+
+    "Normalize to an equal filter" in {
+      val ns = BlockFilterFactory.withNamespace("org/test")
+      val name = BlockFilterFactory.withName("test")
+      ns.or(name).or(ns).normalize shouldEqual ns.or(name)
+      ns.and(name).normalize shouldEqual ns.withName("test")
+      ns.and(BlockFilterFactory.withNamespace("invalid")).normalize shouldBe BlockFilterFactory.NOTHING
+      ns.and(ns.not).normalize shouldBe BlockFilterFactory.NOTHING
+      ns.not.not.normalize shouldEqual ns
+      ns.xor(BlockFilterFactory.EVERYTHING).normalize shouldEqual ns.not
+    }
+  }
+
+  "A PaletteBlockArray" should {
+
+    val stone = new BlockTypeId("org/test", "stone")
+    val dirt = new BlockTypeId("org/test", "dirt")
+    val grass = new BlockTypeId("org/test", "grass")
+
+    "Return the encoded blocks" in {
+      val blocks = Array(stone, stone, dirt, grass, BlockTypeId.VACUUM, dirt, stone)
+      val palette = new PaletteBlockArray(blocks)
+      palette.getPalette shouldEqual Array(stone, dirt, grass, BlockTypeId.VACUUM)
+      palette.getBitsPerBlock shouldEqual 2
+      palette.toArray shouldEqual blocks
+      palette.get(3) shouldEqual grass
+    }
+
+    "Use no bits for a single block type" in {
+      val palette = new PaletteBlockArray(Array.fill(4096)(stone))
+      palette.getBitsPerBlock shouldEqual 0
+      palette.getData.length shouldEqual 0
+      palette.get(4095) shouldEqual stone
+    }
+
+    "Be accessible by position" in {
+      val box = Box.createWithSize(new Position(1, 2, 3), new Position(2, 2, 2))
+      val blocks = Array(stone, dirt, grass, stone, dirt, grass, stone, dirt)
+      val palette = new PaletteBlockArray(blocks)
+      box.get(new Position(2, 3, 4), palette) shouldEqual box.get(new Position(2, 3, 4), blocks)
+      box.getLocal(new Position(1, 0, 1), palette) shouldEqual box.getLocal(new Position(1, 0, 1), blocks)
+    }
+
+  }
+
+  "A RunLengthBlockArray" should {
+
+    val stone = new BlockTypeId("org/test", "stone")
+    val size = new Position(2, 2, 4)
+
+    "Return the encoded blocks" in {
+      val blocks = Array(
+        stone, stone, BlockTypeId.VACUUM, BlockTypeId.VACUUM,
+        stone, stone, stone, stone,
+        BlockTypeId.VACUUM, BlockTypeId.VACUUM, BlockTypeId.VACUUM, stone,
+        stone, BlockTypeId.VACUUM, stone, BlockTypeId.VACUUM)
+      val runs = new RunLengthBlockArray(size, blocks)
+      runs.getNumberOfRuns shouldEqual 9
+      runs.toArray shouldEqual blocks
+      runs.getLocal(new Position(1, 0, 3)) shouldEqual stone
+      runs.get(13) shouldEqual BlockTypeId.VACUUM
+    }
+
+    "Use one run per row when filled" in {
+      val runs = RunLengthBlockArray.fill(size, stone)
+      runs.getNumberOfRuns shouldEqual 4
+      runs.toArray shouldEqual Array.fill(16)(stone)
+    }
+
+  }
+
+  "A BlockTypeId" should {
+
+    "Be canonical when parsed from a string" in {
+      val id = BlockTypeId.fromString("org/test/interned")
+      (BlockTypeId.fromString("org/test/interned") eq id) shouldEqual true
+      (new BlockTypeId("org/test", "interned").intern() eq id) shouldEqual true
+      BlockTypeId.fromInternId(id.getInternId) shouldEqual id
+    }
+
+    "Be equal to its canonical instance" in {
+      val id = new BlockTypeId("org/test", "interned")
+      id.isInterned shouldEqual false
+      id shouldEqual id.intern()
+      id.getInternId shouldEqual id.intern().getInternId
+    }
+
+  }
+
+  "A BlockTypeTable" should {
+
+    val stone = new BlockTypeId("org/test", "table-stone")
+    val glass = new BlockTypeId("org/test", "table-glass")
+    val Glass = new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, true, true, BlockState.SOLID, BlockType.NO_CLASSES)
+    val table = new BlockTypeTable(
+      Map[Integer, BlockTypeId](Integer.valueOf(1) -> stone, Integer.valueOf(70) -> glass).asJava,
+      Map(stone -> SomeType, glass -> Glass).asJava)
+
+    "Return the properties of a w-value" in {
+      table.isObstacle(1) shouldEqual false
+      table.isObstacle(70) shouldEqual true
+      table.isTransparent(70) shouldEqual true
+      table.getBlockState(70) shouldEqual BlockState.SOLID
+      table.getBlockType(70) shouldEqual Glass
+    }
+
+    "Return the w-value of a block type id" in {
+      table.getW(new BlockTypeId("org/test", "table-glass")) shouldEqual 70
+      table.getW(BlockTypeId.VACUUM) shouldEqual -1
+      table.contains(2) shouldEqual false
+    }
+
+    "Only be current for a factory with the same block types" in {
+      val wMapping = Map[Integer, BlockTypeId](Integer.valueOf(1) -> stone, Integer.valueOf(70) -> glass).asJava
+      val blockTypes = Map(stone -> SomeType, glass -> Glass).asJava
+      table.isCurrent(factoryOf(wMapping, blockTypes)) shouldEqual true
+      val swapped = Map[Integer, BlockTypeId](Integer.valueOf(1) -> glass, Integer.valueOf(70) -> stone).asJava
+      table.isCurrent(factoryOf(swapped, blockTypes)) shouldEqual false
+      val replaced = factoryOf(wMapping, Map(stone -> SomeType, glass -> SomeType).asJava)
+      table.isCurrent(replaced) shouldEqual false
+      table.refresh(replaced).isObstacle(70) shouldEqual false
+      (table.refresh(factoryOf(wMapping, blockTypes)) eq table) shouldEqual true
+    }
+
+    "Return the same damage as the block types" in {
+      val Mineral = new BlockClassId("org/test", "Mineral")
+      val Soft = new BlockClassId("org/test", "Soft")
+      val pick = new BlockTypeId("org/test", "table-pick")
+      val ore = new BlockTypeId("org/test", "table-ore")
+      val dirt = new BlockTypeId("org/test", "table-dirt")
+      def toolOf(multipliers: (BlockOrClassId, Float)*) = new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, true, false,
+        BlockState.SOLID, BlockType.NO_CLASSES, 10.0f, 2.0f, multipliers.map { case (k, v) => k -> java.lang.Float.valueOf(v) }.toMap.asJava)
+      def typeOf(classes: BlockClassId*) = new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, true, false, BlockState.SOLID, classes.toArray)
+      val wMapping = Map[Integer, BlockTypeId](Integer.valueOf(0) -> pick, Integer.valueOf(1) -> stone,
+        Integer.valueOf(2) -> ore, Integer.valueOf(3) -> dirt, Integer.valueOf(4) -> glass).asJava
+      val targets = Map(stone -> typeOf(Mineral), ore -> typeOf(Mineral), dirt -> typeOf(Soft), glass -> Glass)
+      val pickType = toolOf(new BlockOrClassId(stone) -> 3.0f, new BlockOrClassId(Mineral) -> 5.0f, new BlockOrClassId(Soft) -> 0.5f)
+      val blockTypes = (targets + (pick -> pickType)).asJava
+      val damageTable = new BlockTypeTable(factoryOf(wMapping, blockTypes))
+      for (tool <- 0 to 4; target <- 0 to 4) {
+        val toolType = blockTypes.get(wMapping.get(tool))
+        val targetId = wMapping.get(target)
+        damageTable.getDamageWithMultiplier(tool, target) shouldEqual toolType.getDamageWithMultiplier(targetId, blockTypes.get(targetId))
+        damageTable.getDamageMultiplier(tool, target) shouldEqual toolType.getDamageMultipler(targetId, blockTypes.get(targetId))
+      }
+      /* By type, by the highest class above 1.0 and without any multiplier */
+      (0 to 4).map(damageTable.getDamageMultiplier(0, _)) shouldEqual Seq(1.0f, 3.0f, 5.0f, 1.0f, 1.0f)
+      damageTable.getDamageWithMultiplier(0, 2) shouldEqual 10.0f
+      damageTable.getDamageWithMultiplier(1, 2) shouldEqual 1.0f
+      val changed = factoryOf(wMapping, (targets + (pick -> toolOf(new BlockOrClassId(Soft) -> 4.0f))).asJava)
+      val refreshed = damageTable.refresh(changed)
+      (refreshed eq damageTable) shouldEqual false
+      (0 to 4).map(refreshed.getDamageMultiplier(0, _)) shouldEqual Seq(1.0f, 1.0f, 1.0f, 4.0f, 1.0f)
+      refreshed.getDamageWithMultiplier(0, 3) shouldEqual 8.0f
+    }
 
   }
 
+  "A BinaryEncoder" should {
+
+    val stone = new BlockTypeId("org/test", "stone")
+
+    "Write values that are read back by a BinaryDecoder" in {
+      val encoder = new BinaryEncoder()
+      val block = new Block(java.util.UUID.randomUUID, stone, Health.get(17), Orientation.get(5))
+      val inventory = new Inventory(Array(Stack.createOfSize(stone, 3), null))
+      encoder.writeHeader()
+      encoder.writePosition(new Position(-1, 2, -300000))
+      encoder.writeBlock(block)
+      encoder.writeInventory(inventory)
+      encoder.writeBlockFilter(BlockFilterFactory.withNamespace("org/test").or(BlockFilterFactory.NOTHING))
+      val decoder = new BinaryDecoder(encoder.toByteArray)
+      decoder.readHeader() shouldEqual BinaryFormat.VERSION
+      decoder.readPosition() shouldEqual new Position(-1, 2, -300000)
+      decoder.readBlock() shouldEqual block
+      decoder.readInventory() shouldEqual inventory
+      decoder.readBlockFilter() shouldEqual BlockFilterFactory.withNamespace("org/test").or(BlockFilterFactory.NOTHING)
+    }
+
+    "Write a BlockTypeId only once" in {
+      val encoder = new BinaryEncoder()
+      encoder.writeBlockTypeId(stone)
+      val first = encoder.toByteArray.length
+      encoder.writeBlockTypeId(stone)
+      encoder.toByteArray.length shouldEqual first + 1
+      val decoder = new BinaryDecoder(encoder.toByteArray)
+      decoder.readBlockTypeId() shouldEqual stone
+      (decoder.readBlockTypeId() eq stone.intern()) shouldEqual true
+    }
+
+    "Reject a stream without header" in {
+      intercept[IllegalArgumentException] {
+        new BinaryDecoder(Array[Byte](1, 2, 3, 4, 5)).readHeader()
+      }
+    }
+    "Write messages that are read back by a BinaryDecoder" in {
+      val glass = new BlockTypeId("org/test", "glass")
+      val event = new BlockUpdateEvent(Map(
+        new Position(-3, 2, 100000) -> new BlockUpdate(null, new Block(java.util.UUID.randomUUID, stone, Health.get(17), Orientation.get(5))),
+        new Position(4, 2, 1) -> new BlockUpdate(new Block(null, glass), null)).asJava)
+      val packed = new ReplaceBlocks(BlockFilterFactory.VACUUM,
+        Map(new Position(1, 2, 3) -> stone, new Position(-1, 0, 7) -> glass).asJava)
+      val box = Box.createWithSize(new Position(-2, 0, 5), new Position(3, 2, 4))
+      val blocks = Array.tabulate[BlockTypeId](box.getNumberOfBlocks)(i => if (i % 5 == 0) glass else if (i % 7 == 0) null else stone)
+      val runLength = new ReplaceBlocks(BlockFilterFactory.EVERYTHING, box, new RunLengthBlockArray(box.getSize, blocks))
+      val result = new BoxShapeQueryResult(box, blocks)
+      val around = new BoxAround(new Position(0, 0, 0), new Position(1, 1, 1))
+      val tiled = new BoxShapeQueryResult(around,
+        Array.fill[BlockTypeId](BoxLayout.TILED.getArraySize(around.getBox.getSize))(stone), BoxLayout.TILED)
+      val encoder = new BinaryEncoder()
+      encoder.writeBlockUpdateEvent(event)
+      encoder.writeReplaceBlocks(packed)
+      encoder.writeReplaceBlocks(runLength)
+      encoder.writeBoxShapeQueryResult(result)
+      encoder.writeBoxShapeQueryResult(tiled)
+      val decoder = new BinaryDecoder(encoder.toByteArray)
+      decoder.readBlockUpdateEvent() shouldEqual event
+      decoder.readReplaceBlocks() shouldEqual packed
+      val decoded = decoder.readReplaceBlocks()
+      decoded shouldEqual runLength
+      decoded.isRunLength shouldEqual true
+      decoder.readBoxShapeQueryResult() shouldEqual result
+      val decodedTiled = decoder.readBoxShapeQueryResult()
+      decodedTiled shouldEqual tiled
+      decodedTiled.getLayout shouldEqual BoxLayout.TILED
+      decoder.getBuffer.remaining shouldEqual 0
+    }
+
+    "Not read more blocks than the box of a query result has" in {
+      val encoder = new BinaryEncoder()
+      encoder.writeBoxShape(Box.createWithSize(new Position(0, 0, 0), new Position(2, 2, 2)))
+      encoder.writeByte(BoxLayout.LINEAR.getEncoding)
+      encoder.writeVarInt(Int.MaxValue)
+      encoder.writeBlockTypeId(stone)
+      encoder.writeVarInt(Int.MaxValue)
+      intercept[IllegalArgumentException] {
+        new BinaryDecoder(encoder.toByteArray).readBoxShapeQueryResult()
+      }
+    }
+
+    "Not read a query result with more blocks than the caller accepts" in {
+      val box = Box.createWithSize(new Position(0, 0, 0), new Position(2, 2, 2))
+      val encoder = new BinaryEncoder()
+      encoder.writeBoxShapeQueryResult(new BoxShapeQueryResult(box, Array.fill[BlockTypeId](box.getNumberOfBlocks)(stone)))
+      new BinaryDecoder(encoder.toByteArray).readBoxShapeQueryResult(8).getBox shouldEqual box
+      intercept[IllegalArgumentException] {
+        new BinaryDecoder(encoder.toByteArray).readBoxShapeQueryResult(7)
+      }
+    }
+
+    "Write events with positions that can not be packed" in {
+      val event = new BlockUpdateEvent(Map(
+        new Position(2000000, 1, 1) -> new BlockUpdate(null, Block.create(stone)),
+        new Position(1, 2, 3) -> new BlockUpdate(Block.create(stone), null)).asJava)
+      val encoder = new BinaryEncoder()
+      encoder.writeBlockUpdateEvent(event)
+      val decoded = new BinaryDecoder(encoder.toByteArray).readBlockUpdateEvent()
+      decoded shouldEqual event
+      decoded.isPacked shouldEqual false
+    }
+
+  }
+
+  "The default Gson" should {
+
+    val gson = GsonDefault.getDefaultGson()
+    val stone = new BlockTypeId("org/test", "stone")
+
+    "Write the same JSON as the reflective adapters" in {
+      val block = new Block(java.util.UUID.randomUUID, stone, Health.get(3), Orientation.get(7))
+      val inventory = new Inventory(Array(Stack.createFromBlock(block), null))
+      gson.toJson(inventory) shouldEqual new com.google.gson.Gson().toJson(inventory)
+      gson.fromJson(gson.toJson(inventory), classOf[Inventory]) shouldEqual inventory
+    }
+
+    "Read singletons and defaults" in {
+      val block = gson.fromJson("""{"type":{"namespace":"org/test","name":"stone"}}""", classOf[Block])
+      (block.getHealth eq Health.PRISTINE) shouldEqual true
+      (block.getOrientation eq Orientation.NORMAL) shouldEqual true
+      (block.getType eq stone.intern()) shouldEqual true
+    }
+
+    "Read empty stacks from before 0.1 as empty slots" in {
+      val inventory = gson.fromJson("""{"stacks":[{"blocks":[]},null]}""", classOf[Inventory])
+      inventory shouldEqual Inventory.createEmpty(2)
+    }
+  }
+
+  "A BlockUpdateColumns" should {
+
+    val stone = new BlockTypeId("org/test", "stone")
+    val dirt = new BlockTypeId("org/test", "dirt")
+    val updates = Map(
+      new Position(1, 2, 3) -> new BlockUpdate(new Block(java.util.UUID.randomUUID, stone, Health.get(17), Orientation.get(5)), Block.create(dirt)),
+      new Position(-4, 5, -6) -> new BlockUpdate(Block.create(dirt), Block.create(stone))
+    ).asJava
+
+    "Provide a Map view equal to the updates" in {
+      val columns = BlockUpdateColumns.of(updates)
+      columns.size shouldEqual 2
+      columns.asMap shouldEqual updates
+      columns.asMap.get(new Position(-4, 5, -6)) shouldEqual updates.get(new Position(-4, 5, -6))
+      columns.asMap.containsKey(new Position(0, 0, 0)) shouldEqual false
+      columns.getAfterIds shouldEqual null
+    }
+
+    "Be equal to the map form of a BlockUpdateEvent" in {
+      val event = new BlockUpdateEvent(BlockUpdateColumns.of(updates))
+      event.isColumnar shouldEqual true
+      event.getUpdatedBlocks shouldEqual updates
+      event shouldEqual new BlockUpdateEvent(updates)
+      new BlockUpdateEvent(updates).getColumns.asMap shouldEqual updates
+    }
+
+    "Be equal to columns with the same updates in a different order" in {
+      val small = new PositionLongMap[BlockUpdate]()
+      val large = new PositionLongMap[BlockUpdate](4096)
+      for (i <- 0 until 20) {
+        val update = new BlockUpdate(new Block(java.util.UUID.randomUUID, stone, Health.get(i), Orientation.NORMAL), Block.create(dirt))
+        small.put(i * 7, i * 3, -i, update)
+        large.put(i * 7, i * 3, -i, update)
+      }
+      val first = BlockUpdateColumns.of(small)
+      val second = BlockUpdateColumns.of(large)
+      first.getPackedPositions.toSeq should not equal second.getPackedPositions.toSeq
+      first shouldEqual second
+      first.hashCode shouldEqual second.hashCode
+      val map = new BlockUpdateEvent(small.toMap)
+      new BlockUpdateEvent(first) shouldEqual map
+      map shouldEqual new BlockUpdateEvent(second)
+      new BlockUpdateEvent(first) shouldEqual new BlockUpdateEvent(second)
+      new BlockUpdateEvent(first).hashCode shouldEqual map.hashCode
+    }
+
+    "Select a subset of the updates" in {
+      val columns = BlockUpdateColumns.of(updates)
+      val indexes = new java.util.BitSet
+      indexes.set(1)
+      val selected = columns.select(indexes)
+      selected.size shouldEqual 1
+      selected.getUpdate(0) shouldEqual columns.getUpdate(1)
+      selected.getPackedPosition(0) shouldEqual columns.getPackedPosition(1)
+    }
+
+    "Require columns of the same length" in {
+      intercept[IllegalArgumentException] {
+        new BlockUpdateColumns(Array(0L), Array(0), Array[Short](0), null, Array[Int](), Array[Short](), null)
+      }
+    }
+  }
+
+  "A BlockUpdateEvent" should {
+
+    val stone = new BlockTypeId("org/test", "stone")
+    val update = new BlockUpdate(Block.create(stone), Block.create(BlockTypeId.VACUUM))
+    val updates = Map(new Position(1, 2, 3) -> update, new Position(-4, 5, -6) -> update).asJava
+
+    "Have the same hash code in map and packed form" in {
+      val event = new BlockUpdateEvent(updates)
+      val packed = new BlockUpdateEvent(PositionLongMap.fromMap(updates))
+      event shouldEqual packed
+      packed shouldEqual event
+      event.hashCode shouldEqual packed.hashCode
+    }
+
+    "Support positions that can not be packed in map form" in {
+      val far = Map(new Position(2000000, 0, 0) -> update).asJava
+      new BlockUpdateEvent(far).hashCode shouldEqual far.hashCode
+      new BlockUpdateEvent(far) shouldEqual new BlockUpdateEvent(new java.util.HashMap[Position, BlockUpdate](far))
+      (new BlockUpdateEvent(far) == new BlockUpdateEvent(PositionLongMap.fromMap(updates))) shouldEqual false
+    }
+
+    "Tell if its positions can be packed" in {
+      val far = new BlockUpdateEvent(Map(new Position(2000000, 0, 0) -> update, new Position(1, 2, 3) -> update).asJava)
+      far.isPackable shouldEqual false
+      intercept[IllegalArgumentException] {
+        far.getPackedUpdatedBlocks
+      }
+      intercept[IllegalArgumentException] {
+        far.getColumns
+      }
+      new BlockUpdateEvent(updates).isPackable shouldEqual true
+      new BlockUpdateEvent(PositionLongMap.fromMap(updates)).isPackable shouldEqual true
+    }
+  }
+
+  "A ReplaceBlocks" should {
+
+    val stone = new BlockTypeId("org/test", "stone")
+    val blocks = Map(new Position(1, 2, 3) -> stone, new Position(-4, 5, -6) -> stone).asJava
+
+    "Have the same hash code in map and packed form" in {
+      val map = new ReplaceBlocks(BlockFilterFactory.EVERYTHING, blocks)
+      val packed = new ReplaceBlocks(BlockFilterFactory.EVERYTHING, PositionLongMap.fromMap(blocks))
+      map shouldEqual packed
+      packed shouldEqual map
+      map.hashCode shouldEqual packed.hashCode
+    }
+
+    "Support positions that can not be packed in map form" in {
+      val far = Map(new Position(0, -2000000, 0) -> stone).asJava
+      val map = new ReplaceBlocks(BlockFilterFactory.EVERYTHING, far)
+      map.hashCode shouldEqual new ReplaceBlocks(BlockFilterFactory.EVERYTHING, new java.util.HashMap[Position, BlockTypeId](far)).hashCode
+      (map == new ReplaceBlocks(BlockFilterFactory.EVERYTHING, PositionLongMap.fromMap(blocks))) shouldEqual false
+    }
+
+    "Have the same hash code in run length and packed form" in {
+      val size = new Position(2, 3, 4)
+      val runs = new RunLengthBlockArray(size, Array.tabulate[BlockTypeId](24)(i => if (i % 5 == 0) null else stone))
+      val box = Box.createWithSize(new Position(-7, 3, 100), size)
+      val runLength = new ReplaceBlocks(BlockFilterFactory.EVERYTHING, box, runs)
+      val packed = new ReplaceBlocks(BlockFilterFactory.EVERYTHING, runs.getAsPackedMap(box.getFrom))
+      runLength shouldEqual packed
+      packed shouldEqual runLength
+      runLength.hashCode shouldEqual packed.hashCode
+      runLength.hashCode shouldEqual new ReplaceBlocks(BlockFilterFactory.EVERYTHING, packed.getBlocks).hashCode
+    }
+  }
+
+
+  "A BlockType" should {
+
+    val classes = Array.tabulate(150)(i => new BlockClassId("org/test", s"Class$i"))
+    val id = new BlockTypeId("org/test", "test")
+    def typeOf(own: Array[BlockClassId]) = new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, true, false, BlockState.SOLID, own)
+    /* The semantics of checking each class against the classes of the type */
+    def expected(own: Array[BlockClassId], required: Array[BlockClassId]) = required.forall(c => own.exists(_.equals(c)))
+
+    "Give equal classes the same index" in {
+      new BlockClassId("org/test", "Class3").getIndex shouldEqual classes(3).getIndex
+      BlockClassId.mask(Array(classes(3), classes(3))) shouldEqual BlockClassId.mask(Array(new BlockClassId("org/test", "Class3")))
+      BlockClassId.mask(Array[BlockClassId]()).length shouldEqual 0
+    }
+
+    "Require all classes, allow duplicates and match no classes" in {
+      val own = Array(classes(1), classes(100), classes(1))
+      val t = typeOf(own)
+      t.hasClasses(Array(classes(1), classes(100))) shouldEqual true
+      t.hasClasses(Array(classes(100), classes(100))) shouldEqual true
+      t.hasClasses(Array(classes(1), classes(2))) shouldEqual false
+      t.hasClasses(Array[BlockClassId]()) shouldEqual true
+      t.hasClasses(BlockClassId.mask(Array[BlockClassId]())) shouldEqual true
+      BlockFilterFactory.withClasses(Array[BlockClassId]()).matches(id, t) shouldEqual true
+      typeOf(Array[BlockClassId]()).hasClasses(Array(classes(1))) shouldEqual false
+      typeOf(Array[BlockClassId]()).hasClass(classes(149)) shouldEqual false
+    }
+
+    "Check classes like comparing each class with the classes of the type" in {
+      val random = new scala.util.Random(17)
+      for (_ <- 0 until 2000) {
+        val own = Array.fill(random.nextInt(6))(classes(random.nextInt(classes.length)))
+        val required = Array.fill(random.nextInt(4)) {
+          if (own.nonEmpty && random.nextBoolean())
+            new BlockClassId("org/test", own(random.nextInt(own.length)).getName)
+          else
+            classes(random.nextInt(classes.length))
+        }
+        val t = typeOf(own)
+        t.hasClasses(required) shouldEqual expected(own, required)
+        t.hasClasses(BlockClassId.mask(required)) shouldEqual expected(own, required)
+        BlockFilterFactory.withClasses(required).matches(id, t) shouldEqual expected(own, required)
+        for (c <- required) t.hasClass(c) shouldEqual expected(own, Array(c))
+      }
+    }
+
+  }
 }
@@ -1,5 +1,6 @@
 package konstructs.api
 
+import scala.collection.JavaConverters._
 import org.scalatest.{ Matchers, WordSpec }
 
 class GeometrySpec extends WordSpec with Matchers {
@@ -271,4 +272,188 @@ class GeometrySpec extends WordSpec with Matchers {
     }
 
   }
+
+  "A packed Position" should {
+    "unpack to the same position" in {
+      val p = new Position(-1048576, 1048575, -17)
+      Position.fromPacked(p.pack) shouldEqual p
+      Position.fromPacked(new Position(0, 0, 0).pack) shouldEqual new Position(0, 0, 0)
+    }
+
+    "never be negative" in {
+      new Position(-1, -1, -1).pack should be >= 0L
+    }
+
+    "throw exception if out of range" in {
+      intercept[IllegalArgumentException] {
+        new Position(1048576, 0, 0).pack
+      }
+    }
+  }
+
+  "A PositionLongMap" should {
+    "contain the same entries as a position map" in {
+      val box = new Box(new Position(-2, -2, -2), new Position(2, 2, 2))
+      val blocks = Array.fill(box.getNumberOfBlocks)(BlockTypeId.VACUUM)
+      val packed = box.getAsPackedMap(blocks)
+      packed.size shouldEqual 64
+      packed.toMap shouldEqual box.getAsMap(blocks)
+      PositionLongMap.fromMap(box.getAsMap(blocks)) shouldEqual packed
+    }
+
+    "remove entries" in {
+      val map = new PositionLongMap[String]()
+      map.put(new Position(1, 2, 3), "a")
+      map.put(new Position(3, 2, 1), "b")
+      map.remove(new Position(1, 2, 3)) shouldEqual "a"
+      map.get(new Position(1, 2, 3)) shouldEqual null
+      map.get(new Position(3, 2, 1)) shouldEqual "b"
+      map.size shouldEqual 1
+    }
+  }
+
+
+  "A BoxCursor" should {
+    "visit all positions in array index order" in {
+      val box = new Box(new Position(-1, 0, 2), new Position(1, 3, 5))
+      val cursor = box.cursor
+      var i = 0
+      while(cursor.next) {
+        cursor.getIndex shouldEqual i
+        cursor.getPosition shouldEqual box.arrayIndexAsPosition(i)
+        i += 1
+      }
+      i shouldEqual box.getNumberOfBlocks
+    }
+
+    "visit the same positions as forEachIndexed" in {
+      val box = new Box(new Position(3, -2, 0), new Position(5, 0, 3))
+      val cursor = box.cursor
+      box.forEachIndexed(new IndexedIntTriConsumer {
+        override def accept(x: Int, y: Int, z: Int, index: Int): Unit = {
+          cursor.next shouldEqual true
+          (cursor.getX, cursor.getY, cursor.getZ, cursor.getIndex) shouldEqual ((x, y, z, index))
+        }
+      })
+      cursor.next shouldEqual false
+    }
+  }
+
+
+  "A Box split" should {
+    "cover all array indexes with slices aligned to x slabs" in {
+      val box = new Box(new Position(0, 0, 0), new Position(8, 4, 4))
+      val slices = box.split(3)
+      slices.size shouldEqual 3
+      slices.get(0).getEnd shouldEqual 48
+      slices.get(2).getEnd shouldEqual box.getNumberOfBlocks
+    }
+
+    "stream all array indexes in parallel" in {
+      val box = new Box(new Position(-3, 0, 5), new Position(4, 9, 12))
+      box.parallelIndexStream.toArray.toSeq shouldEqual (0 until box.getNumberOfBlocks)
+    }
+  }
+
+
+  "A chunked Box" should {
+    "be split on chunk boundaries" in {
+      new Box(new Position(-8, 0, 0), new Position(40, 1, 1)).chunked(32).asScala shouldEqual Seq(
+        new Box(new Position(-8, 0, 0), new Position(0, 1, 1)),
+        new Box(new Position(0, 0, 0), new Position(32, 1, 1)),
+        new Box(new Position(32, 0, 0), new Position(40, 1, 1)))
+    }
+
+    "copy the blocks of all chunks back into the whole box" in {
+      val box = new Box(new Position(-3, -1, 2), new Position(5, 4, 9))
+      val blocks = Array.tabulate[Integer](box.getNumberOfBlocks)(i => i)
+      val copy = new Array[AnyRef](blocks.length)
+      for(chunk <- box.chunked(4).asScala) {
+        val part = Array.tabulate[AnyRef](chunk.getNumberOfBlocks)(i => box.get(chunk.arrayIndexAsPosition(i), blocks))
+        chunk.copyInto(part, box, copy)
+      }
+      copy.toSeq shouldEqual blocks.toSeq
+    }
+  }
+
+
+  "Box set operations" should {
+    val a = new Box(new Position(0, 0, 0), new Position(4, 4, 4))
+    val b = new Box(new Position(2, 2, 2), new Position(6, 6, 6))
+
+    "contain positions with negative x" in {
+      new Box(new Position(-4, 0, 0), new Position(0, 1, 1)).contains(new Position(-2, 0, 0)) shouldEqual true
+      new Box(new Position(0, 0, -4), new Position(1, 1, 0)).contains(new Position(-2, 0, -2)) shouldEqual false
+    }
+
+    "intersect overlapping boxes" in {
+      a.intersects(b) shouldEqual true
+      a.intersect(b) shouldEqual new Box(new Position(2, 2, 2), new Position(4, 4, 4))
+      a.intersect(new Box(new Position(4, 0, 0), new Position(5, 1, 1))) shouldEqual null
+    }
+
+    "cover both boxes in a union" in {
+      a.union(b) shouldEqual new Box(new Position(0, 0, 0), new Position(6, 6, 6))
+      a.containsBox(a.intersect(b)) shouldEqual true
+      a.containsBox(b) shouldEqual false
+    }
+
+    "subtract into disjoint boxes" in {
+      val rest = a.subtract(b).asScala
+      rest.size shouldEqual 3
+      rest.map(_.getNumberOfBlocks).sum shouldEqual 64 - 8
+      rest.forall(!_.intersects(b)) shouldEqual true
+      a.subtract(a).isEmpty shouldEqual true
+    }
+  }
+
+
+  "A BoxLayout" should {
+    val size = new Position(20, 5, 33)
+
+    "map every local position to a unique index and back" in {
+      for(layout <- Seq(BoxLayout.LINEAR, BoxLayout.MORTON, BoxLayout.TILED)) {
+        val indexes = for(x <- 0 until 20; y <- 0 until 5; z <- 0 until 33) yield {
+          val i = layout.index(size, x, y, z)
+          layout.getPosition(size, i) shouldEqual new Position(x, y, z)
+          i
+        }
+        indexes.distinct.size shouldEqual indexes.size
+        indexes.max should be < layout.getArraySize(size)
+      }
+    }
+
+    "use the same linear layout as Box" in {
+      val box = Box.createWithSize(new Position(3, 3, 3), size)
+      BoxLayout.LINEAR.index(size, new Position(7, 2, 30)) shouldEqual box.arrayIndexLocal(new Position(7, 2, 30))
+    }
+
+    "find neighbours within the box" in {
+      val i = BoxLayout.TILED.index(size, 15, 0, 0)
+      BoxLayout.TILED.neighbour(size, i, Direction.RIGHT) shouldEqual BoxLayout.TILED.index(size, 16, 0, 0)
+      BoxLayout.TILED.neighbour(size, i, Direction.DOWN) shouldEqual -1
+      BoxLayout.MORTON.neighbour(size, BoxLayout.MORTON.index(size, 19, 4, 32), Direction.UP) shouldEqual -1
+    }
+  }
+
+
+  "The 24 orientations" should {
+    "be canonical singletons" in {
+      for(d <- 0 until 6; r <- 0 until 4) {
+        val o = Orientation.get(d, r)
+        (o eq Orientation.get(Direction.get(d), Rotation.get(r))) shouldEqual true
+        (Orientation.get(o.getEncoding) eq o) shouldEqual true
+      }
+    }
+
+    "compose with their inverse to the normal orientation" in {
+      for(e <- 0 until Orientation.NUMBER_OF_ORIENTATIONS) {
+        val o = Orientation.get(e)
+        o.compose(o.inverse) shouldEqual Orientation.NORMAL
+        o.inverse.translateFacePointingIn(o.translateFacePointingIn(Direction.FORWARD)) shouldEqual Direction.FORWARD
+      }
+      Rotation.LEFT.compose(Rotation.LEFT) shouldEqual Rotation.HALF
+      Rotation.LEFT.inverse shouldEqual Rotation.RIGHT
+    }
+  }
 }
@@ -0,0 +1,542 @@
+package konstructs.utils
+
+import scala.collection.JavaConverters._
+
+import org.scalatest.{ Matchers, WordSpec }
+
+import konstructs.api._
+import konstructs.api.messages.{ BlockUpdateEvent, BoxShapeQueryResult, SubscribeBlockUpdates }
+
+class UtilsSpec extends WordSpec with Matchers {
+
+  val stone = new BlockTypeId("org/test", "stone")
+
+  def factoryOf(types: Map[BlockTypeId, BlockType]): BlockFactory = new BlockFactory {
+    override def getBlockType(typeId: BlockTypeId): BlockType = types(typeId)
+    override def getBlockTypes: java.util.Map[BlockTypeId, BlockType] = types.asJava
+    override def getWMapping: java.util.Map[Integer, BlockTypeId] = ???
+    override def getBlockTypeId(w: Int): BlockTypeId = ???
+    override def createBlock(uuid: java.util.UUID, w: Int, health: Int): Block = ???
+    override def createBlock(uuid: java.util.UUID, w: Int): Block = ???
+    override def createBlock(w: Int): Block = ???
+    override def getW(block: Block): Int = ???
+    override def getW(stack: Stack): Int = ???
+    override def getW(typeId: BlockTypeId): Int = ???
+  }
+
+  "A BlockMachine" should {
+
+    val machine = new BlockMachine(Map[Character, BlockTypeId](Character.valueOf('a') -> stone).asJava)
+
+    "Interpret the same blocks in map and packed form" in {
+      val map = machine.interpret("a-aa", new Position(0, 0, 0))
+      map.size shouldEqual 3
+      machine.interpretPacked("a-aa", new Position(0, 0, 0)).equalsMap(map) shouldEqual true
+    }
+
+    "Interpret programs outside of the packed range in map form" in {
+      val map = machine.interpret("a-aa", new Position(2000000, 0, 0))
+      map.get(new Position(2000001, 1, 0)) shouldEqual stone
+    }
+
+  }
+
+  "A BoxQueryAssembler" should {
+
+    val box = Box.createWithSize(new Position(0, 0, 0), new Position(4, 4, 4))
+
+    "Only accept results of missing parts in the linear layout" in {
+      val assembler = new BoxQueryAssembler(box, 2)
+      val part = assembler.getParts.get(0)
+      val blocks = Array.fill[BlockTypeId](part.getNumberOfBlocks)(stone)
+      assembler.expects(new BoxShapeQueryResult(part, blocks, BoxLayout.MORTON)) shouldEqual false
+      assembler.accept(new BoxShapeQueryResult(part, blocks, BoxLayout.TILED)) shouldEqual false
+      assembler.accept(new BoxShapeQueryResult(part, blocks)) shouldEqual true
+      assembler.accept(new BoxShapeQueryResult(part, blocks)) shouldEqual false
+    }
+
+    "Assemble the results of all parts" in {
+      val assembler = new BoxQueryAssembler(box, 2)
+      assembler.getParts.size shouldEqual 8
+      for (part <- assembler.getParts.asScala) {
+        assembler.isComplete shouldEqual false
+        assembler.accept(new BoxShapeQueryResult(part, Array.fill[BlockTypeId](part.getNumberOfBlocks)(stone))) shouldEqual true
+      }
+      assembler.isComplete shouldEqual true
+      assembler.getResult.getBlocks.forall(_ == stone) shouldEqual true
+    }
+
+  }
+
+  "A RegionStatistics" should {
+
+    val ore = new BlockTypeId("org/test", "ore")
+    val glass = new BlockTypeId("org/test", "glass")
+    val untyped = new BlockTypeId("org/test", "untyped")
+    val unregistered = new BlockTypeId("org/test", "unregistered")
+    val Mineral = new BlockClassId("org/test", "Mineral")
+    val Clear = new BlockClassId("org/test", "Clear")
+    def typeOf(classes: BlockClassId*) =
+      new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, true, false, BlockState.SOLID, classes.toArray)
+    val table = new BlockTypeTable(
+      Map[Integer, BlockTypeId](Integer.valueOf(0) -> stone, Integer.valueOf(1) -> ore,
+        Integer.valueOf(2) -> glass, Integer.valueOf(3) -> untyped).asJava,
+      Map(stone -> typeOf(), ore -> typeOf(Mineral, Mineral), glass -> typeOf(Mineral, Clear)).asJava)
+    val blocks = Array.tabulate[BlockTypeId](1 << 18) { i =>
+      i % 7 match {
+        case 0 => ore
+        case 1 => glass
+        case 2 => null
+        case 3 => unregistered
+        case 4 => untyped
+        case _ => stone
+      }
+    }
+    val statistics = RegionStatistics.of(blocks, table)
+
+    "Count large regions in parallel as if counted in sequential slices" in {
+      val slices = blocks.grouped(1 << 14).map(RegionStatistics.of(_, table)).toList
+      for (w <- 0 until table.getSize) {
+        statistics.getCount(w) shouldEqual slices.map(_.getCount(w)).sum
+      }
+      statistics.getNumberOfUnknownBlocks shouldEqual slices.map(_.getNumberOfUnknownBlocks).sum
+      statistics.getCount(stone) shouldEqual blocks.count(_ == stone)
+      statistics.getCount(untyped) shouldEqual blocks.count(_ == untyped)
+      RegionStatistics.of(table.getW(blocks), table).getCounts shouldEqual statistics.getCounts
+    }
+
+    "Count null and unregistered blocks as unknown" in {
+      statistics.getNumberOfBlocks shouldEqual blocks.length
+      statistics.getNumberOfUnknownBlocks shouldEqual blocks.count(b => b == null || b == unregistered)
+      statistics.getCount(unregistered) shouldEqual 0
+    }
+
+    "Find the first and last matching block" in {
+      val filter = BlockFilterFactory.withBlockTypeId(glass).compile(table)
+      RegionStatistics.first(blocks, filter) shouldEqual 1
+      RegionStatistics.last(blocks, filter) shouldEqual blocks.lastIndexOf(glass)
+      RegionStatistics.first(table.getW(blocks), filter) shouldEqual 1
+      RegionStatistics.last(table.getW(blocks), filter) shouldEqual blocks.lastIndexOf(glass)
+      RegionStatistics.first(Array[BlockTypeId](null, unregistered, stone), filter) shouldEqual -1
+    }
+
+    "Count each block once per class" in {
+      statistics.getCount(Mineral) shouldEqual blocks.count(b => b == ore || b == glass)
+      statistics.getCount(Clear) shouldEqual blocks.count(_ == glass)
+      statistics.getClassHistogram.get(Mineral).intValue shouldEqual statistics.getCount(Mineral)
+      statistics.getClassHistogram.size shouldEqual 2
+    }
+
+  }
+
+
+  "A BlockUpdateSubscriptions" should {
+
+    val ore = new BlockTypeId("org/test", "ore")
+    val someType = new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, true, false, BlockState.SOLID, Array[BlockClassId]())
+    val table = new BlockTypeTable(
+      Map[Integer, BlockTypeId](Integer.valueOf(0) -> stone, Integer.valueOf(1) -> ore).asJava,
+      Map(stone -> someType, ore -> someType).asJava)
+    val mined = new Position(1, 1, 1)
+    val placed = new Position(2, 1, 1)
+    val removed = new Position(40, 1, 1)
+    val updates = Map[Position, BlockUpdate](
+      mined -> new BlockUpdate(new Block(null, stone), new Block(null, ore)),
+      placed -> new BlockUpdate(null, new Block(null, stone)),
+      removed -> new BlockUpdate(new Block(null, ore), null))
+    val event = new BlockUpdateEvent(updates.asJava)
+    val near = Box.createWithSize(new Position(0, 0, 0), new Position(4, 4, 4))
+    val far = Box.createWithSize(new Position(32, 0, 0), new Position(16, 4, 4))
+    val all = new Box(new Position(0, 0, 0), new Position(64, 4, 4))
+    def regions(boxes: Box*) = List[BoxShape](boxes: _*).asJava
+    def positions(e: BlockUpdateEvent) = e.getUpdatedBlocks.keySet.asScala.toSet
+
+    "Only split out the updates within the regions of a subscriber" in {
+      val subscriptions = new BlockUpdateSubscriptions[String]()
+      subscriptions.subscribe("near", new SubscribeBlockUpdates(regions(near)))
+      val events = subscriptions.split(event, table)
+      positions(events.get("near")) shouldEqual Set(mined, placed)
+      events.get("near").getUpdatedBlocks.get(mined) shouldEqual updates(mined)
+    }
+
+    "Filter on the block before and after the update, never matching missing blocks" in {
+      val subscriptions = new BlockUpdateSubscriptions[String]()
+      subscriptions.subscribe("before", new SubscribeBlockUpdates(regions(all), BlockFilterFactory.withBlockTypeId(stone), null))
+      subscriptions.subscribe("after", new SubscribeBlockUpdates(regions(all), null, BlockFilterFactory.withBlockTypeId(stone)))
+      val events = subscriptions.split(event, table)
+      positions(events.get("before")) shouldEqual Set(mined)
+      positions(events.get("after")) shouldEqual Set(placed)
+    }
+
+    "Leave out subscribers without any matching updates" in {
+      val subscriptions = new BlockUpdateSubscriptions[String]()
+      subscriptions.subscribe("elsewhere", new SubscribeBlockUpdates(regions(Box.createWithSize(new Position(100, 0, 0), new Position(4, 4, 4)))))
+      subscriptions.subscribe("filtered", new SubscribeBlockUpdates(regions(all),
+        BlockFilterFactory.withBlockTypeId(ore), BlockFilterFactory.withBlockTypeId(ore)))
+      subscriptions.split(event, table).isEmpty shouldEqual true
+    }
+
+    "Deliver the event itself to subscribers matching all updates" in {
+      val subscriptions = new BlockUpdateSubscriptions[String]()
+      subscriptions.subscribe("all", new SubscribeBlockUpdates(regions(all)))
+      subscriptions.subscribe("both", new SubscribeBlockUpdates(regions(near, far)))
+      val events = subscriptions.split(event, table)
+      (events.get("all") eq event) shouldEqual true
+      (events.get("both") eq event) shouldEqual true
+    }
+
+    "Split events with positions that can not be packed" in {
+      val distant = new Position(2000000, 1, 1)
+      val farEvent = new BlockUpdateEvent((updates + (distant -> new BlockUpdate(new Block(null, ore), null))).asJava)
+      val distantRegion = Box.createWithSize(new Position(1999998, 0, 0), new Position(4, 4, 4))
+      val subscriptions = new BlockUpdateSubscriptions[String]()
+      subscriptions.subscribe("near", new SubscribeBlockUpdates(regions(near)))
+      subscriptions.subscribe("after", new SubscribeBlockUpdates(regions(near), null, BlockFilterFactory.withBlockTypeId(stone)))
+      subscriptions.subscribe("distant", new SubscribeBlockUpdates(regions(distantRegion)))
+      subscriptions.subscribe("filtered", new SubscribeBlockUpdates(regions(distantRegion), BlockFilterFactory.withBlockTypeId(stone), null))
+      subscriptions.subscribe("everywhere", new SubscribeBlockUpdates(regions(all, distantRegion)))
+      val events = subscriptions.split(farEvent, table)
+      events.keySet.asScala shouldEqual Set("near", "after", "distant", "everywhere")
+      positions(events.get("near")) shouldEqual Set(mined, placed)
+      positions(events.get("after")) shouldEqual Set(placed)
+      positions(events.get("distant")) shouldEqual Set(distant)
+      (events.get("everywhere") eq farEvent) shouldEqual true
+    }
+
+    "Replace the regions of a previous subscription" in {
+      val subscriptions = new BlockUpdateSubscriptions[String]()
+      subscriptions.subscribe("sub", new SubscribeBlockUpdates(regions(near)))
+      subscriptions.subscribe("sub", new SubscribeBlockUpdates(regions(far)))
+      positions(subscriptions.split(event, table).get("sub")) shouldEqual Set(removed)
+      subscriptions.unsubscribe("sub") shouldEqual true
+      subscriptions.unsubscribe("sub") shouldEqual false
+      subscriptions.split(event, table).isEmpty shouldEqual true
+    }
+
+  }
+
+  "A BoxShapeIndex" should {
+
+    val near = Box.createWithSize(new Position(0, 0, 0), new Position(4, 4, 4))
+    val far = Box.createWithSize(new Position(32, 0, 0), new Position(16, 4, 4))
+
+    "Find the owners of box shapes across cell boundaries" in {
+      val index = new BoxShapeIndex[String](8)
+      val shapes = Seq[(String, BoxShape)](
+        "across" -> new Box(new Position(-5, -5, -5), new Position(13, 3, 3)),
+        "around" -> new BoxAround(new Position(20, 0, 0), new Position(2, 2, 2)),
+        "inclusive" -> new InclusiveBox(new Position(-20, 0, 0), new Position(-18, 1, 1)),
+        "line" -> new DirectionalLine(new Position(30, 0, 0), Direction.UP, 4))
+      for ((owner, shape) <- shapes) index.register(shape, owner)
+      for (x <- -25 until 40; y <- -8 until 8; z <- -8 until 8) {
+        val position = new Position(x, y, z)
+        index.query(position).asScala shouldEqual shapes.filter(_._2.getBox.contains(position)).map(_._1).toSet
+      }
+      index.query(new Position(-18, 1, 1)).asScala shouldEqual Set("inclusive")
+    }
+
+    "Unregister box shapes from all cells" in {
+      val index = new BoxShapeIndex[String](8)
+      val across = new Box(new Position(-5, -5, -5), new Position(13, 3, 3))
+      index.register(across, "across")
+      index.register(near, "across")
+      index.register(far, "far")
+      index.unregister(across, "across") shouldEqual true
+      index.unregister(across, "across") shouldEqual false
+      index.query(new Position(-5, -5, -5)).isEmpty shouldEqual true
+      index.query(new Position(12, 0, 0)).isEmpty shouldEqual true
+      index.query(new Position(1, 1, 1)).asScala shouldEqual Set("across")
+      index.unregister("across") shouldEqual true
+      index.unregister("across") shouldEqual false
+      index.query(new Position(1, 1, 1)).isEmpty shouldEqual true
+      index.getOwners.asScala shouldEqual Set("far")
+      index.unregister("far") shouldEqual true
+      index.isEmpty shouldEqual true
+    }
+
+    "Split the updated blocks of an event per owner" in {
+      val index = new BoxShapeIndex[String](8)
+      index.register(new Box(new Position(-5, -5, -5), new Position(13, 3, 3)), "across")
+      index.register(new Box(new Position(10, 0, 0), new Position(20, 1, 1)), "right")
+      val update = new BlockUpdate(null, new Block(null, stone))
+      val updates = Seq(new Position(-5, -5, -5), new Position(11, 0, 0), new Position(15, 0, 0), new Position(100, 0, 0))
+      val events = index.split(new BlockUpdateEvent(updates.map(_ -> update).toMap.asJava))
+      events.keySet.asScala shouldEqual Set("across", "right")
+      events.get("across").getUpdatedBlocks.keySet.asScala shouldEqual Set(new Position(-5, -5, -5), new Position(11, 0, 0))
+      events.get("right").getUpdatedBlocks.keySet.asScala shouldEqual Set(new Position(11, 0, 0), new Position(15, 0, 0))
+      index.split(new BlockUpdateEvent(Map(new Position(100, 0, 0) -> update).asJava)).isEmpty shouldEqual true
+    }
+
+    "Split events with positions that can not be packed" in {
+      val index = new BoxShapeIndex[String]()
+      index.register(near, "near")
+      index.register(Box.createWithSize(new Position(2000000, 0, 0), new Position(4, 4, 4)), "distant")
+      val update = new BlockUpdate(null, new Block(null, stone))
+      val updates = Seq(new Position(1, 1, 1), new Position(2000001, 1, 1), new Position(-2000000000, 1, 1))
+      val events = index.split(new BlockUpdateEvent(updates.map(_ -> update).toMap.asJava))
+      events.get("near").getUpdatedBlocks.keySet.asScala shouldEqual Set(new Position(1, 1, 1))
+      events.get("distant").getUpdatedBlocks.keySet.asScala shouldEqual Set(new Position(2000001, 1, 1))
+      index.query(new Position(-2000000000, 1, 1)).isEmpty shouldEqual true
+      new BoxShapeIndex[String](1).query(new Position(2000001, 1, 1)).isEmpty shouldEqual true
+    }
+
+    "Match a batch of packed positions per owner" in {
+      val index = new BoxShapeIndex[String]()
+      index.register(near, "near")
+      index.register(far, "far")
+      val matches = index.`match`(Array(Position.pack(1, 1, 1), Position.pack(40, 1, 1), Position.pack(2, 1, 1), Position.pack(100, 1, 1)))
+      matches.keySet.asScala shouldEqual Set("near", "far")
+      matches.get("near").stream.toArray shouldEqual Array(0, 2)
+      matches.get("far").stream.toArray shouldEqual Array(1)
+      new BoxShapeIndex[String]().`match`(Array(Position.pack(1, 1, 1))).isEmpty shouldEqual true
+    }
+
+  }
+
+
+  "A LightField" should {
+
+    val air = new BlockTypeId("org/test", "air")
+    val torch = new BlockTypeId("org/test", "torch")
+    val lamp = new BlockTypeId("org/test", "lamp")
+    def typeOf(transparent: Boolean, colour: Colour, level: LightLevel) =
+      new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, !transparent, transparent, BlockState.SOLID, Array[BlockClassId](),
+        1.0f, 1.0f, new java.util.HashMap[BlockOrClassId, java.lang.Float](), false, null, colour, level)
+    val types = Map(
+      stone -> typeOf(false, Colour.WHITE, LightLevel.DARK),
+      air -> typeOf(true, Colour.WHITE, LightLevel.DARK),
+      torch -> typeOf(true, Colour.WHITE, LightLevel.FULL),
+      lamp -> typeOf(false, Colour.RED, LightLevel.TEN))
+    val factory = factoryOf(types)
+    def update(position: Position, before: BlockTypeId, after: BlockTypeId) =
+      position -> new BlockUpdate(new Block(null, before), if (after != null) new Block(null, after) else null)
+
+    "Spread light through transparent blocks and remove it with the light source" in {
+      val row = Box.createWithSize(new Position(0, 0, 0), new Position(5, 1, 1))
+      val light = new LightField(row, Array(air, air, torch, air, stone), factory)
+      light.getLight(2) shouldEqual 0xfff
+      light.getLight(0) shouldEqual 0xddd
+      light.getLight(4) shouldEqual 0
+      light.update(new BlockUpdateEvent(Map(update(new Position(2, 0, 0), torch, air)).asJava))
+      (0 until 5).map(light.getLight) shouldEqual Seq(0, 0, 0, 0, 0)
+      light.update(new BlockUpdateEvent(Map(update(new Position(2, 0, 0), air, torch)).asJava))
+      light.update(new BlockUpdateEvent(Map(update(new Position(2, 0, 0), torch, null)).asJava))
+      (0 until 5).map(light.getLight) shouldEqual Seq(0, 0, 0, 0, 0)
+    }
+
+    "Ignore updates outside of the box, also if they can not be packed" in {
+      val row = Box.createWithSize(new Position(0, 0, 0), new Position(5, 1, 1))
+      val light = new LightField(row, Array(air, air, air, air, air), factory)
+      light.update(new BlockUpdateEvent(Map(update(new Position(2, 0, 0), air, torch),
+        update(new Position(2000000, 0, 0), air, torch)).asJava))
+      light.getLight(2) shouldEqual 0xfff
+      light.getLight(0) shouldEqual 0xddd
+      light.update(new BlockUpdateEvent(BlockUpdateColumns.of(Map(update(new Position(2, 0, 0), torch, air)).asJava)))
+      (0 until 5).map(light.getLight) shouldEqual Seq(0, 0, 0, 0, 0)
+    }
+
+    "Give the same light after updates as a full recompute" in {
+      val box = Box.createWithSize(new Position(10, 0, -5), new Position(12, 6, 9))
+      val random = new scala.util.Random(7)
+      val choices = Array(stone, air, air, air, torch, lamp)
+      val blocks = Array.fill[BlockTypeId](box.getNumberOfBlocks)(choices(random.nextInt(choices.length)))
+      val light = new LightField(box, blocks, factory)
+      for (step <- 0 until 200) {
+        val updates = for (_ <- 0 until 3) yield {
+          val i = random.nextInt(blocks.length)
+          val after = choices(random.nextInt(choices.length))
+          val before = blocks(i)
+          blocks(i) = after
+          update(box.getFrom.add(new Position(i / (6 * 9), i / 9 % 6, i % 9)), before, after)
+        }
+        light.update(new BlockUpdateEvent((updates :+ update(new Position(0, 0, 0), stone, torch)).toMap.asJava))
+        val full = new LightField(box, blocks, factory)
+        (0 until blocks.length).map(light.getLight) shouldEqual (0 until blocks.length).map(full.getLight)
+      }
+    }
+
+  }
+
+
+  "A VoxelRay" should {
+
+    val box = Box.createWithSize(new Position(0, 0, 0), new Position(8, 8, 8))
+    def at(position: Position): java.util.function.IntPredicate = {
+      val target = box.arrayIndex(position)
+      new java.util.function.IntPredicate {
+        override def test(index: Int): Boolean = index == target
+      }
+    }
+    val target = new Position(5, 2, 3)
+
+    "Hit a block along an axis" in {
+      val hit = new RayHit()
+      VoxelRay.cast(box, at(target), 0.5f, 2.5f, 3.5f, 1, 0, 0, 64, hit) shouldEqual true
+      hit.getIndex shouldEqual box.arrayIndex(target)
+      hit.getPosition shouldEqual target
+      hit.getFace shouldEqual Direction.LEFT
+      hit.getDistance shouldEqual 4.5f +- 1e-5f
+      VoxelRay.cast(box, at(target), 5.5f, 7.5f, 3.5f, 0, -1, 0, 64, hit) shouldEqual true
+      hit.getFace shouldEqual Direction.UP
+      hit.getDistance shouldEqual 4.5f +- 1e-5f
+    }
+
+    "Hit a block along a diagonal" in {
+      val hit = new RayHit()
+      VoxelRay.cast(box, at(new Position(4, 4, 3)), 0.2f, 0.5f, 3.5f, 1, 1, 0, 64, hit) shouldEqual true
+      hit.getPosition shouldEqual new Position(4, 4, 3)
+      hit.getFace shouldEqual Direction.LEFT
+      hit.getDistance shouldEqual (3.8f * math.sqrt(2).toFloat) +- 1e-4f
+    }
+
+    "Start a ray from outside of the box where it enters the box" in {
+      val hit = new RayHit()
+      VoxelRay.cast(box, at(new Position(0, 2, 3)), -10.5f, 2.5f, 3.5f, 1, 0, 0, 64, hit) shouldEqual true
+      hit.getFace shouldEqual Direction.LEFT
+      hit.getDistance shouldEqual 10.5f +- 1e-5f
+      VoxelRay.cast(box, at(target), -10.5f, 2.5f, 3.5f, 1, 0, 0, 64, hit) shouldEqual true
+      hit.getDistance shouldEqual 15.5f +- 1e-5f
+      VoxelRay.cast(box, at(target), -10.5f, -1.0f, 3.5f, 1, 0, 0, 64, hit) shouldEqual false
+      hit.isHit shouldEqual false
+      hit.getDistance shouldEqual Float.PositiveInfinity
+    }
+
+    "Not hit blocks beyond the maximum distance" in {
+      val hit = new RayHit()
+      VoxelRay.cast(box, at(target), 0.5f, 2.5f, 3.5f, 1, 0, 0, 4.0f, hit) shouldEqual false
+      VoxelRay.cast(box, at(target), 0.5f, 2.5f, 3.5f, 1, 0, 0, 5.0f, hit) shouldEqual true
+    }
+
+    "Hit the block the ray starts in without a face" in {
+      val hit = new RayHit()
+      VoxelRay.cast(box, at(target), 5.5f, 2.5f, 3.5f, 1, 0, 0, 5.0f, hit) shouldEqual true
+      hit.getFace shouldEqual null
+      hit.getDistance shouldEqual 0.0f
+    }
+
+    "Find the first matching block along a directional line" in {
+      val air = new BlockTypeId("org/test", "air")
+      val factory = factoryOf(Map(
+        stone -> new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, true, false, BlockState.SOLID, Array[BlockClassId]()),
+        air -> new BlockType(Array(0,0,0,0,0,0), BlockShape.BLOCK, false, true, BlockState.GAS, Array[BlockClassId]())))
+      val start = new Position(2, 5, 0)
+      for (direction <- Seq(Direction.UP, Direction.DOWN, Direction.LEFT, Direction.FORWARD)) {
+        val line = new DirectionalLine(start, direction, 5)
+        val blocks = Array.fill[BlockTypeId](line.getBox.getNumberOfBlocks)(air)
+        VoxelRay.first(line, blocks, BlockFilterFactory.withBlockTypeId(stone), factory) shouldEqual -1
+        blocks(line.getBox.arrayIndex(start.add(direction.getVector.multiply(4)))) = stone
+        blocks(line.getBox.arrayIndex(start.add(direction.getVector.multiply(3)))) = stone
+        VoxelRay.first(line, blocks, BlockFilterFactory.withBlockTypeId(stone), factory) shouldEqual 3
+      }
+    }
+
+  }
+
+
+  "A BlockTransform" should {
+
+    val box = Box.createWithSize(new Position(5, -3, 7), new Position(2, 3, 4))
+    val matrices = (0 until Orientation.NUMBER_OF_ORIENTATIONS).map(Orientation.get(_).getFacePointingInRotationMatrix) ++
+      Seq(BlockTransform.MIRROR_X, BlockTransform.MIRROR_Y, BlockTransform.MIRROR_Z)
+    val size = box.getSize
+    val local = for (x <- 0 until size.getX; y <- 0 until size.getY; z <- 0 until size.getZ) yield new Position(x, y, z)
+
+    "Move each block to where the matrix rotates its position" in {
+      for (matrix <- matrices) {
+        val transformed = BlockTransform.transform(box, matrix)
+        val corner = matrix.multiply(size.subtract(new Position(1, 1, 1)))
+        val shift = new Position(math.max(0, -corner.getX), math.max(0, -corner.getY), math.max(0, -corner.getZ))
+        val src = Array.tabulate(box.getNumberOfBlocks)(identity)
+        val dst = BlockTransform.transform(box, src, matrix, new Array[Int](transformed.getNumberOfBlocks))
+        val boxed = BlockTransform.transform(box, src.map(i => Integer.valueOf(i)), matrix, new Array[Integer](transformed.getNumberOfBlocks))
+        for (p <- local) {
+          val index = transformed.arrayIndex(transformed.getFrom.add(matrix.multiply(p).add(shift)))
+          dst(index) shouldEqual box.arrayIndex(box.getFrom.add(p))
+          boxed(index).intValue shouldEqual box.arrayIndex(box.getFrom.add(p))
+        }
+      }
+    }
+
+    "Rotate the positions of a packed map around a pivot like the matrix" in {
+      val pivot = new Position(1, 2, 3)
+      val blocks = new PositionLongMap[Integer]()
+      for (p <- local) blocks.put(box.getFrom.add(p), Integer.valueOf(box.arrayIndex(box.getFrom.add(p))))
+      for (matrix <- matrices) {
+        val expected = new java.util.HashMap[Position, Integer]()
+        for (p <- local) {
+          val position = box.getFrom.add(p)
+          expected.put(pivot.add(matrix.multiply(position.subtract(pivot))), blocks.get(position))
+        }
+        BlockTransform.transform(blocks, pivot, matrix).equalsMap(expected) shouldEqual true
+      }
+    }
+
+  }
+
+
+  "A FloodFill" should {
+
+    val box = Box.createWithSize(new Position(10, -2, 4), new Position(3, 3, 3))
+    def index(x: Int, y: Int, z: Int) = box.arrayIndex(box.getFrom.add(new Position(x, y, z)))
+    /* Two face neighbours, an edge neighbour, a corner neighbour of that and an isolated block */
+    val mask = new java.util.BitSet()
+    Seq(index(0, 0, 0), index(0, 0, 1), index(1, 1, 0), index(2, 2, 1), index(2, 0, 2)).foreach(i => mask.set(i))
+
+    "Fill blocks connected by faces, edges or corners" in {
+      FloodFill.fill(box, mask, index(0, 0, 0), FloodFill.FACES).cardinality shouldEqual 2
+      FloodFill.fill(box, mask, index(0, 0, 0), FloodFill.EDGES).cardinality shouldEqual 3
+      FloodFill.fill(box, mask, index(0, 0, 0), FloodFill.CORNERS).cardinality shouldEqual 4
+      FloodFill.fill(box, mask, index(0, 0, 2), FloodFill.CORNERS).isEmpty shouldEqual true
+      val positions = FloodFill.fillPositions(box, mask, box.getFrom, FloodFill.EDGES)
+      positions.size shouldEqual 3
+      positions.contains(new Position(11, -1, 4)) shouldEqual true
+    }
+
+    "Label connected components in the order of their lowest index" in {
+      val labels = new Array[Int](box.getNumberOfBlocks)
+      FloodFill.label(box, mask, FloodFill.FACES, labels) shouldEqual 4
+      FloodFill.label(box, mask, FloodFill.EDGES, labels) shouldEqual 3
+      FloodFill.label(box, mask, FloodFill.CORNERS, labels) shouldEqual 2
+      labels(index(0, 0, 0)) shouldEqual 1
+      labels(index(2, 2, 1)) shouldEqual 1
+      labels(index(2, 0, 2)) shouldEqual 2
+      labels(index(0, 0, 2)) shouldEqual 0
+    }
+
+    "Label the same components as a search over all neighbours" in {
+      val random = new scala.util.Random(11)
+      val large = Box.createWithSize(new Position(0, 0, 0), new Position(6, 5, 4))
+      val n = large.getNumberOfBlocks
+      val passable = new java.util.BitSet(n)
+      for (i <- 0 until n if random.nextInt(5) < 2) passable.set(i)
+      for ((connectivity, maxAxes) <- Seq(FloodFill.FACES -> 1, FloodFill.EDGES -> 2, FloodFill.CORNERS -> 3)) {
+        val expected = new Array[Int](n)
+        var components = 0
+        for (i <- 0 until n if passable.get(i) && expected(i) == 0) {
+          components += 1
+          expected(i) = components
+          val queue = scala.collection.mutable.Queue(i)
+          while (queue.nonEmpty) {
+            val c = queue.dequeue()
+            val (x, y, z) = (c / 20, c / 4 % 5, c % 4)
+            for (dx <- -1 to 1; dy <- -1 to 1; dz <- -1 to 1) {
+              val axes = math.abs(dx) + math.abs(dy) + math.abs(dz)
+              val (nx, ny, nz) = (x + dx, y + dy, z + dz)
+              if (axes > 0 && axes <= maxAxes && nx >= 0 && nx < 6 && ny >= 0 && ny < 5 && nz >= 0 && nz < 4) {
+                val j = (nx * 5 + ny) * 4 + nz
+                if (passable.get(j) && expected(j) == 0) {
+                  expected(j) = components
+                  queue.enqueue(j)
+                }
+              }
+            }
+          }
+        }
+        val labels = new Array[Int](n)
+        FloodFill.label(large, passable, connectivity, labels) shouldEqual components
+        labels shouldEqual expected
+      }
+    }
+
+  }
+}